@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+# Runs all benchmarks with the GC allocation profiler and records the results as the baseline,
+# along with the JVM and machine they were measured on.
+# Build first: (cd .. && ./mvnw -DskipTests install) && ../mvnw -f pom.xml package
+
+set -euo pipefail
+script_dir=$(dirname "$0")
+
+{
+  echo "date: $(date -u +%Y-%m-%dT%H:%M:%SZ)"
+  echo "commit: $(git -C "$script_dir" rev-parse --short HEAD 2>/dev/null || echo unknown)"
+  echo "host: $(uname -srm)"
+  echo "cpus: $(getconf _NPROCESSORS_ONLN)"
+  java -version 2>&1 | sed 's/^/java: /'
+} > "$script_dir/baseline/environment.txt"
+
+java -jar "$script_dir/target/benchmarks.jar" \
+  -prof gc \
+  -rf json -rff "$script_dir/baseline/baseline-gc.json" \
+  "$@" | tee "$script_dir/baseline/baseline-gc.txt"
@@ -0,0 +1,72 @@
+package com.embabel.template.agent;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code getContent()} of the records returned by the agents.
+ * The "first" variants render a fresh instance each time; the "repeat" variants hit the per-instance memo.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentRenderingBenchmark {
+
+    private SeasonPlan plan;
+    private ReviewedSeasonPlan reviewedPlan;
+    private String review;
+    private UserManual manual;
+    private ReviewedStory reviewedStory;
+
+    @Setup
+    public void setUp() {
+        plan = Fixtures.seasonPlan();
+        review = Fixtures.words(25);
+        reviewedPlan = new ReviewedSeasonPlan(plan, review, OmPersonas.REVIEWER);
+        manual = Fixtures.userManual(60);
+        reviewedStory = Fixtures.reviewedStory();
+    }
+
+    @Benchmark
+    public String seasonPlanFirst() {
+        return Fixtures.copyOf(plan).getContent();
+    }
+
+    @Benchmark
+    public String seasonPlanRepeat() {
+        return plan.getContent();
+    }
+
+    @Benchmark
+    public String reviewedSeasonPlanFirst() {
+        return new ReviewedSeasonPlan(Fixtures.copyOf(plan), review, OmPersonas.REVIEWER).getContent();
+    }
+
+    @Benchmark
+    public String reviewedSeasonPlanRepeat() {
+        return reviewedPlan.getContent();
+    }
+
+    @Benchmark
+    public String userManual() {
+        return manual.getContent();
+    }
+
+    @Benchmark
+    public String reviewedStory() {
+        return reviewedStory.getContent();
+    }
+}
@@ -0,0 +1,63 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.domain.io.UserInput;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Realistically sized records for the benchmarks: a full 20-week season,
+ * a 60-section manual and a 400-word story review.
+ */
+final class Fixtures {
+
+    private static final String SENTENCE =
+            "Students brainstorm in pairs, converge on two ideas, and test a quick prototype while the coach asks open questions. ";
+
+    private Fixtures() {
+    }
+
+    static String words(int sentences) {
+        return SENTENCE.repeat(sentences).trim();
+    }
+
+    static UserInput userInput() {
+        return new UserInput("Division II structure team, six students, meeting weekly for 90 minutes; "
+                + "two students are new to OM and the team wants more hands-on spontaneous practice.");
+    }
+
+    static WeekLesson week(int weekNumber) {
+        return new WeekLesson(
+                weekNumber,
+                words(3),
+                words(2),
+                words(2),
+                "hands-on — build the tallest tower from 20 straws and 1 m of tape in 8 minutes",
+                List.of("00:00 warm-up game", "00:10 spontaneous practice", "00:25 long-term build session",
+                        "01:05 style brainstorm", "01:20 reflection and logs"),
+                List.of("masking tape", "balsa strips", "wood glue", "cardboard", "scissors", "safety glasses"),
+                List.of("glasses on while cutting", "hot glue station supervised for safety only"),
+                List.of("structure survives 5 kg load test", "two style ideas recorded"),
+                List.of("thinking log: three new style ideas"),
+                "Adults supervise safety and ask questions; every design decision is made by the team.");
+    }
+
+    static SeasonPlan seasonPlan() {
+        return new SeasonPlan("Division II", "structure", "Stronger together",
+                IntStream.rangeClosed(1, OmCoachAgent.SEASON_WEEKS).mapToObj(Fixtures::week).toList());
+    }
+
+    static SeasonPlan copyOf(SeasonPlan plan) {
+        return new SeasonPlan(plan.teamLevel(), plan.longTermProblemType(), plan.theme(), plan.lessons());
+    }
+
+    static UserManual userManual(int sections) {
+        return new UserManual(IntStream.rangeClosed(1, sections)
+                .mapToObj(i -> new ManualSection("Section " + i, words(12)))
+                .toList());
+    }
+
+    static ReviewedStory reviewedStory() {
+        return new ReviewedStory(new Story(words(6)), words(25), Personas.REVIEWER);
+    }
+}
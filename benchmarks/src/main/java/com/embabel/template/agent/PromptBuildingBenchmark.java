@@ -0,0 +1,60 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.domain.io.UserInput;
+import com.embabel.template.llm.LlmCalls;
+import com.embabel.template.llm.RenderedPrompt;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prompt construction for the {@link OmCoachAgent} actions, excluding the LLM call itself.
+ * The plan is rendered once up front, as it is when the same plan feeds several prompts in one request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PromptBuildingBenchmark {
+
+    private OmCoachAgent agent;
+    private UserInput userInput;
+    private SeasonPlan plan;
+
+    @Setup
+    public void setUp() {
+        agent = new OmCoachAgent(0.5, 180, 400, 5, 1, 2, new ObjectMapper(),
+                LlmCalls.direct(), SeasonPlanStore.disabled(), SeasonPlanSemanticCache.disabled(),
+                SeasonPlanRepair.detached());
+        userInput = Fixtures.userInput();
+        plan = Fixtures.seasonPlan();
+        plan.getContent();
+    }
+
+    @Benchmark
+    public RenderedPrompt craftSeasonPlanPrompt() {
+        return agent.seasonPlanPrompt(userInput);
+    }
+
+    @Benchmark
+    public RenderedPrompt reviewSeasonPrompt() {
+        return agent.reviewPrompt(userInput, plan);
+    }
+
+    @Benchmark
+    public RenderedPrompt regenerateWeekPrompt() {
+        return agent.regenerateWeekPrompt(userInput, plan, 7);
+    }
+}
@@ -0,0 +1,50 @@
+package com.embabel.template.agent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON to record mapping of a 20-week {@link SeasonPlan}, as done for structured LLM output.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SeasonPlanMappingBenchmark {
+
+    private ObjectMapper objectMapper;
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        objectMapper = new ObjectMapper();
+        var plan = Fixtures.seasonPlan();
+        // Only the record components: the LLM never sends content or timestamp
+        var body = new LinkedHashMap<String, Object>();
+        body.put("teamLevel", plan.teamLevel());
+        body.put("longTermProblemType", plan.longTermProblemType());
+        body.put("theme", plan.theme());
+        body.put("lessons", plan.lessons());
+        json = objectMapper.writeValueAsString(body);
+    }
+
+    @Benchmark
+    public SeasonPlan readSeasonPlan() throws JsonProcessingException {
+        return objectMapper.readValue(json, SeasonPlan.class);
+    }
+}
@@ -1,14 +1,72 @@
 package com.embabel.template;
 
+import com.embabel.template.agent.AgentRuns;
+import com.embabel.template.agent.SeasonPlanBatch;
 import com.embabel.template.injected.InjectedDemo;
+import com.embabel.template.llm.TokenSink;
+import org.jline.terminal.Terminal;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutionException;
 
 @ShellComponent
-record DemoShell(InjectedDemo injectedDemo) {
+record DemoShell(InjectedDemo injectedDemo, SeasonPlanBatch seasonPlanBatch, AgentRuns agentRuns, Terminal terminal) {
 
     @ShellMethod("Invent an animal")
     String animal() {
         return injectedDemo.inventAnimal().toString();
     }
+
+    @ShellMethod("Run an exported goal, printing model text as it is generated, then the result")
+    String run(
+            @ShellOption(help = "The user's input") String input,
+            @ShellOption(help = "Exported goal, such as writeAndReviewStory", defaultValue = "generateAndReviewOmSeason") String goal)
+            throws InterruptedException, ExecutionException {
+        var run = agentRuns.startExported(goal, input, null, new TokenSink() {
+            private String lastAction;
+
+            @Override
+            public synchronized void onToken(String action, String text) {
+                var out = terminal.writer();
+                if (!action.equals(lastAction)) {
+                    out.printf("%n[%s]%n", action);
+                    lastAction = action;
+                }
+                out.print(text);
+                terminal.flush();
+            }
+
+            @Override
+            public synchronized void onRestart(String action) {
+                terminal.writer().printf("%n[%s, restarted]%n", action);
+                terminal.flush();
+                lastAction = action;
+            }
+        });
+        try {
+            return "\n\n" + run.get().getContent();
+        } catch (InterruptedException e) {
+            run.cancel(true);
+            throw e;
+        }
+    }
+
+    @ShellMethod("Generate and review a season plan for each line of a JSONL file; re-run to resume")
+    String seasons(
+            @ShellOption(help = "JSONL input: {\"id\": ..., \"content\": ...} or a JSON string per line") String input,
+            @ShellOption(help = "JSONL output, also the checkpoint") String output,
+            @ShellOption(help = "Plans generated at once; 0 for batch.parallelism", defaultValue = "0") int parallelism)
+            throws IOException {
+        var report = seasonPlanBatch.run(Path.of(input), Path.of(output),
+                parallelism > 0 ? parallelism : seasonPlanBatch.defaultParallelism(),
+                line -> {
+                    terminal.writer().println(line);
+                    terminal.flush();
+                });
+        return report.summary();
+    }
 }
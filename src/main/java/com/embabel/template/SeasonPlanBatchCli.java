@@ -0,0 +1,56 @@
+package com.embabel.template;
+
+import com.embabel.template.agent.SeasonPlanBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+
+/**
+ * Headless batch mode: runs {@link SeasonPlanBatch} and exits instead of starting the shell.
+ * <pre>
+ * java -jar app.jar --batch.input=teams.jsonl --batch.output=plans.jsonl [--batch.parallelism=8]
+ * </pre>
+ * Exits with status 1 if any item failed, so a scheduler can re-run the same command to retry just those.
+ */
+@Component
+@ConditionalOnProperty("batch.input")
+@Order(Ordered.HIGHEST_PRECEDENCE)
+class SeasonPlanBatchCli implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeasonPlanBatchCli.class);
+
+    private final SeasonPlanBatch seasonPlanBatch;
+    private final ApplicationContext context;
+    private final String input;
+    private final String output;
+
+    SeasonPlanBatchCli(
+            SeasonPlanBatch seasonPlanBatch,
+            ApplicationContext context,
+            @Value("${batch.input}") String input,
+            @Value("${batch.output:${batch.input}.out.jsonl}") String output) {
+        this.seasonPlanBatch = seasonPlanBatch;
+        this.context = context;
+        this.input = input;
+        this.output = output;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        var report = seasonPlanBatch.run(Path.of(input), Path.of(output),
+                seasonPlanBatch.defaultParallelism(), logger::info);
+        logger.info("Batch {} -> {}: {}", input, output, report.summary());
+        int status = report.failed() > 0 ? 1 : 0;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+}
@@ -0,0 +1,146 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.concurrent.DeadlineExceededException;
+import com.embabel.template.llm.TokenSink;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+
+/**
+ * Runs an exported goal and streams it to the client as server-sent events, so that text shows as it is written
+ * rather than when the whole run is done.
+ * <p>
+ * {@code POST /runs/{goal}/stream} with the user input as the body, where {@code goal} is the exported name, such as
+ * {@code generateAndReviewOmSeason}. Events:
+ * <ul>
+ *     <li>{@code token}: {@code {"action": ..., "text": ...}}, the next chunk of a model response</li>
+ *     <li>{@code restart}: {@code {"action": ...}}, discard that action's text so far; the whole response follows</li>
+ *     <li>{@code result}: the goal's record, assembled as usual, after which the stream ends</li>
+ *     <li>{@code error}: {@code {"outcome": ..., "message": ...}} if the run fails</li>
+ * </ul>
+ * Disconnecting cancels the run.
+ */
+@RestController
+class AgentRunStreams {
+
+    /**
+     * Time allowed past the run's deadline to send its error event.
+     */
+    private static final Duration GRACE = Duration.ofSeconds(5);
+
+    private final AgentRuns agentRuns;
+
+    AgentRunStreams(AgentRuns agentRuns) {
+        this.agentRuns = agentRuns;
+    }
+
+    /**
+     * @param timeout run timeout, such as {@code PT5M}; defaults to {@code agent.runs.timeout}
+     */
+    @PostMapping(path = "/runs/{goal}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter stream(
+            @PathVariable String goal,
+            @RequestBody String input,
+            @RequestParam(required = false) Duration timeout) {
+        if (!AgentRuns.exportedGoals().contains(goal)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                    "No exported goal '" + goal + "'; try " + AgentRuns.exportedGoals());
+        }
+        var runTimeout = timeout != null ? timeout : agentRuns.defaultTimeout();
+        var events = new RunEvents(new SseEmitter(runTimeout.plus(GRACE).toMillis()));
+        var run = agentRuns.startExported(goal, input, runTimeout, events);
+        events.attach(run);
+        run.whenComplete((result, failure) -> {
+            if (failure == null) {
+                events.send("result", result);
+                events.emitter.complete();
+            } else {
+                events.fail(failure);
+            }
+        });
+        return events.emitter;
+    }
+
+    /**
+     * The events of one run, sent from whichever thread produces them.
+     */
+    private static final class RunEvents implements TokenSink {
+
+        final SseEmitter emitter;
+        private volatile Future<?> run;
+        private volatile boolean closed;
+
+        RunEvents(SseEmitter emitter) {
+            this.emitter = emitter;
+            emitter.onTimeout(this::cancel);
+            emitter.onError(failure -> cancel());
+            emitter.onCompletion(this::cancel);
+        }
+
+        void attach(Future<?> run) {
+            this.run = run;
+            if (closed) {
+                // The client went away while the run was starting
+                run.cancel(true);
+            }
+        }
+
+        @Override
+        public void onToken(String action, String text) {
+            send("token", Map.of("action", action, "text", text));
+        }
+
+        @Override
+        public void onRestart(String action) {
+            send("restart", Map.of("action", action));
+        }
+
+        void fail(Throwable failure) {
+            if (failure instanceof CompletionException wrapped && wrapped.getCause() != null) {
+                failure = wrapped.getCause();
+            }
+            var outcome = failure instanceof DeadlineExceededException ? "deadline"
+                    : failure instanceof CancellationException ? "cancelled"
+                    : "error";
+            send("error", Map.of("outcome", outcome, "message", String.valueOf(failure.getMessage())));
+            emitter.complete();
+        }
+
+        /**
+         * Sending fails once the client has gone, which cancels the run.
+         */
+        void send(String name, Object data) {
+            try {
+                synchronized (this) {
+                    emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                cancel();
+            }
+        }
+
+        /**
+         * Does nothing once the run has finished.
+         */
+        private void cancel() {
+            closed = true;
+            var run = this.run;
+            if (run != null) {
+                run.cancel(true);
+            }
+        }
+    }
+}
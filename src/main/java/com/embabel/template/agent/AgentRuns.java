@@ -0,0 +1,147 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.api.common.autonomy.AgentInvocation;
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.agent.domain.io.UserInput;
+import com.embabel.agent.domain.library.HasContent;
+import com.embabel.template.concurrent.CancellableRuns;
+import com.embabel.template.concurrent.DeadlineExceededException;
+import com.embabel.template.llm.TokenSink;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous entry point to the agent platform: runs a goal, such as {@link ReviewedSeasonPlan} for the exported
+ * {@code generateAndReviewOmSeason}, on its own virtual thread and returns at once.
+ * <p>
+ * Cancelling the returned future or publisher, or passing the deadline, interrupts the run and any model calls it
+ * has in flight; see {@link CancellableRuns}. Runs without an explicit timeout get {@code agent.runs.timeout}.
+ * At most {@code agent.runs.max-in-flight} runs are held at once. Pass a {@link TokenSink} to receive the text of
+ * the run's model calls as it is generated.
+ * <p>
+ * Meters: {@code agent.runs} counts finished runs by {@code outcome} (success, error, cancelled, deadline or
+ * rejected); {@code agent.runs.in.flight} gauges the runs in progress.
+ */
+@Component
+public class AgentRuns {
+
+    /**
+     * Goals exported by our agents, by their export name.
+     */
+    private static final Map<String, Class<? extends HasContent>> EXPORTED = Map.of(
+            "generateAndReviewOmSeason", ReviewedSeasonPlan.class,
+            "writeAndReviewStory", ReviewedStory.class);
+
+    private final AgentPlatform agentPlatform;
+    private final Duration defaultTimeout;
+    private final CancellableRuns runs;
+    private final MeterRegistry registry;
+
+    AgentRuns(
+            AgentPlatform agentPlatform,
+            @Value("${agent.runs.timeout:15m}") Duration defaultTimeout,
+            @Value("${agent.runs.max-in-flight:10000}") int maxInFlight,
+            MeterRegistry registry) {
+        this.agentPlatform = agentPlatform;
+        this.defaultTimeout = defaultTimeout;
+        this.runs = new CancellableRuns("agent-run", maxInFlight);
+        this.registry = registry;
+        Gauge.builder("agent.runs.in.flight", runs, CancellableRuns::inFlight)
+                .description("Agent runs in progress")
+                .register(registry);
+    }
+
+    /**
+     * Run the agent that achieves {@code goal} from {@code input}, within {@code agent.runs.timeout}.
+     */
+    public <O> CompletableFuture<O> start(Class<O> goal, Object input) {
+        return start(goal, input, defaultTimeout);
+    }
+
+    /**
+     * Run an exported goal, such as {@code generateAndReviewOmSeason}, from a user's input.
+     *
+     * @param timeout null for {@code agent.runs.timeout}
+     * @param tokens  receives the text of the run's model calls as it is generated, or null
+     * @throws IllegalArgumentException if no goal is exported under that name
+     */
+    public CompletableFuture<? extends HasContent> startExported(
+            String goal, String userInput, Duration timeout, TokenSink tokens) {
+        var goalType = EXPORTED.get(goal);
+        if (goalType == null) {
+            throw new IllegalArgumentException("No exported goal '" + goal + "'; known goals are " + EXPORTED.keySet());
+        }
+        return start(goalType, new UserInput(userInput), timeout != null ? timeout : defaultTimeout, tokens);
+    }
+
+    public static Set<String> exportedGoals() {
+        return EXPORTED.keySet();
+    }
+
+    public Duration defaultTimeout() {
+        return defaultTimeout;
+    }
+
+    /**
+     * @param timeout null for no deadline
+     */
+    public <O> CompletableFuture<O> start(Class<O> goal, Object input, Duration timeout) {
+        return start(goal, input, timeout, null);
+    }
+
+    /**
+     * @param timeout null for no deadline
+     * @param tokens  receives the text of the run's model calls as it is generated, or null
+     */
+    public <O> CompletableFuture<O> start(Class<O> goal, Object input, Duration timeout, TokenSink tokens) {
+        Supplier<O> invocation = () -> AgentInvocation.create(agentPlatform, goal).invoke(input);
+        var run = runs.start(tokens == null ? invocation : () -> TokenSink.forwardTo(tokens, invocation), timeout);
+        run.whenComplete((result, failure) -> Counter.builder("agent.runs")
+                .description("Finished agent runs")
+                .tag("goal", goal.getSimpleName())
+                .tag("outcome", outcome(failure))
+                .register(registry)
+                .increment());
+        return run;
+    }
+
+    /**
+     * The run as a publisher: nothing starts until it is subscribed to, and cancelling the subscription
+     * cancels the run.
+     */
+    public <O> Mono<O> mono(Class<O> goal, Object input, Duration timeout) {
+        return Mono.fromFuture(() -> start(goal, input, timeout), false);
+    }
+
+    private static String outcome(Throwable failure) {
+        if (failure instanceof CompletionException wrapped && wrapped.getCause() != null) {
+            failure = wrapped.getCause();
+        }
+        if (failure == null) {
+            return "success";
+        }
+        if (failure instanceof DeadlineExceededException) {
+            return "deadline";
+        }
+        if (failure instanceof CancellationException) {
+            return "cancelled";
+        }
+        if (failure instanceof RejectedExecutionException) {
+            return "rejected";
+        }
+        return "error";
+    }
+}
@@ -5,6 +5,7 @@ import com.embabel.common.ai.model.Llm;
 import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.ai.model.OptionsConverter;
 import com.embabel.common.ai.model.PerTokenPricingModel;
+import com.embabel.template.llm.LlmResilience;
 import io.micrometer.observation.ObservationRegistry;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.ai.chat.prompt.ChatOptions;
@@ -13,18 +14,23 @@ import org.springframework.ai.openai.OpenAiChatOptions;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.retry.support.RetryTemplate;
 
 import java.time.LocalDate;
 
 @Configuration
 public class BitnetCustomOpenAiCompatibleModels extends OpenAiCompatibleModelFactory {
 
+    private final String baseUrl;
+    private final LlmResilience resilience;
+
     public BitnetCustomOpenAiCompatibleModels(
-            @Value("https://n44s48888ocw00ko4csccs8g.exceptionai.com") String baseUrl,
+            @Value("${bitnet.baseUrl:https://n44s48888ocw00ko4csccs8g.exceptionai.com}") String baseUrl,
             @Value("none") String apiKey,
-            ObservationRegistry observationRegistry) {
+            ObservationRegistry observationRegistry,
+            LlmResilience resilience) {
         super(baseUrl, apiKey, null, null, observationRegistry);
+        this.baseUrl = baseUrl;
+        this.resilience = resilience;
     }
 
     @Bean
@@ -44,7 +50,7 @@ public class BitnetCustomOpenAiCompatibleModels extends OpenAiCompatibleModelFac
                 .presencePenalty(1.5)
                 .frequencyPenalty(0.0)
                 .build(),
-                new RetryTemplate()
+                resilience.retryTemplate("bitnet", baseUrl)
         );
     }
 }
@@ -0,0 +1,138 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.llm.CandidateScorer;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Local scorers for choosing between generated candidates: checks that cost nothing next to a model call.
+ * Each scores from 0 to 1 and can be combined with an {@link com.embabel.template.llm.LlmJudge}.
+ */
+final class CandidateHeuristics {
+
+    private CandidateHeuristics() {
+    }
+
+    /**
+     * Rewards a story that uses most of its word limit without passing it, varies its vocabulary, does not repeat
+     * itself and finishes its last sentence.
+     */
+    static CandidateScorer<Story> story(int wordLimit) {
+        return story -> {
+            var words = words(story.text());
+            if (words.isEmpty()) {
+                return 0;
+            }
+            return (length(words.size(), wordLimit) + variety(words) + (1 - repeatedTrigrams(words))
+                    + (finished(story.text()) ? 1 : 0)) / 4;
+        };
+    }
+
+    /**
+     * Rewards a season plan that covers every week once, fills in each week's plan and keeps each week within
+     * {@code maxWordsPerWeek}.
+     */
+    static CandidateScorer<SeasonPlan> seasonPlan(int weeks, int maxWordsPerWeek) {
+        return plan -> {
+            var lessons = plan.lessons() == null ? List.<WeekLesson>of() : plan.lessons();
+            var covered = new HashSet<Integer>();
+            double filledIn = 0;
+            double withinLimit = 0;
+            for (var lesson : lessons) {
+                if (lesson.weekNumber() >= 1 && lesson.weekNumber() <= weeks) {
+                    covered.add(lesson.weekNumber());
+                }
+                filledIn += filledIn(lesson);
+                int words = words(lessonText(lesson)).size();
+                withinLimit += words <= maxWordsPerWeek ? 1 : (double) maxWordsPerWeek / words;
+            }
+            double header = Stream.of(plan.teamLevel(), plan.longTermProblemType(), plan.theme())
+                    .filter(CandidateHeuristics::present)
+                    .count() / 3.0;
+            // Weeks beyond the season count against the plan, as missing ones do
+            double coverage = (double) covered.size() / Math.max(weeks, lessons.size());
+            int count = Math.max(1, lessons.size());
+            return (2 * coverage + filledIn / count + withinLimit / count + header) / 5;
+        };
+    }
+
+    static List<String> words(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        return Stream.of(text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}']+"))
+                .filter(word -> !word.isEmpty())
+                .toList();
+    }
+
+    /**
+     * Full marks from 60% of the limit up to the limit, falling away either side.
+     */
+    private static double length(int words, int limit) {
+        if (words > limit) {
+            return Math.max(0, 1 - (double) (words - limit) / limit);
+        }
+        return Math.min(1, words / (0.6 * limit));
+    }
+
+    /**
+     * Distinct words over all words, with full marks from 60%: longer texts repeat common words however good.
+     */
+    private static double variety(List<String> words) {
+        return Math.min(1, new HashSet<>(words).size() / (0.6 * words.size()));
+    }
+
+    private static double repeatedTrigrams(List<String> words) {
+        if (words.size() < 3) {
+            return 0;
+        }
+        var seen = new HashSet<String>();
+        int repeated = 0;
+        for (int i = 0; i + 2 < words.size(); i++) {
+            if (!seen.add(words.get(i) + ' ' + words.get(i + 1) + ' ' + words.get(i + 2))) {
+                repeated++;
+            }
+        }
+        return (double) repeated / (words.size() - 2);
+    }
+
+    private static boolean finished(String text) {
+        var trimmed = text.strip();
+        return !trimmed.isEmpty() && ".!?\"'”’)".indexOf(trimmed.charAt(trimmed.length() - 1)) >= 0;
+    }
+
+    private static double filledIn(WeekLesson lesson) {
+        return Stream.of(
+                        present(lesson.goals()),
+                        present(lesson.longTermFocus()),
+                        present(lesson.styleFocus()),
+                        present(lesson.spontaneousType()),
+                        present(lesson.agenda()),
+                        present(lesson.materials()),
+                        present(lesson.safetyNotes()),
+                        present(lesson.checkpoints()))
+                .filter(Boolean::booleanValue)
+                .count() / 8.0;
+    }
+
+    private static String lessonText(WeekLesson lesson) {
+        var parts = Stream.of(lesson.goals(), lesson.longTermFocus(), lesson.styleFocus(), lesson.spontaneousType(),
+                lesson.outsideAssistanceGuardrails());
+        var lists = Stream.of(lesson.agenda(), lesson.materials(), lesson.safetyNotes(), lesson.checkpoints(),
+                        lesson.homework())
+                .filter(list -> list != null)
+                .flatMap(List::stream);
+        return String.join(" ", Stream.concat(parts, lists).filter(part -> part != null).toList());
+    }
+
+    private static boolean present(String value) {
+        return value != null && !value.isBlank();
+    }
+
+    private static boolean present(List<String> values) {
+        return values != null && values.stream().anyMatch(CandidateHeuristics::present);
+    }
+}
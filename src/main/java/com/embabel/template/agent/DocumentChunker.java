@@ -0,0 +1,117 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.llm.TokenEstimates;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Splits documents into windows under a token budget, on heading and paragraph boundaries.
+ * Boundaries are content-defined: a window ends before a heading, or after a paragraph whose hash
+ * marks it as a cut point, once the window holds at least a quarter of the budget.
+ * An edit therefore only moves the boundaries near it, and the other windows come out byte-identical
+ * to the previous run, so cached summaries of them still apply.
+ */
+final class DocumentChunker {
+
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n\\s*\\n");
+    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[.!?])\\s+");
+    private static final Pattern CAPS_HEADING = Pattern.compile("[\\p{Lu}0-9][\\p{Lu}0-9 &/:\\-]{2,79}");
+    private static final int CUT_MODULUS = 4;
+    private static final String SEPARATOR = "\n\n";
+
+    private DocumentChunker() {
+    }
+
+    static List<String> chunk(String text, int tokenBudget) {
+        if (tokenBudget < 1) {
+            throw new IllegalArgumentException("tokenBudget must be positive, was " + tokenBudget);
+        }
+        int minTokens = tokenBudget / 4;
+        var chunks = new ArrayList<String>();
+        var current = new StringBuilder();
+        for (var block : blocks(text, tokenBudget)) {
+            int currentTokens = TokenEstimates.estimate(current);
+            if (!current.isEmpty() && (
+                    currentTokens + TokenEstimates.estimate(SEPARATOR + block) > tokenBudget
+                            || (isHeading(block) && currentTokens >= minTokens))) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+            if (!current.isEmpty()) {
+                current.append(SEPARATOR);
+            }
+            current.append(block);
+            if (TokenEstimates.estimate(current) >= minTokens && isCutPoint(block)) {
+                chunks.add(current.toString());
+                current.setLength(0);
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current.toString());
+        }
+        return chunks;
+    }
+
+    /**
+     * Paragraphs, with leading heading lines split off, and anything over budget split by sentence.
+     */
+    private static List<String> blocks(String text, int tokenBudget) {
+        var blocks = new ArrayList<String>();
+        for (var paragraph : BLANK_LINES.split(text.replace("\r\n", "\n"))) {
+            var trimmed = paragraph.strip();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            int firstLineEnd = trimmed.indexOf('\n');
+            if (firstLineEnd > 0 && isHeading(trimmed.substring(0, firstLineEnd))) {
+                blocks.add(trimmed.substring(0, firstLineEnd).strip());
+                trimmed = trimmed.substring(firstLineEnd + 1).strip();
+            }
+            if (TokenEstimates.estimate(trimmed) <= tokenBudget) {
+                blocks.add(trimmed);
+            } else {
+                splitOversized(trimmed, tokenBudget, blocks);
+            }
+        }
+        return blocks;
+    }
+
+    private static void splitOversized(String paragraph, int tokenBudget, List<String> blocks) {
+        int maxChars = tokenBudget * TokenEstimates.CHARS_PER_TOKEN;
+        var piece = new StringBuilder();
+        for (var sentence : SENTENCE_END.split(paragraph)) {
+            if (!piece.isEmpty() && piece.length() + 1 + sentence.length() > maxChars) {
+                blocks.add(piece.toString());
+                piece.setLength(0);
+            }
+            if (sentence.length() > maxChars) {
+                // No sentence boundary to use: hard split
+                for (int start = 0; start < sentence.length(); start += maxChars) {
+                    blocks.add(sentence.substring(start, Math.min(sentence.length(), start + maxChars)));
+                }
+                continue;
+            }
+            if (!piece.isEmpty()) {
+                piece.append(' ');
+            }
+            piece.append(sentence);
+        }
+        if (!piece.isEmpty()) {
+            blocks.add(piece.toString());
+        }
+    }
+
+    static boolean isHeading(String block) {
+        if (block.indexOf('\n') >= 0) {
+            return false;
+        }
+        return block.startsWith("#") || CAPS_HEADING.matcher(block).matches();
+    }
+
+    private static boolean isCutPoint(String block) {
+        // String.hashCode is specified by the JLS, so cut points are the same on every run
+        return !isHeading(block) && Math.floorMod(block.hashCode(), CUT_MODULUS) == 0;
+    }
+}
@@ -0,0 +1,47 @@
+package com.embabel.template.agent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Channel-based text reading for ingested documents.
+ * Large files are memory-mapped and decoded straight from the page cache, so they are never copied
+ * into an intermediate byte array; small files are read into a single right-sized buffer.
+ * Malformed bytes are replaced rather than failing the whole document.
+ */
+final class DocumentReader {
+
+    private static final long MAP_THRESHOLD = 1024 * 1024;
+
+    private DocumentReader() {
+    }
+
+    static String readText(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Document too large to ingest: " + path + " (" + size + " bytes)");
+            }
+            ByteBuffer bytes;
+            if (size >= MAP_THRESHOLD) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+                    // keep reading until full or end of file
+                }
+                bytes.flip();
+            }
+            return StandardCharsets.UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                    .decode(bytes)
+                    .toString();
+        }
+    }
+}
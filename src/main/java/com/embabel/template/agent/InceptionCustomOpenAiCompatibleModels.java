@@ -5,6 +5,7 @@ import com.embabel.common.ai.model.Llm;
 import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.ai.model.OptionsConverter;
 import com.embabel.common.ai.model.PerTokenPricingModel;
+import com.embabel.template.llm.LlmResilience;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.DefaultChatOptions;
@@ -14,18 +15,23 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import io.micrometer.observation.ObservationRegistry;
-import org.springframework.retry.support.RetryTemplate;
 
 import java.time.LocalDate;
 
 @Configuration
 public class InceptionCustomOpenAiCompatibleModels extends OpenAiCompatibleModelFactory {
 
+    private final String baseUrl;
+    private final LlmResilience resilience;
+
     public InceptionCustomOpenAiCompatibleModels(
-            @Value("https://api.inceptionlabs.ai") String baseUrl,
+            @Value("${inception.baseUrl:https://api.inceptionlabs.ai}") String baseUrl,
             @Value("${INCEPTION_API_KEY}") String apiKey,
-            ObservationRegistry observationRegistry) {
+            ObservationRegistry observationRegistry,
+            LlmResilience resilience) {
         super(baseUrl, apiKey, null, null, observationRegistry);
+        this.baseUrl = baseUrl;
+        this.resilience = resilience;
     }
 
     @Bean
@@ -45,7 +51,7 @@ public class InceptionCustomOpenAiCompatibleModels extends OpenAiCompatibleModel
                 .presencePenalty(1.5)
                 .frequencyPenalty(0.0)
                 .build(),
-                new RetryTemplate()
+                resilience.retryTemplate("mercury", baseUrl)
         );
     }
     @Bean
@@ -66,7 +72,7 @@ public class InceptionCustomOpenAiCompatibleModels extends OpenAiCompatibleModel
                         return new DefaultChatOptions();
                     }
                 },
-                new RetryTemplate()
+                resilience.retryTemplate("mercury-coder", baseUrl)
         );
     }
 }
@@ -9,16 +9,27 @@ import com.embabel.agent.domain.io.UserInput;
 import com.embabel.agent.domain.library.HasContent;
 import com.embabel.agent.prompt.persona.Persona;
 import com.embabel.agent.prompt.persona.RoleGoalBackstory;
-import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.core.types.Timestamped;
+import com.embabel.template.concurrent.BoundedFanOut;
+import com.embabel.template.llm.CandidateScorer;
+import com.embabel.template.llm.LlmCall;
+import com.embabel.template.llm.LlmCalls;
+import com.embabel.template.llm.PromptTemplate;
+import com.embabel.template.llm.RenderedPrompt;
+import com.embabel.template.llm.TokenSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.lang.NonNull;
 
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 abstract class OmPersonas {
     static final RoleGoalBackstory COACH = RoleGoalBackstory
@@ -46,6 +57,29 @@ record WeekLesson(
         List<String> checkpoints,
         List<String> homework,
         String outsideAssistanceGuardrails
+) {
+
+    WeekLesson withWeekNumber(int weekNumber) {
+        return new WeekLesson(weekNumber, goals, longTermFocus, styleFocus, spontaneousType,
+                agenda, materials, safetyNotes, checkpoints, homework, outsideAssistanceGuardrails);
+    }
+}
+
+/**
+ * One line of the season outline produced by the skeleton call.
+ */
+record WeekOutline(int weekNumber, String outline) {}
+
+/**
+ * Cheap first pass of a fan-out season plan: fixes the season-wide decisions
+ * so each week can then be written independently.
+ */
+record SeasonSkeleton(
+        String teamLevel,
+        String longTermProblemType,
+        String theme,
+        List<String> sharedMaterials,
+        List<WeekOutline> weeks
 ) {}
 
 record SeasonPlan(
@@ -57,32 +91,28 @@ record SeasonPlan(
 
     @Override
     @NonNull
-    public Instant getTimestamp() { return Instant.now(); }
+    public Instant getTimestamp() { return SeasonPlanRenderer.createdAt(this); }
 
     @Override
     @NonNull
-    public String getContent() {
-        var date = getTimestamp().atZone(ZoneId.systemDefault())
-                .format(DateTimeFormatter.ofPattern("EEEE, MMMM dd, yyyy"));
-        return ("# OM 20-Week Season Plan\n\n" +
-                "**Team level:** " + teamLevel + "\n" +
-                "**Long-Term problem type:** " + longTermProblemType + "\n" +
-                "**Theme:** " + theme + "\n" +
-                "**Generated:** " + date + "\n\n" +
-                "## Lessons (20 weeks)\n" +
-                lessons.stream()
-                        .map(w -> "### Week " + w.weekNumber() + "\n" +
-                                "**Goals:** " + w.goals() + "\n" +
-                                "**Long-Term Focus:** " + w.longTermFocus() + "\n" +
-                                "**Style Focus:** " + w.styleFocus() + "\n" +
-                                "**Spontaneous:** " + w.spontaneousType() + "\n" +
-                                "**Agenda:**\n- " + String.join("\n- ", w.agenda()) + "\n" +
-                                "**Materials:**\n- " + String.join("\n- ", w.materials()) + "\n" +
-                                "**Safety Notes:**\n- " + String.join("\n- ", w.safetyNotes()) + "\n" +
-                                "**Checkpoints:**\n- " + String.join("\n- ", w.checkpoints()) + "\n" +
-                                "**Homework:**\n- " + String.join("\n- ", w.homework()) + "\n" +
-                                "**Outside Assistance Guardrails:** " + w.outsideAssistanceGuardrails() + "\n")
-                        .reduce("", (a,b) -> a + "\n" + b));
+    public String getContent() { return SeasonPlanRenderer.render(this); }
+
+    /**
+     * A copy of this plan with the given week put in place of the existing week with the same number,
+     * or added in week order if there is none.
+     */
+    SeasonPlan withWeek(WeekLesson week) {
+        var patched = new ArrayList<WeekLesson>(lessons == null ? 1 : lessons.size() + 1);
+        if (lessons != null) {
+            for (var lesson : lessons) {
+                if (lesson.weekNumber() != week.weekNumber()) {
+                    patched.add(lesson);
+                }
+            }
+        }
+        patched.add(week);
+        patched.sort(Comparator.comparingInt(WeekLesson::weekNumber));
+        return new SeasonPlan(teamLevel, longTermProblemType, theme, List.copyOf(patched));
     }
 }
 
@@ -94,47 +124,237 @@ record ReviewedSeasonPlan(
 
     @Override
     @NonNull
-    public Instant getTimestamp() { return Instant.now(); }
+    public Instant getTimestamp() { return SeasonPlanRenderer.createdAt(this); }
 
     @Override
     @NonNull
-    public String getContent() {
-        return String.format("""
-                        # Odyssey of the Mind Season Plan
-                        %s
-
-                        ---
-                        # Reviewer Notes
-                        %s
-
-                        # Reviewer
-                        %s, %s
-                        """.trim(),
-                plan.getContent(),
-                review,
-                reviewer.getName(),
-                getTimestamp().atZone(ZoneId.systemDefault())
-                        .format(DateTimeFormatter.ofPattern("EEEE, MMMM dd, yyyy"))
-        );
-    }
+    public String getContent() { return SeasonPlanRenderer.render(this); }
 }
 
 @Agent(description = "Create a 20-week Odyssey of the Mind coaching plan and have it reviewed")
 @Profile("!test")
 class OmCoachAgent {
 
+    static final int SEASON_WEEKS = 20;
+
+    private static final String OM_OVERVIEW = """
+            You are an Odyssey of the Mind (OM) coach. Odyssey of the Mind is a creative problem-solving
+            competition for students and community group members of all ages and learning levels using a combination
+            of engineering, dramatic performance and lateral thinking. Teams of students select a problem, create a
+            solution, then present their solution in a competition against other teams in the same problem and division.
+            There are many nuances of the program that are explained further in the guide, but here are some of the basics
+            of participation.
+            """;
+
+    private static final String OM_CONSTRAINTS = """
+            CRITICAL OM CONSTRAINTS TO HONOR (build into the plan text):
+            - Outside Assistance is prohibited: only team members may design/build/present the solution.
+              Coaches/parents may only teach general skills, provide safety oversight, ask open questions,
+              and schedule practices. Do NOT include any step where an adult makes design decisions.
+            - Spontaneous must rotate types (verbal, hands-on, hybrid) and include example prompts or setups.
+            - Style is scored separately; include recurring style exploration and 2-3 candidate Style items.
+            - Emphasize brainstorming, convergence, testing, iteration, documentation, and safety.
+            - Keep weekly write-ups concise (<= {{maxWordsPerWeek}} words per week).
+            - for the spontaneous problem ideas, you need to provide specific instructions and materials list
+            - The plan must be 20 weeks long
+            - Include a good materials list that is somewhat efficient across all 20 weeks.
+            """;
+
+    /*
+     * Prompt templates keep everything that is the same on every call ahead of the per-request content,
+     * so that the provider's prefix cache can reuse it: see PromptTemplate.
+     */
+
+    private static final String SEASON_PLAN = OM_OVERVIEW + """
+
+            Design a COMPLETE 20-week season plan that prepares a team for competition while following the OM Program Guide.
+            Your plan must include Long-Term work, Style development, and Spontaneous practice EVERY week.
+
+            """ + OM_CONSTRAINTS + """
+
+            REQUIRED OUTPUT FORMAT (STRICT JSON ONLY — no prose):
+            {
+              "teamLevel": "Division I | Division II | Division III | mixed | unknown",
+              "longTermProblemType": "vehicle | technical | classics | structure | performance | TBD",
+              "theme": "short motivational theme for the season",
+              "lessons": [
+                {
+                  "weekNumber": 1,
+                  "goals": "...",
+                  "longTermFocus": "...",
+                  "styleFocus": "...",
+                  "spontaneousType": "verbal | hands-on | hybrid — include 1 quick sample prompt",
+                  "agenda": ["mm:ss activity", "..."],
+                  "materials": ["generic supplies only (no design decisions)", "..."],
+                  "safetyNotes": ["..."],
+                  "checkpoints": ["clear definitions of done"],
+                  "homework": ["thinking logs only; no building"],
+                  "outsideAssistanceGuardrails": "explicit guardrail text"
+                },
+                { "weekNumber": 2, ... },
+                { "weekNumber": 3, ... }
+                // ... up to week 20
+              ]
+            }
+
+            INPUT FROM USER (preferences, team info, constraints; may be empty):
+            ---
+            {{userInput}}
+            ---
+            """;
+
+    private static final String SKELETON = OM_OVERVIEW + """
+
+            Outline a 20-week season plan that prepares a team for competition while following the OM Program Guide.
+            Do NOT write the weekly lessons yet: decide the season-wide choices and give each week a one-sentence focus
+            so that the weeks can be written independently and still form a coherent progression.
+            Every week must touch Long-Term work, Style development, and Spontaneous practice.
+            Spontaneous must rotate types (verbal, hands-on, hybrid).
+
+            REQUIRED OUTPUT FORMAT (STRICT JSON ONLY — no prose):
+            {
+              "teamLevel": "Division I | Division II | Division III | mixed | unknown",
+              "longTermProblemType": "vehicle | technical | classics | structure | performance | TBD",
+              "theme": "short motivational theme for the season",
+              "sharedMaterials": ["generic supplies reused across the season", "..."],
+              "weeks": [
+                { "weekNumber": 1, "outline": "one sentence: Long-Term, Style and Spontaneous (type) focus" },
+                // ... up to week 20
+              ]
+            }
+
+            INPUT FROM USER (preferences, team info, constraints; may be empty):
+            ---
+            {{userInput}}
+            ---
+            """;
+
+    /**
+     * The season context is shared by all the weeks of one plan, so only the last line differs between them.
+     */
+    private static final String WEEK = OM_OVERVIEW + """
+
+            You are writing ONE week of a 20-week season plan. The season-wide decisions are already fixed.
+
+            """ + OM_CONSTRAINTS + """
+
+            REQUIRED OUTPUT FORMAT (STRICT JSON ONLY — no prose):
+            {
+              "weekNumber": <the week you are asked to write>,
+              "goals": "...",
+              "longTermFocus": "...",
+              "styleFocus": "...",
+              "spontaneousType": "verbal | hands-on | hybrid — include 1 quick sample prompt",
+              "agenda": ["mm:ss activity", "..."],
+              "materials": ["generic supplies only (no design decisions)", "..."],
+              "safetyNotes": ["..."],
+              "checkpoints": ["clear definitions of done"],
+              "homework": ["thinking logs only; no building"],
+              "outsideAssistanceGuardrails": "explicit guardrail text"
+            }
+
+            SEASON:
+            - Team level: {{teamLevel}}
+            - Long-Term problem type: {{longTermProblemType}}
+            - Theme: {{theme}}
+            - Shared materials (prefer these): {{sharedMaterials}}
+
+            SEASON OUTLINE:
+            {{seasonOutline}}
+
+            INPUT FROM USER (preferences, team info, constraints; may be empty):
+            ---
+            {{userInput}}
+            ---
+
+            Write Week {{weekNumber}} in full, with "weekNumber": {{weekNumber}}.
+            """;
+
+    private static final String REVIEW = """
+            You are reviewing a 20-week Odyssey of the Mind season plan. In {{reviewWordLimit}} words or less,
+            evaluate the plan on:
+            1) Outside Assistance compliance (coach/parent roles stay within rules),
+            2) Coverage & balance across Long-Term, Style, and Spontaneous (verbal/hands-on/hybrid rotation),
+            3) Feasibility (materials, time, safety), clarity (checkpoints), and student ownership,
+            4) Suggestions to strengthen Style items, documentation, and tournament readiness.
+            5) The plan must be 20 weeks long
+            6) Does it include a good materials list that is somewhat efficient across all 20 weeks?
+
+            Provide actionable bullet-point feedback. Reference specific weeks when helpful.
+
+            # USER INPUT (context)
+            {{userInput}}
+
+            # PLAN (verbatim)
+            {{plan}}
+            """;
+
+    private static final String REGENERATE_WEEK = """
+            Regenerate one week of an Odyssey of the Mind season plan; the week is named at the end.
+            Keep the plan consistent with the current season theme and problem type,
+            and with the weeks before and after it.
+            Return STRICT JSON for the WeekLesson record only.
+
+            """ + OM_CONSTRAINTS + """
+
+            USER INPUT (for context):
+            {{userInput}}
+
+            CURRENT PLAN (for context):
+            {{currentPlan}}
+
+            Regenerate Week {{weekNumber}}.
+            """;
+
     private final double coachTemperature;
     private final int maxWordsPerWeek;
     private final int reviewWordLimit;
+    private final int weekParallelism;
+    private final int seasonPlanCandidates;
+    private final int seasonPlanCandidatesScored;
+    private final CandidateScorer<SeasonPlan> seasonPlanHeuristics;
+    private final ObjectMapper objectMapper;
+    private final LlmCalls llmCalls;
+    private final SeasonPlanStore planStore;
+    private final SeasonPlanSemanticCache similarPlans;
+    private final SeasonPlanRepair planRepair;
+    private final PromptTemplate seasonPlanTemplate;
+    private final PromptTemplate skeletonTemplate;
+    private final PromptTemplate weekTemplate;
+    private final PromptTemplate reviewTemplate;
+    private final PromptTemplate regenerateWeekTemplate;
 
     OmCoachAgent(
             @Value("${coachTemperature:0.5}") double coachTemperature,
             @Value("${maxWordsPerWeek:180}") int maxWordsPerWeek,
-            @Value("${reviewWordLimit:400}") int reviewWordLimit
+            @Value("${reviewWordLimit:400}") int reviewWordLimit,
+            @Value("${weekParallelism:5}") int weekParallelism,
+            @Value("${seasonPlanCandidates:1}") int seasonPlanCandidates,
+            @Value("${seasonPlanCandidatesScored:2}") int seasonPlanCandidatesScored,
+            ObjectMapper objectMapper,
+            LlmCalls llmCalls,
+            SeasonPlanStore planStore,
+            SeasonPlanSemanticCache similarPlans,
+            SeasonPlanRepair planRepair
     ) {
         this.coachTemperature = coachTemperature;
         this.maxWordsPerWeek = maxWordsPerWeek;
         this.reviewWordLimit = reviewWordLimit;
+        this.weekParallelism = weekParallelism;
+        this.seasonPlanCandidates = seasonPlanCandidates;
+        this.seasonPlanCandidatesScored = seasonPlanCandidatesScored;
+        this.seasonPlanHeuristics = CandidateHeuristics.seasonPlan(SEASON_WEEKS, maxWordsPerWeek);
+        this.objectMapper = objectMapper;
+        this.llmCalls = llmCalls;
+        this.planStore = planStore;
+        this.similarPlans = similarPlans;
+        this.planRepair = planRepair;
+        var limits = Map.of("maxWordsPerWeek", maxWordsPerWeek, "reviewWordLimit", reviewWordLimit);
+        this.seasonPlanTemplate = PromptTemplate.compile(SEASON_PLAN, limits);
+        this.skeletonTemplate = PromptTemplate.compile(SKELETON, limits);
+        this.weekTemplate = PromptTemplate.compile(WEEK, limits);
+        this.reviewTemplate = PromptTemplate.compile(REVIEW, limits);
+        this.regenerateWeekTemplate = PromptTemplate.compile(REGENERATE_WEEK, limits);
     }
 
     @AchievesGoal(
@@ -142,117 +362,180 @@ class OmCoachAgent {
             export = @Export(remote = true, name = "generateAndReviewOmSeason"))
     @Action
     ReviewedSeasonPlan generateAndReview(UserInput userInput, OperationContext context) {
+        // Not timed itself: the two actions it runs are
         var plan = craftSeasonPlan(userInput, context);
         return reviewSeason(userInput, plan, context);
     }
 
+    /**
+     * Crafts the season plan, or returns the one stored for the same or a similar request. With a positive
+     * {@code weekParallelism} the plan is fanned out: one skeleton call, then each week generated concurrently
+     * and merged back, which is the default. Only with {@code weekParallelism=0} is the whole season requested in a
+     * single call, or in {@code seasonPlanCandidates} concurrent calls of which the best of the first
+     * {@code seasonPlanCandidatesScored} is kept. A whole-season response that is cut short or has broken weeks keeps
+     * its sound weeks and regenerates only the rest.
+     * <p>
+     * Under a {@link TokenSink}, such as a streamed run, each week is sent to the sink as Markdown once it is written:
+     * as its JSON closes in a streamed whole-season response, or as each fanned-out week returns, in whatever order
+     * they finish.
+     */
     @Action
     SeasonPlan craftSeasonPlan(UserInput userInput, OperationContext context) {
-        String prompt = ("""
-                You are an Odyssey of the Mind (OM) coach. Odyssey of the Mind is a creative problem-solving
-                competition for students and community group members of all ages and learning levels using a combination
-                of engineering, dramatic performance and lateral thinking. Teams of students select a problem, create a
-                solution, then present their solution in a competition against other teams in the same problem and division.
-                There are many nuances of the program that are explained further in the guide, but here are some of the basics
-                of participation.
-
-                Design a COMPLETE 20-week season plan that prepares a team for competition while following the OM Program Guide.
-                Your plan must include Long-Term work, Style development, and Spontaneous practice EVERY week.
-
-                CRITICAL OM CONSTRAINTS TO HONOR (build into the plan text):
-                - Outside Assistance is prohibited: only team members may design/build/present the solution.
-                  Coaches/parents may only teach general skills, provide safety oversight, ask open questions,
-                  and schedule practices. Do NOT include any step where an adult makes design decisions.
-                - Spontaneous must rotate types (verbal, hands-on, hybrid) and include example prompts or setups.
-                - Style is scored separately; include recurring style exploration and 2-3 candidate Style items.
-                - Emphasize brainstorming, convergence, testing, iteration, documentation, and safety.
-                - Keep weekly write-ups concise (<= %d words per week).
-                - for the spontaneous problem ideas, you need to provide specific instructions and materials list
-                - The plan must be 20 weeks long
-                - Include a good materials list that is somewhat efficient across all 20 weeks.
-
-                INPUT FROM USER (preferences, team info, constraints; may be empty):
-                ---\n%s\n---
-
-                REQUIRED OUTPUT FORMAT (STRICT JSON ONLY — no prose):
-                {
-                  "teamLevel": "Division I | Division II | Division III | mixed | unknown",
-                  "longTermProblemType": "vehicle | technical | classics | structure | performance | TBD",
-                  "theme": "short motivational theme for the season",
-                  "lessons": [
-                    {
-                      "weekNumber": 1,
-                      "goals": "...",
-                      "longTermFocus": "...",
-                      "styleFocus": "...",
-                      "spontaneousType": "verbal | hands-on | hybrid — include 1 quick sample prompt",
-                      "agenda": ["mm:ss activity", "..."],
-                      "materials": ["generic supplies only (no design decisions)", "..."],
-                      "safetyNotes": ["..."],
-                      "checkpoints": ["clear definitions of done"],
-                      "homework": ["thinking logs only; no building"],
-                      "outsideAssistanceGuardrails": "explicit guardrail text"
-                    },
-                    { "weekNumber": 2, ... },
-                    { "weekNumber": 3, ... }
-                    // ... up to week 20
-                  ]
-                }
-                """
-        ).formatted(maxWordsPerWeek, userInput.getContent()).trim();
+        return llmCalls.action("OmCoachAgent.craftSeasonPlan", () -> {
+            var stored = storedPlan(userInput);
+            if (stored.isPresent()) {
+                return stored.get().plan();
+            }
+            if (weekParallelism > 0) {
+                return craftSeasonPlanFannedOut(userInput, context);
+            }
+            return llmCalls.bestOf("OmCoachAgent.craftSeasonPlan", seasonPlanCandidates, seasonPlanCandidatesScored,
+                    candidate -> craftWholeSeasonPlan(userInput, context),
+                    seasonPlanHeuristics);
+        });
+    }
+
+    private SeasonPlan craftWholeSeasonPlan(UserInput userInput, OperationContext context) {
+        var prompt = seasonPlanPrompt(userInput);
+        var sink = TokenSink.current();
+        var response = sink == null
+                ? coachCall(context).generateText(prompt)
+                : TokenSink.forwardTo(new SeasonPlanWeekSink(objectMapper, sink),
+                        () -> coachCall(context).generateText(prompt));
+        return planRepair.repair(response,
+                (partial, week) -> coachCall(context)
+                        .createObject(regenerateWeekPrompt(userInput, partial, week), WeekLesson.class),
+                () -> coachCall(context).createObject(seasonPlanPrompt(userInput), SeasonPlan.class));
+    }
 
-        return context.ai()
-                .withLlm(LlmOptions.withAutoLlm().withTemperature(coachTemperature))
+    private LlmCall coachCall(OperationContext context) {
+        var call = llmCalls.on(context.ai(), "OmCoachAgent.craftSeasonPlan")
+                .withAutoLlm()
+                .withTemperature(coachTemperature)
+                .withPromptContributor(OmPersonas.COACH);
+        return seasonPlanCandidates > 1 ? call.independent() : call;
+    }
+
+    RenderedPrompt seasonPlanPrompt(UserInput userInput) {
+        return seasonPlanTemplate.render(Map.of("userInput", userInput.getContent()));
+    }
+
+    private SeasonPlan craftSeasonPlanFannedOut(UserInput userInput, OperationContext context) {
+        var skeleton = craftSkeleton(userInput, context);
+        Map<Integer, String> outlines = skeleton.weeks() == null ? Map.of() : skeleton.weeks().stream()
+                .collect(Collectors.toMap(WeekOutline::weekNumber, WeekOutline::outline, (a, b) -> a));
+        var seasonOutline = IntStream.rangeClosed(1, SEASON_WEEKS)
+                .mapToObj(week -> "Week " + week + ": " + outlines.getOrDefault(week, "continue the season progression"))
+                .collect(Collectors.joining("\n"));
+
+        List<WeekLesson> lessons = BoundedFanOut.map(
+                IntStream.rangeClosed(1, SEASON_WEEKS).boxed().toList(),
+                weekParallelism,
+                week -> craftWeek(userInput, skeleton, seasonOutline, week, context));
+
+        return new SeasonPlan(
+                skeleton.teamLevel(),
+                skeleton.longTermProblemType(),
+                skeleton.theme(),
+                lessons);
+    }
+
+    private SeasonSkeleton craftSkeleton(UserInput userInput, OperationContext context) {
+        var prompt = skeletonTemplate.render(Map.of("userInput", userInput.getContent()));
+
+        return llmCalls.on(context.ai(), "OmCoachAgent.craftSeasonPlan")
+                .withAutoLlm()
+                .withTemperature(coachTemperature)
                 .withPromptContributor(OmPersonas.COACH)
-                .createObject(prompt, SeasonPlan.class);
+                .createObject(prompt, SeasonSkeleton.class);
+    }
+
+    private WeekLesson craftWeek(
+            UserInput userInput,
+            SeasonSkeleton skeleton,
+            String seasonOutline,
+            int weekNumber,
+            OperationContext context) {
+        var prompt = weekTemplate.render(Map.of(
+                "teamLevel", String.valueOf(skeleton.teamLevel()),
+                "longTermProblemType", String.valueOf(skeleton.longTermProblemType()),
+                "theme", String.valueOf(skeleton.theme()),
+                "sharedMaterials", skeleton.sharedMaterials() == null ? "none" : String.join(", ", skeleton.sharedMaterials()),
+                "seasonOutline", seasonOutline,
+                "userInput", userInput.getContent(),
+                "weekNumber", weekNumber));
+
+        var lesson = llmCalls.on(context.ai(), "OmCoachAgent.craftSeasonPlan")
+                .withAutoLlm()
+                .withTemperature(coachTemperature)
+                .withPromptContributor(OmPersonas.COACH)
+                .createObject(prompt, WeekLesson.class);
+        if (lesson.weekNumber() != weekNumber) {
+            lesson = lesson.withWeekNumber(weekNumber);
+        }
+        var sink = TokenSink.current();
+        if (sink != null) {
+            sink.onToken("OmCoachAgent.craftSeasonPlan", SeasonPlanRenderer.render(lesson));
+        }
+        return lesson;
     }
 
     @Action
     ReviewedSeasonPlan reviewSeason(UserInput userInput, SeasonPlan plan, OperationContext context) {
-        String review = context.ai()
-                .withAutoLlm()
-                .withPromptContributor(OmPersonas.REVIEWER)
-                .generateText(("""
-                        You are reviewing a 20-week Odyssey of the Mind season plan. In %d words or less,
-                        evaluate the plan on:
-                        1) Outside Assistance compliance (coach/parent roles stay within rules),
-                        2) Coverage & balance across Long-Term, Style, and Spontaneous (verbal/hands-on/hybrid rotation),
-                        3) Feasibility (materials, time, safety), clarity (checkpoints), and student ownership,
-                        4) Suggestions to strengthen Style items, documentation, and tournament readiness.
-                        5) The plan must be 20 weeks long
-                        6) Does it include a good materials list that is somewhat efficient across all 20 weeks?
-
-                        Provide actionable bullet-point feedback. Reference specific weeks when helpful.
-
-                        # USER INPUT (context)
-                        %s
-
-                        # PLAN (verbatim)
-                        %s
-                        """
-                ).formatted(reviewWordLimit, userInput.getContent(), plan.getContent()).trim());
-
-        return new ReviewedSeasonPlan(plan, review, OmPersonas.REVIEWER);
+        return llmCalls.action("OmCoachAgent.reviewSeason", () -> {
+            var stored = storedPlan(userInput)
+                    .filter(previous -> previous.review() != null && plan.equals(previous.plan()));
+            if (stored.isPresent()) {
+                return new ReviewedSeasonPlan(plan, stored.get().review(), OmPersonas.REVIEWER);
+            }
+            String review = llmCalls.on(context.ai(), "OmCoachAgent.reviewSeason")
+                    .withAutoLlm()
+                    .withPromptContributor(OmPersonas.REVIEWER)
+                    .generateText(reviewPrompt(userInput, plan));
+
+            planStore.save(userInput.getContent(), plan, review);
+            similarPlans.remember(userInput.getContent());
+            return new ReviewedSeasonPlan(plan, review, OmPersonas.REVIEWER);
+        });
+    }
+
+    private Optional<StoredSeasonPlan> storedPlan(UserInput userInput) {
+        var request = userInput.getContent();
+        return planStore.findByRequest(request).or(() -> similarPlans.find(request));
+    }
+
+    RenderedPrompt reviewPrompt(UserInput userInput, SeasonPlan plan) {
+        return reviewTemplate.render(Map.of("userInput", userInput.getContent(), "plan", plan.getContent()));
     }
 
     @Action
     WeekLesson regenerateWeek(UserInput userInput, SeasonPlan currentPlan, int weekNumber, OperationContext context) {
-        String prompt = ("""
-                Regenerate Week %d of an Odyssey of the Mind season plan using the same constraints as before.
-                Keep the plan consistent with the current season theme and problem type.
-                Return STRICT JSON for the WeekLesson record only.
-
-                USER INPUT (for context):
-                %s
+        return llmCalls.action("OmCoachAgent.regenerateWeek", () -> {
+            var lesson = llmCalls.on(context.ai(), "OmCoachAgent.regenerateWeek")
+                    .withAutoLlm()
+                    .withTemperature(coachTemperature)
+                    .withPromptContributor(OmPersonas.COACH)
+                    // Regenerating means asking for a different week: never serve the previous answer
+                    .uncached()
+                    .createObject(regenerateWeekPrompt(userInput, currentPlan, weekNumber), WeekLesson.class);
+            return lesson.weekNumber() == weekNumber ? lesson : lesson.withWeekNumber(weekNumber);
+        });
+    }
 
-                CURRENT PLAN (for context):
-                %s
-                """
-        ).formatted(weekNumber, userInput.getContent(), currentPlan.getContent());
+    /**
+     * Regenerates one week and returns the plan with that week patched in.
+     */
+    SeasonPlan replaceWeek(UserInput userInput, SeasonPlan currentPlan, int weekNumber, OperationContext context) {
+        return currentPlan.withWeek(regenerateWeek(userInput, currentPlan, weekNumber, context));
+    }
 
-        return context.ai()
-                .withLlm(LlmOptions.withAutoLlm().withTemperature(coachTemperature))
-                .withPromptContributor(OmPersonas.COACH)
-                .createObject(prompt, WeekLesson.class);
+    /**
+     * Only the neighbouring weeks are sent in full; the rest of the season is summarized one line per week.
+     */
+    RenderedPrompt regenerateWeekPrompt(UserInput userInput, SeasonPlan currentPlan, int weekNumber) {
+        return regenerateWeekTemplate.render(Map.of(
+                "userInput", userInput.getContent(),
+                "currentPlan", SeasonPlanRenderer.regenerationContext(currentPlan, weekNumber),
+                "weekNumber", weekNumber));
     }
 }
@@ -0,0 +1,129 @@
+package com.embabel.template.agent;
+
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Extracts text from PDFs one page at a time.
+ * The document is parsed lazily from the file with a temp-file stream cache and no resource cache,
+ * so peak memory follows the largest page rather than the whole document.
+ * A page that cannot be read is replaced by a one-line marker instead of failing the document.
+ * Extracted text is stored under {@code manual.textCache.directory} keyed by the SHA-256 of the file bytes,
+ * so a document that has been extracted before is never parsed again; set the directory empty to disable this.
+ * Files that are not PDFs are read as UTF-8 text.
+ */
+@Component
+class PdfTextExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfTextExtractor.class);
+
+    /**
+     * Bump when extraction output changes, so that cached text from older versions is not reused.
+     */
+    private static final String VERSION = "pdfbox-pages-1";
+
+    private static final byte[] PDF_MAGIC = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+
+    private final Path cacheDirectory;
+
+    PdfTextExtractor(@Value("${manual.textCache.directory:${java.io.tmpdir}/embabel-pdf-text}") String cacheDirectory) {
+        this.cacheDirectory = cacheDirectory.isBlank() ? null : Path.of(cacheDirectory);
+    }
+
+    String extractText(Path path) throws IOException {
+        if (!isPdf(path)) {
+            return DocumentReader.readText(path);
+        }
+        if (cacheDirectory == null) {
+            return extractPages(path);
+        }
+        var cached = cacheDirectory.resolve(contentHash(path) + ".txt");
+        try {
+            return DocumentReader.readText(cached);
+        } catch (NoSuchFileException e) {
+            // not extracted yet
+        }
+        var text = extractPages(path);
+        try {
+            Files.createDirectories(cacheDirectory);
+            var temp = Files.createTempFile(cacheDirectory, "extract", ".tmp");
+            Files.writeString(temp, text);
+            Files.move(temp, cached, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Could not cache extracted text of {}: {}", path, e.getMessage());
+        }
+        return text;
+    }
+
+    private String extractPages(Path path) throws IOException {
+        try (PDDocument document = Loader.loadPDF(path.toFile(), IOUtils.createTempFileOnlyStreamCache())) {
+            // Fonts and images would otherwise be kept for the life of the document
+            document.setResourceCache(null);
+            var text = new StringWriter();
+            var stripper = new PDFTextStripper();
+            int pages = document.getNumberOfPages();
+            for (int page = 1; page <= pages; page++) {
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                var pageText = new StringWriter();
+                try {
+                    stripper.writeText(document, pageText);
+                    text.append(pageText.getBuffer());
+                } catch (IOException | RuntimeException e) {
+                    logger.warn("Skipping unreadable page {} of {}: {}", page, path, e.toString());
+                    text.append("[Page ").append(Integer.toString(page)).append(" could not be read: ")
+                            .append(e.getMessage()).append("]\n");
+                    // The stripper's state is undefined after a failure
+                    stripper = new PDFTextStripper();
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    private static boolean isPdf(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var header = ByteBuffer.allocate(PDF_MAGIC.length);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until full or end of file
+            }
+            return header.position() == PDF_MAGIC.length && header.flip().equals(ByteBuffer.wrap(PDF_MAGIC));
+        }
+    }
+
+    private static String contentHash(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+            var buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.api.common.autonomy.AgentInvocation;
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.agent.domain.io.UserInput;
+import com.embabel.template.batch.JsonlBatch;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Generates and reviews a season plan for every {@link UserInput} in a JSONL file, through the agent platform
+ * just as a single {@code generateAndReviewOmSeason} invocation would. See {@link JsonlBatch} for the file formats
+ * and how an interrupted batch resumes.
+ */
+@Component
+public class SeasonPlanBatch {
+
+    /**
+     * One output record: the plan as data, the review, and the plan rendered as Markdown.
+     */
+    record Result(SeasonPlan plan, String review, String markdown) {
+    }
+
+    private final AgentPlatform agentPlatform;
+    private final ObjectMapper objectMapper;
+    private final int defaultParallelism;
+
+    SeasonPlanBatch(
+            AgentPlatform agentPlatform,
+            ObjectMapper objectMapper,
+            @Value("${batch.parallelism:8}") int defaultParallelism) {
+        this.agentPlatform = agentPlatform;
+        this.objectMapper = objectMapper;
+        this.defaultParallelism = defaultParallelism;
+    }
+
+    public int defaultParallelism() {
+        return defaultParallelism;
+    }
+
+    /**
+     * @param parallelism plans generated at once; each plan fans out further, see {@code weekParallelism}
+     */
+    public JsonlBatch.Report run(Path input, Path output, int parallelism, Consumer<String> progress) throws IOException {
+        return new JsonlBatch(objectMapper, parallelism).run(input, output, item -> {
+            var reviewed = AgentInvocation.create(agentPlatform, ReviewedSeasonPlan.class)
+                    .invoke(new UserInput(item.content()));
+            return new Result(reviewed.plan(), reviewed.review(), SeasonPlanRenderer.render(reviewed));
+        }, progress);
+    }
+}
@@ -0,0 +1,217 @@
+package com.embabel.template.agent;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+/**
+ * Tolerant decoder for a whole-season {@link SeasonPlan} response, salvaging what it can from output that was cut
+ * short at the token limit or has a malformed week, instead of failing the whole plan.
+ * <p>
+ * A well-formed response is read as a tree, and each lesson is converted on its own. Otherwise the season fields
+ * are picked out of the text before the lessons, and each complete lesson object is cut out by matching braces;
+ * a lesson cut off by the end of the text is dropped. Lessons missing their week number take it from their place in
+ * the list when that week is otherwise missing. A lesson is broken when it cannot be read, its week is outside the
+ * season, or it leaves out the goals, focus, spontaneous practice or agenda. When a week appears more than once
+ * the first sound copy is kept. A season field left out is filled with the placeholder the prompt offers for it,
+ * {@code unknown} or {@code TBD}, so that no later prompt shows it as {@code null}.
+ * <p>
+ * A response is worth repairing only when at least a quarter of the season's weeks are sound: below that, repairing
+ * costs nearly as much as generating the season again, and the few weeks kept would set its course.
+ */
+final class SeasonPlanDecoder {
+
+    private static final Pattern STRING_FIELD =
+            Pattern.compile("\"(teamLevel|longTermProblemType|theme)\"\\s*:\\s*(\"(?:[^\"\\\\]|\\\\.)*\")");
+
+    private static final double SALVAGE_FRACTION = 0.25;
+    private static final String UNKNOWN_TEAM_LEVEL = "unknown";
+    private static final String UNKNOWN = "TBD";
+
+    /**
+     * @param plan          the season with its sound weeks only, in week order
+     * @param weeksToRepair weeks missing from the response or broken in it
+     * @param problems      what was wrong, one line per problem, for logs
+     * @param salvagedText  the response text of the weeks kept, for estimating the output they save regenerating
+     * @param salvaged      whether enough sound weeks were recovered to be worth repairing
+     */
+    record Decoded(SeasonPlan plan, SortedSet<Integer> weeksToRepair, List<String> problems, String salvagedText,
+                   boolean salvaged) {
+
+        /**
+         * Whether the response was sound throughout: every week, and every season field.
+         */
+        boolean complete() {
+            return problems.isEmpty();
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int weeks;
+    private final int salvageWeeks;
+
+    SeasonPlanDecoder(ObjectMapper objectMapper, int weeks) {
+        this.objectMapper = objectMapper.copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.weeks = weeks;
+        this.salvageWeeks = Math.max(1, (int) Math.ceil(weeks * SALVAGE_FRACTION));
+    }
+
+    Decoded decode(String response) {
+        var problems = new ArrayList<String>();
+        var text = response == null ? "" : response;
+        int start = text.indexOf('{');
+        if (start < 0) {
+            problems.add("no JSON object in the response");
+            return assemble(new Header(null, null, null), List.of(), problems);
+        }
+        text = text.substring(start);
+        JsonNode root = null;
+        try {
+            // Stops at the end of the root object, ignoring any code fence or prose after it
+            root = objectMapper.readTree(objectMapper.getFactory().createParser(text));
+        } catch (JsonProcessingException e) {
+            problems.add("response is not valid JSON, salvaging complete weeks: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (root != null && root.isObject()) {
+            var header = new Header(text(root, "teamLevel"), text(root, "longTermProblemType"), text(root, "theme"));
+            var lessons = new ArrayList<String>();
+            for (var lesson : root.path("lessons")) {
+                lessons.add(lesson.toString());
+            }
+            return assemble(header, lessons, problems);
+        }
+        return assemble(scanHeader(text), scanLessons(text), problems);
+    }
+
+    private record Header(String teamLevel, String longTermProblemType, String theme) {
+    }
+
+    private Decoded assemble(Header header, List<String> lessonTexts, List<String> problems) {
+        var sound = new HashMap<Integer, WeekLesson>();
+        var soundText = new TreeMap<Integer, String>();
+        var unnumbered = new TreeMap<Integer, WeekLesson>();
+        for (int i = 0; i < lessonTexts.size(); i++) {
+            int position = i + 1;
+            WeekLesson lesson;
+            try {
+                lesson = objectMapper.readValue(lessonTexts.get(i), WeekLesson.class);
+            } catch (JsonProcessingException e) {
+                problems.add("lesson " + position + " could not be read: " + e.getOriginalMessage());
+                continue;
+            }
+            if (lesson.weekNumber() == 0) {
+                unnumbered.put(position, lesson);
+                continue;
+            }
+            var problem = problem(lesson);
+            if (problem != null) {
+                problems.add("week " + lesson.weekNumber() + " " + problem);
+            } else if (sound.putIfAbsent(lesson.weekNumber(), lesson) != null) {
+                problems.add("week " + lesson.weekNumber() + " appears more than once; keeping the first");
+            } else {
+                soundText.put(lesson.weekNumber(), lessonTexts.get(i));
+            }
+        }
+        for (Map.Entry<Integer, WeekLesson> entry : unnumbered.entrySet()) {
+            int week = entry.getKey();
+            var lesson = entry.getValue().withWeekNumber(week);
+            if (sound.containsKey(week) || problem(lesson) != null) {
+                problems.add("lesson " + week + " has no week number");
+            } else {
+                sound.put(week, lesson);
+                soundText.put(week, lessonTexts.get(week - 1));
+            }
+        }
+        var missing = new TreeSet<Integer>();
+        for (int week = 1; week <= weeks; week++) {
+            if (!sound.containsKey(week)) {
+                missing.add(week);
+            }
+        }
+        if (!missing.isEmpty()) {
+            problems.add("weeks to repair: " + missing);
+        }
+        var lessons = sound.values().stream().sorted(Comparator.comparingInt(WeekLesson::weekNumber)).toList();
+        var plan = new SeasonPlan(
+                filled("teamLevel", header.teamLevel(), UNKNOWN_TEAM_LEVEL, problems),
+                filled("longTermProblemType", header.longTermProblemType(), UNKNOWN, problems),
+                filled("theme", header.theme(), UNKNOWN, problems),
+                lessons);
+        return new Decoded(plan, missing, List.copyOf(problems), String.join("", soundText.values()),
+                lessons.size() >= salvageWeeks);
+    }
+
+    private static String filled(String field, String value, String placeholder, List<String> problems) {
+        if (!blank(value)) {
+            return value;
+        }
+        problems.add(field + " is missing; using \"" + placeholder + "\"");
+        return placeholder;
+    }
+
+    /**
+     * @return what is wrong with the lesson, or null if it is sound
+     */
+    private String problem(WeekLesson lesson) {
+        if (lesson.weekNumber() < 1 || lesson.weekNumber() > weeks) {
+            return "is outside the " + weeks + "-week season";
+        }
+        if (blank(lesson.goals()) || blank(lesson.longTermFocus()) || blank(lesson.styleFocus())
+                || blank(lesson.spontaneousType())) {
+            return "is missing its goals, focus or spontaneous practice";
+        }
+        if (lesson.agenda() == null || lesson.agenda().isEmpty()) {
+            return "has no agenda";
+        }
+        return null;
+    }
+
+    private Header scanHeader(String text) {
+        var lessons = SeasonPlanStreamParser.LESSONS.matcher(text);
+        var before = lessons.find() ? text.substring(0, lessons.start()) : text;
+        var fields = new HashMap<String, String>();
+        var matcher = STRING_FIELD.matcher(before);
+        while (matcher.find()) {
+            try {
+                fields.putIfAbsent(matcher.group(1), objectMapper.readValue(matcher.group(2), String.class));
+            } catch (JsonProcessingException e) {
+                // Leave the field out
+            }
+        }
+        return new Header(fields.get("teamLevel"), fields.get("longTermProblemType"), fields.get("theme"));
+    }
+
+    /**
+     * Each complete object in the lessons array, by matching braces outside strings.
+     */
+    private static List<String> scanLessons(String text) {
+        var lessons = new ArrayList<String>();
+        new SeasonPlanStreamParser(lessons::add).feed(text);
+        return lessons;
+    }
+
+    private static String text(JsonNode node, String field) {
+        var value = node.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static boolean blank(String value) {
+        return value == null || value.isBlank();
+    }
+}
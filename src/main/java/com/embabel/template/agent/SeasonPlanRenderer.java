@@ -0,0 +1,192 @@
+package com.embabel.template.agent;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Renders {@link SeasonPlan} and {@link ReviewedSeasonPlan} as Markdown in a single pass over an {@link Appendable}.
+ * Records are immutable, so the creation timestamp and the rendered text are captured once per instance.
+ * The memo tables hold their keys weakly and compare them by identity, so they never keep a plan alive.
+ */
+final class SeasonPlanRenderer {
+
+    static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter
+            .ofPattern("EEEE, MMMM dd, yyyy")
+            .withZone(ZoneId.systemDefault());
+
+    private static final int SUMMARY_LIMIT = 120;
+
+    private static final Cache<Object, Instant> CREATED = Caffeine.newBuilder().weakKeys().build();
+    private static final Cache<Object, String> RENDERED = Caffeine.newBuilder().weakKeys().build();
+
+    private SeasonPlanRenderer() {
+    }
+
+    /**
+     * When this record instance was first seen, which stands in for when it was created.
+     */
+    static Instant createdAt(Object record) {
+        return CREATED.get(record, key -> Instant.now());
+    }
+
+    static String render(SeasonPlan plan) {
+        return RENDERED.get(plan, key -> {
+            var out = new StringBuilder(1024 + 1536 * size(plan.lessons()));
+            write(plan, out);
+            return out.toString();
+        });
+    }
+
+    static String render(ReviewedSeasonPlan reviewed) {
+        var cached = RENDERED.getIfPresent(reviewed);
+        if (cached != null) {
+            return cached;
+        }
+        // Rendered outside the mapping function: a cache may not be updated from within its own computation
+        var plan = render(reviewed.plan());
+        return RENDERED.get(reviewed, key -> {
+            var out = new StringBuilder(plan.length() + 1024);
+            write(reviewed, plan, out);
+            return out.toString();
+        });
+    }
+
+    /**
+     * One week on its own, as it appears in the rendered plan.
+     */
+    static String render(WeekLesson week) {
+        var out = new StringBuilder(1536);
+        try {
+            writeWeek(week, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    static void write(SeasonPlan plan, Appendable out) {
+        try {
+            out.append("# OM 20-Week Season Plan\n\n")
+                    .append("**Team level:** ").append(plan.teamLevel()).append('\n')
+                    .append("**Long-Term problem type:** ").append(plan.longTermProblemType()).append('\n')
+                    .append("**Theme:** ").append(plan.theme()).append('\n')
+                    .append("**Generated:** ").append(DATE_FORMAT.format(createdAt(plan))).append("\n\n")
+                    .append("## Lessons (20 weeks)\n");
+            if (plan.lessons() != null) {
+                for (var week : plan.lessons()) {
+                    out.append('\n');
+                    writeWeek(week, out);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @param plan the reviewed plan, already rendered
+     */
+    private static void write(ReviewedSeasonPlan reviewed, String plan, Appendable out) {
+        try {
+            out.append("# Odyssey of the Mind Season Plan\n")
+                    .append(plan)
+                    .append("\n\n---\n# Reviewer Notes\n")
+                    .append(reviewed.review())
+                    .append("\n\n# Reviewer\n")
+                    .append(reviewed.reviewer().getName()).append(", ")
+                    .append(DATE_FORMAT.format(createdAt(reviewed)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Compact context for regenerating one week: the season header, a one-line summary of every week,
+     * and full detail only for the weeks either side of the one being regenerated.
+     */
+    static String regenerationContext(SeasonPlan plan, int weekNumber) {
+        var out = new StringBuilder(6 * 1024);
+        try {
+            out.append("**Team level:** ").append(plan.teamLevel()).append('\n')
+                    .append("**Long-Term problem type:** ").append(plan.longTermProblemType()).append('\n')
+                    .append("**Theme:** ").append(plan.theme()).append("\n\n")
+                    .append("## Season at a glance\n");
+            if (plan.lessons() != null) {
+                for (var week : plan.lessons()) {
+                    out.append("- Week ").append(week.weekNumber()).append(": ");
+                    if (week.weekNumber() == weekNumber) {
+                        out.append("(being regenerated)");
+                    } else {
+                        appendSummary(week, out);
+                    }
+                    out.append('\n');
+                }
+                for (var week : plan.lessons()) {
+                    if (Math.abs(week.weekNumber() - weekNumber) == 1) {
+                        out.append('\n');
+                        writeWeek(week, out);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    private static void appendSummary(WeekLesson week, StringBuilder out) {
+        appendClipped(week.goals(), SUMMARY_LIMIT, out);
+        out.append(" | Spontaneous: ");
+        appendClipped(week.spontaneousType(), SUMMARY_LIMIT / 3, out);
+    }
+
+    private static void appendClipped(String text, int limit, StringBuilder out) {
+        if (text == null) {
+            return;
+        }
+        int newline = text.indexOf('\n');
+        int end = Math.min(text.length(), newline < 0 ? limit : Math.min(newline, limit));
+        out.append(text, 0, end);
+        if (end < text.length()) {
+            out.append('…');
+        }
+    }
+
+    static void writeWeek(WeekLesson week, Appendable out) throws IOException {
+        out.append("### Week ").append(Integer.toString(week.weekNumber())).append('\n')
+                .append("**Goals:** ").append(week.goals()).append('\n')
+                .append("**Long-Term Focus:** ").append(week.longTermFocus()).append('\n')
+                .append("**Style Focus:** ").append(week.styleFocus()).append('\n')
+                .append("**Spontaneous:** ").append(week.spontaneousType()).append('\n');
+        writeList("**Agenda:**", week.agenda(), out);
+        writeList("**Materials:**", week.materials(), out);
+        writeList("**Safety Notes:**", week.safetyNotes(), out);
+        writeList("**Checkpoints:**", week.checkpoints(), out);
+        writeList("**Homework:**", week.homework(), out);
+        out.append("**Outside Assistance Guardrails:** ").append(week.outsideAssistanceGuardrails()).append('\n');
+    }
+
+    private static void writeList(String heading, List<String> items, Appendable out) throws IOException {
+        out.append(heading).append("\n- ");
+        if (items != null) {
+            for (int i = 0; i < items.size(); i++) {
+                if (i > 0) {
+                    out.append("\n- ");
+                }
+                out.append(items.get(i));
+            }
+        }
+        out.append('\n');
+    }
+
+    private static int size(List<?> list) {
+        return list == null ? 0 : list.size();
+    }
+}
@@ -0,0 +1,118 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.concurrent.BoundedFanOut;
+import com.embabel.template.llm.TokenEstimates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Turns a whole-season response into a plan, regenerating only the weeks that are missing or broken rather than
+ * the whole season, as long as enough of the season is sound; see {@link SeasonPlanDecoder}.
+ * <p>
+ * Meters: {@code season.plan.decode} counts responses by {@code result}: {@code complete}, {@code repaired} when
+ * weeks were regenerated or season fields filled, or {@code unsalvageable} when too little could be recovered and the
+ * season was generated again. {@code season.plan.repair.rate} is the fraction of damaged responses repaired rather
+ * than regenerated. {@code season.plan.repair.weeks} counts the weeks regenerated, and
+ * {@code season.plan.repair.tokens.saved} estimates the output tokens of the weeks kept, which a full regeneration
+ * would have paid for again.
+ */
+@Component
+class SeasonPlanRepair {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeasonPlanRepair.class);
+
+    private static final String METRIC = "season.plan";
+
+    /**
+     * Weeks regenerated at once.
+     */
+    private static final int PARALLELISM = 5;
+
+    private final SeasonPlanDecoder decoder;
+    private final Counter complete;
+    private final Counter repaired;
+    private final Counter unsalvageable;
+    private final Counter weeksRepaired;
+    private final Counter tokensSaved;
+
+    SeasonPlanRepair(ObjectMapper objectMapper, MeterRegistry registry) {
+        this.decoder = new SeasonPlanDecoder(objectMapper, OmCoachAgent.SEASON_WEEKS);
+        this.complete = decodeCounter(registry, "complete");
+        this.repaired = decodeCounter(registry, "repaired");
+        this.unsalvageable = decodeCounter(registry, "unsalvageable");
+        this.weeksRepaired = Counter.builder(METRIC + ".repair.weeks")
+                .description("Weeks regenerated to repair a season plan response")
+                .register(registry);
+        this.tokensSaved = Counter.builder(METRIC + ".repair.tokens.saved")
+                .description("Estimated output tokens kept from damaged season plan responses")
+                .baseUnit("tokens")
+                .register(registry);
+        Gauge.builder(METRIC + ".repair.rate", this, SeasonPlanRepair::repairRate)
+                .description("Fraction of damaged season plan responses repaired rather than regenerated")
+                .register(registry);
+    }
+
+    /**
+     * Metrics recorded into a private registry, for tests and tools that construct agents directly.
+     */
+    static SeasonPlanRepair detached() {
+        return new SeasonPlanRepair(new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    /**
+     * @param response      the model's whole-season response
+     * @param regenerateWeek writes one week, given the plan recovered so far for context
+     * @param regenerate    generates the whole season again, when too little could be recovered
+     */
+    SeasonPlan repair(String response, BiFunction<SeasonPlan, Integer, WeekLesson> regenerateWeek,
+                      Supplier<SeasonPlan> regenerate) {
+        var decoded = decoder.decode(response);
+        if (decoded.complete()) {
+            complete.increment();
+            return decoded.plan();
+        }
+        if (!decoded.salvaged()) {
+            unsalvageable.increment();
+            logger.warn("Too little to salvage from the season plan response, generating it again: {}", decoded.problems());
+            return regenerate.get();
+        }
+        logger.info("Repairing the season plan response: {}", decoded.problems());
+        var partial = decoded.plan();
+        var weeks = List.copyOf(decoded.weeksToRepair());
+        List<WeekLesson> lessons = weeks.isEmpty() ? List.of() : BoundedFanOut.map(weeks,
+                Math.min(PARALLELISM, weeks.size()), week -> {
+                    var lesson = regenerateWeek.apply(partial, week);
+                    return lesson.weekNumber() == week ? lesson : lesson.withWeekNumber(week);
+                });
+        var plan = partial;
+        for (var lesson : lessons) {
+            plan = plan.withWeek(lesson);
+        }
+        repaired.increment();
+        weeksRepaired.increment(weeks.size());
+        tokensSaved.increment(TokenEstimates.estimate(decoded.salvagedText()));
+        return plan;
+    }
+
+    double repairRate() {
+        double damaged = repaired.count() + unsalvageable.count();
+        return damaged == 0 ? 0.0 : repaired.count() / damaged;
+    }
+
+    private static Counter decodeCounter(MeterRegistry registry, String result) {
+        return Counter.builder(METRIC + ".decode")
+                .description("Whole-season plan responses decoded")
+                .tag("result", result)
+                .register(registry);
+    }
+}
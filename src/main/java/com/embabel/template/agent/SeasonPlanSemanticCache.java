@@ -0,0 +1,416 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.store.Binary;
+import com.embabel.template.store.RecordLog;
+import com.embabel.template.vector.HashedNgramEmbedder;
+import com.embabel.template.vector.HnswIndex;
+import com.embabel.template.vector.TextEmbedder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Finds a stored season plan for a request worded differently from the one it was generated for, such as
+ * "Div II structure team, 6 kids" and "structure problem, division 2, six students".
+ * <p>
+ * Requests are rewritten to a canonical form (division numbers, number words, words for team members, filler words
+ * dropped), embedded with the model named by {@code embabel.models.defaultEmbeddingModel}, or a
+ * {@link HashedNgramEmbedder} when none is configured, and kept in an {@link HnswIndex}. A request is served the plan
+ * the {@link SeasonPlanStore} holds for the nearest neighbour that is at least
+ * {@code season-plans.semantic-cache.min-similarity} similar and names the same division, problem type and team size.
+ * Similarity alone cannot tell those apart: two long requests differing only in division embed almost alike.
+ * Off unless {@code season-plans.semantic-cache.enabled} is set.
+ * <p>
+ * The index is persisted as an append-only {@link RecordLog} of additions and removals, replayed when the cache is
+ * first used and rewritten when mostly dead. Vectors from a different embedder are discarded. Beyond
+ * {@code max-entries} the least recently matched request is evicted.
+ * <p>
+ * Meters: {@code season.plan.semantic.cache} counts lookups by {@code result} (hit or miss), from which the hit rate
+ * follows; {@code .similarity} is the nearest neighbour's similarity on each lookup, for tuning the threshold;
+ * {@code .size} and {@code .evictions} track the index.
+ */
+@Component
+class SeasonPlanSemanticCache implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeasonPlanSemanticCache.class);
+
+    private static final String METRIC = "season.plan.semantic.cache";
+    private static final int HASHED_DIMENSIONS = 512;
+    /**
+     * Neighbours considered per lookup, the nearest of which may be for a different team.
+     */
+    private static final int NEIGHBOURS = 8;
+
+    private static final int HEADER = 0;
+    private static final int ADD = 1;
+    private static final int REMOVE = 2;
+
+    private static final Map<String, String> SYNONYMS = Map.ofEntries(
+            Map.entry("div", "division"), Map.entry("divison", "division"),
+            Map.entry("kids", "students"), Map.entry("kid", "students"),
+            Map.entry("children", "students"), Map.entry("child", "students"),
+            Map.entry("student", "students"), Map.entry("members", "students"), Map.entry("member", "students"),
+            Map.entry("people", "students"), Map.entry("participants", "students"),
+            Map.entry("one", "1"), Map.entry("two", "2"), Map.entry("three", "3"), Map.entry("four", "4"),
+            Map.entry("five", "5"), Map.entry("six", "6"), Map.entry("seven", "7"), Map.entry("eight", "8"),
+            Map.entry("nine", "9"), Map.entry("ten", "10"), Map.entry("eleven", "11"), Map.entry("twelve", "12"));
+
+    private static final Map<String, String> DIVISION_NUMERALS = Map.of("i", "1", "ii", "2", "iii", "3", "iv", "4");
+
+    private static final Set<String> PROBLEM_TYPES =
+            Set.of("vehicle", "technical", "classics", "structure", "performance");
+
+    private static final Set<String> FILLER = Set.of(
+            "a", "an", "the", "of", "and", "with", "for", "in", "on", "our", "my", "we", "have", "has", "is", "are",
+            "team", "problem", "please", "plan", "season");
+
+    private final Path path;
+    private final double minSimilarity;
+    private final int maxEntries;
+    private final String embeddingModel;
+    private final ObjectProvider<EmbeddingModel> embeddingModels;
+    private final SeasonPlanStore planStore;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private final DistributionSummary similarity;
+
+    private boolean opened;
+    private TextEmbedder embedder;
+    private HnswIndex index;
+    private RecordLog log;
+    private long logRecords;
+    /**
+     * Vectors of the requests in the index, least recently matched or added first.
+     */
+    private final LinkedHashMap<String, float[]> recency = new LinkedHashMap<>(16, 0.75f, true);
+
+    SeasonPlanSemanticCache(
+            @Value("${season-plans.semantic-cache.enabled:false}") boolean enabled,
+            @Value("${season-plans.semantic-cache.path:${user.home}/.embabel/season-plan-requests.log}") String path,
+            @Value("${season-plans.semantic-cache.min-similarity:0.9}") double minSimilarity,
+            @Value("${season-plans.semantic-cache.max-entries:10000}") int maxEntries,
+            @Value("${embabel.models.defaultEmbeddingModel:}") String embeddingModel,
+            ObjectProvider<EmbeddingModel> embeddingModels,
+            SeasonPlanStore planStore,
+            MeterRegistry registry) {
+        this.path = enabled && !path.isBlank() ? Path.of(path) : null;
+        this.minSimilarity = minSimilarity;
+        this.maxEntries = maxEntries;
+        this.embeddingModel = embeddingModel;
+        this.embeddingModels = embeddingModels;
+        this.planStore = planStore;
+        this.hits = Counter.builder(METRIC).tag("result", "hit").register(registry);
+        this.misses = Counter.builder(METRIC).tag("result", "miss").register(registry);
+        this.evictions = Counter.builder(METRIC + ".evictions").register(registry);
+        this.similarity = DistributionSummary.builder(METRIC + ".similarity")
+                .description("Similarity of the nearest stored request")
+                .register(registry);
+        Gauge.builder(METRIC + ".size", this, SeasonPlanSemanticCache::sizeIfOpen).register(registry);
+    }
+
+    /**
+     * A cache that finds nothing, for tests and tools that construct agents directly.
+     */
+    static SeasonPlanSemanticCache disabled() {
+        return new SeasonPlanSemanticCache(false, "", 1, 0, "", null, SeasonPlanStore.disabled(),
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * The stored plan for the most similar earlier request, if it is similar enough.
+     */
+    Optional<StoredSeasonPlan> find(String request) {
+        if (!open()) {
+            return Optional.empty();
+        }
+        var canonical = canonical(request);
+        var team = Team.of(canonical);
+        List<HnswIndex.Match> nearest;
+        try {
+            nearest = index.search(embedder.embed(canonical), NEIGHBOURS);
+        } catch (RuntimeException e) {
+            logger.warn("Could not embed the request for the semantic cache: {}", e.getMessage());
+            misses.increment();
+            return Optional.empty();
+        }
+        if (!nearest.isEmpty()) {
+            similarity.record(nearest.getFirst().similarity());
+        }
+        var neighbour = nearest.stream()
+                .filter(candidate -> candidate.similarity() >= minSimilarity)
+                .filter(candidate -> team.equals(Team.of(canonical(candidate.label()))))
+                .findFirst();
+        var match = neighbour.flatMap(candidate -> planStore.findByRequest(candidate.label()));
+        if (match.isPresent()) {
+            hits.increment();
+            synchronized (this) {
+                recency.get(neighbour.get().label());
+            }
+            logger.debug("Semantic cache hit for \"{}\": \"{}\" at {}",
+                    request, neighbour.get().label(), neighbour.get().similarity());
+        } else {
+            misses.increment();
+        }
+        return match;
+    }
+
+    /**
+     * Index a request whose plan is in the {@link SeasonPlanStore}.
+     */
+    void remember(String request) {
+        if (!open()) {
+            return;
+        }
+        var label = SeasonPlanStore.normalize(request);
+        float[] vector;
+        try {
+            vector = embedder.embed(canonical(request));
+        } catch (RuntimeException e) {
+            logger.warn("Could not embed the request for the semantic cache: {}", e.getMessage());
+            return;
+        }
+        synchronized (this) {
+            index.add(label, vector);
+            recency.put(label, vector);
+            append(new Binary.Writer().writeByte(ADD).writeString(label).writeFloats(vector));
+            while (recency.size() > maxEntries) {
+                var eldest = recency.keySet().iterator().next();
+                recency.remove(eldest);
+                index.remove(eldest);
+                append(new Binary.Writer().writeByte(REMOVE).writeString(eldest));
+                evictions.increment();
+            }
+            if (logRecords > 2L * recency.size() + 1024) {
+                rewrite();
+            }
+        }
+    }
+
+    int size() {
+        return open() ? index.size() : 0;
+    }
+
+    /**
+     * For the gauge, which should not be what loads the index.
+     */
+    private synchronized int sizeIfOpen() {
+        return index == null ? 0 : index.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    private void closeLog() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.warn("Could not close the semantic cache {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Rewrites a request as a bag of canonical words, so that common rewordings embed alike.
+     */
+    static String canonical(String request) {
+        var words = new ArrayList<String>();
+        String previous = "";
+        for (var word : request.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            word = "division".equals(previous) ? DIVISION_NUMERALS.getOrDefault(word, word) : word;
+            word = SYNONYMS.getOrDefault(word, word);
+            previous = word;
+            if (!FILLER.contains(word)) {
+                words.add(word);
+            }
+        }
+        return String.join(" ", words);
+    }
+
+    /**
+     * What a request must agree on to share a plan, read from its canonical form. A key missing from one request
+     * but given in the other counts as a difference.
+     */
+    record Team(String division, Set<String> problemTypes, String size) {
+
+        static Team of(String canonical) {
+            String division = null;
+            String size = null;
+            var problemTypes = new HashSet<String>();
+            var words = canonical.split(" ");
+            for (int i = 0; i < words.length; i++) {
+                var word = words[i];
+                if (word.equals("primary")) {
+                    division = "primary";
+                } else if (word.equals("division") && i + 1 < words.length) {
+                    division = words[i + 1];
+                } else if (PROBLEM_TYPES.contains(word)) {
+                    problemTypes.add(word);
+                } else if (word.equals("students") && i > 0 && words[i - 1].chars().allMatch(Character::isDigit)) {
+                    size = words[i - 1];
+                }
+            }
+            return new Team(division, Set.copyOf(problemTypes), size);
+        }
+    }
+
+    /**
+     * Chooses the embedder and loads the index on first use. If it cannot be loaded the cache finds nothing for this
+     * use, and loading is tried again on the next.
+     */
+    private synchronized boolean open() {
+        if (!opened && path != null) {
+            embedder = chooseEmbedder();
+            try {
+                load();
+                opened = true;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Semantic cache {} is unavailable: {}", path, e.getMessage());
+                index = null;
+                recency.clear();
+                closeLog();
+            }
+        }
+        return index != null;
+    }
+
+    private TextEmbedder chooseEmbedder() {
+        if (!embeddingModel.isBlank() && embeddingModels != null) {
+            var model = embeddingModels.getIfUnique();
+            if (model != null) {
+                return new TextEmbedder() {
+                    @Override
+                    public String name() {
+                        return embeddingModel;
+                    }
+
+                    @Override
+                    public float[] embed(String text) {
+                        return model.embed(text);
+                    }
+                };
+            }
+            logger.warn("No unique embedding model for {}: the semantic cache uses hashed n-grams", embeddingModel);
+        }
+        return new HashedNgramEmbedder(HASHED_DIMENSIONS);
+    }
+
+    private void load() throws IOException {
+        var added = new LinkedHashMap<String, float[]>();
+        var header = new String[1];
+        var records = new long[1];
+        log = RecordLog.open(path, (payload, offset) -> {
+            records[0]++;
+            try {
+                var in = new Binary.Reader(payload);
+                switch (in.readByte()) {
+                    case HEADER -> header[0] = in.readString();
+                    case ADD -> {
+                        var label = in.readString();
+                        added.remove(label);
+                        added.put(label, in.readFloats());
+                    }
+                    case REMOVE -> added.remove(in.readString());
+                    default -> throw new IllegalArgumentException("unknown record type");
+                }
+            } catch (IllegalArgumentException e) {
+                logger.warn("Skipping unreadable record at offset {} of {}: {}", offset, path, e.getMessage());
+            }
+        });
+        if (header[0] != null && !header[0].equals(embedder.name())) {
+            logger.info("Discarding {} semantic cache entries made with {}, now embedding with {}",
+                    added.size(), header[0], embedder.name());
+            added.clear();
+        }
+        int dimensions = added.isEmpty() ? embedder.embed("season plan").length : added.values().iterator().next().length;
+        index = new HnswIndex(dimensions);
+        added.forEach((label, vector) -> {
+            index.add(label, vector);
+            recency.put(label, vector);
+        });
+        logRecords = records[0];
+        if (header[0] == null || !header[0].equals(embedder.name()) || logRecords > 2L * recency.size() + 1024) {
+            rewrite();
+        }
+        logger.info("Opened semantic cache {}: {} requests embedded with {}", path, index.size(), embedder.name());
+    }
+
+    /**
+     * Replaces the log with one holding only the header and the requests still indexed, written in one pass and synced
+     * once. If the new log cannot be put in place the current one is reopened and kept.
+     */
+    private void rewrite() {
+        var rewritten = path.resolveSibling(path.getFileName() + ".rewrite");
+        var records = new ArrayList<byte[]>(1 + recency.size());
+        records.add(new Binary.Writer().writeByte(HEADER).writeString(embedder.name()).toByteArray());
+        for (var entry : recency.entrySet()) {
+            records.add(new Binary.Writer().writeByte(ADD).writeString(entry.getKey())
+                    .writeFloats(entry.getValue()).toByteArray());
+        }
+        try {
+            RecordLog.write(rewritten, records);
+        } catch (IOException e) {
+            logger.warn("Could not rewrite the semantic cache {}, keeping the current log: {}", path, e.getMessage());
+            return;
+        }
+        try {
+            if (log != null) {
+                log.close();
+            }
+            Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logRecords = records.size();
+        } catch (IOException e) {
+            logger.warn("Could not replace the semantic cache {} with its rewrite, keeping the current log: {}",
+                    path, e.getMessage());
+        }
+        try {
+            log = RecordLog.open(path, (payload, offset) -> {
+            });
+        } catch (IOException e) {
+            log = null;
+            logger.warn("Could not reopen the semantic cache {}: requests are no longer persisted until restart: {}",
+                    path, e.getMessage());
+        }
+    }
+
+    private void append(Binary.Writer record) {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(record.toByteArray());
+            logRecords++;
+        } catch (IOException e) {
+            logger.warn("Could not persist to the semantic cache {}: {}", path, e.getMessage());
+        }
+    }
+}
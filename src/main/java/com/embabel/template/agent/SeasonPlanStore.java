@@ -0,0 +1,322 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.store.Binary;
+import com.embabel.template.store.RecordLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * A season plan kept for reuse, with the request it answered and its review, if it has been reviewed.
+ */
+record StoredSeasonPlan(String request, SeasonPlan plan, String review, Instant storedAt) {
+}
+
+/**
+ * Embedded store of generated season plans, so that a repeated request can be answered without generating again.
+ * <p>
+ * Plans are appended to a {@link RecordLog} at {@code season-plans.store.path} in a compact binary encoding and read
+ * back by offset. The indexes live in memory and are rebuilt from the log when it is first used: by normalized
+ * request, team level, Long-Term problem type and the words of the theme. Saving a plan for a request already stored
+ * replaces it in the indexes; the old record stays in the log but is no longer found.
+ * <p>
+ * The store is a cache of paid-for work, not the system of record: if the log cannot be opened or written,
+ * the store logs a warning and behaves as empty. It is off unless {@code season-plans.store.enabled} is set, since a
+ * coach asking again then gets the stored plan rather than a fresh one.
+ */
+@Component
+class SeasonPlanStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeasonPlanStore.class);
+
+    private static final int FORMAT = 1;
+    private static final int MIN_THEME_WORD = 3;
+    private static final NavigableSet<Long> EMPTY = new TreeSet<>();
+
+    private final Path path;
+    private RecordLog log;
+    private boolean opened;
+
+    private final Map<String, Long> byRequest = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Long, Keys> keysByOffset = new ConcurrentSkipListMap<>();
+    private final Map<String, NavigableSet<Long>> byTeamLevel = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> byProblemType = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Long>> byThemeWord = new ConcurrentHashMap<>();
+
+    private record Keys(String request, String teamLevel, String problemType, Set<String> themeWords) {
+    }
+
+    SeasonPlanStore(
+            @Value("${season-plans.store.enabled:false}") boolean enabled,
+            @Value("${season-plans.store.path:${user.home}/.embabel/season-plans.log}") String path) {
+        this.path = enabled && !path.isBlank() ? Path.of(path) : null;
+    }
+
+    /**
+     * A store that keeps nothing, for tests and tools that construct agents directly.
+     */
+    static SeasonPlanStore disabled() {
+        return new SeasonPlanStore(false, "");
+    }
+
+    /**
+     * The plan last stored for this request, compared ignoring case and runs of whitespace.
+     */
+    Optional<StoredSeasonPlan> findByRequest(String request) {
+        var log = log();
+        if (log == null) {
+            return Optional.empty();
+        }
+        var offset = byRequest.get(normalize(request));
+        return offset == null ? Optional.empty() : read(log, offset);
+    }
+
+    /**
+     * Stored plans matching every criterion given, newest first. Null or blank criteria match anything.
+     *
+     * @param theme words that must all appear in the plan's theme
+     */
+    List<StoredSeasonPlan> find(String teamLevel, String longTermProblemType, String theme, int limit) {
+        var log = log();
+        if (log == null || limit <= 0) {
+            return List.of();
+        }
+        var criteria = new ArrayList<NavigableSet<Long>>();
+        if (teamLevel != null && !teamLevel.isBlank()) {
+            criteria.add(byTeamLevel.getOrDefault(normalize(teamLevel), EMPTY));
+        }
+        if (longTermProblemType != null && !longTermProblemType.isBlank()) {
+            criteria.add(byProblemType.getOrDefault(normalize(longTermProblemType), EMPTY));
+        }
+        for (var word : themeWords(theme)) {
+            criteria.add(byThemeWord.getOrDefault(word, EMPTY));
+        }
+        // Offsets grow with each append, so walking the smallest index backwards finds the newest matches first
+        var smallest = criteria.stream()
+                .min(Comparator.comparingInt(Set::size))
+                .orElse(keysByOffset.navigableKeySet());
+        var found = new ArrayList<StoredSeasonPlan>(Math.min(limit, smallest.size()));
+        for (var offset : smallest.descendingSet()) {
+            if (criteria.stream().allMatch(offsets -> offsets.contains(offset))) {
+                read(log, offset).ifPresent(found::add);
+                if (found.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Store a plan as the answer to a request, replacing any plan stored for it before.
+     *
+     * @param review null if the plan has not been reviewed
+     */
+    void save(String request, SeasonPlan plan, String review) {
+        var log = log();
+        if (log == null) {
+            return;
+        }
+        var stored = new StoredSeasonPlan(request, plan, review, Instant.now());
+        try {
+            synchronized (this) {
+                index(log.append(encode(stored)), stored);
+            }
+        } catch (IOException e) {
+            logger.warn("Could not store the season plan in {}: {}", path, e.getMessage());
+        }
+    }
+
+    int size() {
+        return log() == null ? 0 : byRequest.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+
+    /**
+     * Opens the log on first use, so that nothing is read or created until a plan is looked up or saved.
+     * If it cannot be opened the store is empty for this use, and opening is tried again on the next.
+     */
+    private synchronized RecordLog log() {
+        if (!opened && path != null) {
+            long start = System.nanoTime();
+            try {
+                log = RecordLog.open(path, (payload, offset) -> {
+                    try {
+                        index(offset, decode(payload));
+                    } catch (IllegalArgumentException e) {
+                        logger.warn("Skipping unreadable season plan at offset {} of {}: {}", offset, path, e.getMessage());
+                    }
+                });
+                opened = true;
+                logger.info("Opened season plan store {}: {} plans in {} ms",
+                        path, byRequest.size(), (System.nanoTime() - start) / 1_000_000);
+            } catch (IOException e) {
+                logger.warn("Season plan store {} is unavailable: {}", path, e.getMessage());
+                // Drop what the failed replay indexed, so the next attempt starts clean
+                byRequest.clear();
+                keysByOffset.clear();
+                byTeamLevel.clear();
+                byProblemType.clear();
+                byThemeWord.clear();
+            }
+        }
+        return log;
+    }
+
+    private Optional<StoredSeasonPlan> read(RecordLog log, long offset) {
+        try {
+            return Optional.of(decode(log.read(offset)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.warn("Could not read the season plan at offset {} of {}: {}", offset, path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private void index(long offset, StoredSeasonPlan stored) {
+        var plan = stored.plan();
+        var keys = new Keys(
+                normalize(stored.request()),
+                normalize(plan.teamLevel()),
+                normalize(plan.longTermProblemType()),
+                themeWords(plan.theme()));
+        var replaced = byRequest.put(keys.request(), offset);
+        if (replaced != null) {
+            unindex(replaced);
+        }
+        keysByOffset.put(offset, keys);
+        add(byTeamLevel, keys.teamLevel(), offset);
+        add(byProblemType, keys.problemType(), offset);
+        for (var word : keys.themeWords()) {
+            add(byThemeWord, word, offset);
+        }
+    }
+
+    private void unindex(long offset) {
+        var keys = keysByOffset.remove(offset);
+        if (keys == null) {
+            return;
+        }
+        remove(byTeamLevel, keys.teamLevel(), offset);
+        remove(byProblemType, keys.problemType(), offset);
+        for (var word : keys.themeWords()) {
+            remove(byThemeWord, word, offset);
+        }
+    }
+
+    private static void add(Map<String, NavigableSet<Long>> index, String key, long offset) {
+        index.computeIfAbsent(key, k -> new ConcurrentSkipListSet<>()).add(offset);
+    }
+
+    private static void remove(Map<String, NavigableSet<Long>> index, String key, long offset) {
+        index.computeIfPresent(key, (k, offsets) -> {
+            offsets.remove(offset);
+            return offsets.isEmpty() ? null : offsets;
+        });
+    }
+
+    static String normalize(String value) {
+        return value == null ? "" : value.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    static Set<String> themeWords(String theme) {
+        if (theme == null) {
+            return Set.of();
+        }
+        var words = new HashSet<String>();
+        for (var word : theme.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() >= MIN_THEME_WORD) {
+                words.add(word);
+            }
+        }
+        return Set.copyOf(words);
+    }
+
+    static byte[] encode(StoredSeasonPlan stored) {
+        var plan = stored.plan();
+        var out = new Binary.Writer()
+                .writeByte(FORMAT)
+                .writeString(stored.request())
+                .writeSignedVarLong(stored.storedAt().toEpochMilli())
+                .writeString(stored.review())
+                .writeString(plan.teamLevel())
+                .writeString(plan.longTermProblemType())
+                .writeString(plan.theme());
+        if (plan.lessons() == null) {
+            return out.writeVarLong(0).toByteArray();
+        }
+        out.writeVarLong(plan.lessons().size() + 1L);
+        for (var lesson : plan.lessons()) {
+            out.writeSignedVarLong(lesson.weekNumber())
+                    .writeString(lesson.goals())
+                    .writeString(lesson.longTermFocus())
+                    .writeString(lesson.styleFocus())
+                    .writeString(lesson.spontaneousType())
+                    .writeStrings(lesson.agenda())
+                    .writeStrings(lesson.materials())
+                    .writeStrings(lesson.safetyNotes())
+                    .writeStrings(lesson.checkpoints())
+                    .writeStrings(lesson.homework())
+                    .writeString(lesson.outsideAssistanceGuardrails());
+        }
+        return out.toByteArray();
+    }
+
+    static StoredSeasonPlan decode(byte[] payload) {
+        var in = new Binary.Reader(payload);
+        int format = in.readByte();
+        if (format != FORMAT) {
+            throw new IllegalArgumentException("Unknown season plan format " + format);
+        }
+        var request = in.readString();
+        var storedAt = Instant.ofEpochMilli(in.readSignedVarLong());
+        var review = in.readString();
+        var teamLevel = in.readString();
+        var problemType = in.readString();
+        var theme = in.readString();
+        int count = in.readLength();
+        List<WeekLesson> lessons = null;
+        if (count > 0) {
+            lessons = new ArrayList<>(count - 1);
+            for (int i = 1; i < count; i++) {
+                lessons.add(new WeekLesson(
+                        (int) in.readSignedVarLong(),
+                        in.readString(),
+                        in.readString(),
+                        in.readString(),
+                        in.readString(),
+                        in.readStrings(),
+                        in.readStrings(),
+                        in.readStrings(),
+                        in.readStrings(),
+                        in.readStrings(),
+                        in.readString()));
+            }
+        }
+        return new StoredSeasonPlan(request, new SeasonPlan(teamLevel, problemType, theme, lessons), review, storedAt);
+    }
+}
@@ -0,0 +1,104 @@
+package com.embabel.template.agent;
+
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Incremental scanner that cuts each lesson object out of a {@link SeasonPlan} JSON document as it streams in.
+ * Text chunks are fed as they arrive from the model; the text of each object in the {@code lessons} array is handed
+ * to the listener as soon as its closing brace arrives, long before the season is complete.
+ * <p>
+ * Objects are found by matching braces outside strings, not by parsing, so a lesson that is malformed inside still
+ * ends where its braces balance and the next one is found after it: whether each lesson can be read is the
+ * listener's concern. Everything outside the lessons array is skipped, and scanning stops when the array closes.
+ * Not thread-safe: feed from a single thread or serialize calls.
+ */
+final class SeasonPlanStreamParser {
+
+    static final Pattern LESSONS = Pattern.compile("\"lessons\"\\s*:\\s*\\[");
+
+    private final Consumer<String> onLesson;
+
+    /**
+     * Text not yet scanned past, and the lesson in progress.
+     */
+    private final StringBuilder pending = new StringBuilder();
+    private int scanned;
+    private boolean inLessons;
+    private boolean finished;
+    private boolean inString;
+    private boolean escaped;
+    private int depth;
+    private int objectStart = -1;
+
+    SeasonPlanStreamParser(Consumer<String> onLesson) {
+        this.onLesson = onLesson;
+    }
+
+    /**
+     * Feed the next chunk of model output.
+     */
+    void feed(CharSequence chunk) {
+        if (finished || chunk.isEmpty()) {
+            return;
+        }
+        pending.append(chunk);
+        if (!inLessons) {
+            // The key may be split across chunks, so look again from the start until it is found
+            var matcher = LESSONS.matcher(pending);
+            if (!matcher.find()) {
+                return;
+            }
+            pending.delete(0, matcher.end());
+            inLessons = true;
+        }
+        scan();
+    }
+
+    private void scan() {
+        for (; scanned < pending.length(); scanned++) {
+            char c = pending.charAt(scanned);
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (c == '\\') {
+                    escaped = true;
+                } else if (c == '"') {
+                    inString = false;
+                }
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{', '[' -> {
+                    if (depth == 0 && c == '{') {
+                        objectStart = scanned;
+                    }
+                    depth++;
+                }
+                case '}', ']' -> {
+                    if (depth == 0) {
+                        // The lessons array closed
+                        finished = true;
+                        pending.setLength(0);
+                        return;
+                    }
+                    depth--;
+                    if (depth == 0 && objectStart >= 0) {
+                        onLesson.accept(pending.substring(objectStart, scanned + 1));
+                        objectStart = -1;
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        // Keep only the lesson in progress
+        int keep = objectStart >= 0 ? objectStart : pending.length();
+        pending.delete(0, keep);
+        scanned -= keep;
+        if (objectStart >= 0) {
+            objectStart = 0;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.llm.TokenSink;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Passes a streamed whole-season plan on to the run's sink one week at a time: the JSON is scanned as it arrives, and
+ * each week is sent as Markdown as soon as its object closes, instead of the raw JSON. A week that cannot be read is
+ * skipped and the next one is shown as usual; the response itself is decoded and repaired as usual.
+ */
+final class SeasonPlanWeekSink implements TokenSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(SeasonPlanWeekSink.class);
+
+    private final ObjectMapper objectMapper;
+    private final TokenSink sink;
+    private SeasonPlanStreamParser parser;
+    private String action;
+
+    SeasonPlanWeekSink(ObjectMapper objectMapper, TokenSink sink) {
+        this.objectMapper = objectMapper.copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.sink = sink;
+        this.parser = new SeasonPlanStreamParser(this::onLesson);
+    }
+
+    @Override
+    public synchronized void onToken(String action, String text) {
+        this.action = action;
+        parser.feed(text);
+    }
+
+    @Override
+    public synchronized void onRestart(String action) {
+        parser = new SeasonPlanStreamParser(this::onLesson);
+        sink.onRestart(action);
+    }
+
+    private void onLesson(String json) {
+        WeekLesson week;
+        try {
+            week = objectMapper.readValue(json, WeekLesson.class);
+        } catch (JsonProcessingException e) {
+            logger.debug("Not showing a week of the season plan that cannot be read: {}", e.getOriginalMessage());
+            return;
+        }
+        sink.onToken(action, SeasonPlanRenderer.render(week));
+    }
+}
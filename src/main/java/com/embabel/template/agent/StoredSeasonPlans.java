@@ -0,0 +1,35 @@
+package com.embabel.template.agent;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/**
+ * Browses the {@link SeasonPlanStore} by its secondary indexes, for a coach looking for an earlier plan to start from.
+ * <p>
+ * {@code GET /season-plans?teamLevel=...&problemType=...&theme=...&limit=...} returns the matching stored plans,
+ * newest first. Every criterion is optional; {@code theme} matches plans whose theme contains all of its words.
+ * Empty while the store is disabled.
+ */
+@RestController
+class StoredSeasonPlans {
+
+    private static final int MAX_LIMIT = 100;
+
+    private final SeasonPlanStore planStore;
+
+    StoredSeasonPlans(SeasonPlanStore planStore) {
+        this.planStore = planStore;
+    }
+
+    @GetMapping("/season-plans")
+    List<StoredSeasonPlan> find(
+            @RequestParam(required = false) String teamLevel,
+            @RequestParam(required = false) String problemType,
+            @RequestParam(required = false) String theme,
+            @RequestParam(defaultValue = "20") int limit) {
+        return planStore.find(teamLevel, problemType, theme, Math.min(limit, MAX_LIMIT));
+    }
+}
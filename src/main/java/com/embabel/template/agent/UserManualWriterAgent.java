@@ -8,18 +8,22 @@ import com.embabel.agent.api.common.OperationContext;
 import com.embabel.agent.domain.io.UserInput;
 import com.embabel.agent.domain.library.HasContent;
 import com.embabel.agent.prompt.persona.RoleGoalBackstory;
-import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.core.types.Timestamped;
+import com.embabel.template.concurrent.BoundedFanOut;
+import com.embabel.template.concurrent.BoundedPipeline;
+import com.embabel.template.llm.LlmCalls;
+import com.embabel.template.llm.TokenEstimates;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.lang.NonNull;
 
 import java.io.IOException;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -60,53 +64,170 @@ record UserManual(List<ManualSection> sections) implements HasContent, Timestamp
 class UserManualWriterAgent {
 
     private final int sectionWordLimit;
+    private final int concurrency;
+    private final int readAhead;
+    private final int chunkTokenBudget;
+    private final int chunkConcurrency;
+    private final PdfTextExtractor pdfTextExtractor;
+    private final LlmCalls llmCalls;
 
-    UserManualWriterAgent(@Value("${manual.sectionWordLimit:300}") int sectionWordLimit) {
+    UserManualWriterAgent(
+            @Value("${manual.sectionWordLimit:300}") int sectionWordLimit,
+            @Value("${manual.concurrency:4}") int concurrency,
+            @Value("${manual.readAhead:2}") int readAhead,
+            @Value("${manual.chunkTokenBudget:3000}") int chunkTokenBudget,
+            @Value("${manual.chunkConcurrency:4}") int chunkConcurrency,
+            PdfTextExtractor pdfTextExtractor,
+            LlmCalls llmCalls) {
         this.sectionWordLimit = sectionWordLimit;
+        this.concurrency = concurrency;
+        this.readAhead = readAhead;
+        this.chunkTokenBudget = chunkTokenBudget;
+        this.chunkConcurrency = chunkConcurrency;
+        this.pdfTextExtractor = pdfTextExtractor;
+        this.llmCalls = llmCalls;
     }
 
     /**
      * Reads PDF files and generates a structured user manual.
+     * Documents are read and summarized in a bounded pipeline: at most {@code manual.concurrency} documents
+     * are summarized at once, and reading stays at most {@code manual.readAhead} documents ahead of them.
+     * Documents over {@code manual.chunkTokenBudget} are summarized map-reduce style, see {@link #summarize},
+     * with up to {@code manual.chunkConcurrency} calls each, so at most {@code manual.concurrency} times
+     * {@code manual.chunkConcurrency} LLM calls run at once. The model endpoint's own limiter still applies.
      */
     @AchievesGoal(
             description = "The user manual has been generated from provided PDFs",
             export = @Export(remote = true, name = "generateUserManual"))
     @Action
     UserManual generateManual(UserInput userInput, OperationContext context) throws IOException {
-        // Assume input is list of file paths (local or mounted Google Drive)
-        List<String> pdfPaths = List.of(userInput.getContent().split(","));
-
-        // Extract text from PDFs
-        List<String> pdfTexts = pdfPaths.stream()
-                .map(Path::of)
-                .map(this::extractPdfTextSafe)
-                .toList();
-
-        // Use AI to summarize each PDF into a manual section
-        List<ManualSection> sections = pdfTexts.stream()
-                .map(pdfContent -> context.ai()
-                        .withLlm(LlmOptions.withAutoLlm().withTemperature(0.3))
-                        .withPromptContributor(WriterPersonas.TECHNICAL_WRITER)
-                        .createObject(String.format("""
-                                        Summarize the following document into a concise, structured manual section.
-                                        Limit to ~%d words.
-                                        Provide a clear title and practical instructions if applicable.
-
-                                        # Document Content
-                                        %s
-                                        """,
-                                sectionWordLimit,
-                                pdfContent
-                        ).trim(), ManualSection.class)
-                ).toList();
-
-        return new UserManual(sections);
+        return llmCalls.action("UserManualWriterAgent.generateManual", () -> {
+            // Assume input is list of file paths (local or mounted Google Drive)
+            List<Path> pdfPaths = Arrays.stream(userInput.getContent().split(","))
+                    .map(String::trim)
+                    .filter(path -> !path.isEmpty())
+                    .map(Path::of)
+                    .toList();
+
+            // Extract text from each PDF and use AI to summarize it into a manual section
+            List<ManualSection> sections = BoundedPipeline.run(
+                    pdfPaths,
+                    concurrency,
+                    readAhead,
+                    this::extractPdfTextSafe,
+                    pdfContent -> summarize(pdfContent, context));
+
+            return new UserManual(sections);
+        });
+    }
+
+    /**
+     * Documents that fit the token budget are summarized in one call. Larger ones are split by
+     * {@link DocumentChunker}, each chunk is summarized in parallel, and the summaries are combined
+     * level by level until they fit the budget and can be written up as a single section.
+     * Chunk prompts carry only the chunk text, never its position, so the response cache is in effect keyed
+     * by chunk content: re-running on a lightly edited document only re-summarizes the chunks that changed.
+     */
+    private ManualSection summarize(String pdfContent, OperationContext context) {
+        if (TokenEstimates.estimate(pdfContent) <= chunkTokenBudget) {
+            return writeSection("# Document Content", pdfContent, context);
+        }
+        List<String> summaries = BoundedFanOut.map(
+                DocumentChunker.chunk(pdfContent, chunkTokenBudget),
+                chunkConcurrency,
+                chunk -> summarizeChunk(chunk, context));
+        while (summaries.size() > 1
+                && TokenEstimates.estimate(String.join("\n\n", summaries)) > chunkTokenBudget) {
+            summaries = BoundedFanOut.map(
+                    group(summaries),
+                    chunkConcurrency,
+                    group -> combineSummaries(group, context));
+        }
+        return writeSection("# Summaries of Consecutive Document Parts", String.join("\n\n", summaries), context);
+    }
+
+    private ManualSection writeSection(String heading, String body, OperationContext context) {
+        return llmCalls.on(context.ai(), "UserManualWriterAgent.generateManual")
+                .withAutoLlm()
+                .withTemperature(0.3)
+                .withPromptContributor(WriterPersonas.TECHNICAL_WRITER)
+                .createObject(String.format("""
+                                Summarize the following document into a concise, structured manual section.
+                                Limit to ~%d words.
+                                Provide a clear title and practical instructions if applicable.
+
+                                %s
+                                %s
+                                """,
+                        sectionWordLimit,
+                        heading,
+                        body
+                ).trim(), ManualSection.class);
+    }
+
+    private String summarizeChunk(String chunk, OperationContext context) {
+        return llmCalls.on(context.ai(), "UserManualWriterAgent.summarizeChunk")
+                .withAutoLlm()
+                .withTemperature(0.3)
+                .withPromptContributor(WriterPersonas.TECHNICAL_WRITER)
+                .generateText(String.format("""
+                                Summarize this part of a longer document for use in a user manual.
+                                Keep concrete instructions, settings, warnings and product names.
+                                Limit to ~%d words.
+
+                                # Document Part
+                                %s
+                                """,
+                        sectionWordLimit,
+                        chunk
+                ).trim());
+    }
+
+    private String combineSummaries(List<String> summaries, OperationContext context) {
+        return llmCalls.on(context.ai(), "UserManualWriterAgent.combineSummaries")
+                .withAutoLlm()
+                .withTemperature(0.3)
+                .withPromptContributor(WriterPersonas.TECHNICAL_WRITER)
+                .generateText(String.format("""
+                                Combine these summaries of consecutive parts of one document into a single summary.
+                                Keep concrete instructions, settings, warnings and product names, in document order.
+                                Limit to ~%d words.
+
+                                # Summaries
+                                %s
+                                """,
+                        sectionWordLimit,
+                        String.join("\n\n", summaries)
+                ).trim());
+    }
+
+    /**
+     * Packs consecutive summaries into groups that fit the chunk budget, at least two to a group
+     * so that every reduce level makes progress.
+     */
+    private List<List<String>> group(List<String> summaries) {
+        var groups = new ArrayList<List<String>>();
+        var current = new ArrayList<String>();
+        int tokens = 0;
+        for (var summary : summaries) {
+            int summaryTokens = TokenEstimates.estimate(summary);
+            if (current.size() >= 2 && tokens + summaryTokens > chunkTokenBudget) {
+                groups.add(current);
+                current = new ArrayList<>();
+                tokens = 0;
+            }
+            current.add(summary);
+            tokens += summaryTokens;
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
     }
 
     private String extractPdfTextSafe(Path path) {
         try {
-            // You’d integrate Apache PDFBox or similar here
-            return Files.readString(path); // placeholder (only works if PDF is already plain text)
+            return pdfTextExtractor.extractText(path);
         } catch (IOException e) {
             return "ERROR reading PDF: " + path.getFileName();
         }
@@ -24,8 +24,12 @@ import com.embabel.agent.domain.io.UserInput;
 import com.embabel.agent.domain.library.HasContent;
 import com.embabel.agent.prompt.persona.Persona;
 import com.embabel.agent.prompt.persona.RoleGoalBackstory;
-import com.embabel.common.ai.model.LlmOptions;
 import com.embabel.common.core.types.Timestamped;
+import com.embabel.common.ai.model.LlmOptions;
+import com.embabel.template.llm.CandidateScorer;
+import com.embabel.template.llm.LlmCalls;
+import com.embabel.template.llm.LlmJudge;
+import com.embabel.template.llm.PromptTemplate;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.lang.NonNull;
@@ -33,6 +37,8 @@ import org.springframework.lang.NonNull;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 
 abstract class Personas {
     static final RoleGoalBackstory WRITER = RoleGoalBackstory
@@ -89,15 +95,67 @@ record ReviewedStory(
 @Profile("!test")
 class WriteAndReviewAgent {
 
-    private final int storyWordCount;
-    private final int reviewWordCount;
+    private static final String REVIEW = """
+            You will be given a short story to review.
+            Review it in {{reviewWordCount}} words or less.
+            Consider whether or not the story is engaging, imaginative, and well-written.
+            Also consider whether the story is appropriate given the original user input.
+
+            # Story
+            {{story}}
+
+            # User input that inspired the story
+            {{userInput}}
+            """;
+
+    private static final String STORY = """
+            Craft a short story in {{storyWordCount}} words or less.
+            The story should be engaging and imaginative.
+            Use the user's input as inspiration if possible.
+            If the user has provided a name, include it in the story.
+
+            # User input
+            {{userInput}}
+            """;
+
+    private static final String STORY_CRITERIA = """
+            - Engaging and imaginative
+            - Well written, with a clear beginning, middle and end
+            - Inspired by the user's input, and uses any name the user gave
+            """;
+
+    private final int storyCandidates;
+    private final int storyCandidatesScored;
+    private final List<String> storyCandidateLlms;
+    private final String storyJudgeLlm;
+    private final LlmCalls llmCalls;
+    private final CandidateScorer<Story> storyHeuristics;
+    private final PromptTemplate storyTemplate;
+    private final PromptTemplate reviewTemplate;
 
+    /**
+     * @param storyCandidates       stories generated concurrently for each request; 1, the default, for a single call
+     * @param storyCandidatesScored the best story is chosen from the first this many to arrive; the rest are cancelled
+     * @param storyCandidateLlms    models taken in turn by the candidates; empty to leave the choice to the router
+     * @param storyJudgeLlm         small model that also marks each candidate; blank to choose on heuristics alone
+     */
     WriteAndReviewAgent(
             @Value("${storyWordCount:100}") int storyWordCount,
-            @Value("${reviewWordCount:100}") int reviewWordCount
+            @Value("${reviewWordCount:100}") int reviewWordCount,
+            @Value("${storyCandidates:1}") int storyCandidates,
+            @Value("${storyCandidatesScored:2}") int storyCandidatesScored,
+            @Value("${storyCandidateLlms:}") List<String> storyCandidateLlms,
+            @Value("${storyJudgeLlm:}") String storyJudgeLlm,
+            LlmCalls llmCalls
     ) {
-        this.storyWordCount = storyWordCount;
-        this.reviewWordCount = reviewWordCount;
+        this.storyCandidates = storyCandidates;
+        this.storyCandidatesScored = storyCandidatesScored;
+        this.storyCandidateLlms = List.copyOf(storyCandidateLlms);
+        this.storyJudgeLlm = storyJudgeLlm;
+        this.llmCalls = llmCalls;
+        this.storyHeuristics = CandidateHeuristics.story(storyWordCount);
+        this.storyTemplate = PromptTemplate.compile(STORY, Map.of("storyWordCount", storyWordCount));
+        this.reviewTemplate = PromptTemplate.compile(REVIEW, Map.of("reviewWordCount", reviewWordCount));
     }
 
     @AchievesGoal(
@@ -105,51 +163,58 @@ class WriteAndReviewAgent {
             export = @Export(remote = true, name = "writeAndReviewStory"))
     @Action
     ReviewedStory reviewStory(UserInput userInput, Story story, OperationContext context) {
-        var review = context
-                .ai()
-                .withAutoLlm()
-                .withPromptContributor(Personas.REVIEWER)
-                .generateText(String.format("""
-                                You will be given a short story to review.
-                                Review it in %d words or less.
-                                Consider whether or not the story is engaging, imaginative, and well-written.
-                                Also consider whether the story is appropriate given the original user input.
-                                
-                                # Story
-                                %s
-                                
-                                # User input that inspired the story
-                                %s
-                                """,
-                        reviewWordCount,
-                        story.text(),
-                        userInput.getContent()
-                ).trim());
-
-        return new ReviewedStory(
-                story,
-                review,
-                Personas.REVIEWER
-        );
+        return llmCalls.action("WriteAndReviewAgent.reviewStory", () -> {
+            var review = llmCalls
+                    .on(context.ai(), "WriteAndReviewAgent.reviewStory")
+                    .withAutoLlm()
+                    .withPromptContributor(Personas.REVIEWER)
+                    .generateText(reviewTemplate.render(Map.of(
+                            "story", String.valueOf(story.text()),
+                            "userInput", userInput.getContent())));
+
+            return new ReviewedStory(
+                    story,
+                    review,
+                    Personas.REVIEWER
+            );
+        });
     }
 
+    /**
+     * Generates {@code storyCandidates} stories at once and keeps the best of the first {@code storyCandidatesScored},
+     * rather than retrying a weak story after the fact. Off by default: with one candidate this is a single call.
+     */
     @Action
     Story craftStory(UserInput userInput, OperationContext context) {
-        return context.ai()
+        return llmCalls.action("WriteAndReviewAgent.craftStory", () -> llmCalls.bestOf(
+                "WriteAndReviewAgent.craftStory", storyCandidates, storyCandidatesScored,
+                candidate -> craftStoryCandidate(userInput, candidate, context),
+                storyScorer(context)));
+    }
+
+    private Story craftStoryCandidate(UserInput userInput, int candidate, OperationContext context) {
+        var call = llmCalls.on(context.ai(), "WriteAndReviewAgent.craftStory");
+        if (storyCandidateLlms.isEmpty()) {
+            call.withAutoLlm();
+        } else {
+            call.withLlm(LlmOptions.withModel(storyCandidateLlms.get(candidate % storyCandidateLlms.size())));
+        }
+        if (storyCandidates > 1) {
+            // Candidates share a prompt, so each must make its own call
+            call.independent();
+        }
+        return call
                 // Higher temperature for more creative output
-                .withLlm(LlmOptions.withAutoLlm().withTemperature(.7))
+                .withTemperature(.7)
                 .withPromptContributor(Personas.WRITER)
-                .createObject(String.format("""
-                                Craft a short story in %d words or less.
-                                The story should be engaging and imaginative.
-                                Use the user's input as inspiration if possible.
-                                If the user has provided a name, include it in the story.
-                                
-                                # User input
-                                %s
-                                """,
-                        storyWordCount,
-                        userInput.getContent()
-                ).trim(), Story.class);
+                .createObject(storyTemplate.render(Map.of("userInput", userInput.getContent())), Story.class);
     }
-}
\ No newline at end of file
+
+    private CandidateScorer<Story> storyScorer(OperationContext context) {
+        if (storyJudgeLlm.isBlank()) {
+            return storyHeuristics;
+        }
+        return storyHeuristics.plus(1, new LlmJudge<Story>(llmCalls, context.ai(), "WriteAndReviewAgent.craftStory",
+                LlmOptions.withModel(storyJudgeLlm), STORY_CRITERIA, Story::text));
+    }
+}
@@ -0,0 +1,74 @@
+package com.embabel.template.batch;
+
+import java.time.Duration;
+
+/**
+ * Counts completed batch items and estimates the time remaining from the average rate so far.
+ */
+final class BatchProgress {
+
+    private final int total;
+    private final long startedNanos;
+    private int succeeded;
+    private int failed;
+
+    BatchProgress(int total) {
+        this(total, System.nanoTime());
+    }
+
+    BatchProgress(int total, long startedNanos) {
+        this.total = total;
+        this.startedNanos = startedNanos;
+    }
+
+    /**
+     * Count one completed item and describe progress so far.
+     */
+    String completed(boolean success) {
+        return completed(success, System.nanoTime());
+    }
+
+    synchronized String completed(boolean success, long nowNanos) {
+        if (success) {
+            succeeded++;
+        } else {
+            failed++;
+        }
+        int done = succeeded + failed;
+        var elapsed = Duration.ofNanos(nowNanos - startedNanos);
+        double perMinute = elapsed.isZero() ? 0 : done * 60_000.0 / Math.max(1, elapsed.toMillis());
+        var line = new StringBuilder()
+                .append('[').append(done).append('/').append(total).append("] ")
+                .append("%.1f/min".formatted(perMinute));
+        if (done < total && perMinute > 0) {
+            line.append(", ETA ").append(format(Duration.ofSeconds(Math.round((total - done) * 60 / perMinute))));
+        }
+        if (failed > 0) {
+            line.append(", ").append(failed).append(" failed");
+        }
+        return line.toString();
+    }
+
+    synchronized int succeeded() {
+        return succeeded;
+    }
+
+    synchronized int failed() {
+        return failed;
+    }
+
+    Duration elapsed() {
+        return Duration.ofNanos(System.nanoTime() - startedNanos);
+    }
+
+    static String format(Duration duration) {
+        long seconds = duration.toSeconds();
+        if (seconds < 60) {
+            return seconds + "s";
+        }
+        if (seconds < 3600) {
+            return "%dm %02ds".formatted(seconds / 60, seconds % 60);
+        }
+        return "%dh %02dm".formatted(seconds / 3600, seconds % 3600 / 60);
+    }
+}
@@ -0,0 +1,226 @@
+package com.embabel.template.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs a task over every line of a JSONL file on virtual threads, writing one JSONL line per item as it completes.
+ * <p>
+ * Input lines are objects with a {@code content} field and an optional {@code id}, or bare JSON strings;
+ * items without an id are identified by their line number. Input is streamed, and at most {@code parallelism}
+ * items are read ahead of the tasks that have finished, so the input can be any size.
+ * <p>
+ * The output file is also the checkpoint. Each line records an item's id and a {@code status} of {@code ok}
+ * or {@code failed}, and is forced to disk before the next is written. Re-running on the same output skips items
+ * already recorded as {@code ok} and retries the rest; a line torn by a crash is cut off first.
+ */
+public final class JsonlBatch {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonlBatch.class);
+
+    public record Item(String id, String content) {
+    }
+
+    public record Report(int succeeded, int failed, int skipped, Duration elapsed) {
+
+        public String summary() {
+            return "%d succeeded, %d failed, %d skipped from an earlier run, in %s".formatted(
+                    succeeded, failed, skipped, BatchProgress.format(elapsed));
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final int parallelism;
+
+    public JsonlBatch(ObjectMapper objectMapper, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, was " + parallelism);
+        }
+        this.objectMapper = objectMapper;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Run the batch, blocking until every item has completed or the calling thread is interrupted.
+     *
+     * @param task     turns an item into a result, which is written under the {@code result} field
+     * @param progress receives a progress line, with throughput and ETA, after each item completes
+     */
+    public Report run(Path input, Path output, Function<Item, ?> task, Consumer<String> progress) throws IOException {
+        var done = recoverCheckpoint(output);
+        var progressTracker = new BatchProgress(countPending(input, done));
+        var permits = new Semaphore(parallelism);
+        int skipped = 0;
+
+        // Not a FileChannel: an interrupted task writing to one would close it for every other task
+        try (var out = new FileOutputStream(output.toFile(), true);
+             var executor = Executors.newVirtualThreadPerTaskExecutor();
+             var reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                var item = parse(line, lineNumber);
+                if (done.contains(item.id())) {
+                    skipped++;
+                    continue;
+                }
+                acquire(permits);
+                executor.submit(() -> {
+                    try {
+                        var record = execute(item, task);
+                        write(out, record);
+                        progress.accept(progressTracker.completed("ok".equals(record.get("status"))));
+                    } catch (IOException e) {
+                        logger.error("Could not record item {}: {}", item.id(), e.toString());
+                        progress.accept(progressTracker.completed(false));
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        } catch (CancellationException e) {
+            logger.warn("Batch interrupted; completed items are checkpointed in {}", output);
+            throw e;
+        }
+        return new Report(progressTracker.succeeded(), progressTracker.failed(), skipped, progressTracker.elapsed());
+    }
+
+    private LinkedHashMap<String, Object> execute(Item item, Function<Item, ?> task) {
+        var record = new LinkedHashMap<String, Object>();
+        record.put("id", item.id());
+        if (item.content() == null) {
+            record.put("status", "failed");
+            record.put("error", "Input line has no content");
+            return record;
+        }
+        var started = System.nanoTime();
+        try {
+            var result = task.apply(item);
+            record.put("status", "ok");
+            record.put("result", result);
+        } catch (RuntimeException e) {
+            logger.warn("Item {} failed: {}", item.id(), e.toString());
+            record.put("status", "failed");
+            record.put("error", e.toString());
+        }
+        record.put("elapsedMillis", Duration.ofNanos(System.nanoTime() - started).toMillis());
+        return record;
+    }
+
+    private void write(FileOutputStream out, Object record) throws IOException {
+        byte[] line = (objectMapper.writeValueAsString(record) + "\n").getBytes(StandardCharsets.UTF_8);
+        synchronized (out) {
+            out.write(line);
+            out.getFD().sync();
+        }
+    }
+
+    Item parse(String line, int lineNumber) {
+        var fallbackId = "line-" + lineNumber;
+        try {
+            JsonNode node = objectMapper.readTree(line);
+            if (node.isTextual()) {
+                return new Item(fallbackId, node.asText());
+            }
+            var id = node.path("id");
+            var content = node.path("content");
+            return new Item(
+                    id.isMissingNode() || id.isNull() ? fallbackId : id.asText(),
+                    content.isTextual() ? content.asText() : null);
+        } catch (JsonProcessingException e) {
+            return new Item(fallbackId, null);
+        }
+    }
+
+    /**
+     * Ids already completed in the output file. A partial last line, left by a crash mid-write, is truncated
+     * so that appending starts on a fresh line.
+     */
+    Set<String> recoverCheckpoint(Path output) throws IOException {
+        var done = new HashSet<String>();
+        if (!Files.exists(output)) {
+            return done;
+        }
+        try (var channel = FileChannel.open(output, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            long end = size;
+            var oneByte = ByteBuffer.allocate(1);
+            while (end > 0) {
+                oneByte.clear();
+                channel.read(oneByte, end - 1);
+                if (oneByte.get(0) == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < size) {
+                logger.warn("Truncating a partial line at the end of {}", output);
+                channel.truncate(end);
+            }
+        }
+        try (BufferedReader reader = Files.newBufferedReader(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    var node = objectMapper.readTree(line);
+                    if ("ok".equals(node.path("status").asText())) {
+                        done.add(node.path("id").asText());
+                    }
+                } catch (JsonProcessingException e) {
+                    // Not one of ours: leave it, and redo whatever it was
+                }
+            }
+        }
+        return done;
+    }
+
+    private int countPending(Path input, Set<String> done) throws IOException {
+        int pending = 0;
+        try (var reader = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (!line.isBlank() && !done.contains(parse(line, lineNumber).id())) {
+                    pending++;
+                }
+            }
+        }
+        return pending;
+    }
+
+    private static void acquire(Semaphore permits) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while waiting for a batch slot");
+        }
+    }
+}
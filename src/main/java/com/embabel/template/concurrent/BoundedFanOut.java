@@ -0,0 +1,84 @@
+package com.embabel.template.concurrent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Runs a function over a list of inputs on virtual threads, with at most
+ * {@code parallelism} invocations in flight at once.
+ * Results come back in input order. The first failure cancels the remaining work and is rethrown.
+ */
+public final class BoundedFanOut {
+
+    private BoundedFanOut() {
+    }
+
+    public static <T, R> List<R> map(List<T> inputs, int parallelism, Function<? super T, ? extends R> fn) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1, was " + parallelism);
+        }
+        if (inputs.isEmpty()) {
+            return List.of();
+        }
+        var permits = new Semaphore(parallelism);
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            var completion = new ExecutorCompletionService<Indexed<R>>(executor);
+            var futures = new ArrayList<Future<Indexed<R>>>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                final int index = i;
+                final T input = inputs.get(i);
+                futures.add(completion.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return new Indexed<>(index, fn.apply(input));
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            @SuppressWarnings("unchecked")
+            R[] results = (R[]) new Object[inputs.size()];
+            for (int done = 0; done < inputs.size(); done++) {
+                try {
+                    var result = completion.take().get();
+                    results[result.index()] = result.value();
+                } catch (ExecutionException e) {
+                    cancelAll(futures);
+                    throw propagate(e.getCause());
+                } catch (InterruptedException e) {
+                    cancelAll(futures);
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while waiting for fan-out results");
+                }
+            }
+            return Arrays.asList(results);
+        }
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        futures.forEach(f -> f.cancel(true));
+    }
+
+    static RuntimeException propagate(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new CompletionException(cause);
+    }
+
+    private record Indexed<R>(int index, R value) {
+    }
+}
@@ -0,0 +1,45 @@
+package com.embabel.template.concurrent;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * Two-stage pipeline over a list of inputs on virtual threads: a cheap load stage feeding an expensive process stage.
+ * At most {@code concurrency} items are processed at once, and loading runs at most {@code readAhead} items ahead of
+ * processing. So no more than {@code concurrency + readAhead} loaded items are held at any time, however many inputs
+ * there are. Results come back in input order.
+ */
+public final class BoundedPipeline {
+
+    private BoundedPipeline() {
+    }
+
+    public static <T, M, R> List<R> run(
+            List<T> inputs,
+            int concurrency,
+            int readAhead,
+            Function<? super T, ? extends M> load,
+            Function<? super M, ? extends R> process) {
+        if (concurrency < 1 || readAhead < 0) {
+            throw new IllegalArgumentException(
+                    "concurrency must be at least 1 and readAhead not negative, was " + concurrency + " and " + readAhead);
+        }
+        var processing = new Semaphore(concurrency);
+        return BoundedFanOut.map(inputs, concurrency + readAhead, input -> {
+            M loaded = load.apply(input);
+            try {
+                processing.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting to process " + input);
+            }
+            try {
+                return process.apply(loaded);
+            } finally {
+                processing.release();
+            }
+        });
+    }
+}
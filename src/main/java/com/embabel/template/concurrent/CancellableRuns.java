@@ -0,0 +1,108 @@
+package com.embabel.template.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Starts blocking work on its own virtual thread and hands back a future, so that thousands of runs can wait on
+ * models at once while only the small carrier pool of platform threads executes them.
+ * <p>
+ * Each run gets a {@link RunContext}. Cancelling the future, or the run reaching its deadline, cancels the context
+ * and interrupts the run's thread, which stops whatever it is waiting on: a model call, a limiter slot, a retry
+ * backoff, or the fan-out and hedged calls it is waiting for. A run past its deadline completes exceptionally with
+ * {@link DeadlineExceededException}. At most {@code maxInFlight} runs may be in progress; more are rejected.
+ */
+public final class CancellableRuns {
+
+    /**
+     * Fires deadlines; cancelled when a run completes first, so finished runs leave nothing scheduled.
+     */
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlineTimer();
+
+    private final int maxInFlight;
+    private final Semaphore slots;
+    private final String threadName;
+    private final AtomicLong started = new AtomicLong();
+
+    public CancellableRuns(String threadName, int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1, was " + maxInFlight);
+        }
+        this.maxInFlight = maxInFlight;
+        this.threadName = threadName;
+        this.slots = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @param timeout null for no deadline
+     * @return a future that fails with {@link RejectedExecutionException} if too many runs are in progress
+     */
+    public <T> CompletableFuture<T> start(Supplier<T> body, Duration timeout) {
+        var result = new CompletableFuture<T>();
+        if (!slots.tryAcquire()) {
+            result.completeExceptionally(new RejectedExecutionException("Too many runs in progress"));
+            return result;
+        }
+        var context = RunContext.start(timeout);
+        var thread = Thread.ofVirtual()
+                .name(threadName + "-" + started.incrementAndGet())
+                .unstarted(() -> {
+                    // Cancelled or past the deadline before it began: nobody is waiting for the work
+                    boolean abandoned = result.isDone() || context.isCancelled();
+                    T value = null;
+                    Throwable failure = null;
+                    try {
+                        if (!abandoned) {
+                            if (context.isExpired()) {
+                                throw new DeadlineExceededException(context.timeout());
+                            }
+                            value = context.call(body);
+                        }
+                    } catch (Throwable e) {
+                        failure = context.isExpired() ? new DeadlineExceededException(context.timeout()) : e;
+                    } finally {
+                        // Free the slot first, so that whoever sees the run complete also sees its slot free
+                        slots.release();
+                    }
+                    if (failure != null) {
+                        result.completeExceptionally(failure);
+                    } else if (!abandoned) {
+                        result.complete(value);
+                    }
+                });
+        ScheduledFuture<?> deadline = timeout == null ? null : DEADLINES.schedule(
+                () -> result.completeExceptionally(new DeadlineExceededException(timeout)),
+                timeout.toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, failure) -> {
+            if (deadline != null) {
+                deadline.cancel(false);
+            }
+            if (Thread.currentThread() != thread) {
+                // Cancelled or past the deadline: stop the run, or keep it from starting if it has not yet
+                context.cancel();
+                if (thread.isAlive()) {
+                    thread.interrupt();
+                }
+            }
+        });
+        thread.start();
+        return result;
+    }
+
+    public int inFlight() {
+        return maxInFlight - slots.availablePermits();
+    }
+
+    private static ScheduledThreadPoolExecutor deadlineTimer() {
+        var timer = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("run-deadlines").daemon().factory());
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
@@ -0,0 +1,13 @@
+package com.embabel.template.concurrent;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a run has used up the time it was given, by the run itself or by any work it started.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(Duration timeout) {
+        super("Deadline of " + timeout.toMillis() + "ms exceeded");
+    }
+}
@@ -0,0 +1,103 @@
+package com.embabel.template.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.function.Supplier;
+
+/**
+ * The deadline and cancellation state of one run, visible to everything the run does.
+ * <p>
+ * The context is held in an inheritable thread local, so it follows the run onto the virtual threads it starts
+ * for fan-out and hedging: every executor here creates a new virtual thread per task, and new threads inherit it.
+ * Long waits and model calls consult it through the static methods, which do nothing outside a run.
+ * Cancelling a context does not stop threads by itself: whoever cancels it also interrupts the run's thread.
+ */
+public final class RunContext {
+
+    private static final InheritableThreadLocal<RunContext> CURRENT = new InheritableThreadLocal<>();
+
+    private final Duration timeout;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+
+    private RunContext(Duration timeout) {
+        this.timeout = timeout;
+        this.deadlineNanos = timeout == null ? Long.MAX_VALUE : System.nanoTime() + timeout.toNanos();
+    }
+
+    /**
+     * @param timeout null for no deadline
+     */
+    public static RunContext start(Duration timeout) {
+        return new RunContext(timeout);
+    }
+
+    /**
+     * Run the body with this as the current context, in this thread and the threads it starts.
+     */
+    public <T> T call(Supplier<T> body) {
+        var previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return body.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public boolean isExpired() {
+        return timeout != null && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * @throws CancellationException      if the current run was cancelled
+     * @throws DeadlineExceededException if the current run is past its deadline
+     */
+    public static void checkActive() {
+        var context = CURRENT.get();
+        if (context == null) {
+            return;
+        }
+        if (context.cancelled) {
+            throw new CancellationException("Run cancelled");
+        }
+        if (context.isExpired()) {
+            throw new DeadlineExceededException(context.timeout);
+        }
+    }
+
+    /**
+     * Whether work may continue: false once the current run is cancelled or past its deadline.
+     */
+    public static boolean isActive() {
+        var context = CURRENT.get();
+        return context == null || !context.cancelled && !context.isExpired();
+    }
+
+    /**
+     * The time left to the current run's deadline, capped at {@code limitNanos}, for bounding a wait.
+     */
+    public static long remainingNanos(long limitNanos) {
+        var context = CURRENT.get();
+        if (context == null || context.timeout == null) {
+            return limitNanos;
+        }
+        return Math.max(0, Math.min(limitNanos, context.deadlineNanos - System.nanoTime()));
+    }
+}
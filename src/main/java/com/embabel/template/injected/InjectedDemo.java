@@ -1,21 +1,23 @@
 package com.embabel.template.injected;
 
 import com.embabel.agent.api.common.Ai;
+import com.embabel.template.llm.LlmCalls;
 import org.springframework.stereotype.Component;
 
 /**
  * Demonstrate injection of Embabel's OperationContext into a Spring component.
  *
- * @param ai Embabel AI helper, injected by Spring
+ * @param ai       Embabel AI helper, injected by Spring
+ * @param llmCalls our LLM call layer, which caches this fixed prompt's answer
  */
 @Component
-public record InjectedDemo(Ai ai) {
+public record InjectedDemo(Ai ai, LlmCalls llmCalls) {
 
     public record Animal(String name, String species) {
     }
 
     public Animal inventAnimal() {
-        return ai
+        return llmCalls.on(ai, "InjectedDemo.inventAnimal")
                 .withDefaultLlm()
                 .createObject("""
                                 You just woke up in a magical forest.
@@ -0,0 +1,102 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.BoundedFanOut;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.function.IntFunction;
+
+/**
+ * Generates candidates concurrently and keeps the best of the first to return. See {@link LlmCalls#bestOf}.
+ */
+final class BestOfN {
+
+    private static final Logger logger = LoggerFactory.getLogger(BestOfN.class);
+
+    private BestOfN() {
+    }
+
+    static <T> T pick(MeterRegistry registry, String action, int candidates, int scoreFirst,
+                      IntFunction<? extends T> candidate, CandidateScorer<? super T> scorer) {
+        if (candidates < 1 || scoreFirst < 1) {
+            throw new IllegalArgumentException("Need at least one candidate to generate and score");
+        }
+        if (candidates == 1) {
+            return candidate.apply(0);
+        }
+        int wanted = Math.min(scoreFirst, candidates);
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        var completion = new ExecutorCompletionService<T>(executor);
+        for (int i = 0; i < candidates; i++) {
+            int index = i;
+            completion.submit(() -> candidate.apply(index));
+        }
+        var returned = new ArrayList<T>(wanted);
+        RuntimeException failure = null;
+        int failed = 0;
+        try {
+            for (int done = 0; done < candidates && returned.size() < wanted; done++) {
+                try {
+                    returned.add(completion.take().get());
+                } catch (ExecutionException e) {
+                    failed++;
+                    var thrown = e.getCause() instanceof RuntimeException runtime
+                            ? runtime
+                            : new CompletionException(e.getCause());
+                    if (failure == null) {
+                        failure = thrown;
+                    } else {
+                        failure.addSuppressed(thrown);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for candidates for " + action);
+        } finally {
+            // Stragglers are not waited for: interrupting them cancels their model calls
+            executor.shutdownNow();
+        }
+        count(registry, action, "scored", returned.size());
+        count(registry, action, "failed", failed);
+        count(registry, action, "cancelled", candidates - returned.size() - failed);
+        if (returned.isEmpty()) {
+            throw failure;
+        }
+        if (failure != null) {
+            logger.warn("{}: {} of {} candidates failed, choosing from {}: {}",
+                    action, failed, candidates, returned.size(), failure.toString());
+        }
+        var scores = BoundedFanOut.map(returned, returned.size(), scorer::score);
+        int best = 0;
+        for (int i = 1; i < scores.size(); i++) {
+            if (scores.get(i) > scores.get(best)) {
+                best = i;
+            }
+        }
+        DistributionSummary.builder("llm.best.of.score")
+                .description("Score of the chosen candidate")
+                .tag("action", action)
+                .register(registry)
+                .record(scores.get(best));
+        return returned.get(best);
+    }
+
+    private static void count(MeterRegistry registry, String action, String result, int amount) {
+        Counter.builder("llm.best.of")
+                .description("Candidates generated for best-of-N actions")
+                .tag("action", action)
+                .tag("result", result)
+                .register(registry)
+                .increment(amount);
+    }
+}
@@ -0,0 +1,33 @@
+package com.embabel.template.llm;
+
+import java.util.function.Function;
+
+/**
+ * Rates candidate answers to one request so that the best can be kept; see {@link LlmCalls#bestOf}.
+ * Scores are only compared between candidates for the same request, so any scale will do, though the heuristics
+ * and {@link LlmJudge} here all score from 0 to 1.
+ * <p>
+ * A scorer runs once per candidate, concurrently for different candidates, and should be cheap next to generating one:
+ * local heuristics, or a judgement from a small model.
+ *
+ * @param <T> the candidate type, such as a story or a season plan
+ */
+@FunctionalInterface
+public interface CandidateScorer<T> {
+
+    double score(T candidate);
+
+    /**
+     * This scorer plus {@code weight} times the other.
+     */
+    default CandidateScorer<T> plus(double weight, CandidateScorer<? super T> other) {
+        return candidate -> score(candidate) + weight * other.score(candidate);
+    }
+
+    /**
+     * Score by a view of the candidate, such as its text.
+     */
+    default <S> CandidateScorer<S> on(Function<? super S, ? extends T> view) {
+        return candidate -> score(view.apply(candidate));
+    }
+}
@@ -0,0 +1,83 @@
+package com.embabel.template.llm;
+
+import java.time.Duration;
+
+/**
+ * Consecutive-failure circuit breaker for one endpoint.
+ * After {@code failureThreshold} calls in a row fail on a retryable error, however many attempts each made, the
+ * circuit opens and calls are rejected for {@code openDuration}. Then a single trial call is let through: success closes the circuit,
+ * failure opens it again.
+ */
+final class CircuitBreaker {
+
+    enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final String endpoint;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    CircuitBreaker(String endpoint, int failureThreshold, Duration openDuration) {
+        this.endpoint = endpoint;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * Admit a new call, or throw if the circuit is open.
+     *
+     * @return whether this call is the trial that decides whether a half-open circuit closes
+     */
+    synchronized boolean acquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+            long remaining = Math.max(0, openNanos - (System.nanoTime() - openedAt));
+            throw new CircuitOpenException(endpoint, Duration.ofNanos(remaining));
+        }
+        if (state == State.HALF_OPEN) {
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Let another call be the trial, when this one ended without reaching the endpoint.
+     */
+    synchronized void abandonTrial() {
+        trialInFlight = false;
+    }
+
+    /**
+     * Whether a call already admitted may make another attempt.
+     */
+    synchronized boolean allowsRetry() {
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            trialInFlight = false;
+        }
+    }
+
+    synchronized State state() {
+        return state;
+    }
+}
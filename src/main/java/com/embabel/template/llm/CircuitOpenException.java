@@ -0,0 +1,20 @@
+package com.embabel.template.llm;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling a model endpoint whose circuit breaker is open.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private final String endpoint;
+
+    public CircuitOpenException(String endpoint, Duration retryAfter) {
+        super("Circuit open for " + endpoint + ", failing fast for another " + retryAfter.toMillis() + "ms");
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,181 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.RunContext;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control for one model endpoint: request and token buckets plus an adaptive concurrency limit.
+ * <p>
+ * The buckets refill continuously at the configured per-minute rates and hold at most ten seconds' worth,
+ * so a quiet period does not turn into a burst the provider will reject. Token use is only known once a
+ * response arrives, so it is debited afterwards and the bucket may go into debt that later calls wait out.
+ * <p>
+ * The concurrency limit follows AIMD: it grows by about one per round of calls that fill it, and halves on
+ * an overload signal (429 or 503). Only calls that started after the last decrease can trigger another,
+ * so a burst of rejections from one round halves the limit once, not once per rejection.
+ * <p>
+ * Calls wait in arrival order for up to {@code maxWait}, then fail with {@link LlmLimitExceededException};
+ * a call made by a run with a {@link RunContext} deadline stops waiting at that deadline instead.
+ */
+final class EndpointLimiter {
+
+    private static final double BURST_SECONDS = 10;
+
+    private final String endpoint;
+    private final double requestsPerNano;
+    private final double requestCapacity;
+    private final double tokensPerNano;
+    private final double tokenCapacity;
+    private final int maxConcurrency;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock(true);
+    private final Condition changed = lock.newCondition();
+
+    private double limit;
+    private int inFlight;
+    private double requestBalance;
+    private double tokenBalance;
+    private long refilledAt = System.nanoTime();
+    private long decreasedAt = refilledAt;
+
+    EndpointLimiter(String endpoint, LlmResilienceProperties.Limit settings) {
+        this.endpoint = endpoint;
+        this.requestsPerNano = settings.requestsPerMinute() / 60e9;
+        this.requestCapacity = Math.max(1, settings.requestsPerMinute() * BURST_SECONDS / 60);
+        this.tokensPerNano = settings.tokensPerMinute() / 60e9;
+        this.tokenCapacity = settings.tokensPerMinute() * BURST_SECONDS / 60;
+        this.maxConcurrency = settings.maxConcurrency();
+        this.maxWaitNanos = settings.maxWait().toNanos();
+        this.limit = Math.min(settings.initialConcurrency(), maxConcurrency);
+        this.requestBalance = requestCapacity;
+        this.tokenBalance = tokenCapacity;
+    }
+
+    /**
+     * Wait for a slot and a request token.
+     *
+     * @return when the call was admitted, to pass back to {@link #release}
+     */
+    long acquire() {
+        // Never wait past the deadline of the run making the call
+        long deadline = System.nanoTime() + RunContext.remainingNanos(maxWaitNanos);
+        lock.lock();
+        try {
+            while (true) {
+                long now = System.nanoTime();
+                refill(now);
+                long waitNanos = waitNanos();
+                if (waitNanos == 0) {
+                    inFlight++;
+                    if (requestsPerNano > 0) {
+                        requestBalance--;
+                    }
+                    return now;
+                }
+                long remaining = deadline - now;
+                if (remaining <= 0) {
+                    RunContext.checkActive();
+                    throw new LlmLimitExceededException(endpoint, Duration.ofNanos(maxWaitNanos));
+                }
+                changed.awaitNanos(Math.min(remaining, waitNanos));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for a slot for " + endpoint);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Charge a retry of an admitted call against the request bucket, without waiting:
+     * the retry already waits out its backoff, and later calls pay off the debt.
+     */
+    void chargeRetry(long admittedAt, boolean overloaded) {
+        lock.lock();
+        try {
+            if (requestsPerNano > 0) {
+                requestBalance--;
+            }
+            if (overloaded) {
+                decrease(admittedAt);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void release(long admittedAt, boolean overloaded, long tokensUsed) {
+        lock.lock();
+        try {
+            if (inFlight-- >= (int) limit && !overloaded) {
+                limit = Math.min(maxConcurrency, limit + 1 / limit);
+            }
+            if (overloaded) {
+                decrease(admittedAt);
+            }
+            if (tokensPerNano > 0) {
+                tokenBalance -= tokensUsed;
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double limit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void decrease(long admittedAt) {
+        if (admittedAt - decreasedAt >= 0) {
+            limit = Math.max(1, limit / 2);
+            decreasedAt = System.nanoTime();
+        }
+    }
+
+    private void refill(long now) {
+        long elapsed = now - refilledAt;
+        refilledAt = now;
+        requestBalance = Math.min(requestCapacity, requestBalance + elapsed * requestsPerNano);
+        tokenBalance = Math.min(tokenCapacity, tokenBalance + elapsed * tokensPerNano);
+    }
+
+    /**
+     * How long until this call might be admitted: zero if it can go now.
+     * Waiting for a slot has no predictable end, so it waits for a release signal, re-checking periodically.
+     */
+    private long waitNanos() {
+        if (inFlight >= (int) limit) {
+            return TimeUnit.MILLISECONDS.toNanos(100);
+        }
+        long wait = 0;
+        if (requestsPerNano > 0 && requestBalance < 1) {
+            wait = (long) Math.ceil((1 - requestBalance) / requestsPerNano);
+        }
+        if (tokensPerNano > 0 && tokenBalance < 0) {
+            wait = Math.max(wait, (long) Math.ceil(-tokenBalance / tokensPerNano));
+        }
+        return wait;
+    }
+}
@@ -0,0 +1,250 @@
+package com.embabel.template.llm;
+
+import com.embabel.agent.api.common.Ai;
+import com.embabel.agent.api.common.PromptRunner;
+import com.embabel.common.ai.model.ByNameModelSelectionCriteria;
+import com.embabel.common.ai.model.ByRoleModelSelectionCriteria;
+import com.embabel.common.ai.model.FallbackByNameModelSelectionCriteria;
+import com.embabel.common.ai.model.LlmOptions;
+import com.embabel.common.ai.prompt.PromptContributor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * A single LLM call under construction. Obtain one from {@link LlmCalls#on(Ai, String)}.
+ */
+public final class LlmCall {
+
+    private final LlmCalls calls;
+    private final Ai ai;
+    private final String action;
+    private final List<PromptContributor> contributors = new ArrayList<>();
+    private LlmOptions options;
+    private boolean useDefaultLlm;
+    private Double temperature;
+    private boolean cacheable = true;
+    private boolean shared = true;
+
+    LlmCall(LlmCalls calls, Ai ai, String action) {
+        this.calls = calls;
+        this.ai = ai;
+        this.action = action;
+    }
+
+    public LlmCall withLlm(LlmOptions options) {
+        this.options = options;
+        this.useDefaultLlm = false;
+        return this;
+    }
+
+    public LlmCall withAutoLlm() {
+        this.options = null;
+        this.useDefaultLlm = false;
+        return this;
+    }
+
+    public LlmCall withDefaultLlm() {
+        this.options = null;
+        this.useDefaultLlm = true;
+        return this;
+    }
+
+    public LlmCall withTemperature(double temperature) {
+        this.temperature = temperature;
+        return this;
+    }
+
+    public LlmCall withPromptContributor(PromptContributor contributor) {
+        contributors.add(contributor);
+        return this;
+    }
+
+    /**
+     * Always call the model, whatever the cache configuration says.
+     */
+    public LlmCall uncached() {
+        this.cacheable = false;
+        return this;
+    }
+
+    /**
+     * Make a call of its own, neither served from the cache nor shared with an identical call in flight:
+     * for sampling several answers to one prompt.
+     */
+    public LlmCall independent() {
+        this.cacheable = false;
+        this.shared = false;
+        return this;
+    }
+
+    public <T> T createObject(String prompt, Class<T> outputClass) {
+        return createObject(RenderedPrompt.of(prompt), outputClass);
+    }
+
+    public <T> T createObject(RenderedPrompt prompt, Class<T> outputClass) {
+        var text = prompt.text();
+        recordPrompt(prompt);
+        return calls.execute(request(text, outputClass), outputClass, cacheable, shared,
+                () -> routed(text, model -> timed(model, true, () -> runner(model).createObject(text, outputClass))));
+    }
+
+    public String generateText(String prompt) {
+        return generateText(RenderedPrompt.of(prompt));
+    }
+
+    /**
+     * Under a {@link TokenSink} the response is streamed from the model and each chunk forwarded as it arrives;
+     * the complete text is still returned, cached and timed as usual.
+     */
+    public String generateText(RenderedPrompt prompt) {
+        var text = prompt.text();
+        recordPrompt(prompt);
+        var sink = TokenSinks.current();
+        if (sink == null) {
+            return calls.execute(request(text, String.class), String.class, cacheable, shared,
+                    () -> routed(text, model -> timed(model, false, () -> runner(model).generateText(text))));
+        }
+        var streamed = new StreamedText(action, sink);
+        var response = calls.execute(request(text, String.class), String.class, cacheable, shared,
+                () -> routed(text, model -> timed(model, false, () -> streamText(model, text, streamed.attempt()))));
+        streamed.finish(response);
+        return response;
+    }
+
+    /**
+     * Streams when the model is known by name: the routed model, or the default model for unrouted default and
+     * automatic calls. Calls with explicit options, or to a model that cannot stream, are made whole. Either way
+     * the call goes through the model's limiter, circuit breaker and retries.
+     */
+    private String streamText(String routedModel, String prompt, StreamedText.Attempt attempt) {
+        var model = routedModel != null ? routedModel : options == null ? calls.defaultLlm() : null;
+        if (!calls.textStreams().canStream(model)) {
+            return runner(routedModel).generateText(prompt);
+        }
+        // Blocking is cheap on a virtual thread, and an interrupt cancels the upstream stream
+        return calls.textStreams()
+                .generate(model, applyTemperature(LlmOptions.withModel(model)), contributors, prompt, attempt);
+    }
+
+    /**
+     * The prompt contributions and the template's static prefix come first and are the same on every call,
+     * so they are what a provider's prefix cache can reuse.
+     */
+    private void recordPrompt(RenderedPrompt prompt) {
+        int contributionTokens = contributionTokens();
+        calls.metrics().recordPrompt(action,
+                contributionTokens + prompt.staticPrefixLength() / TokenEstimates.CHARS_PER_TOKEN,
+                contributionTokens + TokenEstimates.estimate(prompt.text()));
+    }
+
+    private int contributionTokens() {
+        int tokens = 0;
+        for (var contributor : contributors) {
+            tokens += TokenEstimates.estimate(contributor.contribution());
+        }
+        return tokens;
+    }
+
+    private <T> T routed(String prompt, Function<String, T> call) {
+        if (options != null) {
+            // The caller chose the model
+            return call.apply(null);
+        }
+        return calls.router().call(action, contributionTokens() + TokenEstimates.estimate(prompt), call);
+    }
+
+    /**
+     * Time one attempt. Runs on the thread that calls the model, which may be a hedging thread.
+     */
+    private <T> T timed(String routedModel, boolean structured, Supplier<T> call) {
+        return calls.metrics().timeCall(action, modelTag(routedModel), structured, call);
+    }
+
+    /**
+     * The model for metrics: the routed model when there is one, otherwise how the model was requested.
+     */
+    private String modelTag(String routedModel) {
+        if (routedModel != null) {
+            return routedModel;
+        }
+        if (options != null) {
+            return "explicit";
+        }
+        return useDefaultLlm ? calls.defaultLlm() : "auto";
+    }
+
+    private LlmRequest request(String prompt, Class<?> outputType) {
+        return new LlmRequest(action, llmDescription(), List.copyOf(contributors), prompt, outputType);
+    }
+
+    /**
+     * The model choice as requested, before routing, so that a cached answer serves whichever model is chosen.
+     */
+    private String llmDescription() {
+        var description = new StringBuilder();
+        if (options != null) {
+            describe(options, description);
+        } else {
+            description.append(useDefaultLlm ? "default:" + calls.defaultLlm() : "auto");
+        }
+        if (temperature != null) {
+            description.append(";temperature=").append(temperature);
+        }
+        return description.toString();
+    }
+
+    /**
+     * The fields of explicit options that choose the model or shape its answer, so that the description is the same
+     * from one run to the next.
+     */
+    static void describe(LlmOptions options, StringBuilder description) {
+        var criteria = options.getCriteria();
+        description.append(switch (criteria) {
+            case null -> "auto";
+            case ByNameModelSelectionCriteria byName -> "model:" + byName.getName();
+            case ByRoleModelSelectionCriteria byRole -> "role:" + byRole.getRole();
+            case FallbackByNameModelSelectionCriteria fallback -> "models:" + String.join(",", fallback.getNames());
+            // The automatic and default criteria are singletons without fields
+            default -> criteria.getClass().getSimpleName();
+        });
+        option(description, "temperature", options.getTemperature());
+        option(description, "topP", options.getTopP());
+        option(description, "topK", options.getTopK());
+        option(description, "maxTokens", options.getMaxTokens());
+        option(description, "presencePenalty", options.getPresencePenalty());
+        option(description, "frequencyPenalty", options.getFrequencyPenalty());
+    }
+
+    private static void option(StringBuilder description, String name, Object value) {
+        if (value != null) {
+            description.append(';').append(name).append('=').append(value);
+        }
+    }
+
+    /**
+     * @param routedModel model chosen by the router, or null to use the options or selection as requested
+     */
+    private PromptRunner runner(String routedModel) {
+        PromptRunner runner;
+        if (options != null) {
+            runner = ai.withLlm(applyTemperature(options));
+        } else if (routedModel != null) {
+            runner = ai.withLlm(applyTemperature(LlmOptions.withModel(routedModel)));
+        } else if (useDefaultLlm) {
+            runner = temperature == null ? ai.withDefaultLlm() : ai.withLlm(LlmOptions.withDefaultLlm().withTemperature(temperature));
+        } else {
+            runner = temperature == null ? ai.withAutoLlm() : ai.withLlm(LlmOptions.withAutoLlm().withTemperature(temperature));
+        }
+        for (var contributor : contributors) {
+            runner = runner.withPromptContributor(contributor);
+        }
+        return runner;
+    }
+
+    private LlmOptions applyTemperature(LlmOptions options) {
+        return temperature == null ? options : options.withTemperature(temperature);
+    }
+}
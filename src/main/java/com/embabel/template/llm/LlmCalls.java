@@ -0,0 +1,115 @@
+package com.embabel.template.llm;
+
+import com.embabel.agent.api.common.Ai;
+import com.embabel.template.concurrent.RunContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Entry point for LLM calls made by our agents and components.
+ * Mirrors the parts of Embabel's prompt runner we use, and puts the response cache in front of the model,
+ * with identical requests made at the same time coalesced into one by {@link SingleFlight}.
+ * Calls that ask for the automatic or default model are routed by the {@link ModelRouter}.
+ * Text calls made under a {@link TokenSink} are streamed through {@link LlmTextStreams}.
+ * Actions wrap their body in {@link #action} so that {@link LlmMetrics} sees their latency alongside the calls they make.
+ */
+@Component
+public class LlmCalls {
+
+    private final LlmResponseCache cache;
+    private final SingleFlight flights;
+    private final ModelRouter router;
+    private final LlmMetrics metrics;
+    private final LlmTextStreams textStreams;
+    private final String defaultLlm;
+
+    public LlmCalls(
+            LlmResponseCache cache,
+            SingleFlight flights,
+            ModelRouter router,
+            LlmMetrics metrics,
+            LlmTextStreams textStreams,
+            @Value("${embabel.models.defaultLlm:}") String defaultLlm) {
+        this.cache = cache;
+        this.flights = flights;
+        this.router = router;
+        this.metrics = metrics;
+        this.textStreams = textStreams;
+        this.defaultLlm = defaultLlm;
+    }
+
+    /**
+     * Calls straight through to the model, for tests and tools that construct agents directly.
+     */
+    public static LlmCalls direct() {
+        return new LlmCalls(LlmResponseCache.disabled(), SingleFlight.disabled(), ModelRouter.disabled(),
+                LlmMetrics.detached(), LlmTextStreams.none(), "");
+    }
+
+    /**
+     * Start building a call on behalf of the given action.
+     *
+     * @param ai     Embabel AI helper, typically {@code context.ai()}
+     * @param action qualified action name, such as {@code OmCoachAgent.craftSeasonPlan}
+     */
+    public LlmCall on(Ai ai, String action) {
+        return new LlmCall(this, ai, action);
+    }
+
+    /**
+     * Run the body of an action, timing it. Wrap actions that make model calls, not those that only run other
+     * actions, which would count the time of those actions twice. A single call needs no wrapping: each model call
+     * is timed as {@code llm.call} in any case.
+     *
+     * @param action qualified action name, such as {@code OmCoachAgent.craftSeasonPlan}
+     */
+    public <T> T action(String action, Supplier<T> body) {
+        return metrics.timeAction(action, body);
+    }
+
+    /**
+     * Generate {@code candidates} answers concurrently and return the best of the first {@code scoreFirst} to arrive.
+     * The rest are cancelled as soon as those have arrived, so the wait is that for the fastest {@code scoreFirst}
+     * rather than for every candidate. Failed candidates are skipped while any succeed.
+     *
+     * @param action    qualified action name, such as {@code WriteAndReviewAgent.craftStory}
+     * @param candidate generates the candidate with the given index, from 0; calls it makes should be
+     *                  {@link LlmCall#independent()}, or identical candidates would be coalesced into one
+     */
+    public <T> T bestOf(String action, int candidates, int scoreFirst,
+                        IntFunction<? extends T> candidate, CandidateScorer<? super T> scorer) {
+        return BestOfN.pick(metrics.registry(), action, candidates, scoreFirst, candidate, scorer);
+    }
+
+    String defaultLlm() {
+        return defaultLlm;
+    }
+
+    ModelRouter router() {
+        return router;
+    }
+
+    LlmMetrics metrics() {
+        return metrics;
+    }
+
+    LlmTextStreams textStreams() {
+        return textStreams;
+    }
+
+    /**
+     * @param shared whether the call may be answered from the cache or by an identical call in flight
+     */
+    <T> T execute(LlmRequest request, Class<T> type, boolean cacheable, boolean shared, Supplier<T> call) {
+        // A cancelled or expired run starts no new calls; calls in flight are interrupted
+        RunContext.checkActive();
+        if (!shared) {
+            return call.get();
+        }
+        // Coalescing comes first, so that identical requests missing the cache together make one call
+        return flights.call(request, type, () -> cacheable ? cache.get(request, type, call) : call.get());
+    }
+}
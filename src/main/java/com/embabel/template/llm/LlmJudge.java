@@ -0,0 +1,81 @@
+package com.embabel.template.llm;
+
+import com.embabel.agent.api.common.Ai;
+import com.embabel.common.ai.model.LlmOptions;
+import com.embabel.template.concurrent.RunContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A {@link CandidateScorer} that asks a model, ideally a small and fast one, to mark each candidate against criteria.
+ * Marks run from 1 to 10 and are scored from 0 to 1. Judgements are cached like any other call, so a candidate
+ * seen before is not judged twice. A failed judgement scores 0.5, leaving the choice to the other scorers,
+ * unless the run was cancelled.
+ */
+public final class LlmJudge<T> implements CandidateScorer<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmJudge.class);
+
+    private static final double NEUTRAL = 0.5;
+
+    private static final PromptTemplate JUDGE = PromptTemplate.compile("""
+            Mark the candidate below from 1 (poor) to 10 (excellent) against these criteria:
+            {{criteria}}
+
+            Answer with the mark only.
+
+            # Candidate
+            {{candidate}}
+            """);
+
+    /**
+     * @param mark from 1 to 10
+     */
+    record Judgement(int mark) {
+    }
+
+    private final LlmCalls llmCalls;
+    private final Ai ai;
+    private final String action;
+    private final LlmOptions model;
+    private final String criteria;
+    private final Function<? super T, String> render;
+
+    /**
+     * @param action   qualified name of the action being judged for, such as {@code WriteAndReviewAgent.craftStory};
+     *                 judgements are recorded as {@code <action>.judge}
+     * @param model    the judge, such as {@code LlmOptions.withModel("bitnet")}
+     * @param criteria what makes a good candidate, one per line
+     * @param render   the candidate as the judge should read it
+     */
+    public LlmJudge(LlmCalls llmCalls, Ai ai, String action, LlmOptions model, String criteria,
+                    Function<? super T, String> render) {
+        this.llmCalls = llmCalls;
+        this.ai = ai;
+        this.action = action + ".judge";
+        this.model = model;
+        this.criteria = criteria;
+        this.render = render;
+    }
+
+    @Override
+    public double score(T candidate) {
+        try {
+            var judgement = llmCalls.on(ai, action)
+                    .withLlm(model.withTemperature(0.0))
+                    .createObject(JUDGE.render(Map.of(
+                            "criteria", criteria,
+                            "candidate", String.valueOf(render.apply(candidate)))), Judgement.class);
+            return (Math.clamp(judgement.mark(), 1, 10) - 1) / 9.0;
+        } catch (RuntimeException e) {
+            if (!RunContext.isActive() || Thread.currentThread().isInterrupted()) {
+                throw e;
+            }
+            logger.warn("{} could not judge a candidate, scoring it neutral: {}", action, e.toString());
+            return NEUTRAL;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.embabel.template.llm;
+
+import java.time.Duration;
+
+/**
+ * Thrown when a call to a model endpoint could not be admitted by its limiter within the maximum wait.
+ */
+public class LlmLimitExceededException extends RuntimeException {
+
+    private final String endpoint;
+
+    public LlmLimitExceededException(String endpoint, Duration maxWait) {
+        super("Could not get a slot for " + endpoint + " within " + maxWait.toMillis() + "ms");
+        this.endpoint = endpoint;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+}
@@ -0,0 +1,230 @@
+package com.embabel.template.llm;
+
+import com.embabel.common.ai.model.Llm;
+import com.embabel.common.ai.model.PerTokenPricingModel;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Micrometer instrumentation for agent actions and the LLM calls they make.
+ * Every meter is tagged by {@code agent} and {@code action}, split from qualified action names such as
+ * {@code OmCoachAgent.craftSeasonPlan}; call-level meters are also tagged by {@code model}.
+ * <ul>
+ *     <li>{@code agent.action}: latency of a whole action, with percentiles and a histogram; actions that only run
+ *     other actions are not timed themselves</li>
+ *     <li>{@code llm.call}: latency of each model call, including failover and hedged attempts</li>
+ *     <li>{@code llm.tokens}: prompt and completion tokens reported by the model, tagged by {@code type}</li>
+ *     <li>{@code llm.cost}: US dollars computed from the model's {@link PerTokenPricingModel}</li>
+ *     <li>{@code llm.parse.failures}: structured output the model returned but that could not be read</li>
+ *     <li>{@code llm.retries}: attempts repeated by the model's retry template, tagged by the failing {@code status}</li>
+ *     <li>{@code llm.prompt.tokens}: estimated prompt size of each call, tagged by {@code part}: {@code total}, or
+ *     {@code cacheable} for the leading part that is the same on every call and can be served from a prefix cache</li>
+ * </ul>
+ * Token, cost and retry figures are recorded by the retry listener on the thread that sends the request,
+ * which learns the action from the call in progress on that thread; calls made outside one are tagged {@code unknown}.
+ */
+@Component
+public class LlmMetrics {
+
+    static final String UNKNOWN = "unknown";
+
+    private static final double[] PERCENTILES = {0.5, 0.9, 0.95, 0.99};
+
+    private final MeterRegistry registry;
+    private final ObjectProvider<Llm> llms;
+    private final ThreadLocal<String> currentAction = new ThreadLocal<>();
+    private volatile Map<String, PerTokenPricingModel> pricing;
+
+    /**
+     * @param llms resolved lazily: the model beans are built with retry templates that report here
+     */
+    public LlmMetrics(MeterRegistry registry, ObjectProvider<Llm> llms) {
+        this.registry = registry;
+        this.llms = llms;
+    }
+
+    /**
+     * Metrics recorded into a private registry, for tests and tools that construct components directly.
+     */
+    public static LlmMetrics detached() {
+        return new LlmMetrics(new SimpleMeterRegistry(), null);
+    }
+
+    MeterRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Time a whole action.
+     *
+     * @param action qualified action name, such as {@code OmCoachAgent.craftSeasonPlan}
+     */
+    public <T> T timeAction(String action, Supplier<T> body) {
+        var sample = Timer.start(registry);
+        var outcome = "error";
+        try {
+            T result = body.get();
+            outcome = "success";
+            return result;
+        } finally {
+            sample.stop(timer("agent.action", "Latency of agent actions", action, null, outcome));
+        }
+    }
+
+    /**
+     * Time one model call, attributing anything the retry listener records meanwhile to this action.
+     *
+     * @param structured whether the call parses the answer into an object, so failures may be parse failures
+     */
+    <T> T timeCall(String action, String model, boolean structured, Supplier<T> call) {
+        var previous = currentAction.get();
+        currentAction.set(action);
+        var sample = Timer.start(registry);
+        var outcome = "error";
+        try {
+            T result = call.get();
+            outcome = "success";
+            return result;
+        } catch (RuntimeException e) {
+            if (structured && isParseFailure(e)) {
+                outcome = "parse_failure";
+                counter("llm.parse.failures", "Structured output that could not be parsed", action, model).increment();
+            }
+            throw e;
+        } finally {
+            sample.stop(timer("llm.call", "Latency of LLM calls", action, model, outcome));
+            if (previous == null) {
+                currentAction.remove();
+            } else {
+                currentAction.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Record token usage reported by a model, and its cost when the model declares per-token pricing.
+     */
+    void recordUsage(String model, long promptTokens, long completionTokens) {
+        var action = currentAction();
+        Counter.builder("llm.tokens")
+                .description("Tokens reported by the model")
+                .baseUnit("tokens")
+                .tags(tags(action, model))
+                .tag("type", "prompt")
+                .register(registry)
+                .increment(promptTokens);
+        Counter.builder("llm.tokens")
+                .description("Tokens reported by the model")
+                .baseUnit("tokens")
+                .tags(tags(action, model))
+                .tag("type", "completion")
+                .register(registry)
+                .increment(completionTokens);
+        var price = pricing().get(model);
+        if (price != null) {
+            Counter.builder("llm.cost")
+                    .description("Cost of LLM calls from declared per-token prices")
+                    .baseUnit("usd")
+                    .tags(tags(action, model))
+                    .register(registry)
+                    .increment((promptTokens * price.getUsdPer1mInputTokens()
+                            + completionTokens * price.getUsdPer1mOutputTokens()) / 1_000_000);
+        }
+    }
+
+    /**
+     * Record the estimated size of a prompt and of its cacheable prefix.
+     */
+    void recordPrompt(String action, int cacheableTokens, int totalTokens) {
+        promptTokens(action, "cacheable").record(cacheableTokens);
+        promptTokens(action, "total").record(totalTokens);
+    }
+
+    private DistributionSummary promptTokens(String action, String part) {
+        return DistributionSummary.builder("llm.prompt.tokens")
+                .description("Estimated prompt tokens per call")
+                .baseUnit("tokens")
+                .tags(tags(action, null))
+                .tag("part", part)
+                .register(registry);
+    }
+
+    void recordRetry(String model, Throwable failure) {
+        var status = RetryClassifier.statusCode(failure);
+        Counter.builder("llm.retries")
+                .description("Attempts repeated by the retry policy")
+                .tags(tags(currentAction(), model))
+                .tag("status", status == null ? "none" : status.toString())
+                .register(registry)
+                .increment();
+    }
+
+    private String currentAction() {
+        var action = currentAction.get();
+        return action == null ? UNKNOWN : action;
+    }
+
+    private Timer timer(String name, String description, String action, String model, String outcome) {
+        return Timer.builder(name)
+                .description(description)
+                .tags(tags(action, model))
+                .tag("outcome", outcome)
+                .publishPercentiles(PERCENTILES)
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    private Counter counter(String name, String description, String action, String model) {
+        return Counter.builder(name)
+                .description(description)
+                .tags(tags(action, model))
+                .register(registry);
+    }
+
+    /**
+     * Tags for a qualified action name, and the model when there is one.
+     */
+    static String[] tags(String action, String model) {
+        int dot = action.indexOf('.');
+        var agent = dot < 0 ? UNKNOWN : action.substring(0, dot);
+        var name = dot < 0 ? action : action.substring(dot + 1);
+        return model == null
+                ? new String[]{"agent", agent, "action", name}
+                : new String[]{"agent", agent, "action", name, "model", model};
+    }
+
+    private Map<String, PerTokenPricingModel> pricing() {
+        var byModel = pricing;
+        if (byModel == null) {
+            var found = new HashMap<String, PerTokenPricingModel>();
+            if (llms != null) {
+                llms.forEach(llm -> {
+                    if (llm.getPricingModel() instanceof PerTokenPricingModel perToken) {
+                        found.put(llm.getName(), perToken);
+                    }
+                });
+            }
+            byModel = pricing = Map.copyOf(found);
+        }
+        return byModel;
+    }
+
+    private static boolean isParseFailure(Throwable failure) {
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof JsonProcessingException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
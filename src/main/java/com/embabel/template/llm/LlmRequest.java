@@ -0,0 +1,52 @@
+package com.embabel.template.llm;
+
+import com.embabel.common.ai.prompt.PromptContributor;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Everything that determines the response to an LLM call.
+ *
+ * @param action       qualified name of the calling action, such as {@code OmCoachAgent.craftSeasonPlan}
+ * @param llm          description of the model choice and its options
+ * @param contributors prompt contributors such as personas
+ * @param prompt       the prompt text
+ * @param outputType   the type the response is converted to
+ */
+public record LlmRequest(
+        String action,
+        String llm,
+        List<PromptContributor> contributors,
+        String prompt,
+        Class<?> outputType
+) {
+
+    /**
+     * Stable content hash identifying equivalent requests. The action is deliberately excluded:
+     * two actions sending the same prompt to the same model get the same answer.
+     */
+    public String key() {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            update(digest, llm);
+            for (var contributor : contributors) {
+                update(digest, contributor.contribution());
+            }
+            update(digest, prompt);
+            update(digest, outputType.getName());
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is always available", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        // Separator so that ("ab", "c") and ("a", "bc") hash differently
+        digest.update((byte) 0);
+    }
+}
@@ -0,0 +1,330 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.RunContext;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.ResponseEntity;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.RetryListener;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link RetryTemplate} each model bean hands to Spring AI.
+ * Retries back off exponentially with random jitter, so callers that failed together do not retry in lockstep.
+ * Only retryable failures are retried, and no attempt starts after the call's deadline; an attempt still in flight
+ * when the deadline passes is interrupted, so the deadline bounds the whole call and not only when retries stop.
+ * Every model on the same endpoint shares one {@link CircuitBreaker}: while it is open, calls fail fast
+ * with {@link CircuitOpenException} instead of queueing up behind a degraded service. The breaker counts calls,
+ * not attempts, so one call retrying a burst of 503s counts as one failure.
+ * They also share one {@link EndpointLimiter}, which holds calls back to the endpoint's rate and token quotas
+ * and adapts how many run at once to the overload signals the endpoint sends.
+ * Streamed calls, which Spring AI makes without the template, are run through it by {@link LlmTextStreams}.
+ * Configured by {@link LlmResilienceProperties}.
+ */
+@Component
+@EnableConfigurationProperties(LlmResilienceProperties.class)
+public class LlmResilience {
+
+    /**
+     * Fires call deadlines; cancelled when a call ends first, so finished calls leave nothing scheduled.
+     */
+    private static final ScheduledThreadPoolExecutor DEADLINES = deadlineTimer();
+
+    private final LlmResilienceProperties properties;
+    private final MeterRegistry registry;
+    private final LlmMetrics metrics;
+    private final Map<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final Map<String, EndpointLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<String, RetryTemplate> templates = new ConcurrentHashMap<>();
+
+    public LlmResilience(LlmResilienceProperties properties, MeterRegistry registry, LlmMetrics metrics) {
+        this.properties = properties;
+        this.registry = registry;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Retry template for one model.
+     *
+     * @param model    model name, used to look up per-model overrides
+     * @param endpoint base URL of the service, which identifies the circuit breaker and limiter
+     */
+    public RetryTemplate retryTemplate(String model, String endpoint) {
+        var policy = properties.policyFor(model);
+        var circuitBreaker = circuitBreaker(endpoint);
+
+        var backOff = new ExponentialRandomBackOffPolicy();
+        backOff.setInitialInterval(policy.initialInterval().toMillis());
+        backOff.setMultiplier(policy.multiplier());
+        backOff.setMaxInterval(policy.maxInterval().toMillis());
+
+        var template = new RetryTemplate();
+        template.setBackOffPolicy(backOff);
+        template.setRetryPolicy(new LlmRetryPolicy(
+                policy.maxAttempts(), policy.retryableStatusCodes(), policy.deadline(), circuitBreaker));
+        // The deadline covers the wait for a slot as well as the attempts
+        template.registerListener(new DeadlineListener(policy.deadline()));
+        // Check the circuit first, so calls to a failing endpoint are rejected without waiting for a slot
+        template.registerListener(new CircuitBreakerListener(circuitBreaker, policy.retryableStatusCodes()));
+        template.registerListener(new LimiterListener(limiter(endpoint)));
+        template.registerListener(new MetricsListener(model, metrics));
+        templates.put(model, template);
+        return template;
+    }
+
+    /**
+     * The template built for a model, or null if it has none.
+     */
+    RetryTemplate retryTemplateFor(String model) {
+        return model == null ? null : templates.get(model);
+    }
+
+    CircuitBreaker circuitBreaker(String endpoint) {
+        return circuitBreakers.computeIfAbsent(endpoint, key -> {
+            var circuitBreaker = new CircuitBreaker(key,
+                    properties.circuit().failureThreshold(), properties.circuit().openDuration());
+            Gauge.builder("llm.circuit.open", circuitBreaker, cb -> cb.state() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                    .tag("endpoint", key)
+                    .register(registry);
+            return circuitBreaker;
+        });
+    }
+
+    EndpointLimiter limiter(String endpoint) {
+        return limiters.computeIfAbsent(endpoint, key -> {
+            var host = URI.create(key).getHost();
+            var limiter = new EndpointLimiter(key, properties.limitFor(host != null ? host : key));
+            Gauge.builder("llm.limiter.limit", limiter, EndpointLimiter::limit)
+                    .tag("endpoint", key)
+                    .register(registry);
+            Gauge.builder("llm.limiter.in.flight", limiter, EndpointLimiter::inFlight)
+                    .tag("endpoint", key)
+                    .register(registry);
+            return limiter;
+        });
+    }
+
+    /**
+     * Interrupts the calling thread if the call is still going at its deadline, which stops the attempt in flight or
+     * the backoff before the next one; the retry policy then lets no further attempt start.
+     */
+    private record DeadlineListener(Duration deadline) implements RetryListener {
+
+        private static final String WATCHDOG = "llm.deadline.watchdog";
+
+        @Override
+        public <T, E extends Throwable> boolean open(RetryContext context, RetryCallback<T, E> callback) {
+            context.setAttribute(WATCHDOG, new Watchdog(Thread.currentThread(), deadline));
+            return true;
+        }
+
+        @Override
+        public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            if (context.getAttribute(WATCHDOG) instanceof Watchdog watchdog) {
+                watchdog.disarm();
+            }
+        }
+    }
+
+    /**
+     * Firing and disarming hold the watchdog's lock, so an interrupt is either sent before the call ends, and cleared
+     * by {@link #disarm}, or not at all: it never lands on the thread after the call has returned.
+     */
+    static final class Watchdog {
+
+        private final Thread caller;
+        private final ScheduledFuture<?> timer;
+        private boolean armed = true;
+
+        Watchdog(Thread caller, Duration deadline) {
+            this.caller = caller;
+            this.timer = DEADLINES.schedule(this::fire, deadline.toNanos(), TimeUnit.NANOSECONDS);
+        }
+
+        private synchronized void fire() {
+            if (armed) {
+                armed = false;
+                caller.interrupt();
+            }
+        }
+
+        /**
+         * Called on the calling thread when the call ends; waits for a firing in progress to finish.
+         */
+        void disarm() {
+            synchronized (this) {
+                if (armed) {
+                    armed = false;
+                    timer.cancel(false);
+                    return;
+                }
+            }
+            if (RunContext.isActive()) {
+                // Clear the interrupt this watchdog sent, unless the run is being stopped as well
+                Thread.interrupted();
+            }
+        }
+    }
+
+    /**
+     * Counts each call once towards the circuit, by how it ended: a call that made several attempts and failed
+     * on a retryable error is one failure, not one per attempt.
+     */
+    private record CircuitBreakerListener(CircuitBreaker circuitBreaker, Set<Integer> retryableStatusCodes)
+            implements RetryListener {
+
+        private static final String TRIAL = "llm.circuit.trial";
+        private static final String RETRYABLE = "llm.circuit.retryable";
+
+        @Override
+        public <T, E extends Throwable> boolean open(RetryContext context, RetryCallback<T, E> callback) {
+            if (circuitBreaker.acquire()) {
+                context.setAttribute(TRIAL, true);
+            }
+            return true;
+        }
+
+        @Override
+        public <T, E extends Throwable> void onSuccess(RetryContext context, RetryCallback<T, E> callback, T result) {
+            context.removeAttribute(TRIAL);
+            circuitBreaker.onSuccess();
+        }
+
+        @Override
+        public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            if (failure != null && context.getAttribute(RETRYABLE) instanceof Boolean retryable) {
+                if (retryable) {
+                    circuitBreaker.onFailure();
+                } else {
+                    // The service answered and rejected the request on its merits, so it is healthy
+                    circuitBreaker.onSuccess();
+                }
+            } else if (context.hasAttribute(TRIAL)) {
+                // Rejected before any attempt reached the endpoint
+                circuitBreaker.abandonTrial();
+            }
+        }
+
+        @Override
+        public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            // Judged when the call ends, by its last attempt
+            context.setAttribute(RETRYABLE, RetryClassifier.isRetryable(failure, retryableStatusCodes));
+        }
+    }
+
+    private record LimiterListener(EndpointLimiter limiter) implements RetryListener {
+
+        private static final String ADMITTED = "llm.limiter.admitted";
+        private static final String OVERLOADED = "llm.limiter.overloaded";
+        private static final String TOKENS = "llm.limiter.tokens";
+
+        @Override
+        public <T, E extends Throwable> boolean open(RetryContext context, RetryCallback<T, E> callback) {
+            context.setAttribute(ADMITTED, limiter.acquire());
+            return true;
+        }
+
+        @Override
+        public <T, E extends Throwable> void onSuccess(RetryContext context, RetryCallback<T, E> callback, T result) {
+            context.removeAttribute(OVERLOADED);
+            var usage = usage(result);
+            context.setAttribute(TOKENS, usage == null ? 0L : usage.totalTokens());
+        }
+
+        @Override
+        public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            boolean overloaded = RetryClassifier.isOverload(failure);
+            context.setAttribute(OVERLOADED, overloaded);
+            limiter.chargeRetry((long) context.getAttribute(ADMITTED), overloaded);
+        }
+
+        @Override
+        public <T, E extends Throwable> void close(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            // Called even when open() never ran or threw, so only release what was acquired
+            if (context.hasAttribute(ADMITTED)) {
+                var tokens = (Long) context.getAttribute(TOKENS);
+                limiter.release((long) context.getAttribute(ADMITTED),
+                        Boolean.TRUE.equals(context.getAttribute(OVERLOADED)),
+                        tokens == null ? 0 : tokens);
+            }
+        }
+
+    }
+
+    /**
+     * Records token usage, and a retry whenever an attempt follows a failed one, tagged by that failure.
+     */
+    private record MetricsListener(String model, LlmMetrics metrics) implements RetryListener {
+
+        private static final String FAILURE = "llm.metrics.failure";
+
+        @Override
+        public <T, E extends Throwable> void onSuccess(RetryContext context, RetryCallback<T, E> callback, T result) {
+            recordRetry(context);
+            var usage = usage(result);
+            if (usage != null) {
+                metrics.recordUsage(model, usage.promptTokens(), usage.completionTokens());
+            }
+        }
+
+        @Override
+        public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable failure) {
+            recordRetry(context);
+            context.setAttribute(FAILURE, failure);
+        }
+
+        private void recordRetry(RetryContext context) {
+            if (context.getAttribute(FAILURE) instanceof Throwable previous) {
+                metrics.recordRetry(model, previous);
+                context.removeAttribute(FAILURE);
+            }
+        }
+    }
+
+    private record Usage(long promptTokens, long completionTokens) {
+
+        long totalTokens() {
+            return promptTokens + completionTokens;
+        }
+    }
+
+    /**
+     * Token usage of a whole call's response, or of a streamed call, or null if the result does not say.
+     */
+    private static Usage usage(Object result) {
+        if (result instanceof ResponseEntity<?> entity
+                && entity.getBody() instanceof OpenAiApi.ChatCompletion completion
+                && completion.usage() != null) {
+            var usage = completion.usage();
+            return new Usage(orZero(usage.promptTokens()), orZero(usage.completionTokens()));
+        }
+        if (result instanceof LlmTextStreams.StreamedResponse streamed) {
+            return new Usage(streamed.promptTokens(), streamed.completionTokens());
+        }
+        return null;
+    }
+
+    private static long orZero(Integer tokens) {
+        return tokens == null ? 0 : tokens;
+    }
+
+    private static ScheduledThreadPoolExecutor deadlineTimer() {
+        var timer = new ScheduledThreadPoolExecutor(1, Thread.ofPlatform().name("llm-call-deadlines").daemon().factory());
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
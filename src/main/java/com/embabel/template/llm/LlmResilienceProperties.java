@@ -0,0 +1,124 @@
+package com.embabel.template.llm;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Retry, circuit breaking and rate limiting settings for model endpoints, bound from {@code llm.resilience.*}.
+ * Settings under {@code models.<name>} override {@code defaults} for that model only, and settings under
+ * {@code endpoint-limits[<host>]} override {@code limit} for that host only; anything they leave unset is inherited.
+ *
+ * @param defaults       retry policy for every model without its own override
+ * @param models         per-model overrides, keyed by model name such as {@code mercury}
+ * @param circuit        circuit breaker settings, applied to each endpoint separately
+ * @param limit          admission limits for every endpoint without its own override
+ * @param endpointLimits per-endpoint overrides, keyed by host such as {@code api.inceptionlabs.ai}
+ */
+@ConfigurationProperties("llm.resilience")
+public record LlmResilienceProperties(
+        Policy defaults,
+        Map<String, Policy> models,
+        @DefaultValue Circuit circuit,
+        Limit limit,
+        Map<String, Limit> endpointLimits
+) {
+
+    public LlmResilienceProperties {
+        defaults = Policy.DEFAULTS.overriddenBy(defaults);
+        models = models == null ? Map.of() : Map.copyOf(models);
+        limit = Limit.DEFAULTS.overriddenBy(limit);
+        endpointLimits = endpointLimits == null ? Map.of() : Map.copyOf(endpointLimits);
+    }
+
+    public Policy policyFor(String model) {
+        return defaults.overriddenBy(models.get(model));
+    }
+
+    public Limit limitFor(String host) {
+        return limit.overriddenBy(endpointLimits.get(host));
+    }
+
+    /**
+     * @param maxAttempts          attempts in total, including the first
+     * @param initialInterval      backoff before the first retry
+     * @param multiplier           backoff growth per retry; each wait is drawn at random up to this factor larger
+     * @param maxInterval          cap on a single backoff
+     * @param deadline             no attempt starts once this much time has passed since the call began, and one in
+     *                             flight then is interrupted
+     * @param retryableStatusCodes HTTP statuses worth retrying; other statuses fail immediately
+     */
+    public record Policy(
+            Integer maxAttempts,
+            Duration initialInterval,
+            Double multiplier,
+            Duration maxInterval,
+            Duration deadline,
+            Set<Integer> retryableStatusCodes
+    ) {
+
+        static final Policy DEFAULTS = new Policy(
+                4,
+                Duration.ofMillis(500),
+                2.0,
+                Duration.ofSeconds(10),
+                Duration.ofSeconds(60),
+                Set.of(408, 425, 429, 500, 502, 503, 504));
+
+        Policy overriddenBy(Policy override) {
+            if (override == null) {
+                return this;
+            }
+            return new Policy(
+                    override.maxAttempts != null ? override.maxAttempts : maxAttempts,
+                    override.initialInterval != null ? override.initialInterval : initialInterval,
+                    override.multiplier != null ? override.multiplier : multiplier,
+                    override.maxInterval != null ? override.maxInterval : maxInterval,
+                    override.deadline != null ? override.deadline : deadline,
+                    override.retryableStatusCodes != null ? override.retryableStatusCodes : retryableStatusCodes);
+        }
+    }
+
+    /**
+     * @param failureThreshold consecutive retryable failures that open the circuit
+     * @param openDuration     how long an open circuit rejects calls before letting a single trial call through
+     */
+    public record Circuit(
+            @DefaultValue("5") int failureThreshold,
+            @DefaultValue("30s") Duration openDuration
+    ) {
+    }
+
+    /**
+     * @param requestsPerMinute  sustained request rate; 0 for no limit
+     * @param tokensPerMinute    sustained prompt plus completion tokens; 0 for no limit
+     * @param initialConcurrency concurrent calls allowed at startup, before the limit adapts
+     * @param maxConcurrency     ceiling for the adaptive concurrency limit
+     * @param maxWait            longest a call waits for admission before failing
+     */
+    public record Limit(
+            Integer requestsPerMinute,
+            Integer tokensPerMinute,
+            Integer initialConcurrency,
+            Integer maxConcurrency,
+            Duration maxWait
+    ) {
+
+        static final Limit DEFAULTS = new Limit(0, 0, 8, 32, Duration.ofSeconds(30));
+
+        Limit overriddenBy(Limit override) {
+            if (override == null) {
+                return this;
+            }
+            return new Limit(
+                    override.requestsPerMinute != null ? override.requestsPerMinute : requestsPerMinute,
+                    override.tokensPerMinute != null ? override.tokensPerMinute : tokensPerMinute,
+                    override.initialConcurrency != null ? override.initialConcurrency : initialConcurrency,
+                    override.maxConcurrency != null ? override.maxConcurrency : maxConcurrency,
+                    override.maxWait != null ? override.maxWait : maxWait);
+        }
+    }
+}
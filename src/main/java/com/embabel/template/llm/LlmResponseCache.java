@@ -0,0 +1,237 @@
+package com.embabel.template.llm;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Two-tier cache of LLM responses keyed on {@link LlmRequest#key()}.
+ * The memory tier is bounded by entry count and time to live. The disk tier stores one JSON file per key
+ * under {@code llm.cache.directory} so that responses survive restarts; set it empty to keep the cache in memory only.
+ * It is bounded by {@code llm.cache.max-disk-size}: once the files written are over it, a sweep deletes expired
+ * entries and then the oldest written until the tier is back under nine tenths of it. The first write also sweeps,
+ * to take stock of what an earlier run left behind.
+ * Actions listed in {@code llm.cache.excluded-actions} always go to the model, for creative calls where
+ * a repeated answer is not wanted.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    private static final String METRIC = "llm.response.cache";
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final Path directory;
+    private final long maxDiskBytes;
+    /**
+     * Bytes in the disk tier as of the last sweep plus those written since, or -1 before the first sweep.
+     */
+    private final AtomicLong diskBytes = new AtomicLong(-1);
+    private final Set<String> excludedActions;
+    private final ObjectMapper objectMapper;
+    private final Cache<String, Object> memory;
+
+    private final Counter diskHits;
+    private final Counter diskMisses;
+    private final Counter diskEvictions;
+    private final Counter bytesRead;
+    private final Counter bytesWritten;
+
+    public LlmResponseCache(
+            @Value("${llm.cache.enabled:true}") boolean enabled,
+            @Value("${llm.cache.max-entries:1000}") long maxEntries,
+            @Value("${llm.cache.ttl:24h}") Duration ttl,
+            @Value("${llm.cache.directory:${java.io.tmpdir}/embabel-llm-cache}") String directory,
+            @Value("${llm.cache.max-disk-size:256MB}") DataSize maxDiskSize,
+            @Value("${llm.cache.excluded-actions:}") List<String> excludedActions,
+            ObjectMapper objectMapper,
+            MeterRegistry registry) {
+        this.enabled = enabled;
+        this.ttl = ttl;
+        this.directory = directory.isBlank() ? null : Path.of(directory);
+        this.maxDiskBytes = maxDiskSize.toBytes();
+        this.excludedActions = Set.copyOf(excludedActions);
+        this.objectMapper = objectMapper.copy()
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(registry, memory, METRIC);
+        this.diskHits = Counter.builder(METRIC + ".disk").tag("result", "hit").register(registry);
+        this.diskMisses = Counter.builder(METRIC + ".disk").tag("result", "miss").register(registry);
+        this.diskEvictions = Counter.builder(METRIC + ".disk.evictions").register(registry);
+        this.bytesRead = Counter.builder(METRIC + ".disk.bytes").tag("direction", "read").baseUnit("bytes").register(registry);
+        this.bytesWritten = Counter.builder(METRIC + ".disk.bytes").tag("direction", "written").baseUnit("bytes").register(registry);
+        Gauge.builder(METRIC + ".hit.ratio", this, LlmResponseCache::hitRatio).register(registry);
+    }
+
+    /**
+     * A cache that never stores anything, for tests and tools that call agents directly.
+     */
+    public static LlmResponseCache disabled() {
+        return new LlmResponseCache(false, 0, Duration.ZERO, "", DataSize.ofBytes(0), List.of(), new ObjectMapper(),
+                new SimpleMeterRegistry());
+    }
+
+    public boolean isCacheable(LlmRequest request) {
+        return enabled && !excludedActions.contains(request.action());
+    }
+
+    /**
+     * Return the cached response to this request, or call the loader and cache its result.
+     * The loader runs outside any cache lock, so a slow model call never blocks other keys.
+     */
+    public <T> T get(LlmRequest request, Class<T> type, Supplier<T> loader) {
+        if (!isCacheable(request)) {
+            return loader.get();
+        }
+        var key = request.key();
+        var cached = memory.getIfPresent(key);
+        if (cached != null) {
+            return type.cast(cached);
+        }
+        T value = readFromDisk(key, type);
+        if (value == null) {
+            value = loader.get();
+            if (value == null) {
+                return null;
+            }
+            writeToDisk(key, value);
+        }
+        memory.put(key, value);
+        return value;
+    }
+
+    double hitRatio() {
+        var stats = memory.stats();
+        long requests = stats.requestCount();
+        return requests == 0 ? 0.0 : (stats.hitCount() + diskHits.count()) / requests;
+    }
+
+    private <T> T readFromDisk(String key, Class<T> type) {
+        if (directory == null) {
+            return null;
+        }
+        var file = fileFor(key);
+        try {
+            if (Files.getLastModifiedTime(file).toInstant().plus(ttl).isBefore(Instant.now())) {
+                Files.deleteIfExists(file);
+                diskEvictions.increment();
+                diskMisses.increment();
+                return null;
+            }
+            byte[] bytes = Files.readAllBytes(file);
+            T value = objectMapper.readValue(bytes, type);
+            diskHits.increment();
+            bytesRead.increment(bytes.length);
+            return value;
+        } catch (NoSuchFileException e) {
+            diskMisses.increment();
+            return null;
+        } catch (IOException e) {
+            logger.warn("Ignoring unreadable LLM cache entry {}: {}", file, e.getMessage());
+            diskMisses.increment();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Object value) {
+        if (directory == null) {
+            return;
+        }
+        var file = fileFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            byte[] bytes = objectMapper.writeValueAsBytes(value);
+            var temp = Files.createTempFile(file.getParent(), key, ".tmp");
+            Files.write(temp, bytes);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            bytesWritten.increment(bytes.length);
+        } catch (IOException e) {
+            logger.warn("Could not write LLM cache entry {}: {}", file, e.getMessage());
+            return;
+        }
+        long total = diskBytes.get() < 0 ? -1 : diskBytes.addAndGet(file.toFile().length());
+        if (total < 0 || total > maxDiskBytes) {
+            sweep();
+        }
+    }
+
+    /**
+     * Deletes expired disk entries, then the oldest written until the tier is under nine tenths of its bound.
+     */
+    synchronized void sweep() {
+        record Entry(Path file, Instant written, long size) {
+        }
+        var entries = new ArrayList<Entry>();
+        try (var files = Files.find(directory, 2,
+                (path, attributes) -> attributes.isRegularFile() && path.toString().endsWith(".json"))) {
+            files.forEach(file -> {
+                try {
+                    var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    entries.add(new Entry(file, attributes.lastModifiedTime().toInstant(), attributes.size()));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            logger.warn("Could not sweep the LLM cache directory {}: {}", directory, e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparing(Entry::written));
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        long target = maxDiskBytes / 10 * 9;
+        var expired = Instant.now().minus(ttl);
+        for (var entry : entries) {
+            if (total <= target && !entry.written().isBefore(expired)) {
+                // Everything after is newer still
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.file());
+                total -= entry.size();
+                diskEvictions.increment();
+            } catch (IOException e) {
+                logger.warn("Could not evict LLM cache entry {}: {}", entry.file(), e.getMessage());
+            }
+        }
+        diskBytes.set(total);
+    }
+
+    private Path fileFor(String key) {
+        return directory.resolve(key.substring(0, 2)).resolve(key + ".json");
+    }
+}
@@ -0,0 +1,48 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.RunContext;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Retries a model call while attempts remain, the last failure is retryable, neither the call's deadline nor that
+ * of the run making it has passed, and the endpoint's circuit is still closed.
+ */
+final class LlmRetryPolicy extends SimpleRetryPolicy {
+
+    private static final String STARTED = "llm.started";
+
+    private final Set<Integer> retryableStatusCodes;
+    private final long deadlineNanos;
+    private final CircuitBreaker circuitBreaker;
+
+    LlmRetryPolicy(int maxAttempts, Set<Integer> retryableStatusCodes, Duration deadline, CircuitBreaker circuitBreaker) {
+        super(maxAttempts);
+        this.retryableStatusCodes = Set.copyOf(retryableStatusCodes);
+        this.deadlineNanos = deadline.toNanos();
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    @Override
+    public RetryContext open(RetryContext parent) {
+        var context = super.open(parent);
+        context.setAttribute(STARTED, System.nanoTime());
+        return context;
+    }
+
+    @Override
+    public boolean canRetry(RetryContext context) {
+        var failure = context.getLastThrowable();
+        if (failure == null) {
+            return true;
+        }
+        return context.getRetryCount() < getMaxAttempts()
+                && RetryClassifier.isRetryable(failure, retryableStatusCodes)
+                && System.nanoTime() - (long) context.getAttribute(STARTED) < deadlineNanos
+                && RunContext.isActive()
+                && circuitBreaker.allowsRetry();
+    }
+}
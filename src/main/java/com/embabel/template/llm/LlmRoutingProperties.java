@@ -0,0 +1,94 @@
+package com.embabel.template.llm;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Model routing settings, bound from {@code llm.routing.*}.
+ * Settings under {@code policies[<action>]} override {@code default-policy} for that action only;
+ * anything they leave unset is inherited.
+ *
+ * @param enabled       route calls that ask for the automatic or default model; when false Embabel chooses as before
+ * @param defaultPolicy policy for actions without their own
+ * @param policies      per-action policies, keyed by qualified action name such as {@code WriteAndReviewAgent.reviewStory}
+ * @param maxFailovers  further candidates to try when the chosen model fails on its side
+ * @param maxErrorRate  smoothed error rate above which a model is taken out of rotation
+ * @param probeInterval how long after its last failure an unhealthy model is tried again
+ * @param hedgeBudget   hedges allowed per routed call, on average; bounds the extra cost of hedging
+ */
+@ConfigurationProperties("llm.routing")
+public record LlmRoutingProperties(
+        @DefaultValue("true") boolean enabled,
+        Policy defaultPolicy,
+        Map<String, Policy> policies,
+        @DefaultValue("1") int maxFailovers,
+        @DefaultValue("0.5") double maxErrorRate,
+        @DefaultValue("30s") Duration probeInterval,
+        @DefaultValue("0.1") double hedgeBudget
+) {
+
+    public LlmRoutingProperties {
+        defaultPolicy = Policy.DEFAULTS.overriddenBy(defaultPolicy);
+        policies = policies == null ? Map.of() : Map.copyOf(policies);
+    }
+
+    public Policy policyFor(String action) {
+        return defaultPolicy.overriddenBy(policies.get(action));
+    }
+
+    public enum Objective {
+        /**
+         * Lowest estimated cost among candidates meeting the latency target.
+         */
+        CHEAPEST,
+        /**
+         * Lowest estimated p95 latency among candidates, cost breaking ties.
+         */
+        FASTEST,
+        /**
+         * Candidates in the order listed, for a primary model with a backup.
+         */
+        PREFERRED
+    }
+
+    /**
+     * @param objective            what to optimize among healthy candidates
+     * @param candidates           models to choose between; empty leaves the choice to Embabel
+     * @param maxP95               latency target; candidates whose estimated p95 exceeds it are used only if none meets it
+     * @param expectedOutputTokens completion size assumed when estimating cost
+     * @param hedge                if the first candidate is slow, send the same call to the second and take the first answer
+     * @param hedgeQuantile        quantile of the first candidate's recent latencies to wait before hedging
+     * @param hedgeDelay           wait before hedging until the first candidate has enough recent latencies
+     */
+    public record Policy(
+            Objective objective,
+            List<String> candidates,
+            Duration maxP95,
+            Integer expectedOutputTokens,
+            Boolean hedge,
+            Double hedgeQuantile,
+            Duration hedgeDelay
+    ) {
+
+        static final Policy DEFAULTS = new Policy(Objective.CHEAPEST, List.of(), null, 500,
+                false, 0.95, Duration.ofSeconds(3));
+
+        Policy overriddenBy(Policy override) {
+            if (override == null) {
+                return this;
+            }
+            return new Policy(
+                    override.objective != null ? override.objective : objective,
+                    override.candidates != null ? override.candidates : candidates,
+                    override.maxP95 != null ? override.maxP95 : maxP95,
+                    override.expectedOutputTokens != null ? override.expectedOutputTokens : expectedOutputTokens,
+                    override.hedge != null ? override.hedge : hedge,
+                    override.hedgeQuantile != null ? override.hedgeQuantile : hedgeQuantile,
+                    override.hedgeDelay != null ? override.hedgeDelay : hedgeDelay);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.embabel.template.llm;
+
+import com.embabel.common.ai.model.Llm;
+import com.embabel.common.ai.model.LlmOptions;
+import com.embabel.common.ai.prompt.PromptContributor;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.openai.OpenAiChatOptions;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Streams raw model output for a prompt as it is generated.
+ * Structured-output conversion is left to the caller, which can act on partial text.
+ * Prompt contributors such as personas become the system message, as they would for a regular prompt runner call.
+ * <p>
+ * Spring AI streams without the model's retry template, so each stream is run through the template
+ * {@link LlmResilience} built for the model: it waits for the endpoint's limiter, fails fast while the endpoint's
+ * circuit is open, and has its token usage and retries recorded. A failed stream is retried only until its first
+ * chunk has been passed on.
+ */
+@Component
+public class LlmTextStreams {
+
+    private final Map<String, Llm> llms;
+    private final LlmResilience resilience;
+
+    public LlmTextStreams(List<Llm> llms, LlmResilience resilience) {
+        this.llms = llms.stream()
+                .collect(Collectors.toMap(Llm::getName, Function.identity(), (a, b) -> a));
+        this.resilience = resilience;
+    }
+
+    /**
+     * Streams from no model, for tests and tools that construct agents directly.
+     */
+    public static LlmTextStreams none() {
+        return new LlmTextStreams(List.of(), null);
+    }
+
+    public boolean canStream(String model) {
+        return model != null && llms.containsKey(model);
+    }
+
+    /**
+     * The complete response, with its token usage as reported by the model or else estimated.
+     */
+    record StreamedResponse(String text, long promptTokens, long completionTokens) {
+    }
+
+    /**
+     * Generate the response to a prompt from the named model, passing each text chunk to {@code onChunk} as it
+     * arrives on the calling thread, and return the complete text. Blocks until the stream ends; an interrupt
+     * cancels it.
+     */
+    public String generate(
+            String model,
+            LlmOptions options,
+            List<? extends PromptContributor> contributors,
+            String prompt,
+            Consumer<String> onChunk) {
+        return generate(model, () -> responses(model, options, contributors, prompt),
+                TokenEstimates.estimate(system(contributors)) + TokenEstimates.estimate(prompt), onChunk);
+    }
+
+    /**
+     * @param responses      starts one attempt's stream
+     * @param promptEstimate prompt tokens to record if the stream reports no usage
+     */
+    String generate(String model, Supplier<Flux<ChatResponse>> responses, long promptEstimate, Consumer<String> onChunk) {
+        RetryCallback<StreamedResponse, RuntimeException> attempt =
+                context -> attempt(responses.get(), promptEstimate, onChunk, context);
+        var template = resilience == null ? null : resilience.retryTemplateFor(model);
+        return (template == null ? attempt.doWithRetry(null) : template.execute(attempt)).text();
+    }
+
+    private static StreamedResponse attempt(
+            Flux<ChatResponse> responses,
+            long promptEstimate,
+            Consumer<String> onChunk,
+            RetryContext context) {
+        var text = new StringBuilder();
+        var usage = new long[2];
+        try {
+            responses
+                    .doOnNext(response -> {
+                        var reported = response.getMetadata() == null ? null : response.getMetadata().getUsage();
+                        if (reported != null && reported.getPromptTokens() != null && reported.getPromptTokens() > 0) {
+                            usage[0] = reported.getPromptTokens();
+                            usage[1] = reported.getCompletionTokens() == null ? 0 : reported.getCompletionTokens();
+                        }
+                        var chunk = text(response);
+                        if (chunk != null && !chunk.isEmpty()) {
+                            text.append(chunk);
+                            onChunk.accept(chunk);
+                        }
+                    })
+                    .blockLast();
+        } catch (RuntimeException e) {
+            if (!text.isEmpty() && context != null) {
+                // Part of the answer has been passed on, and a retry would start it again
+                context.setExhaustedOnly();
+            }
+            throw e;
+        }
+        if (usage[0] == 0) {
+            // The endpoint sent no usage with the stream
+            usage[0] = promptEstimate;
+            usage[1] = TokenEstimates.estimate(text);
+        }
+        return new StreamedResponse(text.toString(), usage[0], usage[1]);
+    }
+
+    private Flux<ChatResponse> responses(
+            String model,
+            LlmOptions options,
+            List<? extends PromptContributor> contributors,
+            String prompt) {
+        var llm = llms.get(model);
+        if (llm == null) {
+            return Flux.error(new IllegalArgumentException(
+                    "No Llm named '" + model + "' to stream from; known models are " + llms.keySet()));
+        }
+        var messages = new ArrayList<Message>(2);
+        var system = system(contributors);
+        if (!system.isBlank()) {
+            messages.add(new SystemMessage(system));
+        }
+        messages.add(new UserMessage(prompt));
+        ChatOptions chatOptions = llm.getOptionsConverter().convertOptions(options);
+        if (chatOptions instanceof OpenAiChatOptions openAi) {
+            // Ask for the usage to be sent at the end of the stream
+            openAi.setStreamUsage(true);
+        }
+        return llm.getModel().stream(new Prompt(messages, chatOptions));
+    }
+
+    private static String system(List<? extends PromptContributor> contributors) {
+        return contributors.stream()
+                .map(PromptContributor::contribution)
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    private static String text(ChatResponse response) {
+        return response.getResult() == null ? null : response.getResult().getOutput().getText();
+    }
+}
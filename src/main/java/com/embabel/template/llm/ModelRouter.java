@@ -0,0 +1,338 @@
+package com.embabel.template.llm;
+
+import com.embabel.common.ai.model.Llm;
+import com.embabel.common.ai.model.PerTokenPricingModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Chooses a model for each call that asks for the automatic or default model.
+ * Candidates come from the action's {@link LlmRoutingProperties.Policy}; each is scored on its declared
+ * {@link PerTokenPricingModel} applied to the estimated prompt size, and on smoothed latency and error rate
+ * observed from earlier calls. Models whose error rate has spiked are skipped until their probe interval passes,
+ * and if the chosen model fails in a way another model might not, the call moves on to the next candidate: see
+ * {@link RetryClassifier#isFailover}. A request the endpoint rejected on its merits is rethrown rather than repeated
+ * on every candidate.
+ * <p>
+ * Policies with {@code hedge} set also guard against slow answers: if the first candidate has not answered
+ * within a quantile of its recent latencies, the call is sent to the second as well, the first answer wins and
+ * the other call is cancelled. The cancelled call still counts towards its model's latencies, as having taken at
+ * least as long as it ran, so that losing hedges do not pull the quantile down. Each action draws its hedges on its
+ * own budget, which grows by {@code hedge-budget} per call of that action, so at most that fraction of its calls is
+ * ever sent twice.
+ */
+@Component
+@EnableConfigurationProperties(LlmRoutingProperties.class)
+public class ModelRouter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ModelRouter.class);
+
+    /**
+     * Declared price of a model in US dollars per million tokens.
+     */
+    record ModelPrice(String model, double usdPer1mInputTokens, double usdPer1mOutputTokens) {
+    }
+
+    /**
+     * Latencies needed before the hedge delay is taken from the primary model's own quantile.
+     */
+    private static final int MIN_HEDGE_SAMPLES = 20;
+
+    /**
+     * Unused hedge budget carried over, so a burst of slow calls after a quiet spell can still be hedged.
+     */
+    private static final double MAX_HEDGE_CREDIT = 10;
+
+    private final Map<String, ModelPrice> prices;
+    private final LlmRoutingProperties properties;
+    private final MeterRegistry registry;
+    private final Map<String, ModelStats> stats = new ConcurrentHashMap<>();
+    private final Map<String, HedgeBudget> hedgeBudgets = new ConcurrentHashMap<>();
+    private final ExecutorService hedgeExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Autowired
+    public ModelRouter(List<Llm> llms, LlmRoutingProperties properties, MeterRegistry registry) {
+        this(prices(llms.stream().map(ModelRouter::price).toList()), properties, registry);
+    }
+
+    private ModelRouter(Map<String, ModelPrice> prices, LlmRoutingProperties properties, MeterRegistry registry) {
+        this.prices = prices;
+        this.properties = properties;
+        this.registry = registry;
+    }
+
+    static ModelRouter withPrices(List<ModelPrice> prices, LlmRoutingProperties properties, MeterRegistry registry) {
+        return new ModelRouter(prices(prices), properties, registry);
+    }
+
+    /**
+     * A router that never chooses, leaving every call to Embabel's own model selection.
+     */
+    public static ModelRouter disabled() {
+        return withPrices(List.of(),
+                new LlmRoutingProperties(false, null, Map.of(), 0, 1.0, Duration.ZERO, 0),
+                new SimpleMeterRegistry());
+    }
+
+    /**
+     * Run a call on the best candidate for this action, failing over to the next ones if it fails on their side.
+     *
+     * @param call invoked with the chosen model name, or with null when the action is not routed
+     */
+    <T> T call(String action, int promptTokens, Function<String, T> call) {
+        var candidates = route(action, promptTokens);
+        if (candidates.isEmpty()) {
+            return call.apply(null);
+        }
+        var policy = properties.policyFor(action);
+        if (policy.hedge() && candidates.size() > 1) {
+            return hedged(action, policy, candidates.get(0), candidates.get(1), call);
+        }
+        RuntimeException failure = null;
+        int attempts = Math.min(candidates.size(), 1 + properties.maxFailovers());
+        for (int i = 0; i < attempts; i++) {
+            var model = candidates.get(i);
+            try {
+                return timed(model, call);
+            } catch (CancellationException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (!RetryClassifier.isFailover(e)) {
+                    if (failure != null) {
+                        e.addSuppressed(failure);
+                    }
+                    throw e;
+                }
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+                if (i + 1 < attempts) {
+                    logger.warn("{} failed on {}, failing over to {}: {}", action, model, candidates.get(i + 1), e.toString());
+                }
+            }
+        }
+        throw failure;
+    }
+
+    private <T> T hedged(String action, LlmRoutingProperties.Policy policy, String primary, String secondary,
+                         Function<String, T> call) {
+        var budget = hedgeBudgets.computeIfAbsent(action, key -> new HedgeBudget());
+        budget.deposit(properties.hedgeBudget());
+        var completion = new ExecutorCompletionService<T>(hedgeExecutor);
+        long primaryStart = System.nanoTime();
+        Future<T> primaryFuture = completion.submit(() -> timed(primary, call));
+        Future<T> secondaryFuture = null;
+        long secondaryStart = 0;
+        try {
+            var first = completion.poll(hedgeDelayNanos(primary, policy), TimeUnit.NANOSECONDS);
+            if (first == null) {
+                if (budget.withdraw()) {
+                    registry.counter("llm.hedge.fired", "action", action).increment();
+                    secondaryStart = System.nanoTime();
+                    secondaryFuture = completion.submit(() -> timed(secondary, call));
+                } else {
+                    registry.counter("llm.hedge.skipped", "action", action).increment();
+                }
+                first = completion.take();
+            }
+            try {
+                return winner(action, first, secondaryFuture);
+            } catch (ExecutionException failure) {
+                if (secondaryFuture == null) {
+                    if (properties.maxFailovers() < 1 || !RetryClassifier.isFailover(failure.getCause())) {
+                        throw unwrap(failure);
+                    }
+                    logger.warn("{} failed on {}, failing over to {}: {}", action, primary, secondary, failure.getCause().toString());
+                    secondaryFuture = completion.submit(() -> timed(secondary, call));
+                }
+                var other = first == primaryFuture ? secondaryFuture : primaryFuture;
+                try {
+                    return winner(action, other, secondaryFuture);
+                } catch (ExecutionException otherFailure) {
+                    var thrown = unwrap(failure);
+                    thrown.addSuppressed(unwrap(otherFailure));
+                    throw thrown;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted waiting for " + action);
+        } finally {
+            // Cancel whichever call lost, or both if we were interrupted
+            cancel(primary, primaryFuture, primaryStart);
+            if (secondaryFuture != null) {
+                cancel(secondary, secondaryFuture, secondaryStart);
+            }
+        }
+    }
+
+    /**
+     * A call cancelled in flight took at least as long as it ran; leaving it out would keep only the fast calls.
+     */
+    private void cancel(String model, Future<?> future, long start) {
+        if (future.cancel(true)) {
+            stats(model).recordAtLeast(System.nanoTime() - start);
+        }
+    }
+
+    private <T> T winner(String action, Future<T> future, Future<T> secondaryFuture)
+            throws ExecutionException, InterruptedException {
+        T result = future.get();
+        if (future == secondaryFuture) {
+            registry.counter("llm.hedge.won", "action", action).increment();
+        }
+        return result;
+    }
+
+    private long hedgeDelayNanos(String model, LlmRoutingProperties.Policy policy) {
+        var modelStats = stats(model);
+        return modelStats.samples() >= MIN_HEDGE_SAMPLES
+                ? modelStats.quantileNanos(policy.hedgeQuantile())
+                : policy.hedgeDelay().toNanos();
+    }
+
+    /**
+     * Hedges one action may still send.
+     */
+    private static final class HedgeBudget {
+
+        private double credit;
+
+        synchronized void deposit(double amount) {
+            credit = Math.min(MAX_HEDGE_CREDIT, credit + amount);
+        }
+
+        synchronized boolean withdraw() {
+            if (credit < 1) {
+                return false;
+            }
+            credit--;
+            return true;
+        }
+    }
+
+    /**
+     * Stops any hedged calls still running.
+     */
+    @Override
+    public void close() {
+        hedgeExecutor.shutdownNow();
+    }
+
+    /**
+     * Run the call on one model and record how it went. A call cancelled because another answered first did not
+     * fail, so it is recorded when it is cancelled instead, by its latency alone.
+     */
+    private <T> T timed(String model, Function<String, T> call) {
+        long start = System.nanoTime();
+        try {
+            T result = call.apply(model);
+            record(model, System.nanoTime() - start, true);
+            return result;
+        } catch (RuntimeException e) {
+            if (!Thread.currentThread().isInterrupted()) {
+                record(model, System.nanoTime() - start, false);
+            }
+            throw e;
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        return new CompletionException(e.getCause());
+    }
+
+    /**
+     * Candidates for this call, best first. Empty if the action is not routed.
+     */
+    List<String> route(String action, int promptTokens) {
+        if (!properties.enabled()) {
+            return List.of();
+        }
+        var policy = properties.policyFor(action);
+        long now = System.nanoTime();
+        var known = new ArrayList<String>();
+        for (var model : policy.candidates()) {
+            if (prices.containsKey(model)) {
+                known.add(model);
+            }
+        }
+        if (known.isEmpty()) {
+            return List.of();
+        }
+
+        Comparator<String> byCost = Comparator.comparingDouble(model -> cost(model, promptTokens, policy));
+        Comparator<String> byLatency = Comparator.comparingDouble(model -> stats(model).p95Nanos());
+        Comparator<String> order = switch (policy.objective()) {
+            case CHEAPEST -> byCost.thenComparing(byLatency);
+            case FASTEST -> byLatency.thenComparing(byCost);
+            case PREFERRED -> Comparator.comparingInt(known::indexOf);
+        };
+        long maxP95 = policy.maxP95() == null ? Long.MAX_VALUE : policy.maxP95().toNanos();
+        long probeNanos = properties.probeInterval().toNanos();
+
+        // Healthy models meeting the latency target first, then healthy ones missing it, then the unhealthy
+        Comparator<String> tiers = Comparator
+                .comparing((String model) -> !stats(model).isHealthy(properties.maxErrorRate(), probeNanos, now))
+                .thenComparing(model -> stats(model).p95Nanos() > maxP95);
+        var ranked = known.stream().sorted(tiers.thenComparing(order)).toList();
+        logger.debug("Routing {} ({} prompt tokens) to {}", action, promptTokens, ranked);
+        return ranked;
+    }
+
+    void record(String model, long latencyNanos, boolean success) {
+        stats(model).record(latencyNanos, success, System.nanoTime());
+    }
+
+    ModelStats stats(String model) {
+        return stats.computeIfAbsent(model, key -> new ModelStats());
+    }
+
+    private double cost(String model, int promptTokens, LlmRoutingProperties.Policy policy) {
+        var price = prices.get(model);
+        return promptTokens * price.usdPer1mInputTokens() + policy.expectedOutputTokens() * price.usdPer1mOutputTokens();
+    }
+
+    private static Map<String, ModelPrice> prices(List<ModelPrice> prices) {
+        var byName = new HashMap<String, ModelPrice>();
+        prices.forEach(price -> byName.put(price.model(), price));
+        return Map.copyOf(byName);
+    }
+
+    private static ModelPrice price(Llm llm) {
+        if (llm.getPricingModel() instanceof PerTokenPricingModel perToken) {
+            return new ModelPrice(llm.getName(), perToken.getUsdPer1mInputTokens(), perToken.getUsdPer1mOutputTokens());
+        }
+        // Unknown pricing: only chosen when nothing with a declared price qualifies
+        return new ModelPrice(llm.getName(), Double.MAX_VALUE, Double.MAX_VALUE);
+    }
+}
@@ -0,0 +1,80 @@
+package com.embabel.template.llm;
+
+import java.util.Arrays;
+
+/**
+ * Exponentially weighted latency and error statistics for one model.
+ * The p95 estimate assumes roughly normal latencies: mean plus 1.645 standard deviations.
+ * The most recent latencies are also kept as they are, for exact quantiles over a short window.
+ */
+final class ModelStats {
+
+    private static final double ALPHA = 0.2;
+    private static final double Z_95 = 1.645;
+    private static final int WINDOW = 128;
+
+    private final long[] recent = new long[WINDOW];
+    private long samples;
+    private double meanNanos;
+    private double varianceNanos;
+    private double errorRate;
+    private long lastFailureNanos;
+
+    synchronized void record(long latencyNanos, boolean success, long now) {
+        if (success) {
+            recordAtLeast(latencyNanos);
+            errorRate *= 1 - ALPHA;
+        } else {
+            errorRate = errorRate * (1 - ALPHA) + ALPHA;
+            lastFailureNanos = now;
+        }
+    }
+
+    /**
+     * A call abandoned after this long, such as a hedge that lost: its latency is taken as what it ran for, a lower
+     * bound, and it says nothing about errors.
+     */
+    synchronized void recordAtLeast(long latencyNanos) {
+        if (samples == 0) {
+            meanNanos = latencyNanos;
+        } else {
+            double delta = latencyNanos - meanNanos;
+            meanNanos += ALPHA * delta;
+            varianceNanos = (1 - ALPHA) * (varianceNanos + ALPHA * delta * delta);
+        }
+        recent[(int) (samples % WINDOW)] = latencyNanos;
+        samples++;
+    }
+
+    /**
+     * Estimated p95 latency in nanoseconds, or zero before the first latency is recorded.
+     */
+    synchronized double p95Nanos() {
+        return samples == 0 ? 0 : meanNanos + Z_95 * Math.sqrt(varianceNanos);
+    }
+
+    /**
+     * The given quantile of the recent latencies, in nanoseconds, or zero before the first.
+     */
+    synchronized long quantileNanos(double quantile) {
+        int count = (int) Math.min(samples, WINDOW);
+        if (count == 0) {
+            return 0;
+        }
+        var sorted = Arrays.copyOf(recent, count);
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(quantile * count) - 1)];
+    }
+
+    synchronized long samples() {
+        return samples;
+    }
+
+    synchronized double errorRate() {
+        return errorRate;
+    }
+
+    synchronized boolean isHealthy(double maxErrorRate, long probeIntervalNanos, long now) {
+        return errorRate <= maxErrorRate || now - lastFailureNanos >= probeIntervalNanos;
+    }
+}
@@ -0,0 +1,103 @@
+package com.embabel.template.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A prompt compiled once into literal text and {@code {{name}}} placeholders.
+ * <p>
+ * Providers cache the longest prompt prefix they have seen before, so everything that is the same on every call
+ * (instructions, rules, output format) should come before anything that varies. Values fixed for the life of the
+ * template, such as configured word limits, are bound at compile time and become part of the literal text; the
+ * text up to the first remaining placeholder is the static prefix, rendered from the same string on every call.
+ * Keep per-request content (user input, previous answers) at the end of the template so that prefix stays long.
+ */
+public final class PromptTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{\\{([A-Za-z][A-Za-z0-9]*)}}");
+
+    /**
+     * {@code literals[i]} precedes {@code variables[i]}; the last literal follows the last variable.
+     */
+    private final String[] literals;
+    private final String[] variables;
+    private final int literalLength;
+
+    private PromptTemplate(String[] literals, String[] variables) {
+        this.literals = literals;
+        this.variables = variables;
+        int length = 0;
+        for (var literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    public static PromptTemplate compile(String template) {
+        return compile(template, Map.of());
+    }
+
+    /**
+     * @param constants values bound now, for placeholders that are the same on every call
+     */
+    public static PromptTemplate compile(String template, Map<String, ?> constants) {
+        var literals = new ArrayList<String>();
+        var variables = new ArrayList<String>();
+        var literal = new StringBuilder();
+        var text = template.strip();
+        var matcher = PLACEHOLDER.matcher(text);
+        int from = 0;
+        while (matcher.find()) {
+            literal.append(text, from, matcher.start());
+            var name = matcher.group(1);
+            if (constants.containsKey(name)) {
+                literal.append(constants.get(name));
+            } else {
+                literals.add(literal.toString());
+                variables.add(name);
+                literal.setLength(0);
+            }
+            from = matcher.end();
+        }
+        literal.append(text, from, text.length());
+        literals.add(literal.toString());
+        return new PromptTemplate(literals.toArray(String[]::new), variables.toArray(String[]::new));
+    }
+
+    /**
+     * Names of the placeholders to supply on each call, in order of first appearance.
+     */
+    public List<String> variables() {
+        return List.of(variables).stream().distinct().toList();
+    }
+
+    /**
+     * Length of the text ahead of the first placeholder, which is identical on every call.
+     */
+    public int staticPrefixLength() {
+        return literals[0].length();
+    }
+
+    /**
+     * @param values a value for each of the {@link #variables()}; values are rendered with {@link String#valueOf}
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public RenderedPrompt render(Map<String, ?> values) {
+        var rendered = new String[variables.length];
+        int length = literalLength;
+        for (int i = 0; i < variables.length; i++) {
+            if (!values.containsKey(variables[i])) {
+                throw new IllegalArgumentException("No value for {{" + variables[i] + "}}");
+            }
+            rendered[i] = String.valueOf(values.get(variables[i]));
+            length += rendered[i].length();
+        }
+        var prompt = new StringBuilder(length).append(literals[0]);
+        for (int i = 0; i < variables.length; i++) {
+            prompt.append(rendered[i]).append(literals[i + 1]);
+        }
+        return new RenderedPrompt(prompt.toString(), staticPrefixLength());
+    }
+}
@@ -0,0 +1,16 @@
+package com.embabel.template.llm;
+
+/**
+ * A prompt rendered from a {@link PromptTemplate}.
+ *
+ * @param staticPrefixLength characters at the start of {@code text} that are the same on every call of the template
+ */
+public record RenderedPrompt(String text, int staticPrefixLength) {
+
+    /**
+     * A prompt built some other way, with no prefix known to be stable.
+     */
+    public static RenderedPrompt of(String text) {
+        return new RenderedPrompt(text, 0);
+    }
+}
@@ -0,0 +1,94 @@
+package com.embabel.template.llm;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Decides whether a failed model call is worth retrying, and whether it is worth trying on another model.
+ * Spring AI's default error handler reports HTTP errors as {@link TransientAiException} or
+ * {@link NonTransientAiException} with the status code at the start of the message, so the status is
+ * recovered from there when no {@link RestClientResponseException} is in the cause chain.
+ * Failures without a status are retried if they are I/O problems or were already classed as transient.
+ */
+final class RetryClassifier {
+
+    private static final Pattern LEADING_STATUS = Pattern.compile("^\\s*(?:HTTP\\s+)?(\\d{3})\\b");
+
+    private RetryClassifier() {
+    }
+
+    static boolean isRetryable(Throwable failure, Set<Integer> retryableStatusCodes) {
+        Integer status = statusCode(failure);
+        if (status != null) {
+            return retryableStatusCodes.contains(status);
+        }
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof ResourceAccessException
+                    || cause instanceof WebClientRequestException || cause instanceof TransientAiException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether another model might answer where this one failed: its endpoint could not be reached or timed out,
+     * answered 5xx or 429, or was not tried because its circuit is open or its limiter full. Other failures, such as
+     * a request the endpoint rejected or a response that could not be parsed, would most likely fail there too.
+     */
+    static boolean isFailover(Throwable failure) {
+        Integer status = statusCode(failure);
+        if (status != null) {
+            return status == 408 || status == 429 || status >= 500;
+        }
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException || cause instanceof ResourceAccessException
+                    || cause instanceof WebClientRequestException || cause instanceof TransientAiException
+                    || cause instanceof TimeoutException || cause instanceof CircuitOpenException
+                    || cause instanceof LlmLimitExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the endpoint is telling us it has more work than it can take.
+     */
+    static boolean isOverload(Throwable failure) {
+        Integer status = statusCode(failure);
+        return status != null && (status == 429 || status == 503);
+    }
+
+    /**
+     * The HTTP status behind this failure, or null if there is none.
+     */
+    static Integer statusCode(Throwable failure) {
+        for (var cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RestClientResponseException response) {
+                return response.getStatusCode().value();
+            }
+            // Streamed calls go through WebClient
+            if (cause instanceof WebClientResponseException response) {
+                return response.getStatusCode().value();
+            }
+            if ((cause instanceof TransientAiException || cause instanceof NonTransientAiException)
+                    && cause.getMessage() != null) {
+                var matcher = LEADING_STATUS.matcher(cause.getMessage());
+                if (matcher.find()) {
+                    return Integer.valueOf(matcher.group(1));
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,173 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.DeadlineExceededException;
+import com.embabel.template.concurrent.RunContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical LLM requests made at the same time: while a request is in flight, callers with an equal
+ * {@link LlmRequest#key()} wait for its response instead of sending their own. Unlike the {@link LlmResponseCache},
+ * nothing is kept once the call returns, so it also applies to actions that are never cached.
+ * <p>
+ * The shared call runs on its own virtual thread, outside any caller's run, and each caller waits for it within
+ * its own deadline. A caller that is interrupted or runs out of time gives up waiting without disturbing the others;
+ * only when every caller has given up is the shared call interrupted.
+ * <p>
+ * Meters: {@code llm.coalesce} counts requests by {@code result}, {@code sent} when the request went to the model and
+ * {@code joined} when it waited for an identical one; {@code llm.coalesce.ratio} is the fraction joined.
+ */
+@Component
+public class SingleFlight {
+
+    private static final String METRIC = "llm.coalesce";
+
+    private final boolean enabled;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final Counter sent;
+    private final Counter joined;
+
+    public SingleFlight(@Value("${llm.coalesce.enabled:true}") boolean enabled, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.sent = Counter.builder(METRIC).tag("result", "sent").register(registry);
+        this.joined = Counter.builder(METRIC).tag("result", "joined").register(registry);
+        Gauge.builder(METRIC + ".ratio", this, SingleFlight::coalesceRatio)
+                .description("Fraction of LLM requests answered by an identical request already in flight")
+                .register(registry);
+        Gauge.builder(METRIC + ".in.flight", flights, Map::size)
+                .description("Distinct LLM requests in flight")
+                .register(registry);
+    }
+
+    /**
+     * Every caller makes its own call, for tests and tools that call agents directly.
+     */
+    public static SingleFlight disabled() {
+        return new SingleFlight(false, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Return the response to the identical request in flight, or make the call and share its response with
+     * identical requests made meanwhile.
+     *
+     * @throws CancellationException      if this caller is interrupted while waiting
+     * @throws DeadlineExceededException if this caller's run reaches its deadline while waiting
+     */
+    public <T> T call(LlmRequest request, Class<T> type, Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        var key = request.key();
+        var isNew = new boolean[1];
+        var flight = flights.compute(key, (k, existing) -> {
+            if (existing != null && existing.join()) {
+                return existing;
+            }
+            isNew[0] = true;
+            return new Flight();
+        });
+        if (isNew[0]) {
+            sent.increment();
+            flight.start(key, call);
+        } else {
+            joined.increment();
+        }
+        return type.cast(flight.await(key));
+    }
+
+    double coalesceRatio() {
+        double total = sent.count() + joined.count();
+        return total == 0 ? 0.0 : joined.count() / total;
+    }
+
+    /**
+     * One call to the model and the callers waiting for it.
+     */
+    private final class Flight {
+
+        private final CompletableFuture<Object> response = new CompletableFuture<>();
+        private int waiters = 1;
+        private boolean abandoned;
+        private Thread thread;
+
+        synchronized boolean join() {
+            if (abandoned || response.isDone()) {
+                return false;
+            }
+            waiters++;
+            return true;
+        }
+
+        void start(String key, Supplier<?> call) {
+            // Not inheriting the starting caller's run: its cancellation or deadline must not end the shared call
+            var started = Thread.ofVirtual().name("llm-flight").inheritInheritableThreadLocals(false).unstarted(() -> {
+                try {
+                    var value = call.get();
+                    flights.remove(key, this);
+                    response.complete(value);
+                } catch (Throwable e) {
+                    flights.remove(key, this);
+                    response.completeExceptionally(e);
+                }
+            });
+            synchronized (this) {
+                thread = started;
+            }
+            started.start();
+        }
+
+        Object await(String key) {
+            try {
+                return response.get(RunContext.remainingNanos(Long.MAX_VALUE), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException failure) {
+                    throw failure;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                leave(key);
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted waiting for an LLM call");
+            } catch (TimeoutException e) {
+                leave(key);
+                RunContext.checkActive();
+                throw new IllegalStateException("Timed out waiting for an LLM call", e);
+            }
+        }
+
+        /**
+         * One caller stops waiting; the last to leave stops the call.
+         */
+        private void leave(String key) {
+            Thread abandon;
+            synchronized (this) {
+                if (--waiters > 0 || response.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                abandon = thread;
+            }
+            flights.remove(key, this);
+            response.cancel(false);
+            if (abandon != null) {
+                abandon.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.embabel.template.llm;
+
+import java.util.function.Consumer;
+
+/**
+ * Forwards one text call's chunks to a {@link TokenSink}, whichever attempts the call makes.
+ * <p>
+ * A call may run several attempts, one after another on failover or at once when hedged. The first attempt to
+ * produce text is streamed and the others are kept quiet. When the call returns, the sink has been sent exactly the
+ * response: nothing more if the streamed attempt answered, the whole response at once if nothing was streamed (a
+ * cached answer, or a model that cannot stream), and otherwise a restart followed by the response.
+ */
+final class StreamedText {
+
+    private final String action;
+    private final TokenSink sink;
+    private Attempt streaming;
+    private boolean finished;
+
+    StreamedText(String action, TokenSink sink) {
+        this.action = action;
+        this.sink = sink;
+    }
+
+    final class Attempt implements Consumer<String> {
+
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void accept(String chunk) {
+            synchronized (StreamedText.this) {
+                text.append(chunk);
+                if (finished) {
+                    return;
+                }
+                if (streaming == null) {
+                    streaming = this;
+                }
+                if (streaming == this) {
+                    sink.onToken(action, chunk);
+                }
+            }
+        }
+
+        String text() {
+            synchronized (StreamedText.this) {
+                return text.toString();
+            }
+        }
+    }
+
+    Attempt attempt() {
+        return new Attempt();
+    }
+
+    /**
+     * Send whatever of the response the sink has not seen yet; chunks arriving later, from a losing attempt
+     * still winding down, are dropped.
+     */
+    synchronized void finish(String response) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (streaming != null && streaming.text.toString().equals(response)) {
+            return;
+        }
+        if (streaming != null) {
+            sink.onRestart(action);
+        }
+        if (response != null && !response.isEmpty()) {
+            sink.onToken(action, response);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.embabel.template.llm;
+
+/**
+ * Cheap token count estimates, for budgeting prompts without running a tokenizer.
+ */
+public final class TokenEstimates {
+
+    /**
+     * Typical BPE tokenizers average about four characters of English text per token.
+     */
+    public static final int CHARS_PER_TOKEN = 4;
+
+    private TokenEstimates() {
+    }
+
+    public static int estimate(CharSequence text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+}
@@ -0,0 +1,73 @@
+package com.embabel.template.llm;
+
+import java.util.function.Supplier;
+
+/**
+ * Receives generated text as it arrives, so that a response can be shown before it is complete.
+ * <p>
+ * Install a sink around a run with {@link #forwardTo}. Text calls made by the run, including on the threads it
+ * starts, then stream from the model and pass each chunk on; see {@link LlmCall#generateText(RenderedPrompt)}.
+ * Chunks arrive on the calling threads, so a sink shared by concurrent calls must be thread-safe.
+ */
+@FunctionalInterface
+public interface TokenSink {
+
+    /**
+     * @param action the action that made the call, such as {@code OmCoachAgent.reviewSeason}
+     * @param text   the next chunk of the response
+     */
+    void onToken(String action, String text);
+
+    /**
+     * The text sent so far for this call is discarded: the complete response follows from the start. Happens when
+     * an attempt other than the one being streamed answered, such as a hedge, or the streamed attempt failed over.
+     */
+    default void onRestart(String action) {
+    }
+
+    /**
+     * Run the body with this sink receiving its text calls, in this thread and the threads it starts.
+     */
+    static <T> T forwardTo(TokenSink sink, Supplier<T> body) {
+        return TokenSinks.call(sink, body);
+    }
+
+    /**
+     * @return the sink receiving the current run's text, or null outside {@link #forwardTo}
+     */
+    static TokenSink current() {
+        return TokenSinks.current();
+    }
+}
+
+/**
+ * The sink for the current run, held in an inheritable thread local like {@link com.embabel.template.concurrent.RunContext}.
+ */
+final class TokenSinks {
+
+    private static final InheritableThreadLocal<TokenSink> CURRENT = new InheritableThreadLocal<>();
+
+    private TokenSinks() {
+    }
+
+    static <T> T call(TokenSink sink, Supplier<T> body) {
+        var previous = CURRENT.get();
+        CURRENT.set(sink);
+        try {
+            return body.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return null outside {@link TokenSink#forwardTo}
+     */
+    static TokenSink current() {
+        return CURRENT.get();
+    }
+}
@@ -0,0 +1,163 @@
+package com.embabel.template.store;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding for {@link RecordLog} records: unsigned varints for lengths and counts, zig-zag varints
+ * for signed numbers, UTF-8 for text and big-endian IEEE 754 for floats. Nullable strings and lists store their
+ * length plus one, with zero for null.
+ */
+public final class Binary {
+
+    private Binary() {
+    }
+
+    public static final class Writer {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+        public Writer writeByte(int value) {
+            out.write(value);
+            return this;
+        }
+
+        public Writer writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+            return this;
+        }
+
+        public Writer writeSignedVarLong(long value) {
+            return writeVarLong((value << 1) ^ (value >> 63));
+        }
+
+        public Writer writeString(String value) {
+            if (value == null) {
+                return writeVarLong(0);
+            }
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length + 1L);
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        public Writer writeStrings(List<String> values) {
+            if (values == null) {
+                return writeVarLong(0);
+            }
+            writeVarLong(values.size() + 1L);
+            for (var value : values) {
+                writeString(value);
+            }
+            return this;
+        }
+
+        public Writer writeFloats(float[] values) {
+            writeVarLong(values.length);
+            for (float value : values) {
+                int bits = Float.floatToRawIntBits(value);
+                out.write(bits >>> 24);
+                out.write(bits >>> 16);
+                out.write(bits >>> 8);
+                out.write(bits);
+            }
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException from any read past the end of the bytes, or of a malformed value
+     */
+    public static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        public Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        public int readByte() {
+            require(1);
+            return bytes[position++] & 0xFF;
+        }
+
+        public long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Malformed varint at " + position);
+        }
+
+        public long readSignedVarLong() {
+            long value = readVarLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        public int readLength() {
+            long length = readVarLong();
+            if (length < 0 || length > bytes.length - position + 1) {
+                throw new IllegalArgumentException("Length " + length + " exceeds the record at " + position);
+            }
+            return (int) length;
+        }
+
+        public String readString() {
+            int length = readLength();
+            if (length == 0) {
+                return null;
+            }
+            require(length - 1);
+            var value = new String(bytes, position, length - 1, StandardCharsets.UTF_8);
+            position += length - 1;
+            return value;
+        }
+
+        public List<String> readStrings() {
+            int count = readLength();
+            if (count == 0) {
+                return null;
+            }
+            var values = new ArrayList<String>(count - 1);
+            for (int i = 1; i < count; i++) {
+                values.add(readString());
+            }
+            return values;
+        }
+
+        public float[] readFloats() {
+            long count = readVarLong();
+            if (count < 0 || count > (bytes.length - position) / 4) {
+                throw new IllegalArgumentException("Length " + count + " exceeds the record at " + position);
+            }
+            var values = new float[(int) count];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Float.intBitsToFloat((bytes[position] & 0xFF) << 24 | (bytes[position + 1] & 0xFF) << 16
+                        | (bytes[position + 2] & 0xFF) << 8 | bytes[position + 3] & 0xFF);
+                position += 4;
+            }
+            return values;
+        }
+
+        private void require(int count) {
+            if (count > bytes.length - position) {
+                throw new IllegalArgumentException("Record ends at " + bytes.length + ", needed " + count + " more bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.embabel.template.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.ObjLongConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of binary records, each framed by its length and a CRC-32 of its bytes and addressed by the
+ * offset it was written at.
+ * <p>
+ * Each append is synced to disk before it returns. Opening the log replays every record, so callers can rebuild
+ * their indexes; a torn or corrupt tail, left by a crash mid-append, is truncated away.
+ * Replays, reads and appends all go through a {@link RandomAccessFile} rather than its channel, so an interrupted
+ * caller cannot close the file for everyone else.
+ */
+public final class RecordLog implements Closeable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 64 << 20;
+
+    private final RandomAccessFile file;
+    private long end;
+
+    private RecordLog(RandomAccessFile file, long end) {
+        this.file = file;
+        this.end = end;
+    }
+
+    /**
+     * Open or create the log, passing each intact record and its offset to {@code replay} in the order written.
+     */
+    public static RecordLog open(Path path, ObjLongConsumer<byte[]> replay) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        var file = new RandomAccessFile(path.toFile(), "rw");
+        try {
+            long valid = replay(file, replay);
+            if (valid < file.length()) {
+                file.setLength(valid);
+            }
+            return new RecordLog(file, valid);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    private static long replay(RandomAccessFile file, ObjLongConsumer<byte[]> replay) throws IOException {
+        long length = file.length();
+        long offset = 0;
+        file.seek(0);
+        // Read through the file itself: the file's channel is interruptible, and an interrupt would close it.
+        // Not closed: closing the stream would close the file
+        var in = new DataInputStream(new BufferedInputStream(new InputStream() {
+            @Override
+            public int read() throws IOException {
+                return file.read();
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return file.read(buffer, offset, length);
+            }
+        }, 1 << 16));
+        while (offset + HEADER_BYTES <= length) {
+            int size = in.readInt();
+            int checksum = in.readInt();
+            if (size < 0 || size > MAX_RECORD_BYTES || offset + HEADER_BYTES + size > length) {
+                break;
+            }
+            var payload = new byte[size];
+            try {
+                in.readFully(payload);
+            } catch (EOFException e) {
+                break;
+            }
+            if (crc(payload) != checksum) {
+                break;
+            }
+            replay.accept(payload, offset);
+            offset += HEADER_BYTES + size;
+        }
+        return offset;
+    }
+
+    /**
+     * Write a new log holding these records, replacing any file at {@code path}. The records are written through one
+     * buffer and synced once at the end, rather than once each as {@link #append} would.
+     */
+    public static void write(Path path, Iterable<byte[]> payloads) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (var file = new FileOutputStream(path.toFile())) {
+            var out = new BufferedOutputStream(file, 1 << 16);
+            var header = new byte[HEADER_BYTES];
+            for (var payload : payloads) {
+                if (payload.length > MAX_RECORD_BYTES) {
+                    throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds " + MAX_RECORD_BYTES);
+                }
+                putInt(header, 0, payload.length);
+                putInt(header, 4, crc(payload));
+                out.write(header);
+                out.write(payload);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+    }
+
+    /**
+     * @return the offset to {@link #read} the record back from
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (payload.length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Record of " + payload.length + " bytes exceeds " + MAX_RECORD_BYTES);
+        }
+        long offset = end;
+        var frame = new byte[HEADER_BYTES + payload.length];
+        putInt(frame, 0, payload.length);
+        putInt(frame, 4, crc(payload));
+        System.arraycopy(payload, 0, frame, HEADER_BYTES, payload.length);
+        file.seek(offset);
+        file.write(frame);
+        file.getFD().sync();
+        end = offset + frame.length;
+        return offset;
+    }
+
+    public synchronized byte[] read(long offset) throws IOException {
+        if (offset < 0 || offset + HEADER_BYTES > end) {
+            throw new IllegalArgumentException("No record at offset " + offset);
+        }
+        file.seek(offset);
+        int size = file.readInt();
+        int checksum = file.readInt();
+        var payload = new byte[size];
+        file.readFully(payload);
+        if (crc(payload) != checksum) {
+            throw new IOException("Corrupt record at offset " + offset);
+        }
+        return payload;
+    }
+
+    /**
+     * Bytes in the log, including framing.
+     */
+    public synchronized long size() {
+        return end;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        file.close();
+    }
+
+    private static int crc(byte[] payload) {
+        var crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private static void putInt(byte[] bytes, int at, int value) {
+        bytes[at] = (byte) (value >>> 24);
+        bytes[at + 1] = (byte) (value >>> 16);
+        bytes[at + 2] = (byte) (value >>> 8);
+        bytes[at + 3] = (byte) value;
+    }
+}
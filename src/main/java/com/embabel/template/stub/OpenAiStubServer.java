@@ -0,0 +1,281 @@
+package com.embabel.template.stub;
+
+import com.embabel.template.llm.TokenEstimates;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for an OpenAI-compatible chat completions API, so that load tests and CI perf tests can run the agents
+ * without calling, or paying for, a real model. Point a model's base URL at {@link #baseUrl()}.
+ * <p>
+ * Serves {@code POST /v1/chat/completions}, including {@code stream: true} as server-sent events, and
+ * {@code GET /v1/models}. Answers come from {@link StubResponses}; latency, generation speed and injected failures
+ * from {@link StubLlmProperties}. Requests are handled on virtual threads, so thousands can wait at once.
+ * <p>
+ * Started with the application when {@code llm.stub.enabled} is true, or directly with {@link #start()}.
+ */
+@Component
+@ConditionalOnProperty(name = "llm.stub.enabled", havingValue = "true")
+@EnableConfigurationProperties(StubLlmProperties.class)
+public class OpenAiStubServer implements SmartLifecycle, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(OpenAiStubServer.class);
+
+    /**
+     * z-score of the 99th percentile of a standard normal distribution.
+     */
+    private static final double Z_99 = 2.326;
+
+    /**
+     * Tokens sent per streamed chunk are sized so that a chunk goes out about this often.
+     */
+    private static final Duration CHUNK_INTERVAL = Duration.ofMillis(20);
+
+    private final StubLlmProperties properties;
+    private final ObjectMapper objectMapper;
+    private final StubResponses responses;
+    private final AtomicLong requests = new AtomicLong();
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public OpenAiStubServer(StubLlmProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.responses = new StubResponses(objectMapper, properties.canned(), properties.textTokens());
+    }
+
+    @Override
+    public synchronized void start() {
+        if (server != null) {
+            return;
+        }
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", properties.port()), 4096);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not start the stub LLM server on port " + properties.port(), e);
+        }
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server.setExecutor(executor);
+        server.createContext("/v1/chat/completions", this::chatCompletions);
+        server.createContext("/v1/models", this::models);
+        server.start();
+        logger.info("Stub LLM server listening at {}", baseUrl());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return server != null;
+    }
+
+    /**
+     * Start before the model beans are used, and stop after.
+     */
+    @Override
+    public int getPhase() {
+        return Integer.MIN_VALUE;
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    public synchronized String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Chat completion requests received so far, including those answered with an injected failure.
+     */
+    public long requests() {
+        return requests.get();
+    }
+
+    private void chatCompletions(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "method_not_allowed", "Use POST");
+                return;
+            }
+            JsonNode request = objectMapper.readTree(exchange.getRequestBody());
+            var random = ThreadLocalRandom.current();
+            double roll = random.nextDouble();
+            if (roll < properties.rateLimitRate()) {
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                sendError(exchange, 429, "rate_limit_exceeded", "Rate limit reached (stub)");
+                return;
+            }
+            if (roll < properties.rateLimitRate() + properties.errorRate()) {
+                sleep(sampleLatency());
+                sendError(exchange, 500, "server_error", "Injected failure (stub)");
+                return;
+            }
+
+            var prompt = prompt(request);
+            var content = responses.answer(prompt);
+            var usage = Map.of(
+                    "prompt_tokens", TokenEstimates.estimate(prompt),
+                    "completion_tokens", TokenEstimates.estimate(content),
+                    "total_tokens", TokenEstimates.estimate(prompt) + TokenEstimates.estimate(content));
+            var model = request.path("model").asText("stub");
+            var id = "chatcmpl-stub-" + requests.get();
+
+            sleep(sampleLatency());
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, id, model, content,
+                        request.path("stream_options").path("include_usage").asBoolean(false) ? usage : null);
+            } else {
+                sleep(generationTime(TokenEstimates.estimate(content)));
+                var message = Map.of("role", "assistant", "content", content);
+                sendJson(exchange, 200, Map.of(
+                        "id", id,
+                        "object", "chat.completion",
+                        "created", System.currentTimeMillis() / 1000,
+                        "model", model,
+                        "choices", List.of(Map.of("index", 0, "message", message, "finish_reason", "stop")),
+                        "usage", usage));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stream(HttpExchange exchange, String id, String model, String content, Map<String, Integer> usage)
+            throws IOException, InterruptedException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        var out = exchange.getResponseBody();
+        int charsPerChunk = properties.tokensPerSecond() <= 0
+                ? Math.max(1, content.length())
+                : (int) Math.max(TokenEstimates.CHARS_PER_TOKEN,
+                properties.tokensPerSecond() * CHUNK_INTERVAL.toMillis() / 1000.0 * TokenEstimates.CHARS_PER_TOKEN);
+        sendEvent(out, chunk(id, model, Map.of("role", "assistant", "content", ""), null));
+        for (int start = 0; start < content.length(); start += charsPerChunk) {
+            var piece = content.substring(start, Math.min(content.length(), start + charsPerChunk));
+            sleep(generationTime(TokenEstimates.estimate(piece)));
+            sendEvent(out, chunk(id, model, Map.of("content", piece), null));
+        }
+        sendEvent(out, chunk(id, model, Map.of(), "stop"));
+        if (usage != null) {
+            var last = new LinkedHashMap<>(chunk(id, model, null, null));
+            last.put("choices", List.of());
+            last.put("usage", usage);
+            sendEvent(out, last);
+        }
+        out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private Map<String, Object> chunk(String id, String model, Map<String, String> delta, String finishReason) {
+        var chunk = new LinkedHashMap<String, Object>();
+        chunk.put("id", id);
+        chunk.put("object", "chat.completion.chunk");
+        chunk.put("created", System.currentTimeMillis() / 1000);
+        chunk.put("model", model);
+        if (delta != null) {
+            var choice = new LinkedHashMap<String, Object>();
+            choice.put("index", 0);
+            choice.put("delta", delta);
+            choice.put("finish_reason", finishReason);
+            chunk.put("choices", List.of(choice));
+        }
+        return chunk;
+    }
+
+    private void sendEvent(OutputStream out, Object event) throws IOException {
+        out.write(("data: " + objectMapper.writeValueAsString(event) + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void models(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            sendJson(exchange, 200, Map.of("object", "list", "data", List.of()));
+        }
+    }
+
+    private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+        sendJson(exchange, status, Map.of("error", Map.of("message", message, "type", code, "code", code)));
+    }
+
+    private void sendJson(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] bytes = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * The prompt as one string: every message's text content, in order.
+     */
+    private static String prompt(JsonNode request) {
+        var prompt = new StringBuilder();
+        for (var message : request.path("messages")) {
+            var content = message.path("content");
+            if (content.isTextual()) {
+                prompt.append(content.asText()).append("\n\n");
+            } else {
+                for (var part : content) {
+                    prompt.append(part.path("text").asText()).append("\n\n");
+                }
+            }
+        }
+        return prompt.toString();
+    }
+
+    /**
+     * Log-normal time to first token with the configured median and 99th percentile.
+     */
+    Duration sampleLatency() {
+        long median = properties.latencyMedian().toNanos();
+        long p99 = properties.latencyP99().toNanos();
+        if (median <= 0) {
+            return Duration.ZERO;
+        }
+        double sigma = p99 > median ? Math.log((double) p99 / median) / Z_99 : 0;
+        return Duration.ofNanos((long) (median * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian())));
+    }
+
+    private Duration generationTime(int tokens) {
+        return properties.tokensPerSecond() <= 0
+                ? Duration.ZERO
+                : Duration.ofNanos((long) (tokens * 1e9 / properties.tokensPerSecond()));
+    }
+
+    private static void sleep(Duration duration) throws InterruptedException {
+        if (!duration.isZero()) {
+            Thread.sleep(duration);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.embabel.template.stub;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Stand-in LLM server settings, bound from {@code llm.stub.*}.
+ * Response latency is log-normal, fitted to {@code latency-median} and {@code latency-p99}; it is the time to the first
+ * token, after which tokens follow at {@code tokens-per-second}.
+ *
+ * @param enabled          start the server with the application, see the {@code loadtest} profile
+ * @param port             port to listen on; 0 picks a free one
+ * @param latencyMedian    median time to first token
+ * @param latencyP99       99th percentile time to first token; equal to the median for a fixed latency
+ * @param tokensPerSecond  generation speed after the first token; 0 returns the whole answer at once
+ * @param errorRate        fraction of requests answered with a 500
+ * @param rateLimitRate    fraction of requests answered with a 429 and a {@code Retry-After} header
+ * @param textTokens       length of answers to prompts that do not ask for JSON
+ * @param canned           fixed answers, keyed by a substring of the prompt that selects them
+ */
+@ConfigurationProperties("llm.stub")
+public record StubLlmProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("18080") int port,
+        @DefaultValue("300ms") Duration latencyMedian,
+        @DefaultValue("1500ms") Duration latencyP99,
+        @DefaultValue("200") double tokensPerSecond,
+        @DefaultValue("0") double errorRate,
+        @DefaultValue("0") double rateLimitRate,
+        @DefaultValue("300") int textTokens,
+        Map<String, String> canned
+) {
+
+    public StubLlmProperties {
+        canned = canned == null ? Map.of() : Map.copyOf(canned);
+    }
+
+    /**
+     * An instant, error-free server on a free port, for tests.
+     */
+    public static StubLlmProperties instant() {
+        return new StubLlmProperties(true, 0, Duration.ZERO, Duration.ZERO, 0, 0, 0, 50, Map.of());
+    }
+
+    public StubLlmProperties withLatency(Duration median, Duration p99) {
+        return new StubLlmProperties(enabled, port, median, p99, tokensPerSecond, errorRate, rateLimitRate,
+                textTokens, canned);
+    }
+
+    public StubLlmProperties withFailures(double errorRate, double rateLimitRate) {
+        return new StubLlmProperties(enabled, port, latencyMedian, latencyP99, tokensPerSecond, errorRate, rateLimitRate,
+                textTokens, canned);
+    }
+
+    public StubLlmProperties withTokensPerSecond(double tokensPerSecond) {
+        return new StubLlmProperties(enabled, port, latencyMedian, latencyP99, tokensPerSecond, errorRate, rateLimitRate,
+                textTokens, canned);
+    }
+}
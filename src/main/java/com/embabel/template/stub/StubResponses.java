@@ -0,0 +1,157 @@
+package com.embabel.template.stub;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Makes up answers to prompts. A canned answer is used when one matches; otherwise structured-output prompts,
+ * which carry the JSON schema of the expected answer, get a JSON instance of that schema, and anything else gets text.
+ * <p>
+ * Arrays of objects with a {@code weekNumber} are filled with a full season of weeks numbered from 1, so that a
+ * {@code SeasonPlan} comes back with 20 lessons. A single such object takes its week from the {@code "weekNumber": N}
+ * the prompt asks for.
+ */
+final class StubResponses {
+
+    static final int SEASON_WEEKS = 20;
+    private static final int ARRAY_ITEMS = 3;
+    private static final int MAX_DEPTH = 8;
+
+    private static final Pattern SCHEMA = Pattern.compile("```(?:json)?\\s*(\\{.*?})\\s*```", Pattern.DOTALL);
+    private static final Pattern REQUESTED_WEEK = Pattern.compile("\"weekNumber\"\\s*:\\s*(\\d+)");
+    private static final String FILLER = "Practice divergent thinking, build and test in small teams, "
+            + "then reflect on what worked and record it in the team log. ";
+
+    private final ObjectMapper objectMapper;
+    private final Map<String, String> canned;
+    private final int textTokens;
+
+    StubResponses(ObjectMapper objectMapper, Map<String, String> canned, int textTokens) {
+        this.objectMapper = objectMapper;
+        this.canned = canned;
+        this.textTokens = textTokens;
+    }
+
+    String answer(String prompt) {
+        for (var entry : canned.entrySet()) {
+            if (prompt.contains(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        var schema = schema(prompt);
+        if (schema == null) {
+            return text(textTokens);
+        }
+        var requestedWeek = lastMatch(REQUESTED_WEEK.matcher(prompt));
+        return instance(schema, schema, null, requestedWeek == null ? 1 : Integer.parseInt(requestedWeek), 0).toString();
+    }
+
+    private JsonNode schema(String prompt) {
+        var json = lastMatch(SCHEMA.matcher(prompt));
+        if (json == null) {
+            return null;
+        }
+        try {
+            var schema = objectMapper.readTree(json);
+            return schema.has("type") || schema.has("properties") || schema.has("$ref") ? schema : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private JsonNode instance(JsonNode root, JsonNode schema, String name, int weekNumber, int depth) {
+        var factory = objectMapper.getNodeFactory();
+        if (schema.has("$ref")) {
+            schema = resolve(root, schema.get("$ref").asText());
+        }
+        if (depth > MAX_DEPTH || schema == null) {
+            return factory.nullNode();
+        }
+        if (schema.has("enum") && schema.get("enum").size() > 0) {
+            return schema.get("enum").get(0);
+        }
+        switch (type(schema)) {
+            case "object" -> {
+                ObjectNode object = factory.objectNode();
+                var properties = schema.path("properties");
+                properties.fieldNames().forEachRemaining(property ->
+                        object.set(property, instance(root, properties.get(property), property, weekNumber, depth + 1)));
+                return object;
+            }
+            case "array" -> {
+                ArrayNode array = factory.arrayNode();
+                var items = schema.path("items");
+                var itemSchema = items.has("$ref") ? resolve(root, items.get("$ref").asText()) : items;
+                boolean weeks = itemSchema != null && itemSchema.path("properties").has("weekNumber");
+                int count = weeks ? SEASON_WEEKS : ARRAY_ITEMS;
+                for (int i = 0; i < count; i++) {
+                    array.add(instance(root, items, name, weeks ? i + 1 : weekNumber, depth + 1));
+                }
+                return array;
+            }
+            case "integer" -> {
+                return factory.numberNode("weekNumber".equals(name) ? weekNumber : 1);
+            }
+            case "number" -> {
+                return factory.numberNode(1.0);
+            }
+            case "boolean" -> {
+                return factory.booleanNode(true);
+            }
+            default -> {
+                return factory.textNode(name == null ? text(textTokens) : "Week " + weekNumber + " " + name + ": " + text(12));
+            }
+        }
+    }
+
+    private static String type(JsonNode schema) {
+        var type = schema.path("type");
+        if (type.isArray()) {
+            for (var option : type) {
+                if (!"null".equals(option.asText())) {
+                    return option.asText();
+                }
+            }
+        }
+        if (type.isTextual()) {
+            return type.asText();
+        }
+        return schema.has("properties") ? "object" : "string";
+    }
+
+    private static JsonNode resolve(JsonNode root, String ref) {
+        if (!ref.startsWith("#/")) {
+            return null;
+        }
+        var node = root.at(ref.substring(1));
+        return node.isMissingNode() ? null : node;
+    }
+
+    /**
+     * Roughly {@code tokens} tokens of text, at four characters per token.
+     */
+    static String text(int tokens) {
+        int chars = Math.max(1, tokens * 4);
+        var text = new StringBuilder(chars + FILLER.length());
+        while (text.length() < chars) {
+            text.append(FILLER);
+        }
+        text.setLength(chars);
+        return text.toString().trim();
+    }
+
+    private static String lastMatch(Matcher matcher) {
+        String last = null;
+        while (matcher.find()) {
+            last = matcher.group(1);
+        }
+        return last;
+    }
+}
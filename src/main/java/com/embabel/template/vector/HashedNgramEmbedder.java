@@ -0,0 +1,54 @@
+package com.embabel.template.vector;
+
+import java.util.Locale;
+
+/**
+ * A local stand-in for an embedding model: words and character trigrams hashed into a fixed number of dimensions.
+ * <p>
+ * It captures shared vocabulary and spelling, not meaning, so synonyms only match if the caller first rewrites them
+ * to a common form. Word order is ignored. It needs no model and gives the same vector for the same text on every JVM.
+ */
+public final class HashedNgramEmbedder implements TextEmbedder {
+
+    private static final float WORD_WEIGHT = 1.0f;
+    private static final float TRIGRAM_WEIGHT = 0.4f;
+
+    private final int dimensions;
+
+    public HashedNgramEmbedder(int dimensions) {
+        if (dimensions <= 0) {
+            throw new IllegalArgumentException("dimensions must be positive");
+        }
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public String name() {
+        return "hashed-ngram-" + dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        var vector = new float[dimensions];
+        for (var word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            add(vector, word.hashCode(), WORD_WEIGHT);
+            var padded = "^" + word + "$";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                add(vector, padded.substring(i, i + 3).hashCode() * 31 + 7, TRIGRAM_WEIGHT);
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * Signed feature hashing: the sign bit keeps colliding features from only ever adding up.
+     */
+    private void add(float[] vector, int hash, float weight) {
+        int mixed = hash * 0x9E3779B9;
+        mixed ^= mixed >>> 16;
+        vector[Math.floorMod(mixed, dimensions)] += (mixed & 0x8000_0000) == 0 ? weight : -weight;
+    }
+}
@@ -0,0 +1,370 @@
+package com.embabel.template.vector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory approximate nearest-neighbour index over labelled vectors, by cosine similarity: a Hierarchical
+ * Navigable Small World graph (Malkov and Yashunin, 2016).
+ * <p>
+ * Each vector is linked to up to {@code m} near neighbours per layer, {@code 2m} on the bottom layer, and appears on
+ * each higher layer with probability {@code 1/m}. A search descends greedily through the sparse upper layers and then
+ * explores the bottom layer with a candidate list of {@code efSearch} vectors, so it visits a small fraction of the
+ * index. Vectors are normalized on insertion, making cosine similarity a dot product.
+ * <p>
+ * Removal leaves the vector in the graph as a route for searches but out of results; once removed vectors outnumber
+ * the live ones, the graph is rebuilt from the live vectors. Searches run concurrently; updates take an exclusive lock.
+ */
+public final class HnswIndex {
+
+    /**
+     * @param similarity cosine similarity to the query, from -1 to 1
+     */
+    public record Match(String label, double similarity) {
+    }
+
+    private static final class Node {
+        final String label;
+        final float[] vector;
+        final int[][] neighbours;
+        final int[] counts;
+        boolean removed;
+
+        Node(String label, float[] vector, int level, int m) {
+            this.label = label;
+            this.vector = vector;
+            this.neighbours = new int[level + 1][];
+            this.counts = new int[level + 1];
+            for (int layer = 0; layer <= level; layer++) {
+                // One spare slot: a list is trimmed back to its limit after it overflows
+                neighbours[layer] = new int[(layer == 0 ? 2 * m : m) + 1];
+            }
+        }
+
+        int level() {
+            return counts.length - 1;
+        }
+    }
+
+    private record Candidate(int node, double distance) {
+    }
+
+    private static final Comparator<Candidate> NEAREST_FIRST = Comparator.comparingDouble(Candidate::distance);
+
+    private final int dimensions;
+    private final int m;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final SplittableRandom random;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> byLabel = new HashMap<>();
+    private int entryPoint = -1;
+    private int removed;
+
+    public HnswIndex(int dimensions) {
+        this(dimensions, 16, 200, 64, 42);
+    }
+
+    /**
+     * @param m              links per vector on the upper layers; more gives better recall and uses more memory
+     * @param efConstruction candidate list size while linking a new vector
+     * @param efSearch       candidate list size while searching; raised to the number of results asked for
+     */
+    public HnswIndex(int dimensions, int m, int efConstruction, int efSearch, long seed) {
+        if (dimensions <= 0 || m < 2) {
+            throw new IllegalArgumentException("Need positive dimensions and m >= 2");
+        }
+        this.dimensions = dimensions;
+        this.m = m;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1 / Math.log(m);
+        this.random = new SplittableRandom(seed);
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    /**
+     * Live vectors, excluding removed ones.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return byLabel.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(String label) {
+        lock.readLock().lock();
+        try {
+            return byLabel.containsKey(label);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add a vector, replacing any vector with the same label.
+     */
+    public void add(String label, float[] vector) {
+        var normalized = normalize(vector);
+        lock.writeLock().lock();
+        try {
+            removeLocked(label);
+            insert(label, normalized);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether the label was in the index
+     */
+    public boolean remove(String label) {
+        lock.writeLock().lock();
+        try {
+            boolean found = removeLocked(label);
+            compactIfNeeded();
+            return found;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * The {@code k} live vectors most similar to the query, most similar first.
+     */
+    public List<Match> search(float[] query, int k) {
+        var normalized = normalize(query);
+        lock.readLock().lock();
+        try {
+            if (byLabel.isEmpty() || k <= 0) {
+                return List.of();
+            }
+            int nearest = entryPoint;
+            for (int layer = nodes.get(entryPoint).level(); layer > 0; layer--) {
+                nearest = greedy(normalized, nearest, layer);
+            }
+            // Removed vectors still route the search, so look a little wider to fill k results
+            int ef = Math.max(efSearch, k + Math.min(removed, k));
+            var found = searchLayer(normalized, nearest, ef, 0);
+            found.sort(NEAREST_FIRST);
+            var matches = new ArrayList<Match>(k);
+            for (var candidate : found) {
+                var node = nodes.get(candidate.node());
+                if (!node.removed) {
+                    matches.add(new Match(node.label, 1 - candidate.distance()));
+                    if (matches.size() == k) {
+                        break;
+                    }
+                }
+            }
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean removeLocked(String label) {
+        var id = byLabel.remove(label);
+        if (id == null) {
+            return false;
+        }
+        nodes.get(id).removed = true;
+        removed++;
+        return true;
+    }
+
+    private void compactIfNeeded() {
+        if (removed <= byLabel.size() || removed < 16) {
+            return;
+        }
+        var live = nodes.stream().filter(node -> !node.removed).toList();
+        nodes = new ArrayList<>(live.size());
+        byLabel.clear();
+        entryPoint = -1;
+        removed = 0;
+        for (var node : live) {
+            insert(node.label, node.vector);
+        }
+    }
+
+    private void insert(String label, float[] vector) {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelMultiplier);
+        int id = nodes.size();
+        var node = new Node(label, vector, level, m);
+        nodes.add(node);
+        byLabel.put(label, id);
+        if (entryPoint < 0) {
+            entryPoint = id;
+            return;
+        }
+        int nearest = entryPoint;
+        int top = nodes.get(entryPoint).level();
+        for (int layer = top; layer > level; layer--) {
+            nearest = greedy(vector, nearest, layer);
+        }
+        for (int layer = Math.min(level, top); layer >= 0; layer--) {
+            var candidates = searchLayer(vector, nearest, efConstruction, layer);
+            candidates.sort(NEAREST_FIRST);
+            int limit = layer == 0 ? 2 * m : m;
+            for (var neighbour : selectNeighbours(candidates, m)) {
+                link(node, layer, neighbour, limit);
+                link(nodes.get(neighbour), layer, id, limit);
+            }
+            nearest = candidates.getFirst().node();
+        }
+        if (level > top) {
+            entryPoint = id;
+        }
+    }
+
+    /**
+     * The nearest candidates that are not closer to an already selected neighbour than to the new vector,
+     * which keeps links spread in different directions; topped up with the nearest remaining ones.
+     */
+    private List<Integer> selectNeighbours(List<Candidate> nearestFirst, int count) {
+        var selected = new ArrayList<Integer>(count);
+        var skipped = new ArrayList<Integer>();
+        for (var candidate : nearestFirst) {
+            if (selected.size() == count) {
+                break;
+            }
+            var vector = nodes.get(candidate.node()).vector;
+            boolean diverse = true;
+            for (var chosen : selected) {
+                if (distance(vector, nodes.get(chosen).vector) < candidate.distance()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            (diverse ? selected : skipped).add(candidate.node());
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < count; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    private void link(Node node, int layer, int neighbour, int limit) {
+        var links = node.neighbours[layer];
+        int count = node.counts[layer];
+        for (int i = 0; i < count; i++) {
+            if (links[i] == neighbour) {
+                return;
+            }
+        }
+        links[count++] = neighbour;
+        if (count > limit) {
+            // Drop the farthest link
+            int farthest = 0;
+            double farthestDistance = -1;
+            for (int i = 0; i < count; i++) {
+                double d = distance(node.vector, nodes.get(links[i]).vector);
+                if (d > farthestDistance) {
+                    farthestDistance = d;
+                    farthest = i;
+                }
+            }
+            links[farthest] = links[--count];
+        }
+        node.counts[layer] = count;
+    }
+
+    private int greedy(float[] query, int from, int layer) {
+        int current = from;
+        double currentDistance = distance(query, nodes.get(current).vector);
+        for (boolean moved = true; moved; ) {
+            moved = false;
+            var node = nodes.get(current);
+            for (int i = 0; i < node.counts[layer]; i++) {
+                int neighbour = node.neighbours[layer][i];
+                double d = distance(query, nodes.get(neighbour).vector);
+                if (d < currentDistance) {
+                    currentDistance = d;
+                    current = neighbour;
+                    moved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Best-first search of one layer from an entry node, keeping the {@code ef} nearest vectors found.
+     */
+    private List<Candidate> searchLayer(float[] query, int from, int ef, int layer) {
+        var visited = new boolean[nodes.size()];
+        var start = new Candidate(from, distance(query, nodes.get(from).vector));
+        var toVisit = new PriorityQueue<>(NEAREST_FIRST);
+        var nearest = new PriorityQueue<>(NEAREST_FIRST.reversed());
+        toVisit.add(start);
+        nearest.add(start);
+        visited[from] = true;
+        while (!toVisit.isEmpty()) {
+            var closest = toVisit.poll();
+            if (closest.distance() > nearest.peek().distance() && nearest.size() >= ef) {
+                break;
+            }
+            var node = nodes.get(closest.node());
+            for (int i = 0; i < node.counts[layer]; i++) {
+                int neighbour = node.neighbours[layer][i];
+                if (visited[neighbour]) {
+                    continue;
+                }
+                visited[neighbour] = true;
+                double d = distance(query, nodes.get(neighbour).vector);
+                if (nearest.size() < ef || d < nearest.peek().distance()) {
+                    var candidate = new Candidate(neighbour, d);
+                    toVisit.add(candidate);
+                    nearest.add(candidate);
+                    if (nearest.size() > ef) {
+                        nearest.poll();
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(nearest);
+    }
+
+    private float[] normalize(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        var normalized = Arrays.copyOf(vector, vector.length);
+        if (norm > 0) {
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < normalized.length; i++) {
+                normalized[i] *= scale;
+            }
+        }
+        return normalized;
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double dot = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+        }
+        return 1 - dot;
+    }
+}
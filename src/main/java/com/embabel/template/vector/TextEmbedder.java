@@ -0,0 +1,14 @@
+package com.embabel.template.vector;
+
+/**
+ * Turns text into a vector, so that texts with similar meaning get similar vectors.
+ */
+public interface TextEmbedder {
+
+    /**
+     * Identifies the embedding, so that vectors from different embedders are never compared.
+     */
+    String name();
+
+    float[] embed(String text);
+}
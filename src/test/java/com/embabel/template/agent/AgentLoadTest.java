@@ -0,0 +1,79 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.api.common.autonomy.AgentInvocation;
+import com.embabel.agent.core.AgentPlatform;
+import com.embabel.agent.domain.io.UserInput;
+import com.embabel.template.loadtest.LoadTestBaseline;
+import com.embabel.template.loadtest.OpenLoopLoad;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end load test of the exported goals, run in-process through the agent platform against the stub LLM server
+ * of the {@code loadtest} profile. Not part of the regular build: run with {@code ./mvnw -Ploadtest test}, tuning the
+ * load with the {@code loadtest.*} system properties described on {@link OpenLoopLoad.Settings} and
+ * {@link LoadTestBaseline}.
+ */
+@SpringBootTest(properties = "spring.shell.interactive.enabled=false")
+@ActiveProfiles("loadtest")
+class AgentLoadTest {
+
+    private static final String[] TEAMS = {
+            "Division I team of 6, vehicle problem, first season",
+            "Division II team of 7, technical problem, two veterans",
+            "Division III team of 5, performance problem, strong builders",
+            "Primary team of 4, structure problem, meets twice a week",
+    };
+
+    @DynamicPropertySource
+    static void stubPort(DynamicPropertyRegistry registry) {
+        try (var socket = new ServerSocket(0)) {
+            int port = socket.getLocalPort();
+            registry.add("llm.stub.port", () -> port);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Autowired
+    private AgentPlatform agentPlatform;
+
+    private final AtomicInteger inputs = new AtomicInteger();
+
+    private UserInput nextInput() {
+        return new UserInput(TEAMS[Math.floorMod(inputs.getAndIncrement(), TEAMS.length)]);
+    }
+
+    @Test
+    void reviewedSeasonPlan() throws Exception {
+        LoadTestBaseline.check(OpenLoopLoad.run("reviewedSeasonPlan", OpenLoopLoad.Settings.fromSystemProperties(),
+                () -> AgentInvocation.create(agentPlatform, ReviewedSeasonPlan.class).invoke(nextInput())));
+    }
+
+    @Test
+    void reviewedStory() throws Exception {
+        LoadTestBaseline.check(OpenLoopLoad.run("reviewedStory", OpenLoopLoad.Settings.fromSystemProperties(),
+                () -> AgentInvocation.create(agentPlatform, ReviewedStory.class).invoke(nextInput())));
+    }
+
+    @Test
+    @Disabled("UserManualWriterAgent is not deployed: its @Agent annotation is commented out")
+    void userManual() throws Exception {
+        var document = Files.createTempFile("manual", ".txt");
+        Files.writeString(document, "# Setup\n\n" + "Connect the unit and hold the power button for three seconds.\n".repeat(200));
+        document.toFile().deleteOnExit();
+        LoadTestBaseline.check(OpenLoopLoad.run("userManual", OpenLoopLoad.Settings.fromSystemProperties(),
+                () -> AgentInvocation.create(agentPlatform, UserManual.class).invoke(new UserInput(document.toString()))));
+    }
+}
@@ -0,0 +1,56 @@
+package com.embabel.template.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CandidateHeuristicsTest {
+
+    private static final String STORY = """
+            Mira found a lantern in the reeds that glowed only when someone nearby told the truth. \
+            She carried it through the village, where it flickered at the baker, blazed at her grandmother \
+            and went dark at the mayor. By nightfall the whole village had gathered at the square, \
+            and the mayor, shamed by the lantern's silence, finally confessed what he had hidden.""";
+
+    @Test
+    void prefersAFinishedVariedStoryWithinTheLimit() {
+        var scorer = CandidateHeuristics.story(100);
+
+        double good = scorer.score(new Story(STORY));
+        double repetitive = scorer.score(new Story("The knight rode on and on. ".repeat(12)));
+        double cutOff = scorer.score(new Story(STORY.substring(0, STORY.length() - 20)));
+        double tooLong = scorer.score(new Story((STORY + " ").repeat(4)));
+
+        assertTrue(good > repetitive, good + " vs repetitive " + repetitive);
+        assertTrue(good > cutOff, good + " vs cut off " + cutOff);
+        assertTrue(good > tooLong, good + " vs too long " + tooLong);
+        assertEquals(0, scorer.score(new Story("")));
+    }
+
+    @Test
+    void prefersACompleteSeasonPlanWithinTheWeeklyLimit() {
+        var scorer = CandidateHeuristics.seasonPlan(20, 40);
+
+        double complete = scorer.score(plan(20, "Practise brainstorming with a timed spontaneous problem"));
+        double missingWeeks = scorer.score(plan(14, "Practise brainstorming with a timed spontaneous problem"));
+        double wordy = scorer.score(plan(20, "Practise brainstorming at length ".repeat(20)));
+
+        assertTrue(complete > missingWeeks, complete + " vs missing weeks " + missingWeeks);
+        assertTrue(complete > wordy, complete + " vs wordy " + wordy);
+        assertEquals(1.0, complete, 1e-9);
+        assertEquals(0, scorer.score(new SeasonPlan(null, null, null, null)));
+    }
+
+    private static SeasonPlan plan(int weeks, String goals) {
+        var lessons = IntStream.rangeClosed(1, weeks)
+                .mapToObj(week -> new WeekLesson(week, goals, "Build the vehicle frame", "Costume sketches",
+                        "verbal", List.of("Warm-up", "Build"), List.of("Cardboard"), List.of("Goggles"),
+                        List.of("Frame stands"), List.of("Sketch"), "Team does all the work"))
+                .toList();
+        return new SeasonPlan("Division II", "Vehicle", "Lost at sea", lessons);
+    }
+}
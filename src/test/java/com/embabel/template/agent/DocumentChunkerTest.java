@@ -0,0 +1,75 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.llm.TokenEstimates;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentChunkerTest {
+
+    private static String manual(int sections) {
+        return IntStream.range(0, sections)
+                .mapToObj(s -> "# Section " + s + "\n\n" + IntStream.range(0, 6)
+                        .mapToObj(p -> "Paragraph " + p + " of section " + s
+                                + ". Press the power button for three seconds to reset the device. "
+                                + "Keep the unit away from water and direct sunlight.")
+                        .collect(Collectors.joining("\n\n")))
+                .collect(Collectors.joining("\n\n"));
+    }
+
+    @Test
+    void chunksStayWithinBudgetAndKeepAllText() {
+        var text = manual(30);
+        List<String> chunks = DocumentChunker.chunk(text, 300);
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> assertTrue(TokenEstimates.estimate(chunk) <= 300, chunk));
+        assertEquals(text.replaceAll("\\s+", ""), String.join("", chunks).replaceAll("\\s+", ""));
+    }
+
+    @Test
+    void headingsStartChunksOnceTheyHoldAQuarterOfTheBudget() {
+        var chunks = DocumentChunker.chunk(manual(10), 600);
+
+        assertTrue(chunks.stream().filter(chunk -> chunk.startsWith("# Section")).count() > chunks.size() / 2);
+        for (var chunk : chunks) {
+            int heading = chunk.indexOf("\n# Section");
+            assertTrue(heading < 0 || TokenEstimates.estimate(chunk.substring(0, heading)) < 150, chunk);
+            assertFalse(DocumentChunker.isHeading(chunk.substring(chunk.lastIndexOf('\n') + 1)), chunk);
+        }
+    }
+
+    @Test
+    void oversizedParagraphIsSplitBySentence() {
+        var paragraph = IntStream.range(0, 200)
+                .mapToObj(i -> "Sentence number " + i + " explains one more step.")
+                .collect(Collectors.joining(" "));
+        var chunks = DocumentChunker.chunk(paragraph, 100);
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> {
+            assertTrue(TokenEstimates.estimate(chunk) <= 100);
+            assertTrue(chunk.endsWith("."));
+        });
+    }
+
+    @Test
+    void localEditOnlyChangesNearbyChunks() {
+        var original = manual(40);
+        var edited = original.replace("Paragraph 2 of section 20.", "Paragraph 2 of section 20, revised and extended.");
+        var before = DocumentChunker.chunk(original, 400);
+        var after = DocumentChunker.chunk(edited, 400);
+
+        var unchanged = new HashSet<>(before);
+        unchanged.retainAll(after);
+        assertTrue(before.size() - unchanged.size() <= 2,
+                "changed " + (before.size() - unchanged.size()) + " of " + before.size());
+    }
+}
@@ -0,0 +1,52 @@
+package com.embabel.template.agent;
+
+import com.embabel.agent.domain.io.UserInput;
+import com.embabel.agent.testing.unit.FakeOperationContext;
+import com.embabel.template.llm.LlmCalls;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OmCoachAgentTest {
+
+    private static OmCoachAgent agent(int weekParallelism) {
+        return new OmCoachAgent(0.5, 180, 400, weekParallelism, 1, 2, new ObjectMapper(), LlmCalls.direct(),
+                SeasonPlanStore.disabled(), SeasonPlanSemanticCache.disabled(), SeasonPlanRepair.detached());
+    }
+
+    @Test
+    void fannedOutPlanMergesTwentyWeeksInOrder() {
+        var context = FakeOperationContext.create();
+        context.expectResponse(new SeasonSkeleton("Division II", "structure", "Build it bold", List.of("tape"),
+                IntStream.rangeClosed(1, 20).mapToObj(week -> new WeekOutline(week, "outline " + week)).toList()));
+        // One week at a time, so the fake's responses are taken in week order
+        for (int week = 1; week <= 20; week++) {
+            // The model gets the week number wrong: the agent puts it right
+            context.expectResponse(new WeekLesson(0, "Goal " + week, "lt", "style", "verbal", List.of("warm-up"),
+                    List.of("tape"), List.of(), List.of("done"), List.of("log"), "kids only"));
+        }
+
+        var plan = agent(1).craftSeasonPlan(
+                new UserInput("Div II structure team, 6 kids", Instant.now()), context);
+
+        assertEquals("Division II", plan.teamLevel());
+        assertEquals("Build it bold", plan.theme());
+        assertEquals(IntStream.rangeClosed(1, 20).boxed().toList(),
+                plan.lessons().stream().map(WeekLesson::weekNumber).toList());
+        assertEquals(IntStream.rangeClosed(1, 20).mapToObj(week -> "Goal " + week).toList(),
+                plan.lessons().stream().map(WeekLesson::goals).toList());
+        var invocations = context.getLlmInvocations();
+        assertEquals(21, invocations.size());
+        for (int week = 1; week <= 20; week++) {
+            var prompt = invocations.get(week).getPrompt();
+            assertTrue(prompt.contains("Write Week " + week + " in full"), "call " + week + " writes week " + week);
+            assertTrue(prompt.contains("Week " + week + ": outline " + week), "the outline reaches every week");
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.embabel.template.agent;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PdfTextExtractorTest {
+
+    @TempDir
+    Path temp;
+
+    private Path pdf(String name, List<String> pages) throws IOException {
+        return pdf(name, pages, Set.of());
+    }
+
+    /**
+     * @param corruptPages 1-based numbers of pages whose content stream is marked with a filter PDFBox does not have,
+     *                     so the document loads but those pages cannot be read
+     */
+    private Path pdf(String name, List<String> pages, Set<Integer> corruptPages) throws IOException {
+        var file = temp.resolve(name);
+        try (var document = new PDDocument()) {
+            var font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+            for (var text : pages) {
+                var page = new PDPage();
+                document.addPage(page);
+                try (var content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(font, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText(text);
+                    content.endText();
+                }
+                if (corruptPages.contains(document.getNumberOfPages())) {
+                    var contents = (COSStream) page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+                    contents.setItem(COSName.FILTER, COSName.getPDFName("NoSuchDecode"));
+                }
+            }
+            document.save(file.toFile());
+        }
+        return file;
+    }
+
+    @Test
+    void extractsEveryPageInOrder() throws IOException {
+        var extractor = new PdfTextExtractor("");
+        var text = extractor.extractText(pdf("manual.pdf", List.of("Unpack the robot", "Charge the battery", "Press start")));
+
+        int unpack = text.indexOf("Unpack the robot");
+        int charge = text.indexOf("Charge the battery");
+        int start = text.indexOf("Press start");
+        assertTrue(unpack >= 0 && unpack < charge && charge < start, text);
+    }
+
+    @Test
+    void skipsAnUnreadablePageAndExtractsTheRest() throws IOException {
+        var extractor = new PdfTextExtractor("");
+        var text = extractor.extractText(pdf("manual.pdf",
+                List.of("Unpack the robot", "Charge the battery", "Press start"), Set.of(2)));
+
+        int unpack = text.indexOf("Unpack the robot");
+        int skipped = text.indexOf("[Page 2 could not be read");
+        int start = text.indexOf("Press start");
+        assertTrue(unpack >= 0 && unpack < skipped && skipped < start, text);
+        assertFalse(text.contains("Charge the battery"), text);
+    }
+
+    @Test
+    void repeatExtractionIsServedFromTheContentAddressedCache() throws IOException {
+        var cacheDirectory = temp.resolve("cache");
+        var file = pdf("manual.pdf", List.of("Unpack the robot"));
+        new PdfTextExtractor(cacheDirectory.toString()).extractText(file);
+
+        List<Path> entries;
+        try (var listing = Files.list(cacheDirectory)) {
+            entries = listing.toList();
+        }
+        assertEquals(1, entries.size());
+        Files.writeString(entries.getFirst(), "from cache");
+
+        assertEquals("from cache", new PdfTextExtractor(cacheDirectory.toString()).extractText(file));
+    }
+
+    @Test
+    void readsFilesThatAreNotPdfsAsText() throws IOException {
+        var file = Files.writeString(temp.resolve("notes.txt"), "Plain text notes");
+
+        assertEquals("Plain text notes", new PdfTextExtractor(temp.resolve("cache").toString()).extractText(file));
+    }
+}
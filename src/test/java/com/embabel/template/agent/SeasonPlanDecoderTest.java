@@ -0,0 +1,116 @@
+package com.embabel.template.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanDecoderTest {
+
+    private final SeasonPlanDecoder decoder = new SeasonPlanDecoder(new ObjectMapper(), 4);
+
+    @Test
+    void decodesACompletePlanIgnoringFencesAndProse() {
+        var decoded = decoder.decode("```json\n" + plan(week(1), week(2), week(3), week(4)) + "\n```\nEnjoy the season!");
+
+        assertTrue(decoded.complete(), decoded.problems().toString());
+        assertEquals(4, decoded.plan().lessons().size());
+        assertEquals("Lost at sea", decoded.plan().theme());
+    }
+
+    @Test
+    void keepsTheCompleteWeeksOfATruncatedResponse() {
+        var full = plan(week(1), week(2), week(3), week(4));
+        var truncated = full.substring(0, full.indexOf(week(3)) + 40);
+
+        var decoded = decoder.decode(truncated);
+
+        assertEquals(List.of(1, 2), weeks(decoded.plan()));
+        assertEquals(Set.of(3, 4), decoded.weeksToRepair());
+        assertEquals("Division II", decoded.plan().teamLevel());
+        assertEquals("Vehicle", decoded.plan().longTermProblemType());
+        assertTrue(decoded.salvaged());
+        assertEquals(week(1) + week(2), decoded.salvagedText());
+    }
+
+    @Test
+    void repairsMalformedDuplicateAndMissingWeeks() {
+        var noAgenda = week(2).replace("\"agenda\":[\"Warm-up\",\"Build\"]", "\"agenda\":[]");
+        var decoded = decoder.decode(plan(week(1), noAgenda, "{\"weekNumber\":\"three\"}", week(1), week(9)));
+
+        assertEquals(List.of(1), weeks(decoded.plan()));
+        assertEquals(Set.of(2, 3, 4), decoded.weeksToRepair());
+        assertTrue(decoded.problems().stream().anyMatch(problem -> problem.contains("more than once")));
+        assertTrue(decoded.problems().stream().anyMatch(problem -> problem.contains("week 9")));
+    }
+
+    @Test
+    void infersAMissingWeekNumberFromItsPlace() {
+        var decoded = decoder.decode(plan(week(1), week(2).replace("\"weekNumber\":2,", ""), week(3), week(4)));
+
+        assertTrue(decoded.complete(), decoded.problems().toString());
+        assertEquals(2, decoded.plan().lessons().get(1).weekNumber());
+    }
+
+    @Test
+    void salvagesWeeksFromTextThatIsNotJson() {
+        // Models copy the comments from the example in the prompt, and sometimes drop a comma
+        var decoded = decoder.decode(plan(week(1) + " " + week(2), "// ... up to week 4\n"));
+
+        assertEquals(List.of(1, 2), weeks(decoded.plan()));
+        assertEquals(Set.of(3, 4), decoded.weeksToRepair());
+    }
+
+    @Test
+    void nothingIsSalvagedFromProse() {
+        var decoded = decoder.decode("Sorry, I can't help with that.");
+
+        assertFalse(decoded.salvaged());
+        assertEquals(Set.of(1, 2, 3, 4), decoded.weeksToRepair());
+    }
+
+    @Test
+    void theSeasonFieldsAloneAreNotWorthRepairing() {
+        var season = new SeasonPlanDecoder(new ObjectMapper(), 20);
+
+        assertFalse(season.decode(plan()).salvaged());
+        assertFalse(season.decode(plan(week(1), week(2), week(3), week(4))).salvaged());
+        assertTrue(season.decode(plan(week(1), week(2), week(3), week(4), week(5))).salvaged());
+    }
+
+    @Test
+    void fillsMissingSeasonFieldsAndCountsThemAsDamage() {
+        var decoded = decoder.decode(plan(week(1), week(2), week(3), week(4))
+                .replace("\"teamLevel\":\"Division II\",", "")
+                .replace("\"Lost at sea\"", "null"));
+
+        assertFalse(decoded.complete());
+        assertEquals(Set.of(), decoded.weeksToRepair());
+        assertEquals("unknown", decoded.plan().teamLevel());
+        assertEquals("Vehicle", decoded.plan().longTermProblemType());
+        assertEquals("TBD", decoded.plan().theme());
+        assertEquals(2, decoded.problems().size(), decoded.problems().toString());
+    }
+
+    private static String week(int week) {
+        return "{\"weekNumber\":" + week + ",\"goals\":\"Goals " + week + "\",\"longTermFocus\":\"Build the frame\","
+                + "\"styleFocus\":\"Costume sketches\",\"spontaneousType\":\"verbal\",\"agenda\":[\"Warm-up\",\"Build\"],"
+                + "\"materials\":[\"Cardboard\"],\"safetyNotes\":[],\"checkpoints\":[\"Frame stands\"],"
+                + "\"homework\":[],\"outsideAssistanceGuardrails\":\"Team does all the work\"}";
+    }
+
+    private static String plan(String... lessons) {
+        return "{\"teamLevel\":\"Division II\",\"longTermProblemType\":\"Vehicle\",\"theme\":\"Lost at sea\","
+                + "\"lessons\":[" + String.join(",", lessons) + "]}";
+    }
+
+    private static List<Integer> weeks(SeasonPlan plan) {
+        return plan.lessons().stream().map(WeekLesson::weekNumber).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,113 @@
+package com.embabel.template.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanRendererTest {
+
+    private static WeekLesson week(int n) {
+        return new WeekLesson(n, "goals " + n, "long-term " + n, "style " + n, "verbal",
+                List.of("00:10 warm-up", "00:40 build"), List.of("tape", "cardboard"), List.of(),
+                List.of("prototype stands"), List.of("thinking log"), "students decide");
+    }
+
+    private static SeasonPlan plan() {
+        return new SeasonPlan("Division II", "structure", "Build it bold",
+                IntStream.rangeClosed(1, 20).mapToObj(SeasonPlanRendererTest::week).toList());
+    }
+
+    @Test
+    void rendersSeasonPlanMarkdown() {
+        var plan = plan();
+        var content = plan.getContent();
+        assertTrue(content.startsWith("""
+                # OM 20-Week Season Plan
+
+                **Team level:** Division II
+                **Long-Term problem type:** structure
+                **Theme:** Build it bold
+                **Generated:** """), content);
+        assertTrue(content.contains("""
+                ## Lessons (20 weeks)
+
+                ### Week 1
+                **Goals:** goals 1
+                **Long-Term Focus:** long-term 1
+                **Style Focus:** style 1
+                **Spontaneous:** verbal
+                **Agenda:**
+                - 00:10 warm-up
+                - 00:40 build
+                **Materials:**
+                - tape
+                - cardboard
+                **Safety Notes:**
+                -\s
+                **Checkpoints:**
+                - prototype stands
+                **Homework:**
+                - thinking log
+                **Outside Assistance Guardrails:** students decide
+
+                ### Week 2
+                """), content);
+        assertTrue(content.endsWith("**Outside Assistance Guardrails:** students decide\n"), content);
+    }
+
+    @Test
+    void memoizesRenderingAndTimestampPerInstance() {
+        var plan = plan();
+        assertSame(plan.getContent(), plan.getContent());
+        assertEquals(plan.getTimestamp(), plan.getTimestamp());
+
+        var writer = new StringWriter();
+        SeasonPlanRenderer.write(plan, writer);
+        assertEquals(plan.getContent(), writer.toString());
+    }
+
+    @Test
+    void rendersReviewedPlanAroundThePlan() {
+        var plan = plan();
+        var reviewed = new ReviewedSeasonPlan(plan, "Solid rotation.", OmPersonas.REVIEWER);
+        var content = reviewed.getContent();
+        assertTrue(content.startsWith("# Odyssey of the Mind Season Plan\n" + plan.getContent()), content);
+        assertTrue(content.contains("\n\n---\n# Reviewer Notes\nSolid rotation.\n\n# Reviewer\n"
+                + OmPersonas.REVIEWER.getName() + ", "), content);
+        assertSame(content, reviewed.getContent());
+    }
+
+    @Test
+    void regenerationContextKeepsOnlyNeighboursInFull() {
+        var plan = plan();
+        var context = SeasonPlanRenderer.regenerationContext(plan, 7);
+        assertTrue(context.contains("- Week 1: goals 1 | Spontaneous: verbal\n"), context);
+        assertTrue(context.contains("- Week 7: (being regenerated)\n"), context);
+        assertTrue(context.contains("### Week 6\n"), context);
+        assertTrue(context.contains("### Week 8\n"), context);
+        assertFalse(context.contains("### Week 7\n"), context);
+        assertFalse(context.contains("### Week 9\n"), context);
+        assertTrue(context.length() < plan.getContent().length() / 3,
+                "Expected compact context to be much smaller than the full plan");
+    }
+
+    @Test
+    void withWeekPatchesInPlace() {
+        var plan = plan();
+        var replacement = new WeekLesson(7, "new goals", "lt", "st", "hybrid", List.of(), List.of(), List.of(),
+                List.of(), List.of(), "students decide");
+        var patched = plan.withWeek(replacement);
+
+        assertEquals(20, patched.lessons().size());
+        assertSame(replacement, patched.lessons().get(6));
+        assertEquals(plan.lessons().get(5), patched.lessons().get(5));
+        assertEquals("goals 7", plan.lessons().get(6).goals(), "Original plan must be untouched");
+    }
+}
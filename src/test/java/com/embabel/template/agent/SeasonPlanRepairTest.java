@@ -0,0 +1,119 @@
+package com.embabel.template.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class SeasonPlanRepairTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SeasonPlanRepair repair = new SeasonPlanRepair(objectMapper, registry);
+
+    private double decoded(String result) {
+        return registry.counter("season.plan.decode", "result", result).count();
+    }
+
+    @Test
+    void regeneratesOnlyTheWeeksCutOffAndMergesThemInOrder() throws Exception {
+        var full = json(plan(OmCoachAgent.SEASON_WEEKS));
+        var truncated = full.substring(0, full.indexOf("{\"weekNumber\":18"));
+        var regenerated = ConcurrentHashMap.<Integer>newKeySet();
+
+        var plan = repair.repair(truncated + "{\"weekNumber\":18,\"goa", (partial, week) -> {
+            assertEquals(17, partial.lessons().size());
+            regenerated.add(week);
+            // The model numbered the week wrongly; the repair puts it where it was asked for
+            return lesson(1, "Regenerated");
+        }, () -> fail("Should not regenerate the whole season"));
+
+        assertEquals(Set.of(18, 19, 20), regenerated);
+        assertEquals(IntStream.rangeClosed(1, 20).boxed().toList(),
+                plan.lessons().stream().map(WeekLesson::weekNumber).toList());
+        assertEquals("Regenerated", plan.lessons().get(19).goals());
+        assertEquals("Lost at sea", plan.theme());
+        assertEquals(1, decoded("repaired"));
+        assertEquals(3, registry.counter("season.plan.repair.weeks").count());
+        assertTrue(registry.counter("season.plan.repair.tokens.saved").count() > 0);
+        assertEquals(1.0, repair.repairRate());
+    }
+
+    @Test
+    void returnsACompletePlanAsIs() throws Exception {
+        var expected = plan(OmCoachAgent.SEASON_WEEKS);
+
+        var plan = repair.repair(json(expected),
+                (partial, week) -> fail("Nothing to repair"), () -> fail("Nothing to regenerate"));
+
+        assertEquals(expected, plan);
+        assertEquals(1, decoded("complete"));
+    }
+
+    @Test
+    void regeneratesTheWholeSeasonWhenNothingIsSalvaged() {
+        var regenerated = plan(OmCoachAgent.SEASON_WEEKS);
+
+        var plan = repair.repair("I'm sorry, the season plan", (partial, week) -> fail("Nothing to repair"),
+                () -> regenerated);
+
+        assertSame(regenerated, plan);
+        assertEquals(1, decoded("unsalvageable"));
+        assertEquals(0.0, repair.repairRate());
+    }
+
+    @Test
+    void fillsAMissingThemeWithoutRegeneratingAnything() throws Exception {
+        var untitled = json(plan(OmCoachAgent.SEASON_WEEKS)).replace("\"Lost at sea\"", "null");
+
+        var plan = repair.repair(untitled,
+                (partial, week) -> fail("Nothing to repair"), () -> fail("Nothing to regenerate"));
+
+        assertEquals("TBD", plan.theme());
+        assertEquals(OmCoachAgent.SEASON_WEEKS, plan.lessons().size());
+        assertEquals(1, decoded("repaired"));
+        assertEquals(0, registry.counter("season.plan.repair.weeks").count());
+    }
+
+    @Test
+    void regeneratesTheWholeSeasonWhenTooFewWeeksAreSound() throws Exception {
+        var full = json(plan(OmCoachAgent.SEASON_WEEKS));
+        var regenerated = plan(OmCoachAgent.SEASON_WEEKS);
+
+        var plan = repair.repair(full.substring(0, full.indexOf("{\"weekNumber\":5")),
+                (partial, week) -> fail("Too little to repair"), () -> regenerated);
+
+        assertSame(regenerated, plan);
+        assertEquals(1, decoded("unsalvageable"));
+    }
+
+    /**
+     * The plan as the model writes it, without the timestamp.
+     */
+    private String json(SeasonPlan plan) throws Exception {
+        record Response(String teamLevel, String longTermProblemType, String theme, List<WeekLesson> lessons) {
+        }
+        return objectMapper.writeValueAsString(
+                new Response(plan.teamLevel(), plan.longTermProblemType(), plan.theme(), plan.lessons()));
+    }
+
+    private static SeasonPlan plan(int weeks) {
+        var lessons = IntStream.rangeClosed(1, weeks).mapToObj(week -> lesson(week, "Goals " + week)).toList();
+        return new SeasonPlan("Division II", "Vehicle", "Lost at sea", lessons);
+    }
+
+    private static WeekLesson lesson(int week, String goals) {
+        return new WeekLesson(week, goals, "Build the vehicle frame", "Costume sketches", "verbal",
+                List.of("Warm-up", "Build"), List.of("Cardboard"), List.of("Goggles"), List.of("Frame stands"),
+                List.of("Sketch"), "Team does all the work");
+    }
+}
@@ -0,0 +1,107 @@
+package com.embabel.template.agent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanSemanticCacheTest {
+
+    @TempDir
+    Path directory;
+
+    private SeasonPlanStore store() {
+        return new SeasonPlanStore(true, directory.resolve("season-plans.log").toString());
+    }
+
+    private SeasonPlanSemanticCache cache(SeasonPlanStore store, int maxEntries) {
+        return new SeasonPlanSemanticCache(true, directory.resolve("requests.log").toString(), 0.9, maxEntries,
+                "", null, store, new SimpleMeterRegistry());
+    }
+
+    private static SeasonPlan plan(String theme) {
+        return new SeasonPlan("Division II", "structure", theme, List.of());
+    }
+
+    private static void save(SeasonPlanStore store, SeasonPlanSemanticCache cache, String request, String theme) {
+        store.save(request, plan(theme), "Reviewed.");
+        cache.remember(request);
+    }
+
+    @Test
+    void rewritesCommonRewordingsToTheSameWords() {
+        assertEquals("division 2 structure 6 students", SeasonPlanSemanticCache.canonical("Div II structure team, 6 kids"));
+        assertEquals("structure division 2 6 students",
+                SeasonPlanSemanticCache.canonical("structure problem, division 2, six students"));
+    }
+
+    @Test
+    void servesThePlanOfARewordedRequestButNotOfADifferentTeam() throws Exception {
+        try (var store = store(); var cache = cache(store, 100)) {
+            save(store, cache, "Div II structure team, 6 kids", "Bridges");
+            save(store, cache, "Division I vehicle team, 5 students, first season", "Wheels");
+
+            assertEquals("Bridges", cache.find("structure problem, division 2, six students").orElseThrow().plan().theme());
+            assertTrue(cache.find("Division 2 structure, 7 students").isEmpty());
+            assertTrue(cache.find("Primary performance team, 4 kids").isEmpty());
+        }
+    }
+
+    @Test
+    void neverServesAPlanForADifferentDivisionOrProblemType() throws Exception {
+        var request = "We are a %s team of six students working on the %s problem this year. It is our first season "
+                + "and we meet weekly after school for ninety minutes.";
+        try (var store = store(); var cache = cache(store, 100)) {
+            save(store, cache, request.formatted("Division II", "structure"), "Bridges");
+
+            assertEquals("Bridges",
+                    cache.find(request.formatted("Div 2", "structure")).orElseThrow().plan().theme());
+            assertTrue(cache.find(request.formatted("Division I", "structure")).isEmpty());
+            assertTrue(cache.find(request.formatted("Division II", "vehicle")).isEmpty());
+            assertTrue(cache.find(request.formatted("Division II", "structure").replace("six", "seven")).isEmpty());
+        }
+    }
+
+    @Test
+    void readsTheTeamFromTheCanonicalRequest() {
+        var team = SeasonPlanSemanticCache.Team.of(SeasonPlanSemanticCache.canonical("Div II structure team, 6 kids"));
+
+        assertEquals(new SeasonPlanSemanticCache.Team("2", Set.of("structure"), "6"), team);
+    }
+
+    @Test
+    void keepsTheIndexAcrossRestarts() throws Exception {
+        try (var store = store(); var cache = cache(store, 100)) {
+            save(store, cache, "Div II structure team, 6 kids", "Bridges");
+        }
+
+        try (var store = store(); var cache = cache(store, 100)) {
+            assertEquals(1, cache.size());
+            assertEquals("Bridges", cache.find("division 2 structure, six students").orElseThrow().plan().theme());
+        }
+    }
+
+    @Test
+    void evictsTheLeastRecentlyMatchedRequest() throws Exception {
+        try (var store = store(); var cache = cache(store, 2)) {
+            save(store, cache, "Div II structure team, 6 kids", "Bridges");
+            save(store, cache, "Division I vehicle team, 5 students", "Wheels");
+            cache.find("structure problem, division 2, six students").orElseThrow();
+            save(store, cache, "Division III classics team, 7 students", "Myths");
+
+            assertEquals(2, cache.size());
+            assertTrue(cache.find("Division 1 vehicle, five kids").isEmpty());
+            assertEquals("Bridges", cache.find("Div II structure team, 6 kids").orElseThrow().plan().theme());
+        }
+        try (var store = store(); var cache = cache(store, 2)) {
+            assertEquals(2, cache.size());
+            assertTrue(cache.find("Division 1 vehicle, five kids").isEmpty());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.embabel.template.agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanStoreTest {
+
+    @TempDir
+    Path directory;
+
+    private SeasonPlanStore open() {
+        return new SeasonPlanStore(true, directory.resolve("season-plans.log").toString());
+    }
+
+    private static SeasonPlan plan(String teamLevel, String problemType, String theme) {
+        var week = new WeekLesson(1, "Meet the team", "Read the problem", "Brainstorm style", "verbal — name 10 uses",
+                List.of("00:10 warm-up"), List.of("tape", "cardboard"), List.of("scissors"), List.of("problem read"),
+                List.of("thinking log"), null);
+        return new SeasonPlan(teamLevel, problemType, theme, List.of(week));
+    }
+
+    @Test
+    void findsPlansByRequestAcrossRestarts() throws Exception {
+        var plan = plan("Division I", "vehicle", "Drive to Imagine");
+        try (var store = open()) {
+            store.save("Division I team of 6,  vehicle problem", plan, "Strong plan.");
+        }
+
+        try (var store = open()) {
+            var stored = store.findByRequest("division i team of 6, vehicle problem").orElseThrow();
+            assertEquals(plan, stored.plan());
+            assertEquals("Strong plan.", stored.review());
+            assertTrue(store.findByRequest("Division II team").isEmpty());
+        }
+    }
+
+    @Test
+    void looksUpByTeamLevelProblemTypeAndThemeWordsNewestFirst() throws Exception {
+        try (var store = open()) {
+            store.save("a", plan("Division I", "vehicle", "Drive to Imagine"), null);
+            store.save("b", plan("Division II", "vehicle", "Imagine the Road"), null);
+            store.save("c", plan("Division I", "performance", "Stage of Dreams"), null);
+            store.save("d", plan("Division I", "vehicle", "Build and Drive"), null);
+
+            assertEquals(List.of("d", "a"), requests(store.find("division i", "Vehicle", null, 10)));
+            assertEquals(List.of("b", "a"), requests(store.find(null, null, "imagine", 10)));
+            assertEquals(List.of("d"), requests(store.find("Division I", null, "drive build", 10)));
+            assertEquals(List.of("d", "c"), requests(store.find(null, null, null, 2)));
+            assertTrue(store.find("Division III", null, null, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void replacesThePlanStoredForARequest() throws Exception {
+        try (var store = open()) {
+            store.save("same request", plan("Division I", "vehicle", "First"), null);
+            store.save("same request", plan("Division II", "structure", "Second"), "Reviewed.");
+
+            assertEquals(1, store.size());
+            assertEquals("Second", store.findByRequest("same request").orElseThrow().plan().theme());
+            assertTrue(store.find("Division I", null, null, 10).isEmpty());
+        }
+        try (var store = open()) {
+            assertEquals(List.of("same request"), requests(store.find("Division II", "structure", "second", 10)));
+        }
+    }
+
+    @Test
+    void aDisabledStoreKeepsNothing() throws Exception {
+        try (var store = SeasonPlanStore.disabled()) {
+            store.save("request", plan("Division I", "vehicle", "Theme"), null);
+            assertTrue(store.findByRequest("request").isEmpty());
+        }
+    }
+
+    private static List<String> requests(List<StoredSeasonPlan> plans) {
+        return plans.stream().map(StoredSeasonPlan::request).toList();
+    }
+}
@@ -0,0 +1,101 @@
+package com.embabel.template.agent;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanStreamParserTest {
+
+    private static final String WEEK = """
+            {"weekNumber": %d, "goals": "Goal ✨ %d", "longTermFocus": "lt", "styleFocus": "style",
+             "spontaneousType": "verbal", "agenda": ["00:10 warm-up", "00:20 build"], "materials": ["tape"],
+             "safetyNotes": [], "checkpoints": ["done"], "homework": ["log"],
+             "outsideAssistanceGuardrails": "kids only"}""";
+
+    private static String plan(int weeks) {
+        var lessons = new ArrayList<String>();
+        for (int i = 1; i <= weeks; i++) {
+            lessons.add(WEEK.formatted(i, i));
+        }
+        return """
+                Here is your plan:
+                ```json
+                {"teamLevel": "Division II", "longTermProblemType": "structure",
+                 "extra": {"ignored": ["a", {"b": 1}]},
+                 "lessons": [%s], "theme": "Build it bold"}
+                ```""".formatted(String.join(",", lessons));
+    }
+
+    private static List<WeekLesson> weeks(List<String> lessons) throws Exception {
+        var objectMapper = new ObjectMapper();
+        var weeks = new ArrayList<WeekLesson>();
+        for (var lesson : lessons) {
+            weeks.add(objectMapper.readValue(lesson, WeekLesson.class));
+        }
+        return weeks;
+    }
+
+    @Test
+    void emitsEachLessonAsSoonAsItsObjectCloses() throws Exception {
+        var json = plan(3);
+        var emitted = new ArrayList<String>();
+        var parser = new SeasonPlanStreamParser(emitted::add);
+
+        int endOfFirstWeek = json.indexOf("kids only\"}") + "kids only\"}".length();
+        parser.feed(json.substring(0, endOfFirstWeek - 1));
+        assertTrue(emitted.isEmpty(), "Week 1 must not be emitted before its closing brace");
+        parser.feed(json.substring(endOfFirstWeek - 1, endOfFirstWeek));
+        assertEquals(1, emitted.size());
+        assertEquals("Goal ✨ 1", weeks(emitted).getFirst().goals());
+
+        parser.feed(json.substring(endOfFirstWeek));
+        assertEquals(List.of(1, 2, 3), weeks(emitted).stream().map(WeekLesson::weekNumber).toList());
+    }
+
+    @Test
+    void toleratesArbitraryChunkBoundaries() throws Exception {
+        var json = plan(20);
+        var emitted = new ArrayList<String>();
+        var parser = new SeasonPlanStreamParser(emitted::add);
+        for (int i = 0; i < json.length(); i += 3) {
+            parser.feed(json.substring(i, Math.min(json.length(), i + 3)));
+        }
+        assertEquals(20, emitted.size());
+        assertEquals("Goal ✨ 20", weeks(emitted).getLast().goals());
+    }
+
+    @Test
+    void ignoresBracesAndEscapedQuotesInsideStrings() {
+        var emitted = new ArrayList<String>();
+        var parser = new SeasonPlanStreamParser(emitted::add);
+
+        parser.feed("{\"lessons\": [{\"goals\": \"a } and a \\\" then {\"}, {\"goals\": \"b\"}]}");
+
+        assertEquals(List.of("{\"goals\": \"a } and a \\\" then {\"}", "{\"goals\": \"b\"}"), emitted);
+    }
+
+    @Test
+    void findsTheNextLessonAfterOneThatIsMalformedInside() {
+        var emitted = new ArrayList<String>();
+        var parser = new SeasonPlanStreamParser(emitted::add);
+
+        parser.feed("{\"lessons\": [{\"weekNumber\": 1, \"goals\": oops}, {\"weekNumber\": 2}");
+
+        assertEquals(List.of("{\"weekNumber\": 1, \"goals\": oops}", "{\"weekNumber\": 2}"), emitted);
+    }
+
+    @Test
+    void stopsWhenTheLessonsArrayCloses() {
+        var emitted = new ArrayList<String>();
+        var parser = new SeasonPlanStreamParser(emitted::add);
+
+        parser.feed("{\"lessons\": [{\"weekNumber\": 1}], \"extra\": [{\"weekNumber\": 2}]}");
+
+        assertEquals(List.of("{\"weekNumber\": 1}"), emitted);
+    }
+}
@@ -0,0 +1,111 @@
+package com.embabel.template.agent;
+
+import com.embabel.template.llm.TokenSink;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SeasonPlanWeekSinkTest {
+
+    private static final String ACTION = "OmCoachAgent.craftSeasonPlan";
+
+    private static final String WEEK = """
+            {"weekNumber": %d, "goals": "Goal %d", "longTermFocus": "lt", "styleFocus": "style",
+             "spontaneousType": "verbal", "agenda": ["00:10 warm-up"], "materials": ["tape"], "safetyNotes": [],
+             "checkpoints": ["done"], "homework": ["log"], "outsideAssistanceGuardrails": "kids only"}""";
+
+    private final List<String> events = new ArrayList<>();
+
+    private final TokenSink run = new TokenSink() {
+        @Override
+        public void onToken(String action, String text) {
+            events.add(action + ": " + text);
+        }
+
+        @Override
+        public void onRestart(String action) {
+            events.add(action + ": restart");
+        }
+    };
+
+    private static String plan(int weeks) {
+        var lessons = new ArrayList<String>();
+        for (int i = 1; i <= weeks; i++) {
+            lessons.add(WEEK.formatted(i, i));
+        }
+        return """
+                ```json
+                {"teamLevel": "Division II", "longTermProblemType": "structure", "theme": "Build it bold",
+                 "lessons": [%s]}
+                ```""".formatted(String.join(",", lessons));
+    }
+
+    private static void stream(TokenSink sink, String text, int chunkSize) {
+        for (int i = 0; i < text.length(); i += chunkSize) {
+            sink.onToken(ACTION, text.substring(i, Math.min(text.length(), i + chunkSize)));
+        }
+    }
+
+    @Test
+    void sendsEachWeekAsMarkdownOnceItsJsonCloses() {
+        var sink = new SeasonPlanWeekSink(new ObjectMapper(), run);
+        var json = plan(3);
+        int endOfFirstWeek = json.indexOf("kids only\"}") + "kids only\"}".length();
+
+        stream(sink, json.substring(0, endOfFirstWeek - 1), 7);
+        assertTrue(events.isEmpty(), "Nothing is sent before the first week closes");
+
+        stream(sink, json.substring(endOfFirstWeek - 1), 7);
+        assertEquals(3, events.size());
+        for (int week = 1; week <= 3; week++) {
+            var event = events.get(week - 1);
+            assertTrue(event.startsWith(ACTION + ": ### Week " + week + "\n"), event);
+            assertTrue(event.contains("**Goals:** Goal " + week), event);
+        }
+    }
+
+    @Test
+    void startsOverWhenTheResponseRestarts() {
+        var sink = new SeasonPlanWeekSink(new ObjectMapper(), run);
+        var json = plan(2);
+        stream(sink, json.substring(0, json.indexOf("kids only\"}") + 20), 5);
+
+        sink.onRestart(ACTION);
+        sink.onToken(ACTION, json);
+
+        assertEquals(4, events.size());
+        assertEquals(ACTION + ": restart", events.get(1));
+        assertTrue(events.get(2).startsWith(ACTION + ": ### Week 1"), events.get(2));
+        assertTrue(events.get(3).startsWith(ACTION + ": ### Week 2"), events.get(3));
+    }
+
+    @Test
+    void skipsAWeekItCannotReadAndShowsTheNext() {
+        var sink = new SeasonPlanWeekSink(new ObjectMapper(), run);
+        var json = plan(3).replace("\"weekNumber\": 2,", "\"weekNumber\": \"two\", \"goals\": oops,");
+
+        stream(sink, json, 11);
+
+        assertEquals(2, events.size());
+        assertTrue(events.get(0).startsWith(ACTION + ": ### Week 1\n"), events.get(0));
+        assertTrue(events.get(1).startsWith(ACTION + ": ### Week 3\n"), events.get(1));
+    }
+
+    @Test
+    void showsNothingAfterTheLessonsArrayCloses() {
+        var sink = new SeasonPlanWeekSink(new ObjectMapper(), run);
+        var json = plan(2);
+        int endOfFirstWeek = json.indexOf("kids only\"}") + "kids only\"}".length();
+
+        sink.onToken(ACTION, json.substring(0, endOfFirstWeek));
+        sink.onToken(ACTION, ", ]] not json");
+        sink.onToken(ACTION, json.substring(endOfFirstWeek));
+
+        assertEquals(1, events.size());
+    }
+}
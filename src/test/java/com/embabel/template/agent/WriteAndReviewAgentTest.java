@@ -4,9 +4,11 @@ import com.embabel.agent.domain.io.UserInput;
 import com.embabel.agent.testing.unit.FakeOperationContext;
 import com.embabel.agent.testing.unit.FakePromptRunner;
 import com.embabel.agent.testing.unit.UnitTestUtils;
+import com.embabel.template.llm.LlmCalls;
 import org.junit.jupiter.api.Test;
 
 import java.time.Instant;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -19,7 +21,7 @@ class WriteAndReviewAgentTest {
         var promptRunner = (FakePromptRunner) context.promptRunner();
         context.expectResponse(new Story("One upon a time Sir Galahad . . "));
 
-        var agent = new WriteAndReviewAgent(200, 400);
+        var agent = new WriteAndReviewAgent(200, 400, 1, 1, List.of(), "", LlmCalls.direct());
         agent.craftStory(new UserInput("Tell me a story about a brave knight", Instant.now()), context);
 
         String prompt = promptRunner.getLlmInvocations().getFirst().getPrompt();
@@ -29,7 +31,7 @@ class WriteAndReviewAgentTest {
 
     @Test
     void testReview() {
-        var agent = new WriteAndReviewAgent(200, 400);
+        var agent = new WriteAndReviewAgent(200, 400, 1, 1, List.of(), "", LlmCalls.direct());
         var userInput = new UserInput("Tell me a story about a brave knight", Instant.now());
         var story = new Story("Once upon a time, Sir Galahad...");
         var context = FakeOperationContext.create();
@@ -0,0 +1,131 @@
+package com.embabel.template.batch;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonlBatchTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path dir;
+
+    private Path input(String... lines) throws IOException {
+        var input = dir.resolve("input.jsonl");
+        Files.write(input, List.of(lines), StandardCharsets.UTF_8);
+        return input;
+    }
+
+    private Map<String, String> statuses(Path output) throws IOException {
+        var statuses = new ConcurrentHashMap<String, String>();
+        for (var line : Files.readAllLines(output, StandardCharsets.UTF_8)) {
+            var node = objectMapper.readTree(line);
+            statuses.put(node.path("id").asText(), node.path("status").asText());
+        }
+        return statuses;
+    }
+
+    @Test
+    void writesOneLinePerItemAndRecordsFailures() throws IOException {
+        var input = input(
+                "{\"id\": \"a\", \"content\": \"Division I, vehicle problem\"}",
+                "",
+                "\"Division II, structure problem\"",
+                "{\"id\": \"c\", \"content\": \"fail me\"}",
+                "not json");
+        var output = dir.resolve("output.jsonl");
+        var progress = Collections.synchronizedList(new ArrayList<String>());
+
+        var report = new JsonlBatch(objectMapper, 2).run(input, output, item -> {
+            if (item.content().startsWith("fail")) {
+                throw new IllegalStateException("model unavailable");
+            }
+            return Map.of("plan", item.content().toUpperCase());
+        }, progress::add);
+
+        assertEquals(2, report.succeeded());
+        assertEquals(2, report.failed());
+        assertEquals(Map.of("a", "ok", "line-3", "ok", "c", "failed", "line-5", "failed"), statuses(output));
+        assertEquals(4, progress.size());
+        assertTrue(progress.stream().anyMatch(line -> line.startsWith("[4/4]")), progress.toString());
+        var first = objectMapper.readTree(Files.readAllLines(output).stream()
+                .filter(line -> line.contains("\"a\"")).findFirst().orElseThrow());
+        assertEquals("DIVISION I, VEHICLE PROBLEM", first.path("result").path("plan").asText());
+    }
+
+    @Test
+    void resumesAfterACrashSkippingCompletedItemsAndRetryingFailedOnes() throws IOException {
+        var input = input(
+                "{\"id\": \"a\", \"content\": \"one\"}",
+                "{\"id\": \"b\", \"content\": \"two\"}",
+                "{\"id\": \"c\", \"content\": \"three\"}");
+        var output = dir.resolve("output.jsonl");
+        // A previous run finished a, failed b, and died while writing c
+        Files.writeString(output, """
+                {"id":"a","status":"ok","result":"ONE"}
+                {"id":"b","status":"failed","error":"timeout"}
+                {"id":"c","status":"o""", StandardCharsets.UTF_8);
+        var calls = new AtomicInteger();
+
+        var report = new JsonlBatch(objectMapper, 4).run(input, output, item -> {
+            calls.incrementAndGet();
+            return item.content().toUpperCase();
+        }, line -> {
+        });
+
+        assertEquals(2, calls.get());
+        assertEquals(2, report.succeeded());
+        assertEquals(1, report.skipped());
+        assertEquals(Map.of("a", "ok", "b", "ok", "c", "ok"), statuses(output));
+        assertEquals(4, Files.readAllLines(output).size());
+    }
+
+    @Test
+    void neverRunsMoreThanParallelismItemsAtOnce() throws IOException {
+        var lines = new String[20];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = "\"input " + i + "\"";
+        }
+        var running = new AtomicInteger();
+        var peak = new AtomicInteger();
+
+        new JsonlBatch(objectMapper, 3).run(input(lines), dir.resolve("output.jsonl"), item -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return item.content();
+        }, line -> {
+        });
+
+        assertTrue(peak.get() <= 3, "peak concurrency " + peak.get());
+    }
+
+    @Test
+    void estimatesTimeRemainingFromTheAverageRate() {
+        var progress = new BatchProgress(10, 0);
+
+        assertEquals("[1/10] 2.0/min, ETA 4m 30s", progress.completed(true, Duration.ofSeconds(30).toNanos()));
+        assertEquals("[2/10] 2.0/min, ETA 4m 00s, 1 failed", progress.completed(false, Duration.ofSeconds(60).toNanos()));
+        assertEquals("2h 05m", BatchProgress.format(Duration.ofMinutes(125)));
+    }
+}
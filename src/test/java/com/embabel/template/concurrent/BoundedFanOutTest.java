@@ -0,0 +1,118 @@
+package com.embabel.template.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedFanOutTest {
+
+    @Test
+    void boundsParallelismAndKeepsInputOrder() {
+        var inputs = IntStream.range(0, 30).boxed().toList();
+        var running = new AtomicInteger();
+        var maxRunning = new AtomicInteger();
+
+        List<String> results = BoundedFanOut.map(inputs, 4, i -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                // Later inputs finish first, so completion order is not input order
+                Thread.sleep(5 - i % 5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return "week-" + i;
+        });
+
+        assertEquals(inputs.stream().map(i -> "week-" + i).toList(), results);
+        assertTrue(maxRunning.get() <= 4, "ran " + maxRunning.get() + " at once");
+    }
+
+    @Test
+    void firstFailureIsRethrownAndCancelsTheRest() {
+        var started = new CountDownLatch(9);
+        var interrupted = new AtomicInteger();
+        var failure = new IllegalStateException("week 1 failed");
+
+        var thrown = assertThrows(IllegalStateException.class, () -> BoundedFanOut.map(
+                IntStream.range(0, 10).boxed().toList(), 10, i -> {
+                    if (i == 0) {
+                        await(started);
+                        throw failure;
+                    }
+                    started.countDown();
+                    return blockUntilInterrupted(interrupted);
+                }));
+
+        assertSame(failure, thrown);
+        // map returns once every task has finished, so the siblings have all been interrupted by now
+        assertEquals(9, interrupted.get());
+    }
+
+    @Test
+    void interruptingTheCallerCancelsTheFanOut() throws InterruptedException {
+        var started = new CountDownLatch(3);
+        var interrupted = new AtomicInteger();
+        var thrown = new AtomicReference<Throwable>();
+        var stillInterrupted = new AtomicBoolean();
+
+        var caller = new Thread(() -> {
+            try {
+                BoundedFanOut.map(List.of(1, 2, 3), 3, i -> {
+                    started.countDown();
+                    return blockUntilInterrupted(interrupted);
+                });
+            } catch (RuntimeException e) {
+                thrown.set(e);
+                stillInterrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        caller.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        caller.interrupt();
+        caller.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertFalse(caller.isAlive());
+        assertInstanceOf(CancellationException.class, thrown.get());
+        assertTrue(stillInterrupted.get(), "the caller's interrupt status is restored");
+        assertEquals(3, interrupted.get());
+    }
+
+    @Test
+    void rejectsParallelismBelowOne() {
+        assertThrows(IllegalArgumentException.class, () -> BoundedFanOut.map(List.of(1), 0, i -> i));
+        assertEquals(List.of(), BoundedFanOut.map(List.of(), 3, i -> i));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String blockUntilInterrupted(AtomicInteger interrupted) {
+        try {
+            new CountDownLatch(1).await();
+        } catch (InterruptedException e) {
+            interrupted.incrementAndGet();
+            Thread.currentThread().interrupt();
+        }
+        return "cancelled";
+    }
+}
@@ -0,0 +1,58 @@
+package com.embabel.template.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPipelineTest {
+
+    @Test
+    void boundsProcessingAndReadAheadAndKeepsInputOrder() {
+        var inputs = IntStream.range(0, 40).boxed().toList();
+        var held = new AtomicInteger();
+        var maxHeld = new AtomicInteger();
+        var processing = new AtomicInteger();
+        var maxProcessing = new AtomicInteger();
+
+        List<String> results = BoundedPipeline.run(inputs, 3, 2,
+                i -> {
+                    maxHeld.accumulateAndGet(held.incrementAndGet(), Math::max);
+                    return "doc-" + i;
+                },
+                doc -> {
+                    maxProcessing.accumulateAndGet(processing.incrementAndGet(), Math::max);
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    processing.decrementAndGet();
+                    held.decrementAndGet();
+                    return doc.toUpperCase();
+                });
+
+        assertEquals(inputs.stream().map(i -> "DOC-" + i).toList(), results);
+        assertTrue(maxProcessing.get() <= 3, "processed " + maxProcessing.get() + " at once");
+        assertTrue(maxHeld.get() <= 5, "held " + maxHeld.get() + " loaded documents at once");
+    }
+
+    @Test
+    void firstFailureIsRethrown() {
+        var failure = assertThrows(IllegalStateException.class, () -> BoundedPipeline.run(
+                List.of(1, 2, 3), 2, 1,
+                i -> i,
+                i -> {
+                    if (i == 2) {
+                        throw new IllegalStateException("boom");
+                    }
+                    return i;
+                }));
+        assertEquals("boom", failure.getMessage());
+    }
+}
@@ -0,0 +1,149 @@
+package com.embabel.template.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CancellableRunsTest {
+
+    private final CancellableRuns runs = new CancellableRuns("test-run", 10_000);
+
+    /**
+     * Blocks like a model call: until interrupted, counting the interruption.
+     */
+    private static String blockUntilInterrupted(CountDownLatch started, AtomicInteger interrupted) {
+        started.countDown();
+        try {
+            Thread.sleep(60_000);
+            return "finished";
+        } catch (InterruptedException e) {
+            interrupted.incrementAndGet();
+            throw new CancellationException("interrupted");
+        }
+    }
+
+    @Test
+    void runsOnVirtualThreadsAndReturnsTheResult() throws Exception {
+        var run = runs.start(() -> Thread.currentThread().isVirtual() ? "virtual" : "platform", null);
+
+        assertEquals("virtual", run.get(5, TimeUnit.SECONDS));
+        assertEquals(0, runs.inFlight());
+    }
+
+    @Test
+    void cancellingInterruptsTheRunAndTheFanOutItIsWaitingFor() throws Exception {
+        var started = new CountDownLatch(3);
+        var interrupted = new AtomicInteger();
+        var run = runs.start(() -> BoundedFanOut.map(List.of(1, 2, 3), 3,
+                week -> blockUntilInterrupted(started, interrupted)), null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        run.cancel(true);
+
+        assertThrows(CancellationException.class, run::join);
+        waitFor(() -> interrupted.get() == 3 && runs.inFlight() == 0);
+    }
+
+    @Test
+    void failsWithDeadlineExceededAndStopsTheWork() throws Exception {
+        var started = new CountDownLatch(1);
+        var interrupted = new AtomicInteger();
+        var run = runs.start(() -> blockUntilInterrupted(started, interrupted), Duration.ofMillis(100));
+
+        var failure = assertThrows(ExecutionException.class, () -> run.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, failure.getCause());
+        waitFor(() -> interrupted.get() == 1);
+    }
+
+    @Test
+    void aRunPastItsDeadlineBeforeItStartsNeverRuns() throws Exception {
+        var ran = new AtomicInteger();
+        var run = runs.start(ran::incrementAndGet, Duration.ZERO);
+
+        var failure = assertThrows(ExecutionException.class, () -> run.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, failure.getCause());
+        waitFor(() -> runs.inFlight() == 0);
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    void exposesTheDeadlineToWorkStartedByTheRun() throws Exception {
+        var run = runs.start(() -> {
+            long remaining = RunContext.remainingNanos(Long.MAX_VALUE);
+            boolean inheritedByFanOut = BoundedFanOut.map(List.of(1), 1, i -> RunContext.remainingNanos(Long.MAX_VALUE) < Long.MAX_VALUE).getFirst();
+            return remaining <= Duration.ofSeconds(30).toNanos() && inheritedByFanOut;
+        }, Duration.ofSeconds(30));
+
+        assertTrue(run.get(5, TimeUnit.SECONDS));
+        assertEquals(Long.MAX_VALUE, RunContext.remainingNanos(Long.MAX_VALUE));
+        assertTrue(RunContext.isActive());
+    }
+
+    @Test
+    void rejectsRunsBeyondTheLimit() throws Exception {
+        var limited = new CancellableRuns("limited", 1);
+        var started = new CountDownLatch(1);
+        var first = limited.start(() -> blockUntilInterrupted(started, new AtomicInteger()), null);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        var failure = assertThrows(ExecutionException.class, () -> limited.start(() -> "second", null).get());
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        first.cancel(true);
+    }
+
+    @Test
+    void holdsThousandsOfBlockedRunsOnAFewPlatformThreads() throws Exception {
+        int platformThreadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        var release = new CountDownLatch(1);
+        var waiting = new CountDownLatch(5_000);
+        var all = new ArrayList<CompletableFuture<Integer>>();
+        for (int i = 0; i < 5_000; i++) {
+            int n = i;
+            all.add(runs.start(() -> {
+                waiting.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new CancellationException();
+                }
+                return n;
+            }, Duration.ofSeconds(30)));
+        }
+
+        assertTrue(waiting.await(10, TimeUnit.SECONDS));
+        assertEquals(5_000, runs.inFlight());
+        int platformThreadsWhileBlocked = ManagementFactory.getThreadMXBean().getThreadCount();
+        release.countDown();
+
+        assertEquals(IntStream.range(0, 5_000).sum(), all.stream().mapToInt(CompletableFuture::join).sum());
+        assertTrue(platformThreadsWhileBlocked - platformThreadsBefore < 64,
+                platformThreadsBefore + " platform threads before, " + platformThreadsWhileBlocked + " while blocked");
+        assertFalse(all.stream().anyMatch(CompletableFuture::isCompletedExceptionally));
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 5s");
+            Thread.sleep(10);
+        }
+    }
+}
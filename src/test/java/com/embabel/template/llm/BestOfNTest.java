@@ -0,0 +1,88 @@
+package com.embabel.template.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BestOfNTest {
+
+    private static final String ACTION = "WriteAndReviewAgent.craftStory";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private double count(String result) {
+        return registry.counter("llm.best.of", "action", ACTION, "result", result).count();
+    }
+
+    @Test
+    void choosesTheBestOfTheFirstToArriveAndCancelsTheRest() throws Exception {
+        var interrupted = new CountDownLatch(2);
+        long start = System.nanoTime();
+
+        // Candidates 0 and 1 answer at once; 2 and 3 would score higher but take a minute
+        var chosen = BestOfN.pick(registry, ACTION, 4, 2, candidate -> {
+            if (candidate >= 2) {
+                try {
+                    Thread.sleep(Duration.ofMinutes(1));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw new IllegalStateException(e);
+                }
+            }
+            return "story " + candidate;
+        }, story -> story.endsWith("1") ? 0.9 : story.endsWith("0") ? 0.4 : 1.0);
+
+        assertEquals("story 1", chosen);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "Stragglers should be interrupted");
+        assertEquals(2, count("scored"));
+        assertEquals(2, count("cancelled"));
+    }
+
+    @Test
+    void skipsFailedCandidatesWhileAnySucceed() {
+        var chosen = BestOfN.pick(registry, ACTION, 3, 3, candidate -> {
+            if (candidate == 1) {
+                throw new IllegalStateException("503 - unavailable");
+            }
+            return "story " + candidate;
+        }, String::length);
+
+        assertTrue(chosen.equals("story 0") || chosen.equals("story 2"));
+        assertEquals(2, count("scored"));
+        assertEquals(1, count("failed"));
+    }
+
+    @Test
+    void failsWhenEveryCandidateFails() {
+        var failure = assertThrows(IllegalStateException.class, () -> BestOfN.pick(registry, ACTION, 2, 1,
+                candidate -> {
+                    throw new IllegalStateException("candidate " + candidate);
+                }, (String story) -> 0));
+
+        assertEquals(1, failure.getSuppressed().length);
+    }
+
+    @Test
+    void singleCandidateIsGeneratedOnTheCallingThread() {
+        var calls = new AtomicInteger();
+        var caller = Thread.currentThread();
+
+        var chosen = BestOfN.pick(registry, ACTION, 1, 2, candidate -> {
+            calls.incrementAndGet();
+            assertEquals(caller, Thread.currentThread());
+            return "story";
+        }, story -> 0);
+
+        assertEquals("story", chosen);
+        assertEquals(1, calls.get());
+    }
+}
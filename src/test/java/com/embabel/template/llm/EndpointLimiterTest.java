@@ -0,0 +1,87 @@
+package com.embabel.template.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EndpointLimiterTest {
+
+    private static EndpointLimiter limiter(int requestsPerMinute, int tokensPerMinute, int concurrency, Duration maxWait) {
+        return new EndpointLimiter("stub",
+                new LlmResilienceProperties.Limit(requestsPerMinute, tokensPerMinute, concurrency, 16, maxWait));
+    }
+
+    @Test
+    void failsFastOnceTheWaitForASlotIsExceeded() {
+        var limiter = limiter(0, 0, 2, Duration.ofMillis(50));
+        limiter.acquire();
+        limiter.acquire();
+
+        long start = System.nanoTime();
+        assertThrows(LlmLimitExceededException.class, limiter::acquire);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < 1000);
+    }
+
+    @Test
+    void releasedSlotAdmitsAWaitingCall() throws InterruptedException {
+        var limiter = limiter(0, 0, 1, Duration.ofSeconds(5));
+        long admitted = limiter.acquire();
+
+        var waiter = Thread.ofVirtual().start(limiter::acquire);
+        Thread.sleep(50);
+        assertTrue(waiter.isAlive());
+        limiter.release(admitted, false, 0);
+        waiter.join(1000);
+
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void requestBucketPacesCallsOnceTheBurstIsSpent() {
+        // 600 per minute is 10 per second, with a burst of 100
+        var limiter = limiter(600, 0, 16, Duration.ofSeconds(5));
+        for (int i = 0; i < 100; i++) {
+            limiter.release(limiter.acquire(), false, 0);
+        }
+
+        long start = System.nanoTime();
+        limiter.release(limiter.acquire(), false, 0);
+        limiter.release(limiter.acquire(), false, 0);
+        long elapsedMillis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+
+        assertTrue(elapsedMillis >= 100 && elapsedMillis < 1000, elapsedMillis + "ms");
+    }
+
+    @Test
+    void tokenDebtHoldsBackLaterCalls() {
+        // 6000 tokens per minute is 100 per second, with a bucket of 1000
+        var limiter = limiter(0, 6000, 16, Duration.ofMillis(200));
+        limiter.release(limiter.acquire(), false, 2000);
+
+        assertThrows(LlmLimitExceededException.class, limiter::acquire);
+    }
+
+    @Test
+    void concurrencyLimitGrowsAdditivelyAndHalvesOncePerRoundOfOverload() {
+        var limiter = limiter(0, 0, 4, Duration.ofSeconds(1));
+        long[] admitted = new long[4];
+        for (int i = 0; i < 4; i++) {
+            admitted[i] = limiter.acquire();
+        }
+        limiter.release(admitted[0], false, 0);
+        assertEquals(4.25, limiter.limit());
+
+        // Every call of the round is rejected, but only the first rejection counts
+        limiter.release(admitted[1], true, 0);
+        limiter.release(admitted[2], true, 0);
+        limiter.release(admitted[3], true, 0);
+        assertEquals(2.125, limiter.limit());
+
+        limiter.release(limiter.acquire(), true, 0);
+        assertEquals(1.0625, limiter.limit());
+    }
+}
@@ -0,0 +1,75 @@
+package com.embabel.template.llm;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.TransientAiException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LlmMetricsTest {
+
+    private final LlmMetrics metrics = LlmMetrics.detached();
+
+    @Test
+    void splitsQualifiedActionNamesIntoAgentAndActionTags() {
+        assertArrayEquals(new String[]{"agent", "OmCoachAgent", "action", "reviewSeason", "model", "mercury"},
+                LlmMetrics.tags("OmCoachAgent.reviewSeason", "mercury"));
+        assertArrayEquals(new String[]{"agent", "unknown", "action", "adHoc"},
+                LlmMetrics.tags("adHoc", null));
+    }
+
+    @Test
+    void timesActionsByOutcome() {
+        assertEquals("story", metrics.timeAction("WriteAndReviewAgent.craftStory", () -> "story"));
+        assertThrows(IllegalStateException.class, () -> metrics.timeAction("WriteAndReviewAgent.craftStory", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        var registry = metrics.registry();
+        assertEquals(1, registry.timer("agent.action",
+                "agent", "WriteAndReviewAgent", "action", "craftStory", "outcome", "success").count());
+        assertEquals(1, registry.timer("agent.action",
+                "agent", "WriteAndReviewAgent", "action", "craftStory", "outcome", "error").count());
+    }
+
+    @Test
+    void countsParseFailuresOfStructuredCallsOnly() {
+        var unparseable = new IllegalStateException("bad output", new JsonParseException(null, "unexpected token"));
+        assertThrows(IllegalStateException.class, () -> metrics.timeCall("OmCoachAgent.craftSeasonPlan", "mercury", true, () -> {
+            throw unparseable;
+        }));
+        assertThrows(IllegalStateException.class, () -> metrics.timeCall("OmCoachAgent.reviewSeason", "mercury", false, () -> {
+            throw unparseable;
+        }));
+
+        var registry = metrics.registry();
+        assertEquals(1, registry.counter("llm.parse.failures",
+                "agent", "OmCoachAgent", "action", "craftSeasonPlan", "model", "mercury").count());
+        assertEquals(0, registry.counter("llm.parse.failures",
+                "agent", "OmCoachAgent", "action", "reviewSeason", "model", "mercury").count());
+        assertEquals(1, registry.timer("llm.call",
+                "agent", "OmCoachAgent", "action", "craftSeasonPlan", "model", "mercury", "outcome", "parse_failure").count());
+    }
+
+    @Test
+    void attributesUsageAndRetriesToTheCallInProgressOnTheThread() {
+        metrics.timeCall("InjectedDemo.inventAnimal", "mercury", true, () -> {
+            metrics.recordRetry("mercury", new TransientAiException("503 - overloaded"));
+            metrics.recordUsage("mercury", 120, 30);
+            return null;
+        });
+        metrics.recordUsage("mercury", 5, 5);
+
+        var registry = metrics.registry();
+        assertEquals(120, registry.counter("llm.tokens",
+                "agent", "InjectedDemo", "action", "inventAnimal", "model", "mercury", "type", "prompt").count());
+        assertEquals(30, registry.counter("llm.tokens",
+                "agent", "InjectedDemo", "action", "inventAnimal", "model", "mercury", "type", "completion").count());
+        assertEquals(1, registry.counter("llm.retries",
+                "agent", "InjectedDemo", "action", "inventAnimal", "model", "mercury", "status", "503").count());
+        assertEquals(5, registry.counter("llm.tokens",
+                "agent", "unknown", "action", "unknown", "model", "mercury", "type", "prompt").count());
+    }
+}
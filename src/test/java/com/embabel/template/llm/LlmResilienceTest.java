@@ -0,0 +1,253 @@
+package com.embabel.template.llm;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives the retry templates against a local HTTP server that replies with scripted statuses.
+ */
+class LlmResilienceTest {
+
+    private final ConcurrentLinkedQueue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long delayMillis;
+    private HttpServer server;
+    private RestClient client;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", exchange -> {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            var status = statuses.poll();
+            byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status == null ? 200 : status, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        client = RestClient.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    private static LlmResilience resilience(int maxAttempts, Duration deadline, int failureThreshold) {
+        var policy = new LlmResilienceProperties.Policy(maxAttempts, Duration.ofMillis(5), 2.0,
+                Duration.ofMillis(20), deadline, Set.of(429, 500, 503));
+        var properties = new LlmResilienceProperties(policy, Map.of(),
+                new LlmResilienceProperties.Circuit(failureThreshold, Duration.ofMillis(200)), null, Map.of());
+        return new LlmResilience(properties, new SimpleMeterRegistry(), LlmMetrics.detached());
+    }
+
+    private String call(RetryTemplate template) {
+        return template.execute(context -> client.post().uri("/v1/chat/completions").retrieve().body(String.class));
+    }
+
+    @Test
+    void retriesRetryableStatusesUntilSuccess() {
+        statuses.addAll(List.of(503, 429));
+        var template = resilience(4, Duration.ofSeconds(5), 10).retryTemplate("mercury", "stub");
+
+        assertEquals("{\"ok\":true}", call(template));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void doesNotRetryOtherStatuses() {
+        statuses.add(400);
+        var template = resilience(4, Duration.ofSeconds(5), 10).retryTemplate("mercury", "stub");
+
+        var failure = assertThrows(RestClientResponseException.class, () -> call(template));
+        assertEquals(400, failure.getStatusCode().value());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    void stopsAtMaxAttempts() {
+        statuses.addAll(List.of(500, 500, 500, 500, 500));
+        var template = resilience(3, Duration.ofSeconds(5), 10).retryTemplate("mercury", "stub");
+
+        assertThrows(RestClientResponseException.class, () -> call(template));
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    void noAttemptStartsAfterTheDeadline() {
+        delayMillis = 150;
+        statuses.addAll(List.of(503, 503, 503, 503));
+        var template = resilience(10, Duration.ofMillis(200), 10).retryTemplate("mercury", "stub");
+
+        assertThrows(RestClientResponseException.class, () -> call(template));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void anAttemptStillInFlightAtTheDeadlineIsCutOff() {
+        delayMillis = 2_000;
+        var template = resilience(4, Duration.ofMillis(200), 10).retryTemplate("mercury", "stub");
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> call(template));
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+        assertEquals(1, requests.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    @Test
+    void aWatchdogDisarmedWhileFiringLeavesNoInterruptBehind() throws InterruptedException {
+        var firing = new CountDownLatch(1);
+        var proceed = new CountDownLatch(1);
+        var delivered = new CountDownLatch(1);
+        var leftInterrupted = new AtomicBoolean(true);
+        var caller = new Thread() {
+            @Override
+            public void interrupt() {
+                // Holds the watchdog mid-fire, between deciding to interrupt and interrupting
+                firing.countDown();
+                awaitQuietly(proceed);
+                super.interrupt();
+                delivered.countDown();
+            }
+
+            @Override
+            public void run() {
+                var watchdog = new LlmResilience.Watchdog(this, Duration.ZERO);
+                awaitQuietly(firing);
+                watchdog.disarm();
+                awaitQuietly(delivered);
+                leftInterrupted.set(isInterrupted());
+            }
+        };
+        caller.start();
+
+        assertTrue(firing.await(2, TimeUnit.SECONDS));
+        // Let the caller reach disarm while the watchdog is still firing
+        Thread.sleep(100);
+        proceed.countDown();
+        caller.join(Duration.ofSeconds(2));
+
+        assertFalse(leftInterrupted.get());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void aCallCountsOnceTowardsTheCircuitHoweverManyAttemptsItMakes() {
+        statuses.addAll(List.of(503, 503, 503, 503, 503, 503));
+        var resilience = resilience(3, Duration.ofSeconds(5), 2);
+        var template = resilience.retryTemplate("mercury", "stub");
+
+        assertThrows(RestClientResponseException.class, () -> call(template));
+        assertEquals(3, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.circuitBreaker("stub").state());
+
+        assertThrows(RestClientResponseException.class, () -> call(template));
+        assertEquals(CircuitBreaker.State.OPEN, resilience.circuitBreaker("stub").state());
+    }
+
+    @Test
+    void openCircuitFailsFastForEveryModelOnTheEndpointThenRecovers() throws InterruptedException {
+        statuses.addAll(List.of(500, 500));
+        var resilience = resilience(1, Duration.ofSeconds(5), 2);
+        var mercury = resilience.retryTemplate("mercury", "stub");
+        var coder = resilience.retryTemplate("mercury-coder", "stub");
+
+        assertThrows(RestClientResponseException.class, () -> call(mercury));
+        assertThrows(RestClientResponseException.class, () -> call(coder));
+        assertThrows(CircuitOpenException.class, () -> call(mercury));
+        assertThrows(CircuitOpenException.class, () -> call(coder));
+        assertEquals(2, requests.get());
+
+        Thread.sleep(250);
+        assertEquals("{\"ok\":true}", call(coder));
+        assertEquals("{\"ok\":true}", call(mercury));
+        assertEquals(4, requests.get());
+    }
+
+    @Test
+    void perModelOverridesInheritUnsetDefaults() {
+        var defaults = LlmResilienceProperties.Policy.DEFAULTS;
+        var properties = new LlmResilienceProperties(null,
+                Map.of("bitnet", new LlmResilienceProperties.Policy(2, null, null, null, null, null)),
+                new LlmResilienceProperties.Circuit(5, Duration.ofSeconds(30)),
+                null,
+                Map.of("api.inceptionlabs.ai", new LlmResilienceProperties.Limit(600, null, null, null, null)));
+
+        assertEquals(2, properties.policyFor("bitnet").maxAttempts());
+        assertEquals(defaults.deadline(), properties.policyFor("bitnet").deadline());
+        assertEquals(defaults, properties.policyFor("mercury"));
+        assertEquals(600, properties.limitFor("api.inceptionlabs.ai").requestsPerMinute());
+        assertEquals(LlmResilienceProperties.Limit.DEFAULTS.maxWait(), properties.limitFor("api.inceptionlabs.ai").maxWait());
+        assertEquals(LlmResilienceProperties.Limit.DEFAULTS, properties.limitFor("localhost"));
+    }
+
+    @Test
+    void rateLimitedResponsesHalveTheEndpointConcurrencyLimit() {
+        statuses.addAll(List.of(429, 429));
+        var resilience = resilience(3, Duration.ofSeconds(5), 10);
+        var template = resilience.retryTemplate("mercury", "http://stub");
+
+        assertEquals("{\"ok\":true}", call(template));
+        assertEquals(4.0, resilience.limiter("http://stub").limit());
+        assertEquals(0, resilience.limiter("http://stub").inFlight());
+    }
+
+    @Test
+    void classifiesSpringAiExceptionsByTheirLeadingStatus() {
+        var retryable = Set.of(429, 503);
+
+        assertTrue(RetryClassifier.isRetryable(new NonTransientAiException("429 - rate limited"), retryable));
+        assertFalse(RetryClassifier.isRetryable(new NonTransientAiException("401 - bad key"), retryable));
+        assertTrue(RetryClassifier.isRetryable(new TransientAiException("503 - overloaded"), retryable));
+        assertTrue(RetryClassifier.isRetryable(new RuntimeException(new IOException("reset")), retryable));
+        assertFalse(RetryClassifier.isRetryable(new IllegalStateException("bug"), retryable));
+    }
+}
@@ -0,0 +1,97 @@
+package com.embabel.template.llm;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmResponseCacheTest {
+
+    record Animal(String name, String species) {
+    }
+
+    private static LlmResponseCache cache(Path directory) {
+        return cache(directory, DataSize.ofMegabytes(1));
+    }
+
+    private static LlmResponseCache cache(Path directory, DataSize maxDiskSize) {
+        return new LlmResponseCache(true, 100, Duration.ofHours(1), directory.toString(), maxDiskSize,
+                List.of("WriteAndReviewAgent.craftStory"), new ObjectMapper(), new SimpleMeterRegistry());
+    }
+
+    private static LlmRequest request(String action, String prompt) {
+        return new LlmRequest(action, "default:mercury", List.of(), prompt, Animal.class);
+    }
+
+    @Test
+    void servesRepeatedRequestsFromMemory() {
+        var cache = cache(Path.of(""));
+        var calls = new AtomicInteger();
+        var request = request("InjectedDemo.inventAnimal", "Invent an animal");
+
+        var first = cache.get(request, Animal.class, () -> new Animal("Glim" + calls.incrementAndGet(), "fox"));
+        var second = cache.get(request, Animal.class, () -> new Animal("Glim" + calls.incrementAndGet(), "fox"));
+
+        assertEquals(1, calls.get());
+        assertEquals(first, second);
+    }
+
+    @Test
+    void diskTierSurvivesRestart(@TempDir Path directory) {
+        var request = request("InjectedDemo.inventAnimal", "Invent an animal");
+        cache(directory).get(request, Animal.class, () -> new Animal("Glim", "fox"));
+
+        var restarted = cache(directory);
+        var value = restarted.get(request, Animal.class, () -> {
+            throw new AssertionError("Expected a disk hit");
+        });
+        assertEquals(new Animal("Glim", "fox"), value);
+    }
+
+    @Test
+    void diskTierIsSweptBackUnderItsBound(@TempDir Path directory) throws Exception {
+        var cache = cache(directory, DataSize.ofKilobytes(2));
+        for (int i = 0; i < 40; i++) {
+            cache.get(request("InjectedDemo.inventAnimal", "Invent animal " + i), Animal.class,
+                    () -> new Animal("Glim", "fox"));
+        }
+
+        long size;
+        try (var files = Files.walk(directory)) {
+            size = files.filter(Files::isRegularFile).mapToLong(file -> file.toFile().length()).sum();
+        }
+        assertTrue(size <= 2048, "disk tier holds " + size + " bytes");
+        // The newest entry is kept
+        var restarted = cache(directory, DataSize.ofKilobytes(2));
+        assertEquals(new Animal("Glim", "fox"), restarted.get(request("InjectedDemo.inventAnimal", "Invent animal 39"),
+                Animal.class, () -> {
+                    throw new AssertionError("Expected a disk hit");
+                }));
+    }
+
+    @Test
+    void differentPromptsAndExcludedActionsGoToTheModel(@TempDir Path directory) {
+        var cache = cache(directory);
+        var calls = new AtomicInteger();
+        cache.get(request("InjectedDemo.inventAnimal", "Invent an animal"), Animal.class,
+                () -> new Animal("A" + calls.incrementAndGet(), "fox"));
+        cache.get(request("InjectedDemo.inventAnimal", "Invent a bird"), Animal.class,
+                () -> new Animal("B" + calls.incrementAndGet(), "owl"));
+        cache.get(request("WriteAndReviewAgent.craftStory", "Invent an animal"), Animal.class,
+                () -> new Animal("C" + calls.incrementAndGet(), "fox"));
+        cache.get(request("WriteAndReviewAgent.craftStory", "Invent an animal"), Animal.class,
+                () -> new Animal("D" + calls.incrementAndGet(), "fox"));
+
+        assertEquals(4, calls.get());
+    }
+}
@@ -0,0 +1,120 @@
+package com.embabel.template.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.DefaultUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Streams scripted responses through the retry template of a model, as the model beans would.
+ */
+class LlmTextStreamsTest {
+
+    private static final String ACTION = "OmCoachAgent.reviewSeason";
+
+    private final LlmMetrics metrics = LlmMetrics.detached();
+    private final AtomicInteger attempts = new AtomicInteger();
+    private final List<String> chunks = new ArrayList<>();
+
+    private LlmTextStreams streams(int requestsPerMinute) {
+        var policy = new LlmResilienceProperties.Policy(3, Duration.ofMillis(1), 1.0, Duration.ofMillis(1),
+                Duration.ofSeconds(5), Set.of(429, 503));
+        var limit = new LlmResilienceProperties.Limit(requestsPerMinute, 0, 8, 32, Duration.ofMillis(50));
+        var properties = new LlmResilienceProperties(policy, Map.of(),
+                new LlmResilienceProperties.Circuit(5, Duration.ofSeconds(30)), limit, Map.of());
+        var resilience = new LlmResilience(properties, new SimpleMeterRegistry(), metrics);
+        resilience.retryTemplate("mercury", "http://stub");
+        return new LlmTextStreams(List.of(), resilience);
+    }
+
+    private String generate(LlmTextStreams streams, Flux<ChatResponse> response) {
+        return metrics.timeCall(ACTION, "mercury", false, () -> streams.generate("mercury", () -> {
+            attempts.incrementAndGet();
+            return response;
+        }, 40, chunks::add));
+    }
+
+    private double tokens(String type) {
+        return metrics.registry().counter("llm.tokens",
+                "agent", "OmCoachAgent", "action", "reviewSeason", "model", "mercury", "type", type).count();
+    }
+
+    private static ChatResponse chunk(String text) {
+        return new ChatResponse(List.of(new Generation(new AssistantMessage(text))));
+    }
+
+    private static ChatResponse usage(int promptTokens, int completionTokens) {
+        return new ChatResponse(List.of(),
+                ChatResponseMetadata.builder().usage(new DefaultUsage(promptTokens, completionTokens)).build());
+    }
+
+    @Test
+    void passesChunksOnAndRecordsTheReportedUsage() {
+        var text = generate(streams(0), Flux.just(chunk("Week 1: "), chunk("warm-ups"), usage(120, 6)));
+
+        assertEquals("Week 1: warm-ups", text);
+        assertEquals(List.of("Week 1: ", "warm-ups"), chunks);
+        assertEquals(120, tokens("prompt"));
+        assertEquals(6, tokens("completion"));
+    }
+
+    @Test
+    void estimatesUsageTheStreamDoesNotReport() {
+        generate(streams(0), Flux.just(chunk("Twelve chars")));
+
+        assertEquals(40, tokens("prompt"));
+        assertEquals(TokenEstimates.estimate("Twelve chars"), tokens("completion"));
+    }
+
+    @Test
+    void waitsForTheEndpointLimiter() {
+        var streams = streams(1);
+        generate(streams, Flux.just(chunk("first")));
+
+        assertThrows(LlmLimitExceededException.class, () -> generate(streams, Flux.just(chunk("second"))));
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    void retriesUntilTheFirstChunk() {
+        var streams = streams(0);
+        var failures = new AtomicInteger(1);
+
+        var text = metrics.timeCall(ACTION, "mercury", false, () -> streams.generate("mercury", () -> {
+            attempts.incrementAndGet();
+            return failures.getAndDecrement() > 0
+                    ? Flux.error(new TransientAiException("503 - overloaded"))
+                    : Flux.just(chunk("recovered"));
+        }, 40, chunks::add));
+
+        assertEquals("recovered", text);
+        assertEquals(2, attempts.get());
+        assertEquals(1, metrics.registry().counter("llm.retries",
+                "agent", "OmCoachAgent", "action", "reviewSeason", "model", "mercury", "status", "503").count());
+    }
+
+    @Test
+    void neverRetriesOnceAChunkWasPassedOn() {
+        var cutOff = Flux.concat(Flux.just(chunk("Week 1")),
+                Flux.<ChatResponse>error(new TransientAiException("503 - overloaded")));
+
+        assertThrows(TransientAiException.class, () -> generate(streams(0), cutOff));
+        assertEquals(1, attempts.get());
+        assertEquals(List.of("Week 1"), chunks);
+    }
+}
@@ -0,0 +1,283 @@
+package com.embabel.template.llm;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ModelRouterTest {
+
+    private static final List<ModelRouter.ModelPrice> PRICES = List.of(
+            new ModelRouter.ModelPrice("mercury", 0.25, 1.0),
+            new ModelRouter.ModelPrice("bitnet", 0.01, 0.01));
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private ModelRouter router(Map<String, LlmRoutingProperties.Policy> policies) {
+        return router(policies, 0.1);
+    }
+
+    private ModelRouter router(Map<String, LlmRoutingProperties.Policy> policies, double hedgeBudget) {
+        return ModelRouter.withPrices(PRICES,
+                new LlmRoutingProperties(true, null, policies, 1, 0.5, Duration.ofSeconds(30), hedgeBudget),
+                registry);
+    }
+
+    private static LlmRoutingProperties.Policy policy(LlmRoutingProperties.Objective objective, Duration maxP95) {
+        return new LlmRoutingProperties.Policy(objective, List.of("mercury", "bitnet"), maxP95, null, null, null, null);
+    }
+
+    private static LlmRoutingProperties.Policy hedged(Duration hedgeDelay) {
+        return new LlmRoutingProperties.Policy(LlmRoutingProperties.Objective.PREFERRED, List.of("mercury", "bitnet"),
+                null, null, true, 0.95, hedgeDelay);
+    }
+
+    private static String answerAfter(String model, Map<String, Duration> latencies) {
+        try {
+            Thread.sleep(latencies.get(model).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(model + " cancelled");
+        }
+        return model;
+    }
+
+    @Test
+    void actionsWithoutCandidatesAreLeftToEmbabel() {
+        var router = router(Map.of());
+
+        assertEquals(List.of(), router.route("OmCoachAgent.craftSeasonPlan", 1000));
+        assertNull(router.call("OmCoachAgent.craftSeasonPlan", 1000, model -> model));
+    }
+
+    @Test
+    void prefersTheCheapestModel() {
+        var router = router(Map.of("WriteAndReviewAgent.reviewStory", policy(LlmRoutingProperties.Objective.CHEAPEST, null)));
+
+        assertEquals(List.of("bitnet", "mercury"), router.route("WriteAndReviewAgent.reviewStory", 800));
+    }
+
+    @Test
+    void skipsModelsMissingTheLatencyTarget() {
+        var router = router(Map.of("WriteAndReviewAgent.reviewStory",
+                policy(LlmRoutingProperties.Objective.CHEAPEST, Duration.ofSeconds(2))));
+        for (int i = 0; i < 10; i++) {
+            router.record("bitnet", Duration.ofSeconds(5).toNanos(), true);
+            router.record("mercury", Duration.ofMillis(800).toNanos(), true);
+        }
+
+        assertEquals(List.of("mercury", "bitnet"), router.route("WriteAndReviewAgent.reviewStory", 800));
+    }
+
+    @Test
+    void fastestObjectiveRanksByLatency() {
+        var router = router(Map.of("InjectedDemo.inventAnimal", policy(LlmRoutingProperties.Objective.FASTEST, null)));
+        router.record("bitnet", Duration.ofSeconds(3).toNanos(), true);
+        router.record("mercury", Duration.ofSeconds(1).toNanos(), true);
+
+        assertEquals(List.of("mercury", "bitnet"), router.route("InjectedDemo.inventAnimal", 100));
+    }
+
+    @Test
+    void failsOverAndTakesAFailingModelOutOfRotation() {
+        var router = router(Map.of("InjectedDemo.inventAnimal", policy(LlmRoutingProperties.Objective.CHEAPEST, null)));
+        var tried = new ArrayList<String>();
+
+        for (int i = 0; i < 5; i++) {
+            var answer = router.call("InjectedDemo.inventAnimal", 100, model -> {
+                tried.add(model);
+                if (model.equals("bitnet")) {
+                    throw new TransientAiException("503 - unavailable");
+                }
+                return model;
+            });
+            assertEquals("mercury", answer);
+        }
+
+        // bitnet's smoothed error rate passes the threshold on its fourth failure, then it is no longer tried first
+        assertEquals(List.of("bitnet", "mercury", "bitnet", "mercury", "bitnet", "mercury", "bitnet", "mercury", "mercury"),
+                tried);
+        assertEquals(List.of("mercury", "bitnet"), router.route("InjectedDemo.inventAnimal", 100));
+    }
+
+    @Test
+    void rethrowsWhenEveryCandidateFails() {
+        var router = router(Map.of("InjectedDemo.inventAnimal", policy(LlmRoutingProperties.Objective.CHEAPEST, null)));
+
+        var failure = assertThrows(TransientAiException.class, () -> router.call("InjectedDemo.inventAnimal", 100, model -> {
+            throw new TransientAiException(model);
+        }));
+        assertEquals("bitnet", failure.getMessage());
+        assertEquals(1, failure.getSuppressed().length);
+    }
+
+    @Test
+    void doesNotFailOverARequestTheEndpointRejected() {
+        var router = router(Map.of("InjectedDemo.inventAnimal", policy(LlmRoutingProperties.Objective.CHEAPEST, null)));
+        var tried = new ArrayList<String>();
+
+        var failure = assertThrows(NonTransientAiException.class, () -> router.call("InjectedDemo.inventAnimal", 100, model -> {
+            tried.add(model);
+            throw new NonTransientAiException("400 - prompt too long");
+        }));
+        assertEquals("400 - prompt too long", failure.getMessage());
+        assertEquals(List.of("bitnet"), tried);
+    }
+
+    @Test
+    void aHedgedCallDoesNotFailOverARequestTheEndpointRejected() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofSeconds(5))), 1.0);
+        var tried = new ArrayList<String>();
+
+        assertThrows(IllegalArgumentException.class, () -> router.call("OmCoachAgent.reviewSeason", 100, model -> {
+            synchronized (tried) {
+                tried.add(model);
+            }
+            throw new IllegalArgumentException("unparseable response from " + model);
+        }));
+        assertEquals(List.of("mercury"), tried);
+    }
+
+    @Test
+    void aHedgedCallFailsOverAnOverloadedModel() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofSeconds(5))), 1.0);
+
+        var answer = router.call("OmCoachAgent.reviewSeason", 100, model -> {
+            if (model.equals("mercury")) {
+                throw new NonTransientAiException("429 - rate limited");
+            }
+            return model;
+        });
+        assertEquals("bitnet", answer);
+    }
+
+    @Test
+    void preferredObjectiveKeepsTheListedOrder() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofSeconds(1))));
+
+        assertEquals(List.of("mercury", "bitnet"), router.route("OmCoachAgent.reviewSeason", 5000));
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndTheLoserCancelled() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(50))), 1.0);
+        var cancelled = new AtomicBoolean();
+        var latencies = Map.of("mercury", Duration.ofSeconds(5), "bitnet", Duration.ofMillis(10));
+
+        var answer = router.call("OmCoachAgent.reviewSeason", 100, model -> {
+            try {
+                return answerAfter(model, latencies);
+            } catch (CancellationException e) {
+                cancelled.set(true);
+                throw e;
+            }
+        });
+
+        assertEquals("bitnet", answer);
+        assertEquals(1.0, registry.counter("llm.hedge.fired", "action", "OmCoachAgent.reviewSeason").count());
+        assertEquals(1.0, registry.counter("llm.hedge.won", "action", "OmCoachAgent.reviewSeason").count());
+        // The loser is interrupted promptly rather than left to finish
+        long deadline = System.nanoTime() + Duration.ofSeconds(2).toNanos();
+        while (!cancelled.get() && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertTrue(cancelled.get());
+    }
+
+    @Test
+    void aHedgedLoserCountsTowardsItsModelsLatency() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(50))), 1.0);
+        var latencies = Map.of("mercury", Duration.ofSeconds(5), "bitnet", Duration.ofMillis(10));
+
+        router.call("OmCoachAgent.reviewSeason", 100, model -> answerAfter(model, latencies));
+
+        assertEquals(1, router.stats("mercury").samples());
+        assertTrue(router.stats("mercury").quantileNanos(0.95) >= Duration.ofMillis(50).toNanos());
+        assertEquals(0.0, router.stats("mercury").errorRate());
+    }
+
+    @Test
+    void eachActionHedgesOnItsOwnBudget() {
+        var router = router(Map.of(
+                "InjectedDemo.inventAnimal", policy(LlmRoutingProperties.Objective.CHEAPEST, null),
+                "OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(5))), 0.25);
+        var latencies = Map.of("mercury", Duration.ofMillis(40), "bitnet", Duration.ofMillis(1));
+
+        for (int i = 0; i < 20; i++) {
+            router.call("InjectedDemo.inventAnimal", 100, model -> answerAfter(model, latencies));
+        }
+        for (int i = 0; i < 3; i++) {
+            router.call("OmCoachAgent.reviewSeason", 100, model -> answerAfter(model, latencies));
+        }
+
+        // Calls of other actions earn reviewSeason no hedges: its three calls have saved up three quarters of one
+        assertEquals(0.0, registry.counter("llm.hedge.fired", "action", "OmCoachAgent.reviewSeason").count());
+        assertEquals(3.0, registry.counter("llm.hedge.skipped", "action", "OmCoachAgent.reviewSeason").count());
+    }
+
+    @Test
+    void closingStopsHedgesInFlight() throws InterruptedException {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(5))), 1.0);
+        var interrupted = new AtomicBoolean();
+        var started = new CountDownLatch(1);
+        var caller = Thread.ofVirtual().start(() -> {
+            try {
+                router.call("OmCoachAgent.reviewSeason", 100, model -> {
+                    started.countDown();
+                    try {
+                        return answerAfter(model, Map.of(model, Duration.ofSeconds(30)));
+                    } catch (CancellationException e) {
+                        interrupted.set(true);
+                        throw e;
+                    }
+                });
+            } catch (RuntimeException e) {
+                // The call was cut short
+            }
+        });
+        assertTrue(started.await(2, TimeUnit.SECONDS));
+
+        router.close();
+        caller.join(Duration.ofSeconds(2));
+
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    void fastPrimaryIsNotHedged() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(500))), 1.0);
+        var latencies = Map.of("mercury", Duration.ofMillis(10), "bitnet", Duration.ofMillis(10));
+
+        assertEquals("mercury", router.call("OmCoachAgent.reviewSeason", 100, model -> answerAfter(model, latencies)));
+        assertEquals(0.0, registry.counter("llm.hedge.fired", "action", "OmCoachAgent.reviewSeason").count());
+    }
+
+    @Test
+    void hedgeBudgetCapsTheHedgeRate() {
+        var router = router(Map.of("OmCoachAgent.reviewSeason", hedged(Duration.ofMillis(5))), 0.25);
+        var latencies = Map.of("mercury", Duration.ofMillis(40), "bitnet", Duration.ofMillis(1));
+
+        for (int i = 0; i < 20; i++) {
+            router.call("OmCoachAgent.reviewSeason", 100, model -> answerAfter(model, latencies));
+        }
+
+        double fired = registry.counter("llm.hedge.fired", "action", "OmCoachAgent.reviewSeason").count();
+        double skipped = registry.counter("llm.hedge.skipped", "action", "OmCoachAgent.reviewSeason").count();
+        assertEquals(5.0, fired);
+        assertEquals(15.0, skipped);
+    }
+}
@@ -0,0 +1,54 @@
+package com.embabel.template.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PromptTemplateTest {
+
+    private final PromptTemplate template = PromptTemplate.compile("""
+            Review it in {{wordLimit}} words or less.
+
+            # Story
+            {{story}}
+
+            # User input
+            {{userInput}}
+            """, Map.of("wordLimit", 100));
+
+    @Test
+    void bindsConstantsIntoTheStaticPrefix() {
+        var prompt = template.render(Map.of("story", "Once upon a time", "userInput", "a knight"));
+
+        assertEquals("Review it in 100 words or less.\n\n# Story\nOnce upon a time\n\n# User input\na knight", prompt.text());
+        assertEquals("Review it in 100 words or less.\n\n# Story\n".length(), prompt.staticPrefixLength());
+        assertEquals(List.of("story", "userInput"), template.variables());
+    }
+
+    @Test
+    void keepsTheStaticPrefixIdenticalAcrossCalls() {
+        var first = template.render(Map.of("story", "A dragon", "userInput", "dragons"));
+        var second = template.render(Map.of("story", "A knight errant", "userInput", "knights"));
+
+        assertEquals(first.text().substring(0, first.staticPrefixLength()),
+                second.text().substring(0, second.staticPrefixLength()));
+    }
+
+    @Test
+    void treatsATemplateWithoutPlaceholdersAsAllPrefix() {
+        var fixed = PromptTemplate.compile("Invent an animal.");
+
+        assertEquals("Invent an animal.".length(), fixed.render(Map.of()).staticPrefixLength());
+        assertTrue(fixed.variables().isEmpty());
+    }
+
+    @Test
+    void rejectsMissingValues() {
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("story", "A dragon")));
+    }
+}
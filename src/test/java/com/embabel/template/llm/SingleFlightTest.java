@@ -0,0 +1,147 @@
+package com.embabel.template.llm;
+
+import com.embabel.template.concurrent.CancellableRuns;
+import com.embabel.template.concurrent.DeadlineExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight flights = new SingleFlight(true, registry);
+    private final CancellableRuns runs = new CancellableRuns("caller", 100);
+
+    private static LlmRequest request(String prompt) {
+        return new LlmRequest("OmCoachAgent.craftSeasonPlan", "auto;temperature=0.5", List.of(), prompt, String.class);
+    }
+
+    @Test
+    void identicalConcurrentRequestsShareOneCall() throws Exception {
+        var calls = new AtomicInteger();
+        var release = new CountDownLatch(1);
+        var callers = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 10; i++) {
+            callers.add(runs.start(() -> flights.call(request("Div II structure team"), String.class, () -> {
+                calls.incrementAndGet();
+                awaitQuietly(release);
+                return "plan";
+            }), null));
+        }
+        waitFor(() -> registry.counter("llm.coalesce", "result", "joined").count() == 9);
+        release.countDown();
+
+        for (var caller : callers) {
+            assertEquals("plan", caller.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0.9, flights.coalesceRatio(), 1e-9);
+    }
+
+    @Test
+    void differentRequestsAndLaterRequestsAreNotCoalesced() {
+        var calls = new AtomicInteger();
+
+        flights.call(request("a"), String.class, () -> "a" + calls.incrementAndGet());
+        flights.call(request("a"), String.class, () -> "a" + calls.incrementAndGet());
+        flights.call(request("b"), String.class, () -> "b" + calls.incrementAndGet());
+
+        assertEquals(3, calls.get());
+        assertEquals(0.0, flights.coalesceRatio(), 1e-9);
+    }
+
+    @Test
+    void cancellingOneCallerLeavesTheSharedCallRunningForTheOthers() throws Exception {
+        var release = new CountDownLatch(1);
+        var interrupted = new AtomicBoolean();
+        var first = runs.start(() -> flights.call(request("shared"), String.class, () -> {
+            try {
+                release.await();
+                return "plan";
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+                throw new IllegalStateException(e);
+            }
+        }), null);
+        waitFor(() -> registry.counter("llm.coalesce", "result", "sent").count() == 1);
+        var second = runs.start(() -> flights.call(request("shared"), String.class, () -> "unused"), null);
+        waitFor(() -> registry.counter("llm.coalesce", "result", "joined").count() == 1);
+
+        first.cancel(true);
+        release.countDown();
+
+        assertEquals("plan", second.get(5, TimeUnit.SECONDS));
+        assertFalse(interrupted.get());
+    }
+
+    @Test
+    void callerPastItsDeadlineStopsWaitingAndTheLastToLeaveStopsTheCall() throws Exception {
+        var interrupted = new CountDownLatch(1);
+        var caller = runs.start(() -> flights.call(request("slow"), String.class, () -> {
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+                return "plan";
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw new IllegalStateException(e);
+            }
+        }), Duration.ofMillis(100));
+
+        var failure = assertThrows(ExecutionException.class, () -> caller.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(DeadlineExceededException.class, failure.getCause());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failureReachesEveryCaller() throws Exception {
+        var release = new CountDownLatch(1);
+        var callers = new ArrayList<CompletableFuture<String>>();
+        for (int i = 0; i < 3; i++) {
+            callers.add(runs.start(() -> flights.call(request("failing"), String.class, () -> {
+                awaitQuietly(release);
+                throw new IllegalStateException("503 - unavailable");
+            }), null));
+        }
+        waitFor(() -> registry.counter("llm.coalesce", "result", "joined").count() == 2);
+        release.countDown();
+
+        for (var caller : callers) {
+            var failure = assertThrows(ExecutionException.class, () -> caller.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("Condition not met within 5s");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
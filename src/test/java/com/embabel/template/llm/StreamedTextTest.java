@@ -0,0 +1,86 @@
+package com.embabel.template.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class StreamedTextTest {
+
+    private static final String ACTION = "OmCoachAgent.reviewSeason";
+
+    /**
+     * Records what a client would see: "+" before each chunk, "!" for a restart.
+     */
+    private static final class Recorder implements TokenSink {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public synchronized void onToken(String action, String text) {
+            assertEquals(ACTION, action);
+            events.add("+" + text);
+        }
+
+        @Override
+        public synchronized void onRestart(String action) {
+            events.add("!");
+        }
+    }
+
+    @Test
+    void forwardsChunksAsTheyArriveAndNothingMoreWhenTheStreamedAttemptAnswers() {
+        var sink = new Recorder();
+        var streamed = new StreamedText(ACTION, sink);
+        var attempt = streamed.attempt();
+
+        attempt.accept("Strong ");
+        assertEquals(List.of("+Strong "), sink.events);
+        attempt.accept("season.");
+        streamed.finish(attempt.text());
+
+        assertEquals(List.of("+Strong ", "+season."), sink.events);
+    }
+
+    @Test
+    void sendsTheWholeResponseWhenNothingWasStreamed() {
+        var sink = new Recorder();
+        var streamed = new StreamedText(ACTION, sink);
+
+        // A cached answer, or a model that cannot stream
+        streamed.finish("Strong season.");
+
+        assertEquals(List.of("+Strong season."), sink.events);
+    }
+
+    @Test
+    void streamsOnlyTheFirstAttemptAndRestartsWhenAnotherAnswers() {
+        var sink = new Recorder();
+        var streamed = new StreamedText(ACTION, sink);
+        var primary = streamed.attempt();
+        var hedge = streamed.attempt();
+
+        primary.accept("Slow ");
+        hedge.accept("Fast ");
+        hedge.accept("answer.");
+        streamed.finish(hedge.text());
+        primary.accept("late");
+
+        assertEquals(List.of("+Slow ", "!", "+Fast answer."), sink.events);
+    }
+
+    @Test
+    void sinkFollowsTheRunOntoThreadsItStarts() throws Exception {
+        var sink = new Recorder();
+
+        var seen = TokenSink.forwardTo(sink, () -> CompletableFuture
+                .supplyAsync(TokenSinks::current, runnable -> Thread.ofVirtual().start(runnable))
+                .join());
+
+        assertEquals(sink, seen);
+        assertNull(TokenSinks.current());
+    }
+}
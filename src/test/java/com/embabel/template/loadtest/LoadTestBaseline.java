@@ -0,0 +1,81 @@
+package com.embabel.template.loadtest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Compares load-test reports with a committed baseline, one entry per scenario.
+ * <p>
+ * Each report is written to {@code target/loadtest/<scenario>.json}. A scenario with no baseline entry fails, so that a
+ * missing baseline cannot pass for one without regressions; the run is added to
+ * {@code target/loadtest/baseline-candidate.json}, to be reviewed and copied over the baseline, and
+ * {@code -Dloadtest.updateBaseline=true} writes the baseline directly. Otherwise the test fails if any measure is worse
+ * than the baseline by more than {@code -Dloadtest.maxRegression}, 0.15 by default.
+ */
+public final class LoadTestBaseline {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadTestBaseline.class);
+    private static final Path OUTPUT = Path.of("target", "loadtest");
+    private static final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private LoadTestBaseline() {
+    }
+
+    public static void check(LoadTestReport report) throws IOException {
+        logger.info(report.summary());
+        Files.createDirectories(OUTPUT);
+        objectMapper.writeValue(OUTPUT.resolve(report.scenario() + ".json").toFile(), report);
+
+        var baselinePath = Path.of(System.getProperty("loadtest.baseline", "src/test/resources/loadtest/baseline.json"));
+        var baseline = read(baselinePath);
+        if (Boolean.getBoolean("loadtest.updateBaseline")) {
+            baseline.put(report.scenario(), report);
+            write(baselinePath, baseline);
+            logger.info("Updated baseline {} for {}", baselinePath, report.scenario());
+            return;
+        }
+        var expected = baseline.get(report.scenario());
+        if (expected == null) {
+            var candidatePath = OUTPUT.resolve("baseline-candidate.json");
+            var candidate = read(candidatePath);
+            candidate.put(report.scenario(), report);
+            write(candidatePath, candidate);
+            fail("No baseline for %s in %s; this run is recorded in %s. Measure one on the reference machine with "
+                    .formatted(report.scenario(), baselinePath, candidatePath)
+                    + "-Dloadtest.updateBaseline=true and commit it.\n" + report.summary());
+        }
+        double maxRegression = Double.parseDouble(System.getProperty("loadtest.maxRegression", "0.15"));
+        var regressions = report.regressionsAgainst(expected, maxRegression);
+        if (!regressions.isEmpty()) {
+            fail("%s regressed by more than %.0f%% against %s:%n- %s%n%s".formatted(
+                    report.scenario(), maxRegression * 100, baselinePath,
+                    String.join("\n- ", regressions), report.summary()));
+        }
+    }
+
+    private static Map<String, LoadTestReport> read(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new TreeMap<>();
+        }
+        return new TreeMap<>(objectMapper.readValue(path.toFile(), new TypeReference<Map<String, LoadTestReport>>() {
+        }));
+    }
+
+    private static void write(Path path, Map<String, LoadTestReport> reports) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        objectMapper.writeValue(path.toFile(), reports);
+    }
+}
@@ -0,0 +1,79 @@
+package com.embabel.template.loadtest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Results of one load-test scenario. Latencies are measured from each run's scheduled arrival, so time spent waiting
+ * behind a saturated system counts, rather than being hidden by a slower arrival rate.
+ *
+ * @param peakInFlight        most runs in progress at once, virtual threads included
+ * @param peakPlatformThreads most live platform threads, which is what the JVM's thread count reports
+ * @param gcPauseTotalMillis  time in GC pauses during the measured window
+ */
+public record LoadTestReport(
+        String scenario,
+        double arrivalsPerSecond,
+        long durationMillis,
+        long completed,
+        long failed,
+        double throughputPerSecond,
+        double latencyP50Millis,
+        double latencyP90Millis,
+        double latencyP99Millis,
+        double latencyMaxMillis,
+        int peakInFlight,
+        int peakPlatformThreads,
+        long peakHeapBytes,
+        long gcCount,
+        long gcPauseTotalMillis,
+        long gcPauseMaxMillis
+) {
+
+    /**
+     * Differences below these are noise whatever the relative change.
+     */
+    private static final double LATENCY_FLOOR_MILLIS = 10;
+    private static final long HEAP_FLOOR_BYTES = 32L << 20;
+    private static final long GC_FLOOR_MILLIS = 20;
+
+    public double errorRate() {
+        long total = completed + failed;
+        return total == 0 ? 0 : (double) failed / total;
+    }
+
+    /**
+     * How this run is worse than the baseline by more than {@code maxRegression}, a fraction such as 0.15.
+     * An empty list means no regression.
+     */
+    public List<String> regressionsAgainst(LoadTestReport baseline, double maxRegression) {
+        var regressions = new ArrayList<String>();
+        if (throughputPerSecond < baseline.throughputPerSecond * (1 - maxRegression)) {
+            regressions.add("throughput %.1f/s is below baseline %.1f/s".formatted(
+                    throughputPerSecond, baseline.throughputPerSecond));
+        }
+        higher(regressions, "p50 latency", latencyP50Millis, baseline.latencyP50Millis, LATENCY_FLOOR_MILLIS, maxRegression);
+        higher(regressions, "p99 latency", latencyP99Millis, baseline.latencyP99Millis, LATENCY_FLOOR_MILLIS, maxRegression);
+        higher(regressions, "peak heap", peakHeapBytes, baseline.peakHeapBytes, HEAP_FLOOR_BYTES, maxRegression);
+        higher(regressions, "max GC pause", gcPauseMaxMillis, baseline.gcPauseMaxMillis, GC_FLOOR_MILLIS, maxRegression);
+        if (errorRate() > baseline.errorRate() + 0.01) {
+            regressions.add("error rate %.3f is above baseline %.3f".formatted(errorRate(), baseline.errorRate()));
+        }
+        return regressions;
+    }
+
+    private static void higher(List<String> regressions, String what, double value, double baseline,
+                               double floor, double maxRegression) {
+        if (value - baseline > floor && value > baseline * (1 + maxRegression)) {
+            regressions.add("%s %.1f is above baseline %.1f".formatted(what, value, baseline));
+        }
+    }
+
+    public String summary() {
+        return ("%s: %d ok, %d failed at %.1f arrivals/s; %.1f/s; latency p50 %.0fms p90 %.0fms p99 %.0fms max %.0fms; "
+                + "peak in flight %d, platform threads %d, heap %dMB; GC %d collections, %dms paused, max %dms").formatted(
+                scenario, completed, failed, arrivalsPerSecond, throughputPerSecond,
+                latencyP50Millis, latencyP90Millis, latencyP99Millis, latencyMaxMillis,
+                peakInFlight, peakPlatformThreads, peakHeapBytes >> 20, gcCount, gcPauseTotalMillis, gcPauseMaxMillis);
+    }
+}
@@ -0,0 +1,95 @@
+package com.embabel.template.loadtest;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenLoopHarnessTest {
+
+    private static LoadTestReport report(double throughput, double p99, long heap, long failed) {
+        return new LoadTestReport("scenario", 10, 30_000, 300, failed, throughput,
+                100, 150, p99, 400, 20, 30, heap, 5, 40, 12);
+    }
+
+    @Test
+    void schedulesTheSameArrivalsAtTheRequestedRate() {
+        var settings = new OpenLoopLoad.Settings(200, Duration.ofMillis(200), Duration.ofSeconds(1), Duration.ofSeconds(5), 7);
+
+        var schedule = OpenLoopLoad.schedule(settings);
+
+        assertArrayEquals(schedule, OpenLoopLoad.schedule(settings));
+        long measured = Arrays.stream(schedule).filter(offset -> offset >= Duration.ofMillis(200).toNanos()).count();
+        assertTrue(measured > 150 && measured < 250, "measured arrivals " + measured);
+        for (int i = 1; i < schedule.length; i++) {
+            assertTrue(schedule[i] >= schedule[i - 1]);
+        }
+        assertTrue(schedule[schedule.length - 1] < Duration.ofMillis(1200).toNanos());
+    }
+
+    @Test
+    void keepsOfferingLoadWhileEarlierRunsAreStillInProgress() throws InterruptedException {
+        var settings = new OpenLoopLoad.Settings(200, Duration.ZERO, Duration.ofMillis(500), Duration.ofSeconds(30), 7);
+        // No run finishes until ten are in progress together, which a closed loop of fewer workers never reaches
+        var together = new CountDownLatch(10);
+
+        var report = OpenLoopLoad.run("gated", settings, () -> {
+            together.countDown();
+            try {
+                if (!together.await(30, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Never had ten runs in progress");
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        assertEquals(OpenLoopLoad.schedule(settings).length, report.completed(), report.summary());
+        assertEquals(0, report.failed());
+        assertTrue(report.peakInFlight() >= 10, report.summary());
+    }
+
+    @Test
+    void countsFailedRuns() throws InterruptedException {
+        var settings = new OpenLoopLoad.Settings(100, Duration.ZERO, Duration.ofMillis(500), Duration.ofSeconds(5), 7);
+
+        var report = OpenLoopLoad.run("failing", settings, () -> {
+            throw new IllegalStateException("model down");
+        });
+
+        assertEquals(0, report.completed());
+        assertTrue(report.failed() > 0);
+        assertEquals(1.0, report.errorRate());
+    }
+
+    @Test
+    void flagsOnlyRegressionsBeyondTheThreshold() {
+        var baseline = report(10, 1000, 512L << 20, 0);
+
+        assertTrue(report(9.5, 1100, 520L << 20, 0).regressionsAgainst(baseline, 0.15).isEmpty());
+        var regressions = report(8, 1300, 700L << 20, 30).regressionsAgainst(baseline, 0.15);
+        assertEquals(4, regressions.size(), regressions.toString());
+    }
+
+    @Test
+    void ignoresSmallAbsoluteChangesInTinyMeasures() {
+        var baseline = report(10, 2, 512L << 20, 0);
+
+        assertTrue(report(10, 6, 512L << 20, 0).regressionsAgainst(baseline, 0.15).isEmpty());
+    }
+
+    @Test
+    void takesPercentilesByRank() {
+        long[] nanos = {1_000_000, 2_000_000, 3_000_000, 4_000_000};
+
+        assertEquals(2.0, OpenLoopLoad.percentileMillis(nanos, 0.5));
+        assertEquals(4.0, OpenLoopLoad.percentileMillis(nanos, 0.99));
+        assertEquals(0.0, OpenLoopLoad.percentileMillis(new long[0], 0.5));
+    }
+}
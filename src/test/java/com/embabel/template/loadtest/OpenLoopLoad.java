@@ -0,0 +1,152 @@
+package com.embabel.template.loadtest;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.LongStream;
+
+/**
+ * Open-loop load: runs arrive as a Poisson process at a fixed rate, each on its own virtual thread, whether or not
+ * earlier runs have finished. That is how independent users behave, and unlike a closed loop of N workers it keeps
+ * offering load when the system slows down, so queueing shows up in the latencies instead of hiding in a lower rate.
+ * <p>
+ * Runs arriving during the warmup are executed but not measured.
+ */
+public final class OpenLoopLoad {
+
+    /**
+     * @param arrivalsPerSecond mean arrival rate
+     * @param drainTimeout      how long to wait for runs still in progress after the last arrival; any left then fail
+     * @param seed              seeds the arrival times, so that runs are comparable
+     */
+    public record Settings(double arrivalsPerSecond, Duration warmup, Duration duration, Duration drainTimeout, long seed) {
+
+        /**
+         * Settings from {@code -Dloadtest.rate}, {@code .warmup}, {@code .duration} and {@code .drainTimeout},
+         * with durations in ISO-8601 such as {@code PT30S}.
+         */
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    Double.parseDouble(System.getProperty("loadtest.rate", "20")),
+                    Duration.parse(System.getProperty("loadtest.warmup", "PT10S")),
+                    Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                    Duration.parse(System.getProperty("loadtest.drainTimeout", "PT60S")),
+                    Long.getLong("loadtest.seed", 42));
+        }
+    }
+
+    private OpenLoopLoad() {
+    }
+
+    public static LoadTestReport run(String scenario, Settings settings, Runnable run) throws InterruptedException {
+        var latencies = new ConcurrentLinkedQueue<Long>();
+        var failed = new AtomicLong();
+        var inFlight = new AtomicInteger();
+        var peakInFlight = new AtomicInteger();
+        var lastCompletion = new AtomicLong();
+
+        long start = System.nanoTime();
+        long measuredFrom = start + settings.warmup().toNanos();
+        long end = measuredFrom + settings.duration().toNanos();
+        RuntimeSampler sampler = null;
+        long measuredArrivals = 0;
+
+        var executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            for (long offset : schedule(settings)) {
+                long arrival = start + offset;
+                long wait = arrival - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                boolean measured = arrival >= measuredFrom;
+                if (measured && sampler == null) {
+                    sampler = new RuntimeSampler();
+                }
+                if (measured) {
+                    measuredArrivals++;
+                }
+                long scheduled = arrival;
+                executor.submit(() -> {
+                    peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                    try {
+                        run.run();
+                        if (measured) {
+                            latencies.add(System.nanoTime() - scheduled);
+                        }
+                    } catch (RuntimeException e) {
+                        if (measured) {
+                            failed.incrementAndGet();
+                        }
+                    } finally {
+                        inFlight.decrementAndGet();
+                        if (measured) {
+                            lastCompletion.accumulateAndGet(System.nanoTime(), Math::max);
+                        }
+                    }
+                });
+            }
+            executor.shutdown();
+            if (!executor.awaitTermination(settings.drainTimeout().toMillis(), TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } finally {
+            if (sampler != null) {
+                sampler.close();
+            }
+        }
+
+        long completed = latencies.size();
+        long unfinished = measuredArrivals - completed - failed.get();
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double windowSeconds = Math.max(settings.duration().toNanos(), lastCompletion.get() - measuredFrom) / 1e9;
+        return new LoadTestReport(
+                scenario,
+                settings.arrivalsPerSecond(),
+                settings.duration().toMillis(),
+                completed,
+                failed.get() + Math.max(0, unfinished),
+                completed / windowSeconds,
+                percentileMillis(sorted, 0.50),
+                percentileMillis(sorted, 0.90),
+                percentileMillis(sorted, 0.99),
+                percentileMillis(sorted, 1.0),
+                peakInFlight.get(),
+                sampler == null ? 0 : sampler.peakPlatformThreads(),
+                sampler == null ? 0 : sampler.peakHeapBytes(),
+                sampler == null ? 0 : sampler.gcCount(),
+                sampler == null ? 0 : sampler.gcPauseTotalMillis(),
+                sampler == null ? 0 : sampler.gcPauseMaxMillis());
+    }
+
+    /**
+     * Arrival times in nanoseconds from the start of the warmup: the same for the same settings, however fast the
+     * machine running them.
+     */
+    static long[] schedule(Settings settings) {
+        var random = new SplittableRandom(settings.seed());
+        double meanGapNanos = 1e9 / settings.arrivalsPerSecond();
+        long end = settings.warmup().toNanos() + settings.duration().toNanos();
+        var arrivals = LongStream.builder();
+        for (long arrival = 0; ; ) {
+            arrival += (long) (-Math.log(1 - random.nextDouble()) * meanGapNanos);
+            if (arrival >= end) {
+                return arrivals.build().toArray();
+            }
+            arrivals.add(arrival);
+        }
+    }
+
+    static double percentileMillis(long[] sortedNanos, double quantile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(quantile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(sortedNanos.length - 1, index))] / 1e6;
+    }
+}
@@ -0,0 +1,107 @@
+package com.embabel.template.loadtest;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Watches the JVM while a scenario is measured: platform thread count and heap use are sampled on a timer,
+ * and every garbage collection is reported by the JVM's notifications, so no pause falls between samples.
+ */
+final class RuntimeSampler implements AutoCloseable {
+
+    private static final Duration INTERVAL = Duration.ofMillis(50);
+
+    private final Thread sampler;
+    private final List<Registration> registrations = new ArrayList<>();
+    private final AtomicLong gcCount = new AtomicLong();
+    private final AtomicLong gcPauseTotalMillis = new AtomicLong();
+    private final AtomicLong gcPauseMaxMillis = new AtomicLong();
+    private volatile int peakPlatformThreads;
+    private volatile long peakHeapBytes;
+    private volatile boolean running = true;
+
+    private record Registration(NotificationEmitter emitter, NotificationListener listener) {
+    }
+
+    RuntimeSampler() {
+        var threads = ManagementFactory.getThreadMXBean();
+        var memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter emitter) {
+                NotificationListener listener = this::onGc;
+                emitter.addNotificationListener(listener, null, null);
+                registrations.add(new Registration(emitter, listener));
+            }
+        }
+        sampler = Thread.ofPlatform().daemon().name("load-test-sampler").start(() -> {
+            while (running) {
+                peakPlatformThreads = Math.max(peakPlatformThreads, threads.getThreadCount());
+                peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+    }
+
+    private void onGc(Notification notification, Object handback) {
+        if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+            return;
+        }
+        var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+        // Concurrent cycles of collectors such as G1 run alongside the application and are not pauses
+        if (info.getGcCause().contains("No GC") || info.getGcName().contains("Concurrent")) {
+            return;
+        }
+        long millis = info.getGcInfo().getDuration();
+        gcCount.incrementAndGet();
+        gcPauseTotalMillis.addAndGet(millis);
+        gcPauseMaxMillis.accumulateAndGet(millis, Math::max);
+    }
+
+    int peakPlatformThreads() {
+        return Math.max(peakPlatformThreads, ManagementFactory.getThreadMXBean().getPeakThreadCount());
+    }
+
+    long peakHeapBytes() {
+        return peakHeapBytes;
+    }
+
+    long gcCount() {
+        return gcCount.get();
+    }
+
+    long gcPauseTotalMillis() {
+        return gcPauseTotalMillis.get();
+    }
+
+    long gcPauseMaxMillis() {
+        return gcPauseMaxMillis.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        sampler.interrupt();
+        for (var registration : registrations) {
+            try {
+                registration.emitter().removeNotificationListener(registration.listener());
+            } catch (Exception e) {
+                // Already gone
+            }
+        }
+    }
+}
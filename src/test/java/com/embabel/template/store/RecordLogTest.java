@@ -0,0 +1,141 @@
+package com.embabel.template.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RecordLogTest {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private List<String> replay(Path path, List<Long> offsets) throws IOException {
+        var records = new ArrayList<String>();
+        try (var ignored = RecordLog.open(path, (payload, offset) -> {
+            records.add(new String(payload, StandardCharsets.UTF_8));
+            offsets.add(offset);
+        })) {
+            return records;
+        }
+    }
+
+    @Test
+    void readsRecordsBackByOffsetAndReplaysThemInOrder() throws IOException {
+        var path = directory.resolve("plans.log");
+        long first;
+        long second;
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            first = log.append(bytes("first"));
+            second = log.append(bytes("second"));
+            assertArrayEquals(bytes("second"), log.read(second));
+            assertArrayEquals(bytes("first"), log.read(first));
+        }
+
+        var offsets = new ArrayList<Long>();
+        assertEquals(List.of("first", "second"), replay(path, offsets));
+        assertEquals(List.of(first, second), offsets);
+    }
+
+    @Test
+    void truncatesATornTailAndKeepsAppendingAfterTheLastIntactRecord() throws IOException {
+        var path = directory.resolve("plans.log");
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            log.append(bytes("kept"));
+            log.append(bytes("torn by a crash"));
+        }
+        try (var file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        assertEquals(List.of("kept"), replay(path, new ArrayList<>()));
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            log.append(bytes("after"));
+        }
+        assertEquals(List.of("kept", "after"), replay(path, new ArrayList<>()));
+    }
+
+    @Test
+    void stopsAtACorruptRecord() throws IOException {
+        var path = directory.resolve("plans.log");
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            log.append(bytes("good"));
+            log.append(bytes("flipped"));
+        }
+        var content = Files.readAllBytes(path);
+        content[content.length - 1] ^= 0x01;
+        Files.write(path, content);
+
+        assertEquals(List.of("good"), replay(path, new ArrayList<>()));
+    }
+
+    @Test
+    void writesAWholeLogThatReplaysAndTakesAppends() throws IOException {
+        var path = directory.resolve("plans.log");
+        Files.writeString(path, "replaced");
+        RecordLog.write(path, List.of(bytes("first"), bytes("second")));
+
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            log.append(bytes("third"));
+        }
+        assertEquals(List.of("first", "second", "third"), replay(path, new ArrayList<>()));
+    }
+
+    @Test
+    void anInterruptedCallerCanStillReplayAndAppend() throws IOException {
+        var path = directory.resolve("plans.log");
+        try (var log = RecordLog.open(path, (payload, offset) -> {
+        })) {
+            log.append(bytes("before"));
+        }
+
+        var records = new ArrayList<String>();
+        Thread.currentThread().interrupt();
+        try (var log = RecordLog.open(path, (payload, offset) -> records.add(new String(payload, StandardCharsets.UTF_8)))) {
+            long offset = log.append(bytes("after"));
+            assertArrayEquals(bytes("after"), log.read(offset));
+        } finally {
+            assertTrue(Thread.interrupted(), "The interrupt is left for the caller to handle");
+        }
+        assertEquals(List.of("before"), records);
+        assertEquals(List.of("before", "after"), replay(path, new ArrayList<>()));
+    }
+
+    @Test
+    void encodesNumbersTextAndNullsCompactly() {
+        var encoded = new Binary.Writer()
+                .writeVarLong(300)
+                .writeSignedVarLong(-2)
+                .writeString(null)
+                .writeString("héllo")
+                .writeStrings(List.of("a", "b"))
+                .toByteArray();
+
+        var in = new Binary.Reader(encoded);
+        assertEquals(300, in.readVarLong());
+        assertEquals(-2, in.readSignedVarLong());
+        assertEquals(null, in.readString());
+        assertEquals("héllo", in.readString());
+        assertEquals(List.of("a", "b"), in.readStrings());
+        assertEquals(2 + 1 + 1 + 7 + 5, encoded.length);
+    }
+}
@@ -0,0 +1,174 @@
+package com.embabel.template.stub;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OpenAiStubServerTest {
+
+    private static final String SEASON_PLAN_SCHEMA = """
+            {
+              "$schema" : "https://json-schema.org/draft/2020-12/schema",
+              "type" : "object",
+              "properties" : {
+                "teamLevel" : { "type" : "string" },
+                "theme" : { "type" : "string" },
+                "lessons" : {
+                  "type" : "array",
+                  "items" : { "$ref" : "#/$defs/WeekLesson" }
+                }
+              },
+              "$defs" : {
+                "WeekLesson" : {
+                  "type" : "object",
+                  "properties" : {
+                    "weekNumber" : { "type" : "integer" },
+                    "goals" : { "type" : "string" },
+                    "agenda" : { "type" : "array", "items" : { "type" : "string" } }
+                  }
+                }
+              }
+            }""";
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final HttpClient client = HttpClient.newHttpClient();
+    private OpenAiStubServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private OpenAiStubServer start(StubLlmProperties properties) {
+        server = new OpenAiStubServer(properties, objectMapper);
+        server.start();
+        return server;
+    }
+
+    private HttpResponse<String> chat(String prompt, boolean stream) throws IOException, InterruptedException {
+        var body = objectMapper.writeValueAsString(Map.of(
+                "model", "mercury",
+                "stream", stream,
+                "stream_options", Map.of("include_usage", true),
+                "messages", List.of(
+                        Map.of("role", "system", "content", "You are a coach"),
+                        Map.of("role", "user", "content", prompt))));
+        var request = HttpRequest.newBuilder(URI.create(server.baseUrl() + "/v1/chat/completions"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static String structuredPrompt(String schema) {
+        return "Plan a season.\nHere is the JSON Schema instance your output must adhere to:\n```" + schema + "```\n";
+    }
+
+    @Test
+    void answersStructuredPromptsWithAnInstanceOfTheirSchema() throws Exception {
+        start(StubLlmProperties.instant());
+
+        var response = chat(structuredPrompt(SEASON_PLAN_SCHEMA), false);
+
+        assertEquals(200, response.statusCode());
+        JsonNode completion = objectMapper.readTree(response.body());
+        var plan = objectMapper.readTree(completion.at("/choices/0/message/content").asText());
+        assertEquals(20, plan.path("lessons").size());
+        for (int week = 1; week <= 20; week++) {
+            assertEquals(week, plan.path("lessons").get(week - 1).path("weekNumber").asInt());
+        }
+        assertTrue(plan.path("theme").isTextual());
+        assertTrue(completion.at("/usage/prompt_tokens").asInt() > 0);
+        assertEquals(completion.at("/usage/prompt_tokens").asInt() + completion.at("/usage/completion_tokens").asInt(),
+                completion.at("/usage/total_tokens").asInt());
+    }
+
+    @Test
+    void takesASingleWeekFromThePrompt() throws Exception {
+        start(StubLlmProperties.instant());
+        var weekSchema = """
+                { "type" : "object", "properties" : { "weekNumber" : { "type" : "integer" }, "goals" : { "type" : "string" } } }""";
+
+        var response = chat("Write Week 7 in full: { \"weekNumber\": 7 }\n" + structuredPrompt(weekSchema), false);
+
+        var week = objectMapper.readTree(objectMapper.readTree(response.body()).at("/choices/0/message/content").asText());
+        assertEquals(7, week.path("weekNumber").asInt());
+    }
+
+    @Test
+    void servesCannedAnswersAndTextForPlainPrompts() throws Exception {
+        var canned = new StubLlmProperties(true, 0, Duration.ZERO, Duration.ZERO, 0, 0, 0, 20,
+                Map.of("review", "Looks feasible."));
+        start(canned);
+
+        var review = objectMapper.readTree(chat("Please review this plan", false).body());
+        var text = objectMapper.readTree(chat("Tell me about spontaneous problems", false).body());
+
+        assertEquals("Looks feasible.", review.at("/choices/0/message/content").asText());
+        assertTrue(text.at("/choices/0/message/content").asText().length() > 40);
+    }
+
+    @Test
+    void streamsTheAnswerAsServerSentEvents() throws Exception {
+        start(StubLlmProperties.instant().withTokensPerSecond(100_000));
+
+        var response = chat("Tell me a story", true);
+
+        assertEquals(200, response.statusCode());
+        var events = response.body().lines()
+                .filter(line -> line.startsWith("data: "))
+                .map(line -> line.substring("data: ".length()))
+                .toList();
+        assertEquals("[DONE]", events.getLast());
+        var text = new StringBuilder();
+        for (var event : events.subList(0, events.size() - 1)) {
+            var chunk = objectMapper.readTree(event);
+            text.append(chunk.at("/choices/0/delta/content").asText(""));
+        }
+        assertTrue(events.size() > 3, "expected several chunks, got " + events.size());
+        assertEquals(StubResponses.text(50), text.toString());
+        assertTrue(objectMapper.readTree(events.get(events.size() - 2)).at("/usage/total_tokens").asInt() > 0);
+    }
+
+    @Test
+    void injectsRateLimitsAndErrors() throws Exception {
+        start(StubLlmProperties.instant().withFailures(0, 1));
+        var limited = chat("Anything", false);
+        assertEquals(429, limited.statusCode());
+        assertEquals("1", limited.headers().firstValue("Retry-After").orElseThrow());
+        server.close();
+
+        start(StubLlmProperties.instant().withFailures(1, 0));
+        assertEquals(500, chat("Anything", false).statusCode());
+    }
+
+    @Test
+    void latencyFollowsTheConfiguredMedianAndTail() {
+        var stub = new OpenAiStubServer(
+                StubLlmProperties.instant().withLatency(Duration.ofMillis(100), Duration.ofMillis(1000)), objectMapper);
+        var samples = new long[10_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = stub.sampleLatency().toMillis();
+        }
+        Arrays.sort(samples);
+
+        assertTrue(Math.abs(samples[5_000] - 100) <= 10, "median " + samples[5_000]);
+        assertTrue(Math.abs(samples[9_900] - 1000) <= 200, "p99 " + samples[9_900]);
+    }
+}
@@ -0,0 +1,114 @@
+package com.embabel.template.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+
+    private static final int DIMENSIONS = 32;
+
+    private final Random random = new Random(7);
+
+    private float[] randomVector() {
+        var vector = new float[DIMENSIONS];
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+
+    @Test
+    void findsMostOfTheExactNearestNeighbours() {
+        var index = new HnswIndex(DIMENSIONS);
+        var vectors = IntStream.range(0, 3000).mapToObj(i -> randomVector()).toList();
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add("v" + i, vectors.get(i));
+        }
+
+        int found = 0;
+        int queries = 100;
+        for (int q = 0; q < queries; q++) {
+            var query = randomVector();
+            var exact = IntStream.range(0, vectors.size()).boxed()
+                    .sorted(Comparator.comparingDouble(i -> -cosine(query, vectors.get(i))))
+                    .limit(10)
+                    .map(i -> "v" + i)
+                    .toList();
+            var approximate = new HashSet<>(index.search(query, 10).stream().map(HnswIndex.Match::label).toList());
+            found += (int) exact.stream().filter(approximate::contains).count();
+        }
+
+        assertTrue(found >= 0.95 * queries * 10, "recall@10 " + found / (queries * 10.0));
+    }
+
+    @Test
+    void ranksByCosineSimilarity() {
+        var index = new HnswIndex(3);
+        index.add("x", new float[]{2, 0, 0});
+        index.add("xy", new float[]{1, 1, 0});
+        index.add("z", new float[]{0, 0, 5});
+
+        var matches = index.search(new float[]{1, 0.1f, 0}, 2);
+        assertEquals(List.of("x", "xy"), matches.stream().map(HnswIndex.Match::label).toList());
+        assertEquals(0.995, matches.getFirst().similarity(), 0.001);
+    }
+
+    @Test
+    void leavesRemovedAndReplacedVectorsOutOfResults() {
+        var index = new HnswIndex(DIMENSIONS);
+        var vectors = IntStream.range(0, 200).mapToObj(i -> randomVector()).toList();
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add("v" + i, vectors.get(i));
+        }
+
+        assertTrue(index.remove("v5"));
+        assertFalse(index.remove("v5"));
+        index.add("v6", vectors.get(7));
+        assertEquals(199, index.size());
+        var nearest = index.search(vectors.get(5), 200).stream().map(HnswIndex.Match::label).toList();
+        assertFalse(nearest.contains("v5"));
+        assertEquals(1.0, index.search(vectors.get(7), 2).get(1).similarity(), 1e-6);
+    }
+
+    @Test
+    void staysSearchableAfterMostVectorsAreRemoved() {
+        var index = new HnswIndex(DIMENSIONS);
+        var vectors = IntStream.range(0, 500).mapToObj(i -> randomVector()).toList();
+        for (int i = 0; i < vectors.size(); i++) {
+            index.add("v" + i, vectors.get(i));
+        }
+        for (int i = 0; i < 450; i++) {
+            index.remove("v" + i);
+        }
+
+        assertEquals(50, index.size());
+        for (int i = 450; i < 500; i++) {
+            assertEquals("v" + i, index.search(vectors.get(i), 1).getFirst().label());
+        }
+    }
+
+    @Test
+    void rejectsVectorsOfTheWrongSize() {
+        assertThrows(IllegalArgumentException.class, () -> new HnswIndex(3).add("short", new float[2]));
+    }
+}